@@ -0,0 +1,20 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "elastic-bulk-config" which will be used to collect the documents into bulk requests by size, count and time.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "elastic-bulk-config")
+public class ElasticBulkConfigData {
+    private Boolean enableBulkProcessor;
+    private Integer maxDocuments;
+    private Long maxSizeBytes;
+    private Long flushIntervalMs;
+    private Integer maxConcurrentFlushes;
+}
@@ -0,0 +1,24 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "elastic-index-lifecycle-config" which will be used to write the documents into time bucketed indices behind aliases.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "elastic-index-lifecycle-config")
+public class ElasticIndexLifecycleConfigData {
+    private Boolean enableRollingIndices;
+    private String bucket;
+    private String writeAlias;
+    private Integer numberOfShards;
+    private Integer numberOfReplicas;
+    private String refreshInterval;
+    private Integer precreateBuckets;
+    private Long retentionHours;
+    private Long maintenanceIntervalMs;
+}
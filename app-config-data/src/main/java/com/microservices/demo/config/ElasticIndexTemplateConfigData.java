@@ -0,0 +1,17 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "elastic-index-template-config" which will be used to put the index template of the twitter index at startup.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "elastic-index-template-config")
+public class ElasticIndexTemplateConfigData {
+    private Boolean enableIndexTemplate;
+    private Boolean bestCompression;
+}
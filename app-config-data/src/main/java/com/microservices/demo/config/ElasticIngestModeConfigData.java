@@ -0,0 +1,20 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "elastic-ingest-mode-config" which will be used to switch the index into the bulk ingest mode during backfills.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "elastic-ingest-mode-config")
+public class ElasticIngestModeConfigData {
+    private Boolean enableIngestMode;
+    private Boolean enableLagTrigger;
+    private Long enterLagPerPartition;
+    private Long exitLagPerPartition;
+    private Integer enterChecks;
+}
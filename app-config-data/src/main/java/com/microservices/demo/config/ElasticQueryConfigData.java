@@ -9,4 +9,7 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "elastic-query-config")
 public class ElasticQueryConfigData {
     private String textField;
+    private Integer maxPageSize;
+    private Integer exportBatchSize;
+    private Long pointInTimeKeepAliveMs;
 }
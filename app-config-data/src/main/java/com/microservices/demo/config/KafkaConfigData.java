@@ -16,6 +16,8 @@ public class KafkaConfigData {
     private String bootstrapServers;
     private String schemaRegistryUrlKey;
     private String schemaRegistryUrl;
+    private Integer offlineAvroSchemaId;
+    private String offlineAvroSchemaResource;
     private String topicName;
     private List<String> topicNamesToCreate;
     private Integer numOfPartitions;
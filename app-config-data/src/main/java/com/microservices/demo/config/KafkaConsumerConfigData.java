@@ -24,4 +24,5 @@ public class KafkaConsumerConfigData {
   private Integer maxPartitionFetchBytesDefault;
   private Integer maxPartitionFetchBytesBoostFactor;
   private Long pollTimeoutMs;
+  private String ackMode;
 }
@@ -0,0 +1,28 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "kafka-lag-monitor-config" which will be used to monitor the lag of the consumer group and to scale the partitions of
+ * the topic and the concurrency of the kafka listener by the lag.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "kafka-lag-monitor-config")
+public class KafkaLagMonitorConfigData {
+    private Boolean enableLagMonitor;
+    private Long monitorIntervalMs;
+    private Long scaleUpLagPerPartition;
+    private Long scaleDownLagPerPartition;
+    private Integer scaleUpChecks;
+    private Long scaleCooldownMs;
+    private Boolean enablePartitionScaling;
+    private Integer partitionStep;
+    private Integer maxPartitions;
+    private Boolean enableConcurrencyScaling;
+    private Integer minConcurrency;
+    private Integer maxConcurrency;
+}
@@ -0,0 +1,28 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "kafka-producer-benchmark-config" which will be used by kafka-producer-benchmark module, every combination of the
+ * batch sizes, boost factors, linger ms values and compression types is one benchmark run.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "kafka-producer-benchmark-config")
+public class KafkaProducerBenchmarkConfigData {
+    private Integer warmupRecords;
+    private Integer recordsPerRun;
+    private Integer targetRecordsPerSecond;
+    private Integer tweetTextLength;
+    private Long ackTimeoutMs;
+    private List<Integer> batchSizes;
+    private List<Integer> batchSizeBoostFactors;
+    private List<Integer> lingerMsValues;
+    private List<String> compressionTypes;
+    private String reportFile;
+}
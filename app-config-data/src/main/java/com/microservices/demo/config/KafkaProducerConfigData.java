@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 /**
  * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
  *  prefix "kafka-producer-config" which will be used in kafka producer configuration for producing the message on kafka topic
@@ -21,4 +23,23 @@ public class KafkaProducerConfigData {
     private Integer lingerMs;
     private Integer requestTimeoutMs;
     private Integer retryCount;
+    private Boolean enableIdempotence;
+    private Integer maxInFlightRequestsPerConnection;
+    private Boolean enableTransactions;
+    private String transactionalIdPrefix;
+    private Integer transactionBatchSize;
+    private Long transactionBatchMs;
+    private String partitioningStrategy;
+    private List<String> partitioningKeywords;
+    private Integer stickyPartitionRecords;
+    private Double hotKeyShareThreshold;
+    private Long hotKeyWindowMs;
+    private Integer hotKeyMinRecords;
+    private Boolean enableFailureJournal;
+    private String journalDirectory;
+    private Integer journalSegmentBytes;
+    private Long journalMaxBytes;
+    private Integer journalReplayRecordsPerSecond;
+    private Long journalReplayIntervalMs;
+    private Long journalReplayMaxBackoffMs;
 }
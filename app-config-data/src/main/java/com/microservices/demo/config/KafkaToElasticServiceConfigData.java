@@ -0,0 +1,21 @@
+package com.microservices.demo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class has one sole purpose of loading all the properties defined in application.yaml or application.properties starting with
+ * prefix "kafka-to-elastic-service"
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "kafka-to-elastic-service")
+public class KafkaToElasticServiceConfigData {
+    private Boolean enablePipelinedIndexing;
+    private Integer maxConcurrentBulks;
+    private Long maxBulkSizeBytes;
+    private Boolean enableDeadLetterTopic;
+    private String deadLetterTopicName;
+    private Boolean enableDirectEncoding;
+}
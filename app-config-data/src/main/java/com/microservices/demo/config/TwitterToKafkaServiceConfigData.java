@@ -20,8 +20,37 @@ public class TwitterToKafkaServiceConfigData {
     private String twitterV2RulesBaseUrl;
     private String twitterV2BearerToken;
     private Boolean enableMockTweets;
+    private Boolean enableV2Tweets;
+    private Boolean enableReplayTweets;
     private Integer mockMinTweetLength;
     private Integer mockMaxTweetLength;
     private Long mockSleepMs;
+    private Boolean enableHighRateMockTweets;
+    private Long mockTweetsPerSecond;
+    private Integer mockWorkerThreads;
+    private String mockRateProfile;
+    private Long mockPeakTweetsPerSecond;
+    private Long mockRampDurationMs;
+    private Long mockSpikeIntervalMs;
+    private Long mockSpikeDurationMs;
+    private Long mockDiurnalPeriodMs;
+    private Integer mockUsersPerPartition;
+    private Boolean enablePipelinedPublish;
+    private Integer pipelineQueueCapacity;
+    private Integer pipelineWorkerThreads;
+    private String pipelineOverflowPolicy;
+    private String pipelineSpillDirectory;
+    private Long pipelineSpillMaxBytes;
+    private Integer twitterV2MaxConnections;
+    private Integer twitterV2ConnectTimeoutMs;
+    private Integer twitterV2StallTimeoutMs;
+    private Boolean enableKeywordFilter;
+    private Boolean dropRetweets;
+    private Boolean enableDedup;
+    private Long dedupWindowMs;
+    private Integer dedupMaxIds;
+    private String replayFile;
+    private Double replaySpeedMultiplier;
+    private Boolean replayLoop;
 
 }
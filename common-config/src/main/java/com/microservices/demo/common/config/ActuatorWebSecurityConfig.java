@@ -0,0 +1,45 @@
+package com.microservices.demo.common.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.builders.WebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+
+/**
+ * Web security of the services which have no api of their own, like twitter-to-kafka-service and kafka-to-elastic-service,
+ * the web server is only there for the actuator endpoints. The paths in security.paths-to-ignore (health and prometheus
+ * metrics) are open, everything else like the refresh endpoint needs basic authentication with spring.security.user.
+ * It is used only when security.actuator-basic-auth is true, the services with an api have their own WebSecurityConfig.
+ */
+@Configuration
+@ConditionalOnProperty(name = "security.actuator-basic-auth", havingValue = "true")
+public class ActuatorWebSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    @Value("${security.paths-to-ignore}")
+    private String[] pathsToIgnore;
+
+    @Override
+    public void configure(HttpSecurity http) throws Exception {
+        http
+                .sessionManagement()
+                .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and()
+                .csrf()
+                .disable()
+                .authorizeRequests()
+                .anyRequest()
+                .fullyAuthenticated()
+                .and()
+                .httpBasic();
+    }
+
+    @Override
+    public void configure(WebSecurity webSecurity) {
+        webSecurity
+                .ignoring()
+                .antMatchers(pathsToIgnore);
+    }
+}
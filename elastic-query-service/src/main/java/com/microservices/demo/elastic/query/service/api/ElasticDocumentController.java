@@ -1,9 +1,12 @@
 package com.microservices.demo.elastic.query.service.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microservices.demo.elastic.query.service.business.ElasticQueryService;
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceRequestModel;
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceResponseModel;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceAnalyticsResponseModel;
+import com.microservices.demo.elastic.query.service.model.ElasticQueryServicePageResponseModel;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceResponseModelV2;
 import com.microservices.demo.elastic.query.service.security.TwitterQueryUser;
 import io.swagger.v3.oas.annotations.Operation;
@@ -25,12 +28,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 @PreAuthorize("isAuthenticated()")
 @RestController
 @RequestMapping(value = "/documents",produces = "application/vnd.api.v1+json")
@@ -40,11 +46,18 @@ public class ElasticDocumentController {
   private String port;
 
   private final ElasticQueryService elasticQueryService;
-  public ElasticDocumentController(ElasticQueryService elasticQueryService) {
+  private final ObjectMapper objectMapper;
+  public ElasticDocumentController(ElasticQueryService elasticQueryService, ObjectMapper objectMapper) {
     this.elasticQueryService=elasticQueryService;
+    this.objectMapper=objectMapper;
   }
 
-  @PostAuthorize("hasPermission(returnObject, 'READ')")
+  /**
+   * The documents are written as a json array batch by batch while they are read from elasticsearch, so the whole index
+   * is never held in memory. The response is written after the method returns, so a per document check of the permissions
+   * is not possible and all documents are only given to the super user, use /page for the others.
+   */
+  @PreAuthorize("hasRole('APP_SUPER_USER_ROLE')")
   @Operation(summary = "Get all elastic documents.")
   @ApiResponses(value={
       @ApiResponse(responseCode = "200", description = "Successful Response", content = {
@@ -54,9 +67,44 @@ public class ElasticDocumentController {
       @ApiResponse(responseCode = "500", description = "Internal server error")
   })
   @GetMapping("/")
-  public @ResponseBody ResponseEntity<List<ElasticQueryServiceResponseModel>> getAllDocuments() {
-    List<ElasticQueryServiceResponseModel> response = elasticQueryService.getAllDocuments();
-    LOG.info("Elasticsearch returned {} of documents", response.size());
+  public @ResponseBody ResponseEntity<StreamingResponseBody> getAllDocuments() {
+    StreamingResponseBody response = outputStream -> {
+      try (JsonGenerator jsonGenerator = objectMapper.getFactory().createGenerator(outputStream)) {
+        jsonGenerator.writeStartArray();
+        long count = elasticQueryService.streamAllDocuments(responseModels -> {
+          try {
+            for (ElasticQueryServiceResponseModel responseModel : responseModels) {
+              objectMapper.writeValue(jsonGenerator, responseModel);
+            }
+            jsonGenerator.flush();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        jsonGenerator.writeEndArray();
+        LOG.info("Elasticsearch returned {} of documents", count);
+      }
+    };
+    return ResponseEntity.ok(response);
+  }
+
+  @PostAuthorize("hasPermission(returnObject, 'READ')")
+  @Operation(summary = "Get a page of elastic documents.")
+  @ApiResponses(value={
+      @ApiResponse(responseCode = "200", description = "Successful Response", content = {
+          @Content(mediaType = "application/vnd.api.v1+json",schema = @Schema(implementation = ElasticQueryServicePageResponseModel.class))
+      }),
+      @ApiResponse(responseCode = "400",description = "Not Found."),
+      @ApiResponse(responseCode = "500", description = "Internal server error")
+  })
+  @GetMapping("/page")
+  public @ResponseBody ResponseEntity<ElasticQueryServicePageResponseModel> getDocumentPage(
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "100") int size,
+      @RequestParam(required = false) String searchAfter) {
+    ElasticQueryServicePageResponseModel response = elasticQueryService.getDocumentPage(page, size, searchAfter);
+    LOG.info("Elasticsearch returned {} of {} documents", response.getQueryResponseModels().size(),
+        response.getTotalHits());
     return ResponseEntity.ok(response);
   }
 
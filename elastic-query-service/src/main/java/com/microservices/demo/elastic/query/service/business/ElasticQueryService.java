@@ -4,11 +4,15 @@ package com.microservices.demo.elastic.query.service.business;
 
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceResponseModel;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceAnalyticsResponseModel;
+import com.microservices.demo.elastic.query.service.model.ElasticQueryServicePageResponseModel;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ElasticQueryService {
   ElasticQueryServiceResponseModel getDocumentById(String id);
   ElasticQueryServiceAnalyticsResponseModel getDocumentByText(String text, String accessToken);
   List<ElasticQueryServiceResponseModel> getAllDocuments();
+  ElasticQueryServicePageResponseModel getDocumentPage(int page, int size, String searchAfter);
+  long streamAllDocuments(Consumer<List<ElasticQueryServiceResponseModel>> batchConsumer);
 }
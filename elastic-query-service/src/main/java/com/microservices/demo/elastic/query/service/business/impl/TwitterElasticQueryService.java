@@ -2,11 +2,14 @@ package com.microservices.demo.elastic.query.service.business.impl;
 
 import com.microservices.demo.config.ElasticQueryServiceConfigData;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.elastic.query.client.model.IndexModelPage;
 import com.microservices.demo.elastic.query.client.service.ElasticQueryClient;
 import com.microservices.demo.elastic.query.service.QueryType;
 import com.microservices.demo.elastic.query.service.business.ElasticQueryService;
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceResponseModel;
+import com.microservices.demo.elastic.query.service.common.transformer.ElasticToResponseModelTransformer;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceAnalyticsResponseModel;
+import com.microservices.demo.elastic.query.service.model.ElasticQueryServicePageResponseModel;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceWordCountResponseModel;
 import com.microservices.demo.elastic.query.service.model.assembler.ElasticQueryServiceResponseModelAssembler;
 import org.slf4j.Logger;
@@ -22,21 +25,25 @@ import reactor.core.publisher.Mono;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class TwitterElasticQueryService implements ElasticQueryService {
   private static final Logger LOG= LoggerFactory.getLogger(TwitterElasticQueryService.class);
   private final ElasticQueryServiceResponseModelAssembler elasticQueryServiceResponseModelAssembler;
+  private final ElasticToResponseModelTransformer elasticToResponseModelTransformer;
   private final ElasticQueryClient<TwitterIndexModel> elasticQueryClient;
   private final ElasticQueryServiceConfigData elasticQueryServiceConfigData;
   private final WebClient.Builder webClientBuilder;
 
   public TwitterElasticQueryService(ElasticQueryServiceResponseModelAssembler assembler,
+                                    ElasticToResponseModelTransformer transformer,
                                     ElasticQueryClient<TwitterIndexModel> queryClient,
                                     ElasticQueryServiceConfigData queryServiceConfigData,
                                     @Qualifier("webClientBuilder")
                                     WebClient.Builder clientBuilder) {
     this.elasticQueryServiceResponseModelAssembler = assembler;
+    this.elasticToResponseModelTransformer = transformer;
     this.elasticQueryClient = queryClient;
     this.elasticQueryServiceConfigData = queryServiceConfigData;
     this.webClientBuilder = clientBuilder;
@@ -64,6 +71,27 @@ public class TwitterElasticQueryService implements ElasticQueryService {
     return elasticQueryServiceResponseModelAssembler.toModels(elasticQueryClient.getAllIndexModels());
   }
 
+  @Override
+  public ElasticQueryServicePageResponseModel getDocumentPage(int page, int size, String searchAfter) {
+    LOG.info("Querying page {} of size {} in elasticsearch", page, size);
+    IndexModelPage<TwitterIndexModel> indexModelPage = elasticQueryClient.getIndexModelPage(page, size, searchAfter);
+    return ElasticQueryServicePageResponseModel.builder()
+            .queryResponseModels(elasticQueryServiceResponseModelAssembler.toModels(indexModelPage.getDocuments()))
+            .totalHits(indexModelPage.getTotalHits())
+            .nextSearchAfter(indexModelPage.getNextSearchAfter())
+            .build();
+  }
+
+  /**
+   * The batches are given to the consumer out of the request scope of the links, so the models have no links.
+   */
+  @Override
+  public long streamAllDocuments(Consumer<List<ElasticQueryServiceResponseModel>> batchConsumer) {
+    LOG.info("Streaming all documents in elasticsearch");
+    return elasticQueryClient.streamAllIndexModels(twitterIndexModels ->
+            batchConsumer.accept(elasticToResponseModelTransformer.getResponseModels(twitterIndexModels)));
+  }
+
   private Long getWordCount(String text, String accessToken) {
     if (QueryType.KAFKA_STATE_STORE.getType().equals(elasticQueryServiceConfigData.getWebClient().getQueryType())) {
       return getFromKafkaStateStore(text, accessToken).getWordCount();
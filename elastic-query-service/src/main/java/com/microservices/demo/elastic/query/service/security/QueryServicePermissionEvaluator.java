@@ -3,6 +3,7 @@ package com.microservices.demo.elastic.query.service.security;
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceRequestModel;
 import com.microservices.demo.elastic.query.service.common.model.ElasticQueryServiceResponseModel;
 import com.microservices.demo.elastic.query.service.model.ElasticQueryServiceAnalyticsResponseModel;
+import com.microservices.demo.elastic.query.service.model.ElasticQueryServicePageResponseModel;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
@@ -24,7 +25,6 @@ public class QueryServicePermissionEvaluator implements PermissionEvaluator {
         this.httpServletRequest = request;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean hasPermission(Authentication authentication,
                                  Object targetDomain,
@@ -38,10 +38,14 @@ public class QueryServicePermissionEvaluator implements PermissionEvaluator {
             if (targetDomain == null) {
                 return true;
             }
-            ElasticQueryServiceAnalyticsResponseModel responseBody =
-                    ((ResponseEntity<ElasticQueryServiceAnalyticsResponseModel>) targetDomain).getBody();
+            Object responseBody = ((ResponseEntity<?>) targetDomain).getBody();
             Objects.requireNonNull(responseBody);
-            return postAuthorize(authentication, responseBody.getQueryResponseModels(), permission);
+            if (responseBody instanceof ElasticQueryServicePageResponseModel) {
+                return postAuthorize(authentication,
+                        ((ElasticQueryServicePageResponseModel) responseBody).getQueryResponseModels(), permission);
+            }
+            return postAuthorize(authentication,
+                    ((ElasticQueryServiceAnalyticsResponseModel) responseBody).getQueryResponseModels(), permission);
         }
         return false;
     }
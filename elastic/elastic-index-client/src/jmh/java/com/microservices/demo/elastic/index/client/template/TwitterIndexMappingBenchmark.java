@@ -0,0 +1,195 @@
+package com.microservices.demo.elastic.index.client.template;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the dynamic mapping of the tweets (ids and text as text with a keyword sub field) with the explicit
+ * mapping of TwitterIndexModel (keyword ids without norms, text with freqs but without positions). Elasticsearch is not
+ * needed, the documents are indexed into an in memory lucene index with the fields each mapping makes elasticsearch write
+ * (same standard analyzer, _id, _source, doc values of the keywords and the date). The score is the indexing time per
+ * tweet, the index size per tweet after the final merge is printed at the end of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwitterIndexMappingBenchmark {
+
+    private static final int BATCH_TWEETS = 10000;
+
+    //dynamic mapping of elasticsearch only adds the keyword sub field to strings up to this length
+    private static final int IGNORE_ABOVE = 256;
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "Java", "Kafka", "Microservices",
+            "Elasticsearch", "congue", "massa", "Fusce", "magna", "sed", "posuere", "nunc", "vitae", "tortor"
+    };
+
+    private static final FieldType KEYWORD_WITH_NORMS = new FieldType(StringField.TYPE_NOT_STORED);
+
+    private static final FieldType TEXT_WITHOUT_POSITIONS = new FieldType(TextField.TYPE_NOT_STORED);
+
+    static {
+        KEYWORD_WITH_NORMS.setOmitNorms(false);
+        KEYWORD_WITH_NORMS.freeze();
+        TEXT_WITHOUT_POSITIONS.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+        TEXT_WITHOUT_POSITIONS.freeze();
+    }
+
+    public enum Mapping {
+        DYNAMIC,
+        EXPLICIT
+    }
+
+    @Param({"DYNAMIC", "EXPLICIT"})
+    private Mapping mapping;
+
+    private final List<Tweet> tweets = new ArrayList<>();
+
+    private long indexBytes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long createdAt = Instant.parse("2022-01-31T14:00:00.000Z").toEpochMilli();
+        for (int i = 0; i < BATCH_TWEETS; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 40 + random.nextInt(240);
+            while (text.length() < length) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            tweets.add(new Tweet(String.valueOf(1_500_000_000_000_000_000L + i),
+                    String.valueOf(1_000_000L + random.nextInt(1_000_000)), text.toString().trim(),
+                    createdAt + i * 37L));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_TWEETS)
+    public long indexBatch() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory();
+             IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (Tweet tweet : tweets) {
+                indexWriter.addDocument(mapping == Mapping.DYNAMIC ? dynamicDocument(tweet) : explicitDocument(tweet));
+            }
+            indexWriter.forceMerge(1);
+            indexWriter.commit();
+            long bytes = 0;
+            for (String file : directory.listAll()) {
+                bytes += directory.fileLength(file);
+            }
+            indexBytes = bytes;
+            return bytes;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printIndexSize() {
+        System.out.printf("%n%s mapping: %d index bytes per tweet%n", mapping, indexBytes / BATCH_TWEETS);
+    }
+
+    /**
+     * Strings become text fields, with a keyword sub field with doc values up to IGNORE_ABOVE characters.
+     */
+    private static Document dynamicDocument(Tweet tweet) {
+        Document document = commonFields(tweet);
+        addDynamicString(document, "id", tweet.id);
+        addDynamicString(document, "userId", tweet.userId);
+        addDynamicString(document, "text", tweet.text);
+        return document;
+    }
+
+    private static void addDynamicString(Document document, String name, String value) {
+        document.add(new TextField(name, value, Field.Store.NO));
+        if (value.length() <= IGNORE_ABOVE) {
+            document.add(new Field(name + ".keyword", value, KEYWORD_WITH_NORMS));
+            document.add(new SortedSetDocValuesField(name + ".keyword", new BytesRef(value)));
+        }
+    }
+
+    /**
+     * Keyword ids without norms (StringField omits them) and text without positions.
+     */
+    private static Document explicitDocument(Tweet tweet) {
+        Document document = commonFields(tweet);
+        document.add(new StringField("id", tweet.id, Field.Store.NO));
+        document.add(new SortedSetDocValuesField("id", new BytesRef(tweet.id)));
+        document.add(new StringField("userId", tweet.userId, Field.Store.NO));
+        document.add(new SortedSetDocValuesField("userId", new BytesRef(tweet.userId)));
+        document.add(new Field("text", tweet.text, TEXT_WITHOUT_POSITIONS));
+        return document;
+    }
+
+    /**
+     * _id, _source and the createdAt date are the same in both mappings.
+     */
+    private static Document commonFields(Tweet tweet) {
+        Document document = new Document();
+        document.add(new StringField("_id", tweet.id, Field.Store.YES));
+        document.add(new StoredField("_source", new BytesRef(tweet.source)));
+        document.add(new LongPoint("createdAt", tweet.createdAt));
+        document.add(new SortedNumericDocValuesField("createdAt", tweet.createdAt));
+        return document;
+    }
+
+    private static class Tweet {
+
+        private final String id;
+
+        private final String userId;
+
+        private final String text;
+
+        private final long createdAt;
+
+        private final byte[] source;
+
+        Tweet(String id, String userId, String text, long createdAt) {
+            this.id = id;
+            this.userId = userId;
+            this.text = text;
+            this.createdAt = createdAt;
+            this.source = ("{\"id\":\"" + id + "\",\"userId\":\"" + userId + "\",\"text\":\"" + text +
+                    "\",\"createdAt\":\"" + Instant.ofEpochMilli(createdAt) + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
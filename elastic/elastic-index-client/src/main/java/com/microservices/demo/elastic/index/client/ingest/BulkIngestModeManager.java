@@ -0,0 +1,285 @@
+package com.microservices.demo.elastic.index.client.ingest;
+
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.elastic.index.client.exception.ElasticIndexClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.cluster.metadata.MappingMetadata;
+import org.elasticsearch.common.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class switches the index (or all the indices behind the read alias with rolling indices) into a bulk ingest mode
+ * for backfills: refresh_interval -1 so elasticsearch does not create a new segment every second, and 0 replicas so every
+ * document is indexed only once. When the ingest mode ends the recorded settings of every index are put back and the
+ * indices are refreshed, so the documents become searchable at once. The settings of an index are recorded in the _meta
+ * of its mapping before they are changed, so they are not lost when the service stops in ingest mode: they are put back
+ * at the next start, and entering again takes the recorded settings instead of the ingest settings.
+ * Keep in mind there is no copy of the documents indexed in the ingest mode until the replicas are recovered after the
+ * end.
+ * The ingest mode is entered and ended by a lag trigger or manually, a manual ingest mode is only ended manually.
+ * Entering again while in ingest mode applies the settings to the indices created in the meantime (new buckets).
+ * The indexed documents per second of the last normal and ingest periods are exposed as elastic.ingest.docs.per.second,
+ * so the gain of the ingest mode can be compared.
+ */
+@Component
+@ConditionalOnProperty(name = "elastic-ingest-mode-config.enable-ingest-mode", havingValue = "true")
+public class BulkIngestModeManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkIngestModeManager.class);
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    //key in the _meta of the mapping for the settings of the index before the ingest mode
+    private static final String ORIGINAL_SETTINGS_META = "ingest_mode_original_settings";
+
+    private static final String META = "_meta";
+
+    private static final Settings INGEST_SETTINGS = Settings.builder()
+            .put(REFRESH_INTERVAL, "-1")
+            .put(NUMBER_OF_REPLICAS, 0)
+            .build();
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    private final String indexName;
+
+    private final Counter indexedDocuments;
+
+    //settings of the indices before the ingest mode, also recorded in their _meta
+    private final Map<String, Settings> originalSettings = new HashMap<>();
+
+    private volatile boolean active;
+
+    private volatile boolean manual;
+
+    private long periodStartNanos;
+
+    private double periodStartCount;
+
+    private volatile double normalDocsPerSecond;
+
+    private volatile double ingestDocsPerSecond;
+
+    public BulkIngestModeManager(ElasticConfigData elasticConfigData,
+                                 RestHighLevelClient restHighLevelClient,
+                                 MeterRegistry meterRegistry) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.indexName = elasticConfigData.getIndexName();
+        this.indexedDocuments = Counter.builder("elastic.indexed.documents")
+                .description("Number of documents indexed successfully")
+                .register(meterRegistry);
+        this.periodStartNanos = System.nanoTime();
+        this.periodStartCount = indexedDocuments.count();
+        Gauge.builder("elastic.ingest.mode.active", this, manager -> manager.isActive() ? 1 : 0)
+                .description("1 while the index is in the bulk ingest mode")
+                .register(meterRegistry);
+        Gauge.builder("elastic.ingest.docs.per.second", this, manager -> manager.normalDocsPerSecond)
+                .description("Indexed documents per second in the last period of the mode")
+                .tag("mode", "normal")
+                .register(meterRegistry);
+        Gauge.builder("elastic.ingest.docs.per.second", this, manager -> manager.ingestDocsPerSecond)
+                .description("Indexed documents per second in the last period of the mode")
+                .tag("mode", "ingest")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Put back the settings recorded by an earlier run which stopped in ingest mode. Elasticsearch being unavailable
+     * does not fail the start, the recorded settings are then taken by the next ingest mode and put back at its end.
+     */
+    @PostConstruct
+    public synchronized void restoreRecordedSettings() {
+        try {
+            for (Map.Entry<String, Map<String, Object>> entry : getMetaByIndex().entrySet()) {
+                Settings recorded = getRecordedSettings(entry.getValue());
+                if (recorded != null) {
+                    originalSettings.put(entry.getKey(), recorded);
+                }
+            }
+            if (!originalSettings.isEmpty()) {
+                LOG.warn("Indices {} were left in the ingest mode, putting back their settings",
+                        originalSettings.keySet());
+                restoreSettings();
+                restHighLevelClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not check {} for settings left by the ingest mode", indexName, e);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isManual() {
+        return manual;
+    }
+
+    /**
+     * @param manualTrigger true when called by an operator, the ingest mode is then only ended manually
+     */
+    public synchronized void enter(boolean manualTrigger) {
+        manual = manual || manualTrigger;
+        try {
+            applyIngestSettings();
+        } catch (IOException e) {
+            throw new ElasticIndexClientException("Could not switch " + indexName + " into the ingest mode", e);
+        }
+        if (!active) {
+            active = true;
+            normalDocsPerSecond = endPeriod();
+            LOG.info("Index {} in ingest mode ({} trigger), {} documents per second before", indexName,
+                    manualTrigger ? "manual" : "lag", String.format("%.1f", normalDocsPerSecond));
+        }
+    }
+
+    /**
+     * @param manualTrigger false for the lag trigger, which can not end a manually entered ingest mode
+     */
+    public synchronized void exit(boolean manualTrigger) {
+        if (!active || (manual && !manualTrigger)) {
+            return;
+        }
+        try {
+            restoreSettings();
+            restHighLevelClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new ElasticIndexClientException("Could not restore the settings of " + indexName, e);
+        }
+        active = false;
+        manual = false;
+        ingestDocsPerSecond = endPeriod();
+        LOG.info("Index {} back in normal mode, {} documents per second in ingest mode, {} before", indexName,
+                String.format("%.1f", ingestDocsPerSecond), String.format("%.1f", normalDocsPerSecond));
+    }
+
+    /**
+     * @return documents per second since the start of the period
+     */
+    private double endPeriod() {
+        long nowNanos = System.nanoTime();
+        double count = indexedDocuments.count();
+        double seconds = (double) (nowNanos - periodStartNanos) / TimeUnit.SECONDS.toNanos(1);
+        double docsPerSecond = seconds <= 0 ? 0 : (count - periodStartCount) / seconds;
+        periodStartNanos = nowNanos;
+        periodStartCount = count;
+        return docsPerSecond;
+    }
+
+    /**
+     * Record the settings of the indices which are not recorded yet in their _meta, then switch all of them into the
+     * ingest mode. Settings already in the _meta are from an earlier run in ingest mode, they are taken as they are.
+     */
+    private void applyIngestSettings() throws IOException {
+        GetSettingsResponse settingsResponse = restHighLevelClient.indices().getSettings(new GetSettingsRequest()
+                .indices(indexName)
+                .names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS), RequestOptions.DEFAULT);
+        Map<String, Map<String, Object>> metaByIndex = getMetaByIndex();
+        Iterator<String> indices = settingsResponse.getIndexToSettings().keysIt();
+        while (indices.hasNext()) {
+            String index = indices.next();
+            if (originalSettings.containsKey(index)) {
+                continue;
+            }
+            Map<String, Object> meta = metaByIndex.getOrDefault(index, new HashMap<>());
+            Settings recorded = getRecordedSettings(meta);
+            if (recorded == null) {
+                Map<String, Object> values = new HashMap<>();
+                for (String name : Arrays.asList(REFRESH_INTERVAL, NUMBER_OF_REPLICAS)) {
+                    //null values were not set on the index
+                    values.put(name, settingsResponse.getIndexToSettings().get(index).get(name));
+                }
+                meta.put(ORIGINAL_SETTINGS_META, values);
+                putMeta(index, meta);
+                recorded = getRecordedSettings(meta);
+            }
+            originalSettings.put(index, recorded);
+        }
+        restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(INGEST_SETTINGS, indexName),
+                RequestOptions.DEFAULT);
+    }
+
+    private void restoreSettings() throws IOException {
+        Map<String, Map<String, Object>> metaByIndex = getMetaByIndex();
+        for (Map.Entry<String, Settings> entry : originalSettings.entrySet()) {
+            //the index can be deleted by the retention in the meantime
+            restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(entry.getValue(), entry.getKey())
+                    .indicesOptions(IndicesOptions.lenientExpandOpen()), RequestOptions.DEFAULT);
+            Map<String, Object> meta = metaByIndex.get(entry.getKey());
+            if (meta != null && meta.remove(ORIGINAL_SETTINGS_META) != null) {
+                putMeta(entry.getKey(), meta);
+            }
+        }
+        originalSettings.clear();
+    }
+
+    /**
+     * @return _meta of the mapping of every index behind the index name, empty for an index without _meta
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> getMetaByIndex() throws IOException {
+        Map<String, MappingMetadata> mappings = restHighLevelClient.indices()
+                .getMapping(new GetMappingsRequest().indices(indexName), RequestOptions.DEFAULT).mappings();
+        Map<String, Map<String, Object>> metaByIndex = new HashMap<>();
+        for (Map.Entry<String, MappingMetadata> entry : mappings.entrySet()) {
+            Object meta = entry.getValue() == null ? null : entry.getValue().sourceAsMap().get(META);
+            metaByIndex.put(entry.getKey(), meta instanceof Map ?
+                    new HashMap<>((Map<String, Object>) meta) : new HashMap<>());
+        }
+        return metaByIndex;
+    }
+
+    /**
+     * The _meta of a mapping is replaced as a whole by a mapping update, so the other keys are written back with it.
+     */
+    private void putMeta(String index, Map<String, Object> meta) throws IOException {
+        restHighLevelClient.indices().putMapping(new PutMappingRequest(index)
+                .source(Collections.singletonMap(META, meta)), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * @return settings recorded in the _meta, null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    private static Settings getRecordedSettings(Map<String, Object> meta) {
+        Object recorded = meta.get(ORIGINAL_SETTINGS_META);
+        if (!(recorded instanceof Map)) {
+            return null;
+        }
+        Settings.Builder settings = Settings.builder();
+        for (String name : Arrays.asList(REFRESH_INTERVAL, NUMBER_OF_REPLICAS)) {
+            Object value = ((Map<String, Object>) recorded).get(name);
+            if (value == null) {
+                settings.putNull(name);
+            } else {
+                settings.put(name, value.toString());
+            }
+        }
+        return settings.build();
+    }
+}
@@ -0,0 +1,313 @@
+package com.microservices.demo.elastic.index.client.lifecycle;
+
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.config.ElasticIndexLifecycleConfigData;
+import com.microservices.demo.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.demo.elastic.index.client.util.ElasticIndexTemplateUtil;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.ResizeRequest;
+import org.elasticsearch.cluster.metadata.AliasMetadata;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the time bucketed indices of the twitter documents. An index template for the bucket names gives every
+ * bucket the settings of the lifecycle config (shards, replicas, refresh interval), the mapping of TwitterIndexModel (see
+ * ElasticIndexTemplateUtil) and the read alias, which is the index-name of elastic-config, so the query services search all the buckets without a change,
+ * also the buckets elasticsearch creates by itself for old documents of a backfill. Every maintenance-interval-ms the
+ * current and the next precreate-buckets buckets are created, the write alias (and the read alias, for the clients which
+ * can only write to the index of the document annotation) is moved to the current bucket and the buckets older than
+ * retention-hours are deleted, so no index grows forever and old data is dropped as whole indices instead of deletes.
+ * Keep maintenance-interval-ms well below the bucket length, the aliases move to the new bucket only at the next run.
+ */
+@Component
+@ConditionalOnProperty(name = "elastic-index-lifecycle-config.enable-rolling-indices", havingValue = "true")
+public class RollingIndexManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RollingIndexManager.class);
+
+    private static final int DEFAULT_NUMBER_OF_SHARDS = 1;
+
+    private static final int DEFAULT_NUMBER_OF_REPLICAS = 1;
+
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+    private static final int DEFAULT_PRECREATE_BUCKETS = 1;
+
+    private static final long DEFAULT_MAINTENANCE_INTERVAL_MS = 600000;
+
+    private static final String LEGACY_INDEX_SUFFIX = "-legacy";
+
+    private static final String WRITE_BLOCK_SETTING = "index.blocks.write";
+
+    private final ElasticIndexLifecycleConfigData elasticIndexLifecycleConfigData;
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    private final ElasticIndexTemplateUtil elasticIndexTemplateUtil;
+
+    private final RollingIndexNameResolver rollingIndexNameResolver;
+
+    private final String readAlias;
+
+    private final String writeAlias;
+
+    private volatile String currentIndexName;
+
+    private ScheduledExecutorService maintenanceExecutor;
+
+    public RollingIndexManager(ElasticConfigData elasticConfigData,
+                               ElasticIndexLifecycleConfigData elasticIndexLifecycleConfigData,
+                               RestHighLevelClient restHighLevelClient,
+                               ElasticIndexTemplateUtil elasticIndexTemplateUtil,
+                               RollingIndexNameResolver rollingIndexNameResolver) {
+        this.elasticIndexLifecycleConfigData = elasticIndexLifecycleConfigData;
+        this.restHighLevelClient = restHighLevelClient;
+        this.elasticIndexTemplateUtil = elasticIndexTemplateUtil;
+        this.rollingIndexNameResolver = rollingIndexNameResolver;
+        this.readAlias = elasticConfigData.getIndexName();
+        this.writeAlias = rollingIndexNameResolver.getWriteAlias();
+    }
+
+    /**
+     * The template and the aliases must be there before the first document is written, so any error here fails the start.
+     */
+    @PostConstruct
+    public void start() {
+        try {
+            putIndexTemplate();
+            removeIndexNamedAsReadAlias();
+            maintain();
+        } catch (IOException e) {
+            throw new ElasticIndexClientException("Could not set up the rolling indices of " + readAlias, e);
+        }
+        long intervalMs = elasticIndexLifecycleConfigData.getMaintenanceIntervalMs() == null ?
+                DEFAULT_MAINTENANCE_INTERVAL_MS : elasticIndexLifecycleConfigData.getMaintenanceIntervalMs();
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("elastic-index-lifecycle-"));
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintainSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Rolling indices {} by {} behind read alias {} and write alias {}, maintained every {} ms",
+                rollingIndexNameResolver.getIndexPattern(), rollingIndexNameResolver.getBucketUnit(), readAlias,
+                writeAlias, intervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+    }
+
+    public String getReadAlias() {
+        return readAlias;
+    }
+
+    public String getWriteAlias() {
+        return writeAlias;
+    }
+
+    /**
+     * @return bucket the write alias points to
+     */
+    public String getCurrentIndexName() {
+        return currentIndexName;
+    }
+
+    private void maintainSafely() {
+        try {
+            maintain();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Maintenance of the rolling indices of {} failed, trying again at the next run", readAlias, e);
+        }
+    }
+
+    private void maintain() throws IOException {
+        Instant now = Instant.now();
+        int precreateBuckets = elasticIndexLifecycleConfigData.getPrecreateBuckets() == null ?
+                DEFAULT_PRECREATE_BUCKETS : elasticIndexLifecycleConfigData.getPrecreateBuckets();
+        for (int bucketsAhead = 0; bucketsAhead <= precreateBuckets; bucketsAhead++) {
+            createIndexIfMissing(rollingIndexNameResolver.getIndexName(now, bucketsAhead));
+        }
+        String indexName = rollingIndexNameResolver.getIndexName(now, 0);
+        if (!indexName.equals(currentIndexName)) {
+            moveWriteIndex(indexName);
+            currentIndexName = indexName;
+        }
+        deleteExpiredIndices(now);
+    }
+
+    private void putIndexTemplate() throws IOException {
+        Settings.Builder settings = Settings.builder()
+                .put("index.number_of_shards", getOrDefault(elasticIndexLifecycleConfigData.getNumberOfShards(),
+                        DEFAULT_NUMBER_OF_SHARDS))
+                .put("index.number_of_replicas", getOrDefault(elasticIndexLifecycleConfigData.getNumberOfReplicas(),
+                        DEFAULT_NUMBER_OF_REPLICAS))
+                .put("index.refresh_interval", elasticIndexLifecycleConfigData.getRefreshInterval() == null ?
+                        DEFAULT_REFRESH_INTERVAL : elasticIndexLifecycleConfigData.getRefreshInterval());
+        elasticIndexTemplateUtil.putIndexTemplate(readAlias + "-template",
+                Collections.singletonList(rollingIndexNameResolver.getIndexPattern()), settings,
+                Collections.singletonMap(readAlias, AliasMetadata.builder(readAlias).build()));
+    }
+
+    /**
+     * A concrete index with the name of the read alias is created by the spring data repositories when they start before
+     * the alias exists, it is deleted when it is empty. An index with documents is the index from before the rolling
+     * indices, it is kept as legacy index behind the read alias, see migrateLegacyIndex.
+     */
+    private void removeIndexNamedAsReadAlias() throws IOException {
+        if (!restHighLevelClient.indices().exists(new GetIndexRequest(readAlias), RequestOptions.DEFAULT)) {
+            return;
+        }
+        List<String> indices = Arrays.asList(restHighLevelClient.indices()
+                .get(new GetIndexRequest(readAlias), RequestOptions.DEFAULT).getIndices());
+        if (!indices.contains(readAlias)) {
+            return;
+        }
+        long count = restHighLevelClient.count(new CountRequest(readAlias), RequestOptions.DEFAULT).getCount();
+        if (count > 0) {
+            migrateLegacyIndex(count);
+            return;
+        }
+        LOG.info("Deleting empty index {} to use its name as the read alias", readAlias);
+        restHighLevelClient.indices().delete(new DeleteIndexRequest(readAlias), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * An alias can not have the name of an index, so the index is made read only and cloned as index-name-legacy (the clone
+     * links the segment files, the documents are not reindexed), then in one alias update the clone is added to the read
+     * alias and the old index is removed, so the searches see the documents all the time. The legacy index is not a
+     * bucket, it is never the write index and retention-hours does not delete it. Writes to the old index fail while it is
+     * cloned, so the writers of the index should be stopped before rolling indices are enabled.
+     */
+    private void migrateLegacyIndex(long count) throws IOException {
+        String legacyIndexName = readAlias + LEGACY_INDEX_SUFFIX;
+        if (!restHighLevelClient.indices().exists(new GetIndexRequest(legacyIndexName), RequestOptions.DEFAULT)) {
+            LOG.info("Index {} has {} documents, cloning it as {} to keep them behind the read alias", readAlias, count,
+                    legacyIndexName);
+            restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(readAlias)
+                    .settings(Settings.builder().put(WRITE_BLOCK_SETTING, true)), RequestOptions.DEFAULT);
+            restHighLevelClient.indices().clone(new ResizeRequest(legacyIndexName, readAlias)
+                    .setSettings(Settings.builder().put(WRITE_BLOCK_SETTING, false).build()), RequestOptions.DEFAULT);
+            restHighLevelClient.indices().refresh(new RefreshRequest(legacyIndexName), RequestOptions.DEFAULT);
+        }
+        //also checks a clone left by an earlier start which failed before the alias update
+        long legacyCount = restHighLevelClient.count(new CountRequest(legacyIndexName), RequestOptions.DEFAULT).getCount();
+        if (legacyCount != count) {
+            throw new ElasticIndexClientException("Index " + legacyIndexName + " has " + legacyCount + " documents " +
+                    "instead of the " + count + " documents of " + readAlias + ", delete it and start again or reindex " +
+                    readAlias + " into " + rollingIndexNameResolver.getIndexPattern() + " indices and delete it first");
+        }
+        IndicesAliasesRequest aliasesRequest = new IndicesAliasesRequest()
+                .addAliasAction(IndicesAliasesRequest.AliasActions.add()
+                        .index(legacyIndexName).alias(readAlias).writeIndex(false))
+                .addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(readAlias));
+        restHighLevelClient.indices().updateAliases(aliasesRequest, RequestOptions.DEFAULT);
+        LOG.info("Index {} replaced by index {} behind the read alias {}", readAlias, legacyIndexName, readAlias);
+    }
+
+    private void createIndexIfMissing(String indexName) throws IOException {
+        if (restHighLevelClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT)) {
+            return;
+        }
+        try {
+            restHighLevelClient.indices().create(new CreateIndexRequest(indexName), RequestOptions.DEFAULT);
+            LOG.info("Index {} created", indexName);
+        } catch (ElasticsearchStatusException e) {
+            //created in the meantime by a write or another instance
+            if (e.status() != RestStatus.BAD_REQUEST || !e.getMessage().contains("resource_already_exists_exception")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Make the bucket the write index of both aliases in one atomic alias update.
+     */
+    private void moveWriteIndex(String indexName) throws IOException {
+        IndicesAliasesRequest aliasesRequest = new IndicesAliasesRequest();
+        for (String alias : Arrays.asList(writeAlias, readAlias)) {
+            for (String previousWriteIndex : getWriteIndices(alias)) {
+                if (!previousWriteIndex.equals(indexName)) {
+                    aliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add()
+                            .index(previousWriteIndex).alias(alias).writeIndex(false));
+                }
+            }
+            aliasesRequest.addAliasAction(IndicesAliasesRequest.AliasActions.add()
+                    .index(indexName).alias(alias).writeIndex(true));
+        }
+        restHighLevelClient.indices().updateAliases(aliasesRequest, RequestOptions.DEFAULT);
+        LOG.info("Aliases {} and {} write to index {}", writeAlias, readAlias, indexName);
+    }
+
+    private List<String> getWriteIndices(String alias) throws IOException {
+        List<String> writeIndices = new ArrayList<>();
+        Map<String, Set<AliasMetadata>> aliasesByIndex = restHighLevelClient.indices()
+                .getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT).getAliases();
+        for (Map.Entry<String, Set<AliasMetadata>> entry : aliasesByIndex.entrySet()) {
+            for (AliasMetadata aliasMetadata : entry.getValue()) {
+                if (alias.equals(aliasMetadata.alias()) && Boolean.TRUE.equals(aliasMetadata.writeIndex())) {
+                    writeIndices.add(entry.getKey());
+                }
+            }
+        }
+        return writeIndices;
+    }
+
+    private void deleteExpiredIndices(Instant now) throws IOException {
+        Long retentionHours = elasticIndexLifecycleConfigData.getRetentionHours();
+        if (retentionHours == null || retentionHours <= 0) {
+            return;
+        }
+        Instant oldestKept = now.minus(retentionHours, ChronoUnit.HOURS);
+        List<String> expiredIndices = new ArrayList<>();
+        for (String indexName : restHighLevelClient.indices().get(
+                new GetIndexRequest(rollingIndexNameResolver.getIndexPattern()), RequestOptions.DEFAULT).getIndices()) {
+            Optional<Instant> bucketStart = rollingIndexNameResolver.getBucketStart(indexName);
+            //the whole bucket must be older than the retention
+            if (bucketStart.isPresent() && !indexName.equals(currentIndexName) &&
+                    bucketStart.get().plus(1, rollingIndexNameResolver.getBucketUnit()).isBefore(oldestKept)) {
+                expiredIndices.add(indexName);
+            }
+        }
+        if (!expiredIndices.isEmpty()) {
+            restHighLevelClient.indices().delete(new DeleteIndexRequest(expiredIndices.toArray(new String[0])),
+                    RequestOptions.DEFAULT);
+            LOG.info("Indices {} older than {} hours deleted", expiredIndices, retentionHours);
+        }
+    }
+
+    private static int getOrDefault(Integer value, int defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,124 @@
+package com.microservices.demo.elastic.index.client.lifecycle;
+
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.config.ElasticIndexLifecycleConfigData;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+/**
+ * This class gives the name of the time bucketed index of a document: index-name of elastic-config followed by the UTC day
+ * (twitter-index-2022.01.31) or hour (twitter-index-2022.01.31.14) of its creation time, by the bucket config.
+ * Tweets mostly arrive in the order of creation, so the name of the last bucket is kept and reused while the times are in
+ * it, without formatting a date for every document.
+ */
+@Component
+@ConditionalOnProperty(name = "elastic-index-lifecycle-config.enable-rolling-indices", havingValue = "true")
+public class RollingIndexNameResolver {
+
+    private static final String HOURLY = "hourly";
+
+    private final String indexPrefix;
+
+    private final String writeAlias;
+
+    private final ChronoUnit bucketUnit;
+
+    private final DateTimeFormatter bucketFormatter;
+
+    private volatile Bucket lastBucket = new Bucket(0, 0, null);
+
+    public RollingIndexNameResolver(ElasticConfigData elasticConfigData,
+                                    ElasticIndexLifecycleConfigData elasticIndexLifecycleConfigData) {
+        this.indexPrefix = elasticConfigData.getIndexName() + "-";
+        this.writeAlias = elasticIndexLifecycleConfigData.getWriteAlias() == null ?
+                elasticConfigData.getIndexName() + "-write" : elasticIndexLifecycleConfigData.getWriteAlias();
+        boolean hourly = HOURLY.equalsIgnoreCase(elasticIndexLifecycleConfigData.getBucket());
+        this.bucketUnit = hourly ? ChronoUnit.HOURS : ChronoUnit.DAYS;
+        DateTimeFormatterBuilder formatterBuilder = new DateTimeFormatterBuilder().appendPattern("uuuu.MM.dd");
+        if (hourly) {
+            formatterBuilder.appendPattern(".HH");
+        } else {
+            formatterBuilder.parseDefaulting(ChronoField.HOUR_OF_DAY, 0);
+        }
+        this.bucketFormatter = formatterBuilder.parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+                .toFormatter()
+                .withZone(ZoneOffset.UTC);
+    }
+
+    public String getIndexName(Instant createdAt) {
+        return getIndexName(createdAt.toEpochMilli());
+    }
+
+    public String getIndexName(long epochMilli) {
+        Bucket bucket = lastBucket;
+        if (epochMilli < bucket.startMilli || epochMilli >= bucket.endMilli) {
+            Instant start = Instant.ofEpochMilli(epochMilli).truncatedTo(bucketUnit);
+            bucket = new Bucket(start.toEpochMilli(), start.plus(1, bucketUnit).toEpochMilli(),
+                    indexPrefix + bucketFormatter.format(start));
+            lastBucket = bucket;
+        }
+        return bucket.indexName;
+    }
+
+    /**
+     * @param bucketsAhead 0 for the bucket of the given time, 1 for the next one etc.
+     */
+    public String getIndexName(Instant time, int bucketsAhead) {
+        return indexPrefix + bucketFormatter.format(time.truncatedTo(bucketUnit).plus(bucketsAhead, bucketUnit));
+    }
+
+    /**
+     * @return start of the bucket of the index, empty when the index is not a bucket of this index prefix
+     */
+    public Optional<Instant> getBucketStart(String indexName) {
+        if (!indexName.startsWith(indexPrefix)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LocalDateTime.parse(indexName.substring(indexPrefix.length()), bucketFormatter)
+                    .toInstant(ZoneOffset.UTC));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Alias pointing to the current bucket, for the documents without a creation time.
+     */
+    public String getWriteAlias() {
+        return writeAlias;
+    }
+
+    public ChronoUnit getBucketUnit() {
+        return bucketUnit;
+    }
+
+    /**
+     * Pattern matching the names of all buckets, for the index template and to list the buckets.
+     */
+    public String getIndexPattern() {
+        return indexPrefix + "*";
+    }
+
+    private static class Bucket {
+        private final long startMilli;
+        private final long endMilli;
+        private final String indexName;
+
+        private Bucket(long startMilli, long endMilli, String indexName) {
+            this.startMilli = startMilli;
+            this.endMilli = endMilli;
+            this.indexName = indexName;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.microservices.demo.elastic.index.client.model;
+
+import com.microservices.demo.elastic.model.index.IndexModel;
+
+/**
+ * A document which elasticsearch did not index, with the http status and the reason of its bulk item response.
+ */
+public class BulkItemFailure<T extends IndexModel> {
+
+    private final T document;
+
+    private final int status;
+
+    private final String reason;
+
+    public BulkItemFailure(T document, int status, String reason) {
+        this.document = document;
+        this.status = status;
+        this.reason = reason;
+    }
+
+    public T getDocument() {
+        return document;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return true for 429 (es_rejected_execution_exception, the write queue of the node is full) and server errors, the
+     * same document can be indexed later, other errors like mapper_parsing_exception fail every time
+     */
+    public boolean isRetryable() {
+        return status == 429 || status >= 500;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkItemFailure{id=" + document.getId() + ", status=" + status + ", reason=" + reason + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package com.microservices.demo.elastic.index.client.model;
+
+import com.microservices.demo.elastic.model.index.IndexModel;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of saving a list of documents. The retryable failures are already retried by the index client, so the failures
+ * here are the documents which can not be indexed at all, they are given to the BulkFailureHandler if there is one.
+ */
+public class BulkOutcome<T extends IndexModel> {
+
+    private final List<String> indexedIds;
+
+    private final List<BulkItemFailure<T>> failures;
+
+    private final int attempts;
+
+    public BulkOutcome(List<String> indexedIds, List<BulkItemFailure<T>> failures, int attempts) {
+        this.indexedIds = Collections.unmodifiableList(indexedIds);
+        this.failures = Collections.unmodifiableList(failures);
+        this.attempts = attempts;
+    }
+
+    public List<String> getIndexedIds() {
+        return indexedIds;
+    }
+
+    public List<BulkItemFailure<T>> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return number of bulk requests sent, 1 when nothing had to be retried
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkOutcome{indexed=" + indexedIds.size() + ", failed=" + failures.size() + ", attempts=" + attempts + "}";
+    }
+}
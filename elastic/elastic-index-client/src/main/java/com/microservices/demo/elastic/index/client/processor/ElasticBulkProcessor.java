@@ -0,0 +1,276 @@
+package com.microservices.demo.elastic.index.client.processor;
+
+import com.microservices.demo.config.ElasticBulkConfigData;
+import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.demo.elastic.model.index.IndexModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class collects the documents of many callers (kafka polls) into bulk requests, so the bulk size does not depend on
+ * how many records a poll returns. The collected bulk is flushed when it has max-documents documents, when its estimated
+ * size reaches max-size-bytes or when its first document is waiting for flush-interval-ms. At most max-concurrent-flushes
+ * bulks are sent at the same time, a caller filling the next bulk waits for a free slot, so the listeners slow down when
+ * elasticsearch can not keep up.
+ * Size, document count and latency of the flushes are exposed as micrometer metrics.
+ */
+@Component
+@ConditionalOnProperty(name = "elastic-bulk-config.enable-bulk-processor", havingValue = "true")
+public class ElasticBulkProcessor<T extends IndexModel> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElasticBulkProcessor.class);
+
+    private static final int DEFAULT_MAX_DOCUMENTS = 1000;
+
+    private static final long DEFAULT_MAX_SIZE_BYTES = 5 * 1024 * 1024;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    private static final int DEFAULT_MAX_CONCURRENT_FLUSHES = 2;
+
+    //the age of the open bulk is checked this many times in a flush interval
+    private static final int FLUSH_CHECKS_PER_INTERVAL = 4;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final ElasticBulkConfigData elasticBulkConfigData;
+
+    private final ElasticIndexClient<T> elasticIndexClient;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+
+    private int maxDocuments;
+
+    private long maxSizeBytes;
+
+    private long flushIntervalNanos;
+
+    private int maxConcurrentFlushes;
+
+    private Semaphore flushSlots;
+
+    private ExecutorService flushExecutor;
+
+    private ScheduledExecutorService flushTimer;
+
+    private Bulk<T> openBulk = new Bulk<>();
+
+    private DistributionSummary bulkDocuments;
+
+    private DistributionSummary bulkBytes;
+
+    private Timer flushLatency;
+
+    private Counter sizeFlushes;
+
+    private Counter countFlushes;
+
+    private Counter timeFlushes;
+
+    public ElasticBulkProcessor(ElasticBulkConfigData elasticBulkConfigData,
+                                ElasticIndexClient<T> elasticIndexClient,
+                                MeterRegistry meterRegistry) {
+        this.elasticBulkConfigData = elasticBulkConfigData;
+        this.elasticIndexClient = elasticIndexClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        Integer documents = elasticBulkConfigData.getMaxDocuments();
+        maxDocuments = documents == null || documents <= 0 ? DEFAULT_MAX_DOCUMENTS : documents;
+        Long sizeBytes = elasticBulkConfigData.getMaxSizeBytes();
+        maxSizeBytes = sizeBytes == null || sizeBytes <= 0 ? DEFAULT_MAX_SIZE_BYTES : sizeBytes;
+        Long intervalMs = elasticBulkConfigData.getFlushIntervalMs();
+        long flushIntervalMs = intervalMs == null || intervalMs <= 0 ? DEFAULT_FLUSH_INTERVAL_MS : intervalMs;
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        Integer concurrentFlushes = elasticBulkConfigData.getMaxConcurrentFlushes();
+        maxConcurrentFlushes = concurrentFlushes == null || concurrentFlushes <= 0 ?
+                DEFAULT_MAX_CONCURRENT_FLUSHES : concurrentFlushes;
+
+        flushSlots = new Semaphore(maxConcurrentFlushes);
+        registerMetrics();
+        flushExecutor = Executors.newFixedThreadPool(maxConcurrentFlushes, new CustomizableThreadFactory("elastic-bulk-flush-"));
+        flushTimer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("elastic-bulk-timer-"));
+        long checkIntervalMs = Math.max(1, flushIntervalMs / FLUSH_CHECKS_PER_INTERVAL);
+        flushTimer.scheduleWithFixedDelay(this::flushIfExpired, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        LOG.info("Bulk processor started, bulks are flushed at {} documents, {} bytes or after {} ms with {} concurrent flushes",
+                maxDocuments, maxSizeBytes, flushIntervalMs, maxConcurrentFlushes);
+    }
+
+    /**
+     * Flush the open bulk and wait for the flushes in flight.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flushTimer != null) {
+            flushTimer.shutdownNow();
+        }
+        Bulk<T> lastBulk;
+        synchronized (lock) {
+            lastBulk = takeOpenBulk();
+        }
+        flush(lastBulk, timeFlushes);
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            if (!flushExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Bulk flushes still running after {} ms", SHUTDOWN_TIMEOUT_MS);
+                flushExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Add the documents to the open bulk, the bulks which are full on the way are flushed by the calling thread, it waits
+     * when max-concurrent-flushes flushes are already running.
+     * @param documents documents to index
+     * @return completed when all the documents are indexed, completed exceptionally when a bulk with any of them failed
+     */
+    public CompletableFuture<Void> add(List<T> documents) {
+        Set<CompletableFuture<Void>> bulkFutures = new LinkedHashSet<>();
+        for (T document : documents) {
+            Bulk<T> fullBulk = null;
+            Counter flushReason = null;
+            synchronized (lock) {
+                openBulk.add(document);
+                bulkFutures.add(openBulk.flushed);
+                if (openBulk.documents.size() >= maxDocuments) {
+                    flushReason = countFlushes;
+                } else if (openBulk.sizeBytes >= maxSizeBytes) {
+                    flushReason = sizeFlushes;
+                }
+                if (flushReason != null) {
+                    fullBulk = takeOpenBulk();
+                }
+            }
+            if (fullBulk != null) {
+                flush(fullBulk, flushReason);
+            }
+        }
+        return CompletableFuture.allOf(bulkFutures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private void flushIfExpired() {
+        Bulk<T> expiredBulk = null;
+        synchronized (lock) {
+            if (!openBulk.documents.isEmpty() && System.nanoTime() - openBulk.createdNanos >= flushIntervalNanos) {
+                expiredBulk = takeOpenBulk();
+            }
+        }
+        if (expiredBulk != null) {
+            flush(expiredBulk, timeFlushes);
+        }
+    }
+
+    private Bulk<T> takeOpenBulk() {
+        Bulk<T> bulk = openBulk;
+        openBulk = new Bulk<>();
+        return bulk;
+    }
+
+    private void flush(Bulk<T> bulk, Counter flushReason) {
+        if (bulk.documents.isEmpty()) {
+            bulk.flushed.complete(null);
+            return;
+        }
+        try {
+            flushSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bulk.flushed.completeExceptionally(e);
+            return;
+        }
+        try {
+            flushExecutor.execute(() -> send(bulk, flushReason));
+        } catch (RejectedExecutionException e) {
+            flushSlots.release();
+            bulk.flushed.completeExceptionally(e);
+        }
+    }
+
+    private void send(Bulk<T> bulk, Counter flushReason) {
+        long startNanos = System.nanoTime();
+        try {
+            elasticIndexClient.save(bulk.documents);
+            bulk.flushed.complete(null);
+        } catch (RuntimeException e) {
+            LOG.error("Bulk of {} documents could not be indexed", bulk.documents.size(), e);
+            bulk.flushed.completeExceptionally(e);
+        } finally {
+            flushSlots.release();
+            flushLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            bulkDocuments.record(bulk.documents.size());
+            bulkBytes.record(bulk.sizeBytes);
+            flushReason.increment();
+        }
+    }
+
+    private void registerMetrics() {
+        bulkDocuments = DistributionSummary.builder("elastic.bulk.documents")
+                .description("Number of documents in a flushed bulk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        bulkBytes = DistributionSummary.builder("elastic.bulk.size")
+                .description("Estimated size of a flushed bulk")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flushLatency = Timer.builder("elastic.bulk.flush.latency")
+                .description("Time of a bulk request to elasticsearch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        sizeFlushes = registerFlushCounter("size");
+        countFlushes = registerFlushCounter("count");
+        timeFlushes = registerFlushCounter("time");
+        Gauge.builder("elastic.bulk.flushes.in.flight", this, processor ->
+                        processor.maxConcurrentFlushes - processor.flushSlots.availablePermits())
+                .description("Number of bulks sent to elasticsearch and not completed yet")
+                .register(meterRegistry);
+    }
+
+    private Counter registerFlushCounter(String reason) {
+        return Counter.builder("elastic.bulk.flushes")
+                .description("Number of flushed bulks by the limit which triggered the flush")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static class Bulk<T extends IndexModel> {
+        private final List<T> documents = new ArrayList<>();
+        private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+        private long createdNanos;
+        private long sizeBytes;
+
+        private void add(T document) {
+            if (documents.isEmpty()) {
+                createdNanos = System.nanoTime();
+            }
+            documents.add(document);
+            sizeBytes += document.estimateSizeBytes();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.microservices.demo.elastic.index.client.service;
+
+import com.microservices.demo.elastic.index.client.model.BulkItemFailure;
+import com.microservices.demo.elastic.model.index.IndexModel;
+
+import java.util.List;
+
+/**
+ * Receives the documents which can not be indexed, e.g. to send them to a dead letter topic. The index client calls it before
+ * save returns, so an exception thrown here fails the save and the documents are processed again.
+ */
+public interface BulkFailureHandler<T extends IndexModel> {
+    void handle(List<BulkItemFailure<T>> failures);
+}
@@ -1,9 +1,10 @@
 package com.microservices.demo.elastic.index.client.service;
 
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
 import com.microservices.demo.elastic.model.index.IndexModel;
 
 import java.util.List;
 
 public interface ElasticIndexClient<T extends IndexModel> {
-    List<String> save(List<T> documents);
+    BulkOutcome<T> save(List<T> documents);
 }
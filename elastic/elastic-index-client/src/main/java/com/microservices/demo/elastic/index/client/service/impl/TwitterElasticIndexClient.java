@@ -1,50 +1,112 @@
 package com.microservices.demo.elastic.index.client.service.impl;
 
+import com.microservices.demo.elastic.index.client.lifecycle.RollingIndexNameResolver;
+import com.microservices.demo.elastic.index.client.model.BulkItemFailure;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.util.ElasticBulkRetryUtil;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.demo.config.ElasticConfigData;
 import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
-import com.microservices.demo.elastic.index.client.util.ElasticIndexUtil;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.IndexedObjectInformation;
-import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.data.elasticsearch.core.query.IndexQuery;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * This class sends the documents as one bulk request and reads the response of every item, only the rejected documents are
+ * sent again by ElasticBulkRetryUtil. With rolling indices every document is written to the bucket of its createdAt, so a
+ * backfill of old tweets lands in the old buckets, documents without a date go to the write alias.
+ */
 @Service
 @ConditionalOnProperty(name = "elastic-config.is-repository", havingValue = "false")
 public class TwitterElasticIndexClient implements ElasticIndexClient<TwitterIndexModel> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TwitterElasticIndexClient.class);
 
-    private final ElasticConfigData elasticConfigData;
-
     private final ElasticsearchOperations elasticsearchOperations;
 
-    private final ElasticIndexUtil<TwitterIndexModel> elasticIndexUtil;
+    private final RestHighLevelClient restHighLevelClient;
+
+    private final ElasticBulkRetryUtil<TwitterIndexModel> elasticBulkRetryUtil;
+
+    private final RollingIndexNameResolver rollingIndexNameResolver;
+
+    private final String writeIndexName;
 
+    /**
+     * RollingIndexNameResolver bean is only there with enable-rolling-indices.
+     */
     public TwitterElasticIndexClient(ElasticConfigData configData,
                                      ElasticsearchOperations elasticOperations,
-                                     ElasticIndexUtil<TwitterIndexModel> indexUtil) {
-        this.elasticConfigData = configData;
+                                     RestHighLevelClient highLevelClient,
+                                     ElasticBulkRetryUtil<TwitterIndexModel> bulkRetryUtil,
+                                     ObjectProvider<RollingIndexNameResolver> indexNameResolver) {
         this.elasticsearchOperations = elasticOperations;
-        this.elasticIndexUtil = indexUtil;
+        this.restHighLevelClient = highLevelClient;
+        this.elasticBulkRetryUtil = bulkRetryUtil;
+        this.rollingIndexNameResolver = indexNameResolver.getIfAvailable();
+        this.writeIndexName = rollingIndexNameResolver == null ?
+                configData.getIndexName() : rollingIndexNameResolver.getWriteAlias();
     }
 
     @Override
-    public List<String> save(List<TwitterIndexModel> documents) {
-        List<IndexQuery> indexQueries = elasticIndexUtil.getIndexQueries(documents);
-        List<String> documentIds = elasticsearchOperations.bulkIndex(
-                indexQueries,
-                IndexCoordinates.of(elasticConfigData.getIndexName())
-        ).stream().map(IndexedObjectInformation::getId).collect(Collectors.toList());
+    public BulkOutcome<TwitterIndexModel> save(List<TwitterIndexModel> documents) {
+        BulkOutcome<TwitterIndexModel> bulkOutcome = elasticBulkRetryUtil.save(documents, this::bulkIndex);
         LOG.info("Documents indexed successfully with type: {} and ids: {}", TwitterIndexModel.class.getName(),
-                documentIds);
-        return documentIds;
+                bulkOutcome.getIndexedIds());
+        return bulkOutcome;
+    }
+
+    private List<BulkItemFailure<TwitterIndexModel>> bulkIndex(List<TwitterIndexModel> documents) {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (TwitterIndexModel document : documents) {
+            bulkRequest.add(new IndexRequest(getIndexName(document))
+                    .id(document.getId())
+                    .source(elasticsearchOperations.getElasticsearchConverter().mapObject(document).toJson(),
+                            XContentType.JSON));
+        }
+        BulkResponse bulkResponse;
+        try {
+            bulkResponse = restHighLevelClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            //no item response, the whole bulk is sent again
+            LOG.warn("Bulk request of {} documents failed", documents.size(), e);
+            return documents.stream()
+                    .map(document -> new BulkItemFailure<>(document, RestStatus.SERVICE_UNAVAILABLE.getStatus(),
+                            e.getMessage()))
+                    .collect(Collectors.toList());
+        }
+        List<BulkItemFailure<TwitterIndexModel>> failures = new ArrayList<>();
+        if (bulkResponse.hasFailures()) {
+            for (BulkItemResponse item : bulkResponse.getItems()) {
+                if (item.isFailed()) {
+                    failures.add(new BulkItemFailure<>(documents.get(item.getItemId()), item.status().getStatus(),
+                            item.getFailureMessage()));
+                }
+            }
+        }
+        return failures;
+    }
+
+    private String getIndexName(TwitterIndexModel document) {
+        if (rollingIndexNameResolver == null || document.getCreatedAt() == null) {
+            return writeIndexName;
+        }
+        return rollingIndexNameResolver.getIndexName(document.getCreatedAt().toInstant());
     }
 }
@@ -1,16 +1,26 @@
 package com.microservices.demo.elastic.index.client.service.impl;
 
+import com.microservices.demo.elastic.index.client.model.BulkItemFailure;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.util.ElasticBulkRetryUtil;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.demo.elastic.index.client.repository.TwitterElasticsearchIndexRepository;
 import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * saveAll of the repository fails as a whole when any document fails and does not tell which one, so after a failed
+ * saveAll the documents are saved one by one to find the failed documents and their status.
+ */
 @Service
 @ConditionalOnProperty(name = "elastic-config.is-repository", havingValue = "true", matchIfMissing = true)
 public class TwitterElasticRepositoryIndexClient implements ElasticIndexClient<TwitterIndexModel> {
@@ -19,16 +29,49 @@ public class TwitterElasticRepositoryIndexClient implements ElasticIndexClient<T
 
     private final TwitterElasticsearchIndexRepository twitterElasticsearchIndexRepository;
 
-    public TwitterElasticRepositoryIndexClient(TwitterElasticsearchIndexRepository indexRepository) {
+    private final ElasticBulkRetryUtil<TwitterIndexModel> elasticBulkRetryUtil;
+
+    public TwitterElasticRepositoryIndexClient(TwitterElasticsearchIndexRepository indexRepository,
+                                               ElasticBulkRetryUtil<TwitterIndexModel> bulkRetryUtil) {
         this.twitterElasticsearchIndexRepository = indexRepository;
+        this.elasticBulkRetryUtil = bulkRetryUtil;
     }
 
     @Override
-    public List<String> save(List<TwitterIndexModel> documents) {
-        List<TwitterIndexModel> repositoryResponse =
-                (List<TwitterIndexModel>) twitterElasticsearchIndexRepository.saveAll(documents);
-        List<String> ids = repositoryResponse.stream().map(TwitterIndexModel::getId).collect(Collectors.toList());
-        LOG.info("Documents indexed successfully with type: {} and ids: {}", TwitterIndexModel.class.getName(), ids);
-        return ids;
+    public BulkOutcome<TwitterIndexModel> save(List<TwitterIndexModel> documents) {
+        BulkOutcome<TwitterIndexModel> bulkOutcome = elasticBulkRetryUtil.save(documents, this::saveAll);
+        LOG.info("Documents indexed successfully with type: {} and ids: {}", TwitterIndexModel.class.getName(),
+                bulkOutcome.getIndexedIds());
+        return bulkOutcome;
+    }
+
+    private List<BulkItemFailure<TwitterIndexModel>> saveAll(List<TwitterIndexModel> documents) {
+        try {
+            twitterElasticsearchIndexRepository.saveAll(documents);
+            return Collections.emptyList();
+        } catch (RuntimeException e) {
+            LOG.warn("Saving {} documents failed, saving them one by one", documents.size(), e);
+        }
+        List<BulkItemFailure<TwitterIndexModel>> failures = new ArrayList<>();
+        for (TwitterIndexModel document : documents) {
+            try {
+                twitterElasticsearchIndexRepository.save(document);
+            } catch (RuntimeException e) {
+                failures.add(new BulkItemFailure<>(document, getStatus(e), e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Status of the elasticsearch response in the cause chain, errors without a response (connection etc.) are 503.
+     */
+    private int getStatus(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticsearchStatusException) {
+                return ((ElasticsearchStatusException) cause).status().getStatus();
+            }
+        }
+        return RestStatus.SERVICE_UNAVAILABLE.getStatus();
     }
 }
@@ -0,0 +1,76 @@
+package com.microservices.demo.elastic.index.client.template;
+
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.config.ElasticIndexLifecycleConfigData;
+import com.microservices.demo.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.demo.elastic.index.client.util.ElasticIndexTemplateUtil;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * This class puts the index template of the single twitter index at startup and creates the index by it when it is
+ * missing. With rolling indices the template of the buckets is put by RollingIndexManager instead.
+ * An existing index keeps its mapping and codec, a dynamically mapped index must be reindexed to get the explicit mapping.
+ */
+@Component
+@ConditionalOnProperty(name = "elastic-index-template-config.enable-index-template", havingValue = "true")
+public class TwitterIndexTemplateInitializer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterIndexTemplateInitializer.class);
+
+    private final ElasticConfigData elasticConfigData;
+
+    private final ElasticIndexLifecycleConfigData elasticIndexLifecycleConfigData;
+
+    private final ElasticIndexTemplateUtil elasticIndexTemplateUtil;
+
+    private final RestHighLevelClient restHighLevelClient;
+
+    public TwitterIndexTemplateInitializer(ElasticConfigData configData,
+                                           ElasticIndexLifecycleConfigData lifecycleConfigData,
+                                           ElasticIndexTemplateUtil indexTemplateUtil,
+                                           RestHighLevelClient highLevelClient) {
+        this.elasticConfigData = configData;
+        this.elasticIndexLifecycleConfigData = lifecycleConfigData;
+        this.elasticIndexTemplateUtil = indexTemplateUtil;
+        this.restHighLevelClient = highLevelClient;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (Boolean.TRUE.equals(elasticIndexLifecycleConfigData.getEnableRollingIndices())) {
+            return;
+        }
+        String indexName = elasticConfigData.getIndexName();
+        try {
+            elasticIndexTemplateUtil.putIndexTemplate(indexName + "-template", Collections.singletonList(indexName),
+                    Settings.builder(), Collections.emptyMap());
+            if (restHighLevelClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT)) {
+                LOG.info("Index {} exists, it keeps its mapping and settings", indexName);
+                return;
+            }
+            restHighLevelClient.indices().create(new CreateIndexRequest(indexName), RequestOptions.DEFAULT);
+            LOG.info("Index {} created by the template", indexName);
+        } catch (ElasticsearchStatusException e) {
+            //created in the meantime by a repository or another instance
+            if (e.status() != RestStatus.BAD_REQUEST || !e.getMessage().contains("resource_already_exists_exception")) {
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new ElasticIndexClientException("Could not put the index template of " + indexName, e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.microservices.demo.elastic.index.client.util;
+
+import com.microservices.demo.config.RetryConfigData;
+import com.microservices.demo.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.demo.elastic.index.client.model.BulkItemFailure;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.service.BulkFailureHandler;
+import com.microservices.demo.elastic.model.index.IndexModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This class sends a bulk again and again with only the documents rejected with a retryable status (429 when the write
+ * queue of elasticsearch is full, 5xx), waiting between the attempts as in retry-config (initial-interval-ms growing by
+ * multiplier up to max-interval-ms, max-attempts). Documents failing with other statuses are not sent again, they are given
+ * to the BulkFailureHandler bean and returned as the failures of the BulkOutcome, so one bad document does not fail the
+ * whole bulk. Without a BulkFailureHandler bean they would be lost, so an ElasticIndexClientException is thrown instead and
+ * the batch is processed again. When retryable failures are left after the last attempt an ElasticIndexClientException is
+ * thrown as well, as the documents are fine and should be processed again when elasticsearch recovers.
+ */
+@Component
+public class ElasticBulkRetryUtil<T extends IndexModel> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElasticBulkRetryUtil.class);
+
+    private static final long DEFAULT_INITIAL_INTERVAL_MS = 1000;
+
+    private static final long DEFAULT_MAX_INTERVAL_MS = 10000;
+
+    private static final double DEFAULT_MULTIPLIER = 2.0;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private final RetryConfigData retryConfigData;
+
+    private final BulkFailureHandler<T> bulkFailureHandler;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * BulkFailureHandler bean is optional, without it a document failing with a non retryable status fails the save.
+     */
+    public ElasticBulkRetryUtil(RetryConfigData retryConfigData,
+                                ObjectProvider<BulkFailureHandler<T>> bulkFailureHandler,
+                                MeterRegistry meterRegistry) {
+        this.retryConfigData = retryConfigData;
+        this.bulkFailureHandler = bulkFailureHandler.getIfAvailable();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param documents documents to index
+     * @param bulkAttempt sends one bulk and returns the failed documents of it
+     * @return ids of the indexed documents and the documents failed with a non retryable status
+     */
+    public BulkOutcome<T> save(List<T> documents, Function<List<T>, List<BulkItemFailure<T>>> bulkAttempt) {
+        int maxAttempts = retryConfigData.getMaxAttempts() == null || retryConfigData.getMaxAttempts() <= 0 ?
+                DEFAULT_MAX_ATTEMPTS : retryConfigData.getMaxAttempts();
+        long intervalMs = retryConfigData.getInitialIntervalMs() == null ?
+                DEFAULT_INITIAL_INTERVAL_MS : retryConfigData.getInitialIntervalMs();
+        List<BulkItemFailure<T>> permanentFailures = new ArrayList<>();
+        List<T> pending = documents;
+        int attempt = 0;
+        while (!pending.isEmpty()) {
+            attempt++;
+            List<T> retryable = new ArrayList<>();
+            for (BulkItemFailure<T> failure : bulkAttempt.apply(pending)) {
+                countFailure(failure);
+                if (failure.isRetryable()) {
+                    retryable.add(failure.getDocument());
+                } else {
+                    permanentFailures.add(failure);
+                }
+            }
+            pending = retryable;
+            if (!pending.isEmpty()) {
+                if (attempt >= maxAttempts) {
+                    throw new ElasticIndexClientException(pending.size() + " documents could not be indexed after " +
+                            attempt + " attempts");
+                }
+                LOG.warn("{} of {} documents rejected by elasticsearch, retrying in {} ms", pending.size(), documents.size(),
+                        intervalMs);
+                sleep(intervalMs);
+                intervalMs = nextInterval(intervalMs);
+            }
+        }
+        if (!permanentFailures.isEmpty()) {
+            LOG.error("{} documents can not be indexed: {}", permanentFailures.size(), permanentFailures);
+            if (bulkFailureHandler == null) {
+                throw new ElasticIndexClientException(permanentFailures.size() + " documents can not be indexed and " +
+                        "no failure handler is configured");
+            }
+            bulkFailureHandler.handle(permanentFailures);
+        }
+        Set<String> failedIds = permanentFailures.stream()
+                .map(failure -> failure.getDocument().getId())
+                .collect(Collectors.toCollection(HashSet::new));
+        List<String> indexedIds = documents.stream()
+                .map(IndexModel::getId)
+                .filter(id -> !failedIds.contains(id))
+                .collect(Collectors.toList());
+        Counter.builder("elastic.indexed.documents")
+                .description("Number of documents indexed successfully")
+                .register(meterRegistry)
+                .increment(indexedIds.size());
+        return new BulkOutcome<>(indexedIds, permanentFailures, attempt);
+    }
+
+    private long nextInterval(long intervalMs) {
+        double multiplier = retryConfigData.getMultiplier() == null ? DEFAULT_MULTIPLIER : retryConfigData.getMultiplier();
+        long maxIntervalMs = retryConfigData.getMaxIntervalMs() == null ?
+                DEFAULT_MAX_INTERVAL_MS : retryConfigData.getMaxIntervalMs();
+        return Math.min((long) (intervalMs * multiplier), maxIntervalMs);
+    }
+
+    private void countFailure(BulkItemFailure<T> failure) {
+        Counter.builder("elastic.bulk.item.failures")
+                .description("Number of documents rejected in bulk responses by http status")
+                .tag("status", String.valueOf(failure.getStatus()))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void sleep(long intervalMs) {
+        try {
+            Thread.sleep(intervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticIndexClientException("Interrupted while waiting to retry the bulk", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.microservices.demo.elastic.index.client.processor;
+
+import com.microservices.demo.config.ElasticBulkConfigData;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ElasticBulkProcessorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final long NEVER_MS = 600000;
+
+    private final RecordingIndexClient elasticIndexClient = new RecordingIndexClient();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ElasticBulkProcessor<TwitterIndexModel> bulkProcessor;
+
+    @AfterEach
+    public void stopProcessor() throws InterruptedException {
+        elasticIndexClient.gate.countDown();
+        if (bulkProcessor != null) {
+            bulkProcessor.stop();
+        }
+    }
+
+    @Test
+    public void flushesFullBulksAndKeepsTheRestOpen() throws Exception {
+        bulkProcessor = processor(3, 1024 * 1024, NEVER_MS, 2);
+
+        CompletableFuture<Void> added = bulkProcessor.add(documents(0, 7));
+
+        waitUntil(() -> elasticIndexClient.bulks.size() == 2);
+        assertThat(added).isNotDone();
+        assertThat(flushes("count")).isEqualTo(2);
+
+        bulkProcessor.stop();
+        added.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(elasticIndexClient.bulks).containsExactlyInAnyOrder(ids(0, 3), ids(3, 3), ids(6, 1));
+    }
+
+    @Test
+    public void collectsDocumentsOfManyCallsInOneBulk() throws Exception {
+        bulkProcessor = processor(6, 1024 * 1024, NEVER_MS, 2);
+
+        CompletableFuture<Void> first = bulkProcessor.add(documents(0, 2));
+        CompletableFuture<Void> second = bulkProcessor.add(documents(2, 2));
+        CompletableFuture<Void> third = bulkProcessor.add(documents(4, 2));
+
+        CompletableFuture.allOf(first, second, third).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(elasticIndexClient.bulks).containsExactly(ids(0, 6));
+    }
+
+    @Test
+    public void flushesBulkOverMaxSize() throws Exception {
+        long documentSize = documents(0, 1).get(0).estimateSizeBytes();
+        bulkProcessor = processor(1000, 2 * documentSize, NEVER_MS, 2);
+
+        bulkProcessor.add(documents(0, 4)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(elasticIndexClient.bulks).containsExactlyInAnyOrder(ids(0, 2), ids(2, 2));
+        assertThat(flushes("size")).isEqualTo(2);
+    }
+
+    @Test
+    public void flushesBulkAfterFlushInterval() throws Exception {
+        bulkProcessor = processor(1000, 1024 * 1024, 50, 2);
+
+        bulkProcessor.add(documents(0, 2)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(elasticIndexClient.bulks).containsExactly(ids(0, 2));
+        assertThat(flushes("time")).isEqualTo(1);
+    }
+
+    @Test
+    public void callerWaitsWhenMaxFlushesAreRunning() throws Exception {
+        bulkProcessor = processor(1, 1024 * 1024, NEVER_MS, 1);
+        elasticIndexClient.gate = new CountDownLatch(1);
+        List<CompletableFuture<Void>> added = new CopyOnWriteArrayList<>();
+        Thread caller = new Thread(() -> added.add(bulkProcessor.add(documents(0, 3))));
+        caller.start();
+
+        waitUntil(() -> meterRegistry.get("elastic.bulk.flushes.in.flight").gauge().value() == 1);
+        Thread.sleep(100);
+        assertThat(caller.isAlive()).isTrue();
+
+        elasticIndexClient.gate.countDown();
+        caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertThat(caller.isAlive()).isFalse();
+        added.get(0).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(elasticIndexClient.bulks).containsExactlyInAnyOrder(ids(0, 1), ids(1, 1), ids(2, 1));
+    }
+
+    @Test
+    public void failsOnlyTheCallersOfTheFailedBulk() throws Exception {
+        bulkProcessor = processor(2, 1024 * 1024, NEVER_MS, 2);
+        elasticIndexClient.failingIds.add("1");
+
+        CompletableFuture<Void> failed = bulkProcessor.add(documents(0, 2));
+        CompletableFuture<Void> indexed = bulkProcessor.add(documents(2, 2));
+
+        assertThatThrownBy(() -> failed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("could not be indexed");
+        indexed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(elasticIndexClient.bulks).containsExactly(ids(2, 2));
+    }
+
+    private ElasticBulkProcessor<TwitterIndexModel> processor(int maxDocuments, long maxSizeBytes, long flushIntervalMs,
+                                                              int maxConcurrentFlushes) {
+        ElasticBulkConfigData elasticBulkConfigData = new ElasticBulkConfigData();
+        elasticBulkConfigData.setMaxDocuments(maxDocuments);
+        elasticBulkConfigData.setMaxSizeBytes(maxSizeBytes);
+        elasticBulkConfigData.setFlushIntervalMs(flushIntervalMs);
+        elasticBulkConfigData.setMaxConcurrentFlushes(maxConcurrentFlushes);
+        ElasticBulkProcessor<TwitterIndexModel> processor = new ElasticBulkProcessor<>(elasticBulkConfigData,
+                elasticIndexClient, meterRegistry);
+        processor.start();
+        return processor;
+    }
+
+    private double flushes(String reason) {
+        return meterRegistry.get("elastic.bulk.flushes").tag("reason", reason).counter().count();
+    }
+
+    private static List<TwitterIndexModel> documents(int firstId, int count) {
+        List<TwitterIndexModel> documents = new ArrayList<>();
+        for (String id : ids(firstId, count)) {
+            documents.add(TwitterIndexModel.builder().id(id).userId("1").text("text").build());
+        }
+        return documents;
+    }
+
+    private static List<String> ids(int firstId, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int id = firstId; id < firstId + count; id++) {
+            ids.add(String.valueOf(id));
+        }
+        return ids;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Collects the ids of every saved bulk, the gate blocks save() like a slow elasticsearch and a bulk with a failing
+     * id throws like the index client does when documents are lost.
+     */
+    private static class RecordingIndexClient implements ElasticIndexClient<TwitterIndexModel> {
+
+        private final List<List<String>> bulks = new CopyOnWriteArrayList<>();
+
+        private final Set<String> failingIds = ConcurrentHashMap.newKeySet();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public BulkOutcome<TwitterIndexModel> save(List<TwitterIndexModel> documents) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<String> ids = new ArrayList<>();
+            for (TwitterIndexModel document : documents) {
+                if (failingIds.contains(document.getId())) {
+                    throw new IllegalStateException("Document " + document.getId() + " could not be indexed");
+                }
+                ids.add(document.getId());
+            }
+            bulks.add(ids);
+            return new BulkOutcome<>(ids, Collections.emptyList(), 1);
+        }
+    }
+}
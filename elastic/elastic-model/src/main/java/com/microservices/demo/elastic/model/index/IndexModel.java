@@ -2,4 +2,10 @@ package com.microservices.demo.elastic.model.index;
 
 public interface IndexModel {
     String getId();
+
+    /**
+     * Approximate size of the document in a bulk request body, used to cut the bulks by bytes without serializing the
+     * documents twice. It is not a getter so it is not mapped as a field of the document.
+     */
+    long estimateSizeBytes();
 }
@@ -8,22 +8,65 @@ import lombok.Data;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.IndexOptions;
 
 import java.time.ZonedDateTime;
 
+/**
+ * The mapping is explicit, without it the ids become text with a keyword sub field. The ids are only matched exactly, so they
+ * are keywords without norms. The text is only searched with match queries, so the positions are not indexed (no phrase
+ * queries), the norms are kept for the scoring of the matches.
+ */
 @Data
 @Builder
 @Document(indexName = "#{@elasticConfigData.indexName}")
 public class TwitterIndexModel implements IndexModel {
 
+    //action line, field names and the date of the document in the bulk request body
+    private static final int DOCUMENT_OVERHEAD_BYTES = 128;
+
+    @Field(type = FieldType.Keyword, norms = false)
     @JsonProperty
     private String id;
+    @Field(type = FieldType.Keyword, norms = false)
     @JsonProperty
     private String userId;
+    @Field(type = FieldType.Text, indexOptions = IndexOptions.freqs)
     @JsonProperty
     private String text;
     @Field(type = FieldType.Date,format = {}, pattern = "uuuu-MM-dd'T'HH:mm:ssZZ")
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "uuuu-MM-dd'T'HH:mm:ssZZ")
     @JsonProperty
     private ZonedDateTime createdAt;
+
+    @Override
+    public long estimateSizeBytes() {
+        //id is in the action line and in the source
+        return DOCUMENT_OVERHEAD_BYTES + 2L * length(id) + length(userId) + utf8Length(text);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long utf8Length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isSurrogate(c)) {
+                //surrogate pair is 4 bytes together
+                utf8Length += 2;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
 }
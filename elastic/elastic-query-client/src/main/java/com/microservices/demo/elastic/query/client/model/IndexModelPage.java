@@ -0,0 +1,36 @@
+package com.microservices.demo.elastic.query.client.model;
+
+import com.microservices.demo.elastic.model.index.IndexModel;
+
+import java.util.List;
+
+/**
+ * This class is one page of documents in _shard_doc order under a point in time. nextSearchAfter is the cursor of the
+ * next page (see ElasticSearchAfterUtil.searchPage), it is null when this is the last page.
+ */
+public class IndexModelPage<T extends IndexModel> {
+
+  private final List<T> documents;
+
+  private final long totalHits;
+
+  private final String nextSearchAfter;
+
+  public IndexModelPage(List<T> documents, long totalHits, String nextSearchAfter) {
+    this.documents = documents;
+    this.totalHits = totalHits;
+    this.nextSearchAfter = nextSearchAfter;
+  }
+
+  public List<T> getDocuments() {
+    return documents;
+  }
+
+  public long getTotalHits() {
+    return totalHits;
+  }
+
+  public String getNextSearchAfter() {
+    return nextSearchAfter;
+  }
+}
@@ -1,10 +1,16 @@
 package com.microservices.demo.elastic.query.client.repository;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import org.springframework.data.elasticsearch.annotations.Query;
 import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TwitterElasticsearchQueryRepository extends ElasticsearchRepository<TwitterIndexModel, String> {
   List<TwitterIndexModel> findByText(String text);
+
+  //findById is a get request, which fails on an alias of many indices like the read alias of the rolling indices
+  @Query("{\"ids\": {\"values\": [\"?0\"]}}")
+  Optional<TwitterIndexModel> searchById(String id);
 }
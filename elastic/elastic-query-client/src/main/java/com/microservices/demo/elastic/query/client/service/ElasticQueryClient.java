@@ -1,10 +1,28 @@
 package com.microservices.demo.elastic.query.client.service;
 import com.microservices.demo.elastic.model.index.IndexModel;
+import com.microservices.demo.elastic.query.client.model.IndexModelPage;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ElasticQueryClient <T extends IndexModel> {
     T getIndexModelById(String id);
     List<T> getIndexModelByText(String text);
+
+    /**
+     * All documents in one list, use streamAllIndexModels for big indices.
+     */
     List<T> getAllIndexModels();
+
+    /**
+     * @param page page number from 0, only used without searchAfter, page * size is limited by max_result_window
+     * @param searchAfter nextSearchAfter of the previous page, null for the first page
+     */
+    IndexModelPage<T> getIndexModelPage(int page, int size, String searchAfter);
+
+    /**
+     * Give all documents of a point in time to the consumer in batches, only one batch is in memory at a time.
+     * @return number of documents
+     */
+    long streamAllIndexModels(Consumer<List<T>> batchConsumer);
 }
@@ -4,8 +4,10 @@ import com.microservices.demo.config.ElasticConfigData;
 import com.microservices.demo.config.ElasticQueryConfigData;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.demo.elastic.query.client.exception.ElasticQueryClientException;
+import com.microservices.demo.elastic.query.client.model.IndexModelPage;
 import com.microservices.demo.elastic.query.client.service.ElasticQueryClient;
 import com.microservices.demo.elastic.query.client.util.ElasticQueryUtil;
+import com.microservices.demo.elastic.query.client.util.ElasticSearchAfterUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
@@ -15,7 +17,9 @@ import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,14 +35,18 @@ public class TwitterElasticQueryClient implements ElasticQueryClient<TwitterInde
 
   private final ElasticQueryUtil<TwitterIndexModel> elasticQueryUtil;
 
+  private final ElasticSearchAfterUtil<TwitterIndexModel> elasticSearchAfterUtil;
+
   public TwitterElasticQueryClient(ElasticConfigData configData,
       ElasticQueryConfigData queryConfigData,
       ElasticsearchOperations elasticOperations,
-      ElasticQueryUtil<TwitterIndexModel> queryUtil) {
+      ElasticQueryUtil<TwitterIndexModel> queryUtil,
+      ElasticSearchAfterUtil<TwitterIndexModel> searchAfterUtil) {
     this.elasticConfigData = configData;
     this.elasticQueryConfigData = queryConfigData;
     this.elasticsearchOperations = elasticOperations;
     this.elasticQueryUtil = queryUtil;
+    this.elasticSearchAfterUtil = searchAfterUtil;
   }
 
   @Override
@@ -60,10 +68,29 @@ public class TwitterElasticQueryClient implements ElasticQueryClient<TwitterInde
     return search(query, "{} of documents with text {} retrieved successfully", text);
   }
 
+  /**
+   * A match all query only returns the first 10 documents, so the documents are read with the point in time stream.
+   */
   @Override
   public List<TwitterIndexModel> getAllIndexModels() {
-    Query query = elasticQueryUtil.getSearchQueryForAll();
-    return search(query, "{} number of documents retrieved successfully");
+    List<TwitterIndexModel> searchResult = new ArrayList<>();
+    elasticSearchAfterUtil.streamAll(TwitterIndexModel.class, searchResult::addAll);
+    LOG.info("{} number of documents retrieved successfully", searchResult.size());
+    return searchResult;
+  }
+
+  @Override
+  public IndexModelPage<TwitterIndexModel> getIndexModelPage(int page, int size, String searchAfter) {
+    IndexModelPage<TwitterIndexModel> indexModelPage =
+        elasticSearchAfterUtil.searchPage(TwitterIndexModel.class, page, size, searchAfter);
+    LOG.info("{} of {} documents retrieved successfully", indexModelPage.getDocuments().size(),
+        indexModelPage.getTotalHits());
+    return indexModelPage;
+  }
+
+  @Override
+  public long streamAllIndexModels(Consumer<List<TwitterIndexModel>> batchConsumer) {
+    return elasticSearchAfterUtil.streamAll(TwitterIndexModel.class, batchConsumer);
   }
 
   private List<TwitterIndexModel> search(Query query, String logMessage, Object... logParams) {
@@ -1,17 +1,20 @@
 package com.microservices.demo.elastic.query.client.service.impl;
 
-import com.microservices.demo.common.util.CollectionsUtil;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.demo.elastic.query.client.exception.ElasticQueryClientException;
+import com.microservices.demo.elastic.query.client.model.IndexModelPage;
 import com.microservices.demo.elastic.query.client.repository.TwitterElasticsearchQueryRepository;
 import com.microservices.demo.elastic.query.client.service.ElasticQueryClient;
+import com.microservices.demo.elastic.query.client.util.ElasticSearchAfterUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Primary
 @Service
@@ -20,13 +23,17 @@ public class TwitterElasticRepositoryQueryClient implements ElasticQueryClient<T
 
   private final TwitterElasticsearchQueryRepository twitterElasticsearchQueryRepository;
 
-  public TwitterElasticRepositoryQueryClient(TwitterElasticsearchQueryRepository repository) {
+  private final ElasticSearchAfterUtil<TwitterIndexModel> elasticSearchAfterUtil;
+
+  public TwitterElasticRepositoryQueryClient(TwitterElasticsearchQueryRepository repository,
+      ElasticSearchAfterUtil<TwitterIndexModel> searchAfterUtil) {
     this.twitterElasticsearchQueryRepository = repository;
+    this.elasticSearchAfterUtil = searchAfterUtil;
   }
 
   @Override
   public TwitterIndexModel getIndexModelById(String id) {
-    Optional<TwitterIndexModel> searchResult = twitterElasticsearchQueryRepository.findById(id);
+    Optional<TwitterIndexModel> searchResult = twitterElasticsearchQueryRepository.searchById(id);
     LOG.info("Document with id {} retrieved successfully",
         searchResult.orElseThrow(() ->
             new ElasticQueryClientException("No document found at elasticsearch with id " + id)).getId());
@@ -40,11 +47,29 @@ public class TwitterElasticRepositoryQueryClient implements ElasticQueryClient<T
     return searchResult;
   }
 
+  /**
+   * findAll of the repository asks for all the documents in one page, which fails over max_result_window, and the
+   * repository has no search_after, so the pages and the stream are read by ElasticSearchAfterUtil.
+   */
   @Override
   public List<TwitterIndexModel> getAllIndexModels() {
-    List<TwitterIndexModel> searchResult =
-        CollectionsUtil.getInstance().getListFromIterable(twitterElasticsearchQueryRepository.findAll());
+    List<TwitterIndexModel> searchResult = new ArrayList<>();
+    elasticSearchAfterUtil.streamAll(TwitterIndexModel.class, searchResult::addAll);
     LOG.info("{} number of documents retrieved successfully", searchResult.size());
     return searchResult;
   }
+
+  @Override
+  public IndexModelPage<TwitterIndexModel> getIndexModelPage(int page, int size, String searchAfter) {
+    IndexModelPage<TwitterIndexModel> indexModelPage =
+        elasticSearchAfterUtil.searchPage(TwitterIndexModel.class, page, size, searchAfter);
+    LOG.info("{} of {} documents retrieved successfully", indexModelPage.getDocuments().size(),
+        indexModelPage.getTotalHits());
+    return indexModelPage;
+  }
+
+  @Override
+  public long streamAllIndexModels(Consumer<List<TwitterIndexModel>> batchConsumer) {
+    return elasticSearchAfterUtil.streamAll(TwitterIndexModel.class, batchConsumer);
+  }
 }
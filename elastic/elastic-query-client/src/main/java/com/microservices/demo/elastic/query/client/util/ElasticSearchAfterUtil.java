@@ -0,0 +1,238 @@
+package com.microservices.demo.elastic.query.client.util;
+
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.config.ElasticQueryConfigData;
+import com.microservices.demo.elastic.model.index.IndexModel;
+import com.microservices.demo.elastic.query.client.exception.ElasticQueryClientException;
+import com.microservices.demo.elastic.query.client.model.IndexModelPage;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class reads the documents of the index page by page without from/size limits and without holding them all in
+ * memory. Pages and the whole index are read under a point in time, a consistent view of the index kept for
+ * point-in-time-keep-alive-ms between two requests, sorted by _shard_doc which is the cheapest order to read and does
+ * not depend on the mapping of the documents. The next page or batch starts after the _shard_doc of the last document
+ * (search_after).
+ */
+@Component
+public class ElasticSearchAfterUtil<T extends IndexModel> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ElasticSearchAfterUtil.class);
+
+  private static final String SHARD_DOC_SORT_FIELD = "_shard_doc";
+
+  private static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+
+  private static final int DEFAULT_EXPORT_BATCH_SIZE = 1000;
+
+  private static final long DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS = 60000;
+
+  //point in time ids are base64, so they do not contain the separator
+  private static final char CURSOR_SEPARATOR = ':';
+
+  private final ElasticConfigData elasticConfigData;
+
+  private final ElasticQueryConfigData elasticQueryConfigData;
+
+  private final RestHighLevelClient restHighLevelClient;
+
+  private final ElasticsearchOperations elasticsearchOperations;
+
+  public ElasticSearchAfterUtil(ElasticConfigData configData,
+      ElasticQueryConfigData queryConfigData,
+      RestHighLevelClient highLevelClient,
+      ElasticsearchOperations elasticOperations) {
+    this.elasticConfigData = configData;
+    this.elasticQueryConfigData = queryConfigData;
+    this.restHighLevelClient = highLevelClient;
+    this.elasticsearchOperations = elasticOperations;
+  }
+
+  /**
+   * Without a cursor a new point in time is opened and the page is read from page * size (limited by
+   * max_result_window). With a cursor the page is read after the last document of the previous page under the point in
+   * time of the cursor, so all pages read with the cursors are the same view of the index. The cursor is the url safe
+   * Base64 of "<_shard_doc of the last document>:<point in time id>". The last page closes the point in time, a cursor
+   * which is not used any more expires with its point in time after point-in-time-keep-alive-ms.
+   * @param size limited by max-page-size
+   * @param searchAfter cursor of the previous page, null to start with the page number
+   */
+  public IndexModelPage<T> searchPage(Class<T> type, int page, int size, String searchAfter) {
+    int maxPageSize = elasticQueryConfigData.getMaxPageSize() == null ?
+        DEFAULT_MAX_PAGE_SIZE : elasticQueryConfigData.getMaxPageSize();
+    int pageSize = Math.max(1, Math.min(size, maxPageSize));
+    TimeValue keepAlive = getPointInTimeKeepAlive();
+    SearchSourceBuilder searchSource = new SearchSourceBuilder()
+        .query(QueryBuilders.matchAllQuery())
+        .size(pageSize)
+        .sort(SortBuilders.fieldSort(SHARD_DOC_SORT_FIELD))
+        .trackTotalHits(true);
+    String pointInTimeId;
+    if (searchAfter != null) {
+      String cursor = decodeCursor(searchAfter);
+      int separator = cursor.indexOf(CURSOR_SEPARATOR);
+      searchSource.searchAfter(new Object[]{parseSortValue(cursor.substring(0, separator))});
+      pointInTimeId = cursor.substring(separator + 1);
+    } else {
+      pointInTimeId = openPointInTime(keepAlive);
+      searchSource.from(Math.max(0, page) * pageSize);
+    }
+    searchSource.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive));
+    SearchResponse searchResponse;
+    try {
+      //the index is given by the point in time
+      searchResponse = search(new SearchRequest().source(searchSource));
+    } catch (RuntimeException e) {
+      if (searchAfter == null) {
+        closePointInTime(pointInTimeId);
+      }
+      throw e;
+    }
+    if (searchResponse.pointInTimeId() != null) {
+      pointInTimeId = searchResponse.pointInTimeId();
+    }
+    SearchHit[] hits = searchResponse.getHits().getHits();
+    String nextSearchAfter = null;
+    if (hits.length < pageSize) {
+      closePointInTime(pointInTimeId);
+    } else {
+      nextSearchAfter = encodeCursor(hits[hits.length - 1].getSortValues()[0], pointInTimeId);
+    }
+    long totalHits = searchResponse.getHits().getTotalHits() == null ?
+        hits.length : searchResponse.getHits().getTotalHits().value;
+    return new IndexModelPage<>(getIndexModels(type, hits), totalHits, nextSearchAfter);
+  }
+
+  /**
+   * @return number of documents given to the consumer
+   */
+  public long streamAll(Class<T> type, Consumer<List<T>> batchConsumer) {
+    int batchSize = elasticQueryConfigData.getExportBatchSize() == null ?
+        DEFAULT_EXPORT_BATCH_SIZE : elasticQueryConfigData.getExportBatchSize();
+    TimeValue keepAlive = getPointInTimeKeepAlive();
+    String pointInTimeId = openPointInTime(keepAlive);
+    long count = 0;
+    try {
+      Object[] searchAfter = null;
+      while (true) {
+        SearchSourceBuilder searchSource = new SearchSourceBuilder()
+            .query(QueryBuilders.matchAllQuery())
+            .size(batchSize)
+            .sort(SortBuilders.fieldSort(SHARD_DOC_SORT_FIELD))
+            .pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive))
+            .trackTotalHits(false);
+        if (searchAfter != null) {
+          searchSource.searchAfter(searchAfter);
+        }
+        //the index is given by the point in time
+        SearchResponse searchResponse = search(new SearchRequest().source(searchSource));
+        if (searchResponse.pointInTimeId() != null) {
+          pointInTimeId = searchResponse.pointInTimeId();
+        }
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        if (hits.length > 0) {
+          batchConsumer.accept(getIndexModels(type, hits));
+          count += hits.length;
+        }
+        if (hits.length < batchSize) {
+          return count;
+        }
+        searchAfter = hits[hits.length - 1].getSortValues();
+      }
+    } finally {
+      closePointInTime(pointInTimeId);
+      LOG.info("{} documents of {} read with point in time", count, elasticConfigData.getIndexName());
+    }
+  }
+
+  private TimeValue getPointInTimeKeepAlive() {
+    return TimeValue.timeValueMillis(elasticQueryConfigData.getPointInTimeKeepAliveMs() == null ?
+        DEFAULT_POINT_IN_TIME_KEEP_ALIVE_MS : elasticQueryConfigData.getPointInTimeKeepAliveMs());
+  }
+
+  private static String encodeCursor(Object sortValue, String pointInTimeId) {
+    String cursor = sortValue + String.valueOf(CURSOR_SEPARATOR) + pointInTimeId;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeCursor(String searchAfter) {
+    String cursor;
+    try {
+      cursor = new String(Base64.getUrlDecoder().decode(searchAfter), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new ElasticQueryClientException("Invalid search after cursor " + searchAfter, e);
+    }
+    int separator = cursor.indexOf(CURSOR_SEPARATOR);
+    if (separator <= 0 || separator == cursor.length() - 1) {
+      throw new ElasticQueryClientException("Invalid search after cursor " + searchAfter);
+    }
+    return cursor;
+  }
+
+  private static long parseSortValue(String sortValue) {
+    try {
+      return Long.parseLong(sortValue);
+    } catch (NumberFormatException e) {
+      throw new ElasticQueryClientException("Invalid sort value " + sortValue + " in search after cursor", e);
+    }
+  }
+
+  private List<T> getIndexModels(Class<T> type, SearchHit[] hits) {
+    List<T> indexModels = new ArrayList<>(hits.length);
+    for (SearchHit hit : hits) {
+      indexModels.add(elasticsearchOperations.getElasticsearchConverter().read(type, DocumentAdapters.from(hit)));
+    }
+    return indexModels;
+  }
+
+  private SearchResponse search(SearchRequest searchRequest) {
+    try {
+      return restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
+    } catch (IOException e) {
+      throw new ElasticQueryClientException("Search on " + elasticConfigData.getIndexName() + " failed", e);
+    }
+  }
+
+  private String openPointInTime(TimeValue keepAlive) {
+    try {
+      return restHighLevelClient.openPointInTime(new OpenPointInTimeRequest(elasticConfigData.getIndexName())
+          .keepAlive(keepAlive), RequestOptions.DEFAULT).getPointInTimeId();
+    } catch (IOException e) {
+      throw new ElasticQueryClientException("Could not open a point in time on " + elasticConfigData.getIndexName(), e);
+    }
+  }
+
+  /**
+   * Not closed point in times are dropped by elasticsearch after the keep alive, so a failure is only logged.
+   */
+  private void closePointInTime(String pointInTimeId) {
+    try {
+      restHighLevelClient.closePointInTime(new ClosePointInTimeRequest(pointInTimeId), RequestOptions.DEFAULT);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Could not close the point in time of {}", elasticConfigData.getIndexName(), e);
+    }
+  }
+}
@@ -23,8 +23,8 @@ public class KafkaStreamsInitializer implements StreamsInitializer {
 
     @Override
     public void init() {
-        kafkaAdminClient.checkTopicsCreated();
-        kafkaAdminClient.checkSchemaRegistry();
+        //topics and schema registry are checked at the same time
+        kafkaAdminClient.checkReadiness(false, true);
         LOG.info("Topics with name {} is ready for operations!", kafkaConfigData.getTopicNamesToCreate().toArray());
     }
 }
@@ -0,0 +1,124 @@
+package com.microservices.demo.kafka.to.elastic.service.direct;
+
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the bulk request body written by TwitterBulkNdjsonEncoder straight from the avro records with the path
+ * of TwitterElasticIndexClient: AvroToElasticModelTransformer, spring data mapping of every TwitterIndexModel to a json
+ * source, an IndexRequest per document in a BulkRequest and the ndjson body written from it the way the high level rest
+ * client does (action line built with XContentBuilder, then the source). Both encode the same batch of BATCH_TWEETS tweets,
+ * the score is per tweet. Run it with -prof gc for the allocation per tweet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwitterBulkNdjsonEncoderBenchmark {
+
+    private static final int BATCH_TWEETS = 1000;
+
+    private static final String INDEX_NAME = "twitter-index";
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "Java", "Kafka", "Microservices",
+            "Elasticsearch", "congue", "massa", "Fusce", "magna", "sed", "\"quoted\"", "gr\u00fc\u00dfe",
+            "\uD83D\uDE00"
+    };
+
+    private final List<TwitterAvroModel> tweets = new ArrayList<>();
+
+    private TwitterBulkNdjsonEncoder twitterBulkNdjsonEncoder;
+
+    private AvroToElasticModelTransformer avroToElasticModelTransformer;
+
+    private MappingElasticsearchConverter converter;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long createdAt = Instant.parse("2022-01-31T14:00:00.000Z").toEpochMilli();
+        for (int i = 0; i < BATCH_TWEETS; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 140) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            tweets.add(TwitterAvroModel.newBuilder()
+                    .setId(1_500_000_000_000_000_000L + i)
+                    .setUserId(1_000_000L + random.nextInt(1_000_000))
+                    .setText(text.toString().trim())
+                    .setCreatedAt(createdAt + i * 37L)
+                    .build());
+        }
+        twitterBulkNdjsonEncoder = new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.systemDefault());
+        avroToElasticModelTransformer = new AvroToElasticModelTransformer();
+        converter = new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_TWEETS)
+    public int directEncoding() {
+        BulkNdjsonBuffer body = twitterBulkNdjsonEncoder.encode(tweets);
+        return body.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_TWEETS)
+    public int springDataMapping() throws IOException {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (TwitterIndexModel document : avroToElasticModelTransformer.getElasticModels(tweets)) {
+            bulkRequest.add(new IndexRequest(INDEX_NAME)
+                    .id(document.getId())
+                    .source(converter.mapObject(document).toJson(), XContentType.JSON));
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            IndexRequest indexRequest = (IndexRequest) request;
+            XContentBuilder actionLine = XContentFactory.jsonBuilder()
+                    .startObject()
+                    .startObject("index")
+                    .field("_index", indexRequest.index())
+                    .field("_id", indexRequest.id())
+                    .endObject()
+                    .endObject();
+            BytesReference.bytes(actionLine).writeTo(body);
+            body.write('\n');
+            indexRequest.source().writeTo(body);
+            body.write('\n');
+        }
+        return body.size();
+    }
+}
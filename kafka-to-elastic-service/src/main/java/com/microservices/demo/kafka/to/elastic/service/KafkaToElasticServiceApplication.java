@@ -3,9 +3,12 @@ package com.microservices.demo.kafka.to.elastic.service;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
 
 @SpringBootApplication
-@ComponentScan(basePackages = {"com.microservices.demo"})
+//the kafka producer beans are only created with the dead letter topic, see DeadLetterTopicConfig
+@ComponentScan(basePackages = {"com.microservices.demo"}, excludeFilters = @ComponentScan.Filter(
+    type = FilterType.REGEX, pattern = "com\\.microservices\\.demo\\.kafka\\.producer\\..*"))
 public class KafkaToElasticServiceApplication {
   public static void main(String[] args) {
     SpringApplication.run(KafkaToElasticServiceApplication.class, args);
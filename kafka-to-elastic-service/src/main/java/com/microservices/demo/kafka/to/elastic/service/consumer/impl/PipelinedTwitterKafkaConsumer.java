@@ -0,0 +1,78 @@
+package com.microservices.demo.kafka.to.elastic.service.consumer.impl;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.to.elastic.service.pipeline.ElasticBulkIndexPipeline;
+import com.microservices.demo.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Hands every poll batch to the ElasticBulkIndexPipeline and returns, the pipeline acknowledges the batch once it is
+ * indexed. The container comes from manualAckKafkaListenerContainerFactory, so the ack mode is always MANUAL and the
+ * ack-mode of kafka-consumer-config is only used by TwitterKafkaConsumer.
+ */
+@Service
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-pipelined-indexing", havingValue = "true")
+public class PipelinedTwitterKafkaConsumer {
+  private static final Logger LOG = LoggerFactory.getLogger(PipelinedTwitterKafkaConsumer.class);
+  private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+  private final KafkaAdminClient kafkaAdminClient;
+  private final KafkaConfigData kafkaConfigData;
+  private final AvroToElasticModelTransformer avroToElasticModelTransformer;
+  private final KafkaConsumerConfigData kafkaConsumerConfigData;
+  private final ElasticBulkIndexPipeline elasticBulkIndexPipeline;
+
+  public PipelinedTwitterKafkaConsumer(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+      KafkaAdminClient kafkaAdminClient, KafkaConfigData kafkaConfigData,
+      AvroToElasticModelTransformer avroToElasticModelTransformer,
+      KafkaConsumerConfigData kafkaConsumerConfigData,
+      ElasticBulkIndexPipeline elasticBulkIndexPipeline) {
+    this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+    this.kafkaAdminClient = kafkaAdminClient;
+    this.kafkaConfigData = kafkaConfigData;
+    this.avroToElasticModelTransformer = avroToElasticModelTransformer;
+    this.kafkaConsumerConfigData = kafkaConsumerConfigData;
+    this.elasticBulkIndexPipeline = elasticBulkIndexPipeline;
+  }
+
+  @EventListener
+  public void onAppStarted(ApplicationStartedEvent event){
+    kafkaAdminClient.checkTopicsCreated();
+    LOG.info("Topics with name: {} is ready for operations! ",kafkaConfigData.getTopicNamesToCreate().toArray());
+    kafkaListenerEndpointRegistry.getListenerContainer(kafkaConsumerConfigData.getConsumerGroupId()).start();
+  }
+
+  @KafkaListener(id = "${kafka-consumer-config.consumer-group-id}", topics = "${kafka-config.topic-name}",
+      containerFactory = "manualAckKafkaListenerContainerFactory")
+  public void receive(@Payload List<TwitterAvroModel> messages,
+      @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+      @Header(KafkaHeaders.OFFSET) List<Long> offsets,
+      Acknowledgment acknowledgment,
+      Consumer<?, ?> consumer) {
+    LOG.info("{} number of message received with partitions {} and offsets {}, sending it to the bulk pipeline: " +
+            "Thread id {}",
+        messages.size(),
+        partitions.toString(),
+        offsets.toString(),
+        Thread.currentThread().getId());
+    List<TwitterIndexModel> twitterIndexModel=avroToElasticModelTransformer.getElasticModels(messages);
+    elasticBulkIndexPipeline.index(twitterIndexModel, partitions, offsets, acknowledgment, consumer);
+  }
+}
@@ -3,13 +3,18 @@ package com.microservices.demo.kafka.to.elastic.service.consumer.impl;
 import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.demo.config.KafkaConfigData;
 import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.processor.ElasticBulkProcessor;
 import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
 import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
 import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
 import com.microservices.demo.kafka.to.elastic.service.consumer.KafkaConsumer;
+import com.microservices.demo.kafka.to.elastic.service.direct.TwitterDirectBulkIndexer;
 import com.microservices.demo.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -21,7 +26,13 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 
+/**
+ * Indexes every poll batch on the listener thread, the offsets are committed by the container with the ack-mode of
+ * kafka-consumer-config after receive returns. With pipelined indexing PipelinedTwitterKafkaConsumer listens instead.
+ */
 @Service
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-pipelined-indexing", havingValue = "false",
+    matchIfMissing = true)
 public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroModel> {
   private static final Logger LOG = LoggerFactory.getLogger(TwitterKafkaConsumer.class);
   private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
@@ -30,18 +41,31 @@ public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroMode
   private final AvroToElasticModelTransformer avroToElasticModelTransformer;
   private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
   private final KafkaConsumerConfigData kafkaConsumerConfigData;
+  private final TwitterDirectBulkIndexer twitterDirectBulkIndexer;
 
+  /**
+   * TwitterDirectBulkIndexer bean exists only if direct encoding is enabled, otherwise it is null and the batches are
+   * indexed with the ElasticIndexClient. ElasticBulkProcessor indexes the documents after the listener returned, only
+   * the pipelined indexing waits for its flushes before committing, so the start fails when it is enabled without it.
+   */
   public TwitterKafkaConsumer(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
       KafkaAdminClient kafkaAdminClient, KafkaConfigData kafkaConfigData,
       AvroToElasticModelTransformer avroToElasticModelTransformer,
       ElasticIndexClient<TwitterIndexModel> elasticIndexClient,
-      KafkaConsumerConfigData kafkaConsumerConfigData) {
+      KafkaConsumerConfigData kafkaConsumerConfigData,
+      ObjectProvider<TwitterDirectBulkIndexer> twitterDirectBulkIndexer,
+      ObjectProvider<ElasticBulkProcessor<TwitterIndexModel>> elasticBulkProcessor) {
+    if (elasticBulkProcessor.getIfAvailable() != null) {
+      throw new IllegalStateException("elastic-bulk-config.enable-bulk-processor needs " +
+          "kafka-to-elastic-service.enable-pipelined-indexing, the batches would be committed before they are indexed");
+    }
     this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
     this.kafkaAdminClient = kafkaAdminClient;
     this.kafkaConfigData = kafkaConfigData;
     this.avroToElasticModelTransformer = avroToElasticModelTransformer;
     this.elasticIndexClient = elasticIndexClient;
     this.kafkaConsumerConfigData = kafkaConsumerConfigData;
+    this.twitterDirectBulkIndexer = twitterDirectBulkIndexer.getIfAvailable();
   }
 
   @EventListener
@@ -66,9 +90,13 @@ public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroMode
         partitions.toString(),
         offsets.toString(),
         Thread.currentThread().getId());
-    List<TwitterIndexModel> twitterIndexModel=avroToElasticModelTransformer.getElasticModels(messages);
-    List<String> documentIds=elasticIndexClient.save(twitterIndexModel);
-    LOG.info("Documents saved to elastic search with ids : {}",documentIds);
+    if (twitterDirectBulkIndexer != null) {
+      twitterDirectBulkIndexer.index(messages);
+    } else {
+      List<TwitterIndexModel> twitterIndexModel=avroToElasticModelTransformer.getElasticModels(messages);
+      BulkOutcome<TwitterIndexModel> bulkOutcome=elasticIndexClient.save(twitterIndexModel);
+      LOG.info("Documents saved to elastic search with ids : {}",bulkOutcome.getIndexedIds());
+    }
   }
 }
 
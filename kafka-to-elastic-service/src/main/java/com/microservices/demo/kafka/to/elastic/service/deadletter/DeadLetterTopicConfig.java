@@ -0,0 +1,16 @@
+package com.microservices.demo.kafka.to.elastic.service.deadletter;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The kafka producer module is left out of the component scan of KafkaToElasticServiceApplication, its beans (producer
+ * factory, KafkaTemplate and KafkaProducer) are only needed to write the dead letter topic and are created here when it
+ * is enabled.
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-dead-letter-topic", havingValue = "true")
+@ComponentScan(basePackages = "com.microservices.demo.kafka.producer")
+public class DeadLetterTopicConfig {
+}
@@ -0,0 +1,99 @@
+package com.microservices.demo.kafka.to.elastic.service.deadletter;
+
+import com.microservices.demo.config.KafkaToElasticServiceConfigData;
+import com.microservices.demo.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.demo.elastic.index.client.model.BulkItemFailure;
+import com.microservices.demo.elastic.index.client.service.BulkFailureHandler;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import com.microservices.demo.kafka.producer.service.KafkaProducer;
+import com.microservices.demo.kafka.to.elastic.service.transformer.ElasticToAvroModelTransformer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class writes the tweets which elasticsearch refuses to index (mapping errors etc., not the retryable 429 and 5xx) to
+ * the dead letter topic with the same key and avro schema as the twitter topic, so they can be fixed and sent again without
+ * blocking the other tweets. The http status and the reason of the bulk item response are written as the
+ * elastic-failure-status and elastic-failure-reason headers of the record. The save waits for the dead letter records to be
+ * acknowledged, when kafka does not take them the save fails and the batch is processed again. The dead letter topic is
+ * created at startup if it does not exist.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-dead-letter-topic", havingValue = "true")
+public class TwitterDeadLetterPublisher implements BulkFailureHandler<TwitterIndexModel> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterDeadLetterPublisher.class);
+
+    public static final String FAILURE_STATUS_HEADER = "elastic-failure-status";
+
+    public static final String FAILURE_REASON_HEADER = "elastic-failure-reason";
+
+    private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
+
+    private final ElasticToAvroModelTransformer elasticToAvroModelTransformer;
+
+    private final KafkaAdminClient kafkaAdminClient;
+
+    private final String deadLetterTopicName;
+
+    private final Counter deadLetterDocuments;
+
+    public TwitterDeadLetterPublisher(KafkaProducer<Long, TwitterAvroModel> kafkaProducer,
+                                      ElasticToAvroModelTransformer elasticToAvroModelTransformer,
+                                      KafkaAdminClient kafkaAdminClient,
+                                      KafkaToElasticServiceConfigData kafkaToElasticServiceConfigData,
+                                      MeterRegistry meterRegistry) {
+        this.kafkaProducer = kafkaProducer;
+        this.elasticToAvroModelTransformer = elasticToAvroModelTransformer;
+        this.kafkaAdminClient = kafkaAdminClient;
+        this.deadLetterTopicName = kafkaToElasticServiceConfigData.getDeadLetterTopicName();
+        this.deadLetterDocuments = Counter.builder("elastic.dead.letter.documents")
+                .description("Number of documents sent to the dead letter topic")
+                .tag("topic", deadLetterTopicName)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void createDeadLetterTopic() {
+        kafkaAdminClient.createTopics(List.of(deadLetterTopicName));
+    }
+
+    @Override
+    public void handle(List<BulkItemFailure<TwitterIndexModel>> failures) {
+        List<KeyValue<Long, TwitterAvroModel>> records = failures.stream()
+                .map(this::toRecord)
+                .collect(Collectors.toList());
+        BatchResult batchResult = kafkaProducer.sendBatch(deadLetterTopicName, records).join();
+        if (!batchResult.isSuccessful()) {
+            throw new ElasticIndexClientException("Failed documents could not be sent to dead letter topic " +
+                    deadLetterTopicName + ": " + batchResult, batchResult.getFirstException());
+        }
+        deadLetterDocuments.increment(records.size());
+        LOG.warn("{} documents sent to dead letter topic {}", records.size(), deadLetterTopicName);
+    }
+
+    private KeyValue<Long, TwitterAvroModel> toRecord(BulkItemFailure<TwitterIndexModel> failure) {
+        TwitterAvroModel avroModel = elasticToAvroModelTransformer.getAvroModel(failure.getDocument());
+        Headers headers = new RecordHeaders();
+        headers.add(FAILURE_STATUS_HEADER, String.valueOf(failure.getStatus()).getBytes(StandardCharsets.UTF_8));
+        if (failure.getReason() != null) {
+            headers.add(FAILURE_REASON_HEADER, failure.getReason().getBytes(StandardCharsets.UTF_8));
+        }
+        return KeyValue.of(avroModel.getUserId(), avroModel, headers);
+    }
+}
@@ -0,0 +1,167 @@
+package com.microservices.demo.kafka.to.elastic.service.direct;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte array which is reused for every bulk request body of a thread, strings are written as UTF-8 (and escaped
+ * for json) directly into the array without creating String or byte[] copies on the way.
+ * After a very large bulk the array is dropped on reset, so one big batch does not hold the memory forever.
+ */
+class BulkNdjsonBuffer {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024 * 1024;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private static final byte[] NULL = "null".getBytes();
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    private int size;
+
+    void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] source) {
+        ensureCapacity(source.length);
+        System.arraycopy(source, 0, bytes, size, source.length);
+        size += source.length;
+    }
+
+    /**
+     * Write the number as json string, e.g. "123"
+     */
+    void writeQuotedLong(long value) {
+        writeByte('"');
+        writeLong(value);
+        writeByte('"');
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(String.valueOf(value).getBytes());
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Write two digits with leading zero, used for the date fields
+     */
+    void writeTwoDigits(int value) {
+        ensureCapacity(2);
+        bytes[size++] = (byte) ('0' + value / 10);
+        bytes[size++] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Write the text as quoted and escaped json string or null.
+     */
+    void writeJsonString(CharSequence text) {
+        if (text == null) {
+            writeBytes(NULL);
+            return;
+        }
+        //worst case is 6 bytes (\\u00XX) per char
+        ensureCapacity(text.length() * 6 + 2);
+        byte[] target = bytes;
+        int position = size;
+        target[position++] = '"';
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                target[position++] = '\\';
+                target[position++] = (byte) c;
+            } else if (c < 0x20) {
+                position = writeControlChar(target, position, c);
+            } else if (c < 0x80) {
+                target[position++] = (byte) c;
+            } else if (c < 0x800) {
+                target[position++] = (byte) (0xC0 | (c >> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                target[position++] = (byte) (0xF0 | (codePoint >> 18));
+                target[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                target[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //broken surrogate pair, same replacement as String.getBytes
+                target[position++] = '?';
+            } else {
+                target[position++] = (byte) (0xE0 | (c >> 12));
+                target[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        target[position++] = '"';
+        size = position;
+    }
+
+    private static int writeControlChar(byte[] target, int position, char c) {
+        target[position++] = '\\';
+        switch (c) {
+            case '\n':
+                target[position++] = 'n';
+                break;
+            case '\r':
+                target[position++] = 'r';
+                break;
+            case '\t':
+                target[position++] = 't';
+                break;
+            case '\b':
+                target[position++] = 'b';
+                break;
+            case '\f':
+                target[position++] = 'f';
+                break;
+            default:
+                target[position++] = 'u';
+                target[position++] = '0';
+                target[position++] = '0';
+                target[position++] = HEX_DIGITS[c >> 4];
+                target[position++] = HEX_DIGITS[c & 0xF];
+        }
+        return position;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
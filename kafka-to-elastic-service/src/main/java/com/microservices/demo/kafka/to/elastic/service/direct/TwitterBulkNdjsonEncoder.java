@@ -0,0 +1,157 @@
+package com.microservices.demo.kafka.to.elastic.service.direct;
+
+import com.microservices.demo.elastic.index.client.lifecycle.RollingIndexNameResolver;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.List;
+
+/**
+ * This class writes the bulk request body (one action line and one source line per tweet) for TwitterAvroModel records
+ * straight into a BulkNdjsonBuffer, the result is the same document as TwitterIndexModel mapped by spring data without
+ * the _class field: ids as strings and createdAt in the uuuu-MM-dd'T'HH:mm:ssZZ pattern of the system time zone.
+ * The date prefix of the current day and the offset of the current zone rule period are computed once and reused, so
+ * formatting a date is only arithmetic and array copies. With rolling indices the action line names the bucket of the
+ * createdAt of the tweet, the action line prefix of the last bucket is reused.
+ * Not thread safe, every thread needs its own encoder.
+ */
+class TwitterBulkNdjsonEncoder {
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private static final byte[] ACTION_SUFFIX = "}}\n{\"id\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] USER_ID_FIELD = ",\"userId\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] TEXT_FIELD = ",\"text\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] CREATED_AT_FIELD = ",\"createdAt\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] DOCUMENT_END = "}\n".getBytes(StandardCharsets.UTF_8);
+
+    private final BulkNdjsonBuffer buffer = new BulkNdjsonBuffer();
+
+    private final ZoneRules zoneRules;
+
+    private final RollingIndexNameResolver rollingIndexNameResolver;
+
+    //action line prefix for the tweets without a bucket
+    private final byte[] actionPrefix;
+
+    private String bucketIndexName;
+
+    private byte[] bucketActionPrefix;
+
+    //epoch seconds range in which offsetSeconds is valid
+    private long offsetValidFrom = Long.MAX_VALUE;
+
+    private long offsetValidUntil = Long.MIN_VALUE;
+
+    private int offsetSeconds;
+
+    private byte[] offsetBytes;
+
+    //local epoch day of datePrefix
+    private long cachedEpochDay = Long.MIN_VALUE;
+
+    private byte[] datePrefix;
+
+    /**
+     * @param indexName index or alias of the tweets without a bucket, the only index without rollingIndexNameResolver
+     * @param rollingIndexNameResolver null when rolling indices are disabled
+     */
+    TwitterBulkNdjsonEncoder(String indexName, RollingIndexNameResolver rollingIndexNameResolver, ZoneId zoneId) {
+        this.zoneRules = zoneId.getRules();
+        this.rollingIndexNameResolver = rollingIndexNameResolver;
+        this.actionPrefix = getActionPrefix(indexName);
+    }
+
+    /**
+     * Encode the records into the buffer of this encoder, the content is valid until the next call.
+     */
+    BulkNdjsonBuffer encode(List<TwitterAvroModel> messages) {
+        buffer.reset();
+        for (TwitterAvroModel message : messages) {
+            buffer.writeBytes(getActionPrefix(message));
+            buffer.writeQuotedLong(message.getId());
+            buffer.writeBytes(ACTION_SUFFIX);
+            buffer.writeQuotedLong(message.getId());
+            buffer.writeBytes(USER_ID_FIELD);
+            buffer.writeQuotedLong(message.getUserId());
+            buffer.writeBytes(TEXT_FIELD);
+            buffer.writeJsonString(message.getText());
+            buffer.writeBytes(CREATED_AT_FIELD);
+            if (message.getCreatedAt() == null) {
+                buffer.writeBytes(NULL);
+            } else {
+                writeDate(message.getCreatedAt());
+            }
+            buffer.writeBytes(DOCUMENT_END);
+        }
+        return buffer;
+    }
+
+    private byte[] getActionPrefix(TwitterAvroModel message) {
+        if (rollingIndexNameResolver == null || message.getCreatedAt() == null) {
+            return actionPrefix;
+        }
+        String indexName = rollingIndexNameResolver.getIndexName(message.getCreatedAt());
+        //same instance while the tweets are in the same bucket, so equals stops at the identity check
+        if (!indexName.equals(bucketIndexName)) {
+            bucketIndexName = indexName;
+            bucketActionPrefix = getActionPrefix(indexName);
+        }
+        return bucketActionPrefix;
+    }
+
+    private static byte[] getActionPrefix(String indexName) {
+        return ("{\"index\":{\"_index\":\"" + indexName + "\",\"_id\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeDate(long epochMilli) {
+        long epochSecond = Math.floorDiv(epochMilli, 1000L);
+        if (epochSecond < offsetValidFrom || epochSecond >= offsetValidUntil) {
+            updateOffset(epochSecond);
+        }
+        long localSecond = epochSecond + offsetSeconds;
+        long epochDay = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+        if (epochDay != cachedEpochDay) {
+            cachedEpochDay = epochDay;
+            datePrefix = ("\"" + LocalDate.ofEpochDay(epochDay) + "T").getBytes(StandardCharsets.UTF_8);
+        }
+        int secondOfDay = (int) Math.floorMod(localSecond, SECONDS_PER_DAY);
+        buffer.writeBytes(datePrefix);
+        buffer.writeTwoDigits(secondOfDay / 3600);
+        buffer.writeByte(':');
+        buffer.writeTwoDigits(secondOfDay / 60 % 60);
+        buffer.writeByte(':');
+        buffer.writeTwoDigits(secondOfDay % 60);
+        buffer.writeBytes(offsetBytes);
+    }
+
+    /**
+     * Find the offset of the instant and the transitions around it, the offset is the same until the next transition.
+     */
+    private void updateOffset(long epochSecond) {
+        Instant instant = Instant.ofEpochSecond(epochSecond);
+        ZoneOffset offset = zoneRules.getOffset(instant);
+        //a transition exactly at the instant is the start of its offset
+        ZoneOffsetTransition previous = zoneRules.previousTransition(instant.plusSeconds(1));
+        ZoneOffsetTransition next = zoneRules.nextTransition(instant);
+        offsetValidFrom = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+        offsetValidUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+        offsetSeconds = offset.getTotalSeconds();
+        int absoluteMinutes = Math.abs(offsetSeconds) / 60;
+        //ZZ pattern: +HHMM
+        offsetBytes = String.format("%s%02d%02d\"", offsetSeconds < 0 ? "-" : "+", absoluteMinutes / 60,
+                absoluteMinutes % 60).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package com.microservices.demo.kafka.to.elastic.service.direct;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.elastic.index.client.lifecycle.RollingIndexNameResolver;
+import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class indexes the TwitterAvroModel records without creating TwitterIndexModel objects: the bulk body is written by
+ * TwitterBulkNdjsonEncoder into a buffer reused by the thread and sent with the low level RestClient, the response is only
+ * read for the failed items (filter_path). The failed records, and all records when the request itself fails, are the
+ * exception, they are transformed and given to the ElasticIndexClient which retries them and sends the documents which
+ * can never be indexed to the BulkFailureHandler.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-direct-encoding", havingValue = "true")
+public class TwitterDirectBulkIndexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterDirectBulkIndexer.class);
+
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    //successful items only have the _id, so the response stays small
+    private static final String FILTER_PATH = "errors,items.*._id,items.*.error.type,items.*.error.reason";
+
+    private final RestClient restClient;
+
+    private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
+
+    private final AvroToElasticModelTransformer avroToElasticModelTransformer;
+
+    private final Counter indexedDocuments;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ThreadLocal<TwitterBulkNdjsonEncoder> encoders;
+
+    public TwitterDirectBulkIndexer(RestHighLevelClient restHighLevelClient,
+                                    ElasticConfigData elasticConfigData,
+                                    ElasticIndexClient<TwitterIndexModel> elasticIndexClient,
+                                    AvroToElasticModelTransformer avroToElasticModelTransformer,
+                                    ObjectProvider<RollingIndexNameResolver> rollingIndexNameResolver,
+                                    MeterRegistry meterRegistry) {
+        this.restClient = restHighLevelClient.getLowLevelClient();
+        this.elasticIndexClient = elasticIndexClient;
+        this.avroToElasticModelTransformer = avroToElasticModelTransformer;
+        //same meter as the documents indexed by the index client
+        this.indexedDocuments = Counter.builder("elastic.indexed.documents")
+                .description("Number of documents indexed successfully")
+                .register(meterRegistry);
+        RollingIndexNameResolver indexNameResolver = rollingIndexNameResolver.getIfAvailable();
+        String indexName = indexNameResolver == null ?
+                elasticConfigData.getIndexName() : indexNameResolver.getWriteAlias();
+        this.encoders = ThreadLocal.withInitial(() ->
+                new TwitterBulkNdjsonEncoder(indexName, indexNameResolver, ZoneId.systemDefault()));
+    }
+
+    public void index(List<TwitterAvroModel> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        BulkNdjsonBuffer body = encoders.get().encode(messages);
+        Request request = new Request("POST", "/_bulk");
+        request.addParameter("filter_path", FILTER_PATH);
+        request.setEntity(new ByteArrayEntity(body.getBytes(), 0, body.size(), NDJSON));
+        Set<String> failedIds;
+        try {
+            Response response = restClient.performRequest(request);
+            failedIds = getFailedIds(response);
+        } catch (IOException e) {
+            LOG.warn("Bulk request of {} documents failed, indexing them with the index client", messages.size(), e);
+            elasticIndexClient.save(avroToElasticModelTransformer.getElasticModels(messages));
+            return;
+        }
+        List<TwitterAvroModel> failedMessages = failedIds.isEmpty() ? Collections.emptyList() : messages.stream()
+                .filter(message -> failedIds.contains(String.valueOf(message.getId())))
+                .collect(Collectors.toList());
+        //the failed documents are counted by the index client
+        indexedDocuments.increment(messages.size() - failedMessages.size());
+        if (!failedMessages.isEmpty()) {
+            LOG.warn("{} of {} documents failed, indexing them with the index client", failedMessages.size(),
+                    messages.size());
+            elasticIndexClient.save(avroToElasticModelTransformer.getElasticModels(failedMessages));
+        }
+        LOG.info("{} documents indexed with {} bytes bulk request", messages.size(), body.size());
+    }
+
+    private Set<String> getFailedIds(Response response) throws IOException {
+        Set<String> failedIds = new HashSet<>();
+        JsonNode root;
+        try (InputStream content = response.getEntity().getContent()) {
+            root = objectMapper.readTree(content);
+        }
+        if (!root.path("errors").asBoolean()) {
+            return failedIds;
+        }
+        for (JsonNode item : root.path("items")) {
+            Iterator<JsonNode> actions = item.elements();
+            if (!actions.hasNext()) {
+                continue;
+            }
+            JsonNode action = actions.next();
+            if (action.has("error")) {
+                LOG.debug("Document {} failed: {}", action.path("_id").asText(), action.path("error"));
+                failedIds.add(action.path("_id").asText());
+            }
+        }
+        return failedIds;
+    }
+}
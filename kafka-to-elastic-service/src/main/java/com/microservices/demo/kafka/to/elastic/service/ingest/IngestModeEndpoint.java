@@ -0,0 +1,46 @@
+package com.microservices.demo.kafka.to.elastic.service.ingest;
+
+import com.microservices.demo.elastic.index.client.ingest.BulkIngestModeManager;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is the admin endpoint of the bulk ingest mode, GET /actuator/ingestmode shows the mode and
+ * POST /actuator/ingestmode with {"active": true} starts the ingest mode before a backfill, {"active": false} ends it.
+ * An ingest mode started here is not ended by the lag trigger.
+ */
+@Component
+@Endpoint(id = "ingestmode")
+@ConditionalOnProperty(name = "elastic-ingest-mode-config.enable-ingest-mode", havingValue = "true")
+public class IngestModeEndpoint {
+
+    private final BulkIngestModeManager bulkIngestModeManager;
+
+    public IngestModeEndpoint(BulkIngestModeManager bulkIngestModeManager) {
+        this.bulkIngestModeManager = bulkIngestModeManager;
+    }
+
+    @ReadOperation
+    public Map<String, Object> ingestMode() {
+        Map<String, Object> ingestMode = new LinkedHashMap<>();
+        ingestMode.put("active", bulkIngestModeManager.isActive());
+        ingestMode.put("manual", bulkIngestModeManager.isManual());
+        return ingestMode;
+    }
+
+    @WriteOperation
+    public Map<String, Object> changeIngestMode(boolean active) {
+        if (active) {
+            bulkIngestModeManager.enter(true);
+        } else {
+            bulkIngestModeManager.exit(true);
+        }
+        return ingestMode();
+    }
+}
@@ -0,0 +1,75 @@
+package com.microservices.demo.kafka.to.elastic.service.ingest;
+
+import com.microservices.demo.config.ElasticIngestModeConfigData;
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.elastic.index.client.ingest.BulkIngestModeManager;
+import com.microservices.demo.kafka.admin.model.KafkaLagEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class puts the index into the bulk ingest mode when the KafkaLagEvent of the lag monitor shows a lag per partition
+ * over enter-lag-per-partition in enter-checks checks in a row, a backfill is running then, and ends the ingest mode when
+ * the lag per partition is under exit-lag-per-partition again. Only the lag of the topic of this service is considered.
+ */
+@Component
+@ConditionalOnProperty(name = {"elastic-ingest-mode-config.enable-ingest-mode",
+        "elastic-ingest-mode-config.enable-lag-trigger"}, havingValue = "true")
+public class IngestModeLagTrigger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestModeLagTrigger.class);
+
+    private static final long DEFAULT_ENTER_LAG_PER_PARTITION = 100000;
+
+    private static final long DEFAULT_EXIT_LAG_PER_PARTITION = 1000;
+
+    private static final int DEFAULT_ENTER_CHECKS = 3;
+
+    private final BulkIngestModeManager bulkIngestModeManager;
+
+    private final String topicName;
+
+    private final long enterLagPerPartition;
+
+    private final long exitLagPerPartition;
+
+    private final int enterChecks;
+
+    private int checksOverThreshold;
+
+    public IngestModeLagTrigger(BulkIngestModeManager bulkIngestModeManager,
+                                KafkaConfigData kafkaConfigData,
+                                ElasticIngestModeConfigData elasticIngestModeConfigData) {
+        this.bulkIngestModeManager = bulkIngestModeManager;
+        this.topicName = kafkaConfigData.getTopicName();
+        this.enterLagPerPartition = elasticIngestModeConfigData.getEnterLagPerPartition() == null ?
+                DEFAULT_ENTER_LAG_PER_PARTITION : elasticIngestModeConfigData.getEnterLagPerPartition();
+        this.exitLagPerPartition = elasticIngestModeConfigData.getExitLagPerPartition() == null ?
+                DEFAULT_EXIT_LAG_PER_PARTITION : elasticIngestModeConfigData.getExitLagPerPartition();
+        this.enterChecks = elasticIngestModeConfigData.getEnterChecks() == null ?
+                DEFAULT_ENTER_CHECKS : elasticIngestModeConfigData.getEnterChecks();
+    }
+
+    @EventListener
+    public synchronized void onLagEvent(KafkaLagEvent lagEvent) {
+        if (!topicName.equals(lagEvent.getTopicName())) {
+            return;
+        }
+        long lagPerPartition = lagEvent.getLagPerPartition();
+        checksOverThreshold = lagPerPartition > enterLagPerPartition ? checksOverThreshold + 1 : 0;
+        try {
+            //entering again while in ingest mode also covers the indices created since the last check
+            if (checksOverThreshold >= enterChecks) {
+                bulkIngestModeManager.enter(false);
+            } else if (lagPerPartition < exitLagPerPartition) {
+                bulkIngestModeManager.exit(false);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not change the ingest mode at lag {} per partition of topic {}", lagPerPartition,
+                    topicName, e);
+        }
+    }
+}
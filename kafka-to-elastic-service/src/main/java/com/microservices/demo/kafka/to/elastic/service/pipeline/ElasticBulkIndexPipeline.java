@@ -0,0 +1,256 @@
+package com.microservices.demo.kafka.to.elastic.service.pipeline;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaToElasticServiceConfigData;
+import com.microservices.demo.elastic.index.client.processor.ElasticBulkProcessor;
+import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class decouple the kafka listener threads from the elasticsearch round trips. A poll batch is split into bulks of
+ * max-bulk-size-bytes and every bulk is sent on the bulk executor, the listener thread returns and polls the next batch while
+ * the bulks are still in flight. Only max-concurrent-bulks bulks can be in flight, the listener thread waits for a free slot
+ * before sending the next bulk, so a slow elasticsearch slows down the polling instead of filling the memory.
+ * The offsets of a batch are committed (Acknowledgment with MANUAL ack mode) only after all of its bulks and all the batches
+ * polled before it on the same listener thread are indexed, so the committed offsets never pass a document which is not in
+ * elasticsearch. When a bulk fails the following batches are not acknowledged either and the next poll of the listener thread
+ * seeks back to the first offsets which are not committed, the documents are indexed with their id so indexing them again
+ * only overwrites them.
+ * When the ElasticBulkProcessor of elastic-bulk-config is enabled the documents are given to it instead, it collects the
+ * documents of many polls into one bulk and the batch is acknowledged when the bulks holding its documents are flushed.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka-to-elastic-service.enable-pipelined-indexing", havingValue = "true")
+public class ElasticBulkIndexPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElasticBulkIndexPipeline.class);
+
+    private static final int DEFAULT_MAX_CONCURRENT_BULKS = 4;
+
+    private static final long DEFAULT_MAX_BULK_SIZE_BYTES = 5 * 1024 * 1024;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final KafkaToElasticServiceConfigData kafkaToElasticServiceConfigData;
+
+    private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
+
+    private final ElasticBulkProcessor<TwitterIndexModel> elasticBulkProcessor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String topicName;
+
+    //the batches of a listener thread are acknowledged in order, every listener thread (consumer) has its own chain
+    private final ThreadLocal<ListenerPipeline> listenerPipelines = ThreadLocal.withInitial(ListenerPipeline::new);
+
+    private Semaphore inFlightBulks;
+
+    private ExecutorService bulkExecutor;
+
+    private long maxBulkSizeBytes;
+
+    public ElasticBulkIndexPipeline(KafkaToElasticServiceConfigData kafkaToElasticServiceConfigData,
+                                    KafkaConfigData kafkaConfigData,
+                                    ElasticIndexClient<TwitterIndexModel> elasticIndexClient,
+                                    ObjectProvider<ElasticBulkProcessor<TwitterIndexModel>> elasticBulkProcessor,
+                                    MeterRegistry meterRegistry) {
+        this.kafkaToElasticServiceConfigData = kafkaToElasticServiceConfigData;
+        this.elasticIndexClient = elasticIndexClient;
+        this.elasticBulkProcessor = elasticBulkProcessor.getIfAvailable();
+        this.meterRegistry = meterRegistry;
+        this.topicName = kafkaConfigData.getTopicName();
+    }
+
+    @PostConstruct
+    public void start() {
+        Integer maxConcurrentBulks = kafkaToElasticServiceConfigData.getMaxConcurrentBulks();
+        int numOfBulks = maxConcurrentBulks == null || maxConcurrentBulks <= 0 ?
+                DEFAULT_MAX_CONCURRENT_BULKS : maxConcurrentBulks;
+        Long maxBulkSize = kafkaToElasticServiceConfigData.getMaxBulkSizeBytes();
+        maxBulkSizeBytes = maxBulkSize == null || maxBulkSize <= 0 ? DEFAULT_MAX_BULK_SIZE_BYTES : maxBulkSize;
+        inFlightBulks = new Semaphore(numOfBulks);
+        bulkExecutor = Executors.newFixedThreadPool(numOfBulks, new CustomizableThreadFactory("elastic-bulk-"));
+        Gauge.builder("elastic.bulk.in.flight", inFlightBulks, semaphore -> numOfBulks - semaphore.availablePermits())
+                .description("Number of bulk requests sent to elasticsearch and not completed yet")
+                .register(meterRegistry);
+        LOG.info("Pipelined indexing started with {} concurrent bulks of max {} bytes", numOfBulks, maxBulkSizeBytes);
+    }
+
+    /**
+     * Wait for the bulks in flight, the acknowledgments of the completed batches are committed by the containers.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (bulkExecutor != null) {
+            bulkExecutor.shutdown();
+            if (!bulkExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Bulks still in flight after {} ms, they will be indexed again after restart", SHUTDOWN_TIMEOUT_MS);
+                bulkExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Called on the kafka listener thread with the documents of a poll batch, returns when all bulks of the batch are sent.
+     * @param documents documents of the batch
+     * @param partitions partition of each record of the batch
+     * @param offsets offset of each record of the batch
+     * @param acknowledgment acknowledgment of the batch, called when the batch and the previous batches are indexed
+     * @param consumer consumer of the listener thread, used to seek back after a failed bulk
+     */
+    public void index(List<TwitterIndexModel> documents,
+                      List<Integer> partitions,
+                      List<Long> offsets,
+                      Acknowledgment acknowledgment,
+                      Consumer<?, ?> consumer) {
+        ListenerPipeline pipeline = listenerPipelines.get();
+        Map<Integer, Long> firstOffsets = getFirstOffsets(partitions, offsets);
+        if (pipeline.failed) {
+            rewind(pipeline, firstOffsets, consumer);
+            return;
+        }
+        PendingBatch batch = new PendingBatch(firstOffsets);
+        if (elasticBulkProcessor != null) {
+            //the documents are collected with the documents of other polls and flushed by elastic-bulk-config limits
+            batch.bulks = elasticBulkProcessor.add(documents);
+        } else {
+            List<CompletableFuture<Void>> bulks = new ArrayList<>();
+            for (List<TwitterIndexModel> bulk : splitBySize(documents)) {
+                bulks.add(submitBulk(bulk));
+            }
+            batch.bulks = CompletableFuture.allOf(bulks.toArray(new CompletableFuture<?>[0]));
+        }
+        pipeline.pendingBatches.add(batch);
+        pipeline.lastBatch = pipeline.lastBatch
+                .thenCompose(previous -> batch.bulks)
+                .thenRun(() -> {
+                    acknowledgment.acknowledge();
+                    pipeline.pendingBatches.remove(batch);
+                });
+        pipeline.lastBatch.whenComplete((result, e) -> {
+            if (e != null) {
+                pipeline.failed = true;
+            }
+        });
+    }
+
+    private CompletableFuture<Void> submitBulk(List<TwitterIndexModel> bulk) {
+        try {
+            inFlightBulks.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Void> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
+        }
+        CompletableFuture<Void> future;
+        try {
+            future = CompletableFuture.runAsync(() -> elasticIndexClient.save(bulk), bulkExecutor);
+        } catch (RejectedExecutionException e) {
+            inFlightBulks.release();
+            throw e;
+        }
+        future.whenComplete((result, e) -> {
+            inFlightBulks.release();
+            if (e != null) {
+                LOG.error("Bulk of {} documents could not be indexed, the batch will be polled again", bulk.size(), e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Wait for the bulks still in flight and seek every assigned partition to the first offset which was not acknowledged,
+     * the current batch is dropped as it is polled again after the seek.
+     */
+    private void rewind(ListenerPipeline pipeline, Map<Integer, Long> firstOffsets, Consumer<?, ?> consumer) {
+        for (PendingBatch pendingBatch : pipeline.pendingBatches) {
+            pendingBatch.bulks.handle((result, e) -> null).join();
+        }
+        pipeline.lastBatch.handle((result, e) -> null).join();
+        Map<Integer, Long> seekOffsets = new HashMap<>(firstOffsets);
+        for (PendingBatch pendingBatch : pipeline.pendingBatches) {
+            pendingBatch.firstOffsets.forEach((partition, offset) -> seekOffsets.merge(partition, offset, Math::min));
+        }
+        seekOffsets.forEach((partition, offset) -> {
+            TopicPartition topicPartition = new TopicPartition(topicName, partition);
+            if (consumer.assignment().contains(topicPartition)) {
+                LOG.warn("Seeking partition {} back to offset {} to index the failed batches again", topicPartition, offset);
+                consumer.seek(topicPartition, offset);
+            }
+        });
+        pipeline.pendingBatches.clear();
+        pipeline.lastBatch = CompletableFuture.completedFuture(null);
+        pipeline.failed = false;
+    }
+
+    private List<List<TwitterIndexModel>> splitBySize(List<TwitterIndexModel> documents) {
+        List<List<TwitterIndexModel>> bulks = new ArrayList<>();
+        List<TwitterIndexModel> bulk = new ArrayList<>();
+        long bulkSize = 0;
+        for (TwitterIndexModel document : documents) {
+            long documentSize = document.estimateSizeBytes();
+            if (!bulk.isEmpty() && bulkSize + documentSize > maxBulkSizeBytes) {
+                bulks.add(bulk);
+                bulk = new ArrayList<>();
+                bulkSize = 0;
+            }
+            bulk.add(document);
+            bulkSize += documentSize;
+        }
+        if (!bulk.isEmpty()) {
+            bulks.add(bulk);
+        }
+        return bulks;
+    }
+
+    private static Map<Integer, Long> getFirstOffsets(List<Integer> partitions, List<Long> offsets) {
+        Map<Integer, Long> firstOffsets = new HashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            firstOffsets.merge(partitions.get(i), offsets.get(i), Math::min);
+        }
+        return firstOffsets;
+    }
+
+    private static class ListenerPipeline {
+        private final Queue<PendingBatch> pendingBatches = new ConcurrentLinkedQueue<>();
+        private volatile CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+        private volatile boolean failed;
+    }
+
+    private static class PendingBatch {
+        private final Map<Integer, Long> firstOffsets;
+        private CompletableFuture<Void> bulks;
+
+        private PendingBatch(Map<Integer, Long> firstOffsets) {
+            this.firstOffsets = firstOffsets;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.microservices.demo.kafka.to.elastic.service.transformer;
+
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reverse of AvroToElasticModelTransformer, the index model has all the fields of the avro model so the original record can
+ * be written again, e.g. to the dead letter topic.
+ */
+@Component
+public class ElasticToAvroModelTransformer {
+
+  public TwitterAvroModel getAvroModel(TwitterIndexModel indexModel) {
+    return TwitterAvroModel
+        .newBuilder()
+        .setId(Long.parseLong(indexModel.getId()))
+        .setUserId(Long.parseLong(indexModel.getUserId()))
+        .setText(indexModel.getText())
+        .setCreatedAt(indexModel.getCreatedAt() == null ? null : indexModel.getCreatedAt().toInstant().toEpochMilli())
+        .build();
+  }
+
+}
@@ -0,0 +1,196 @@
+package com.microservices.demo.kafka.to.elastic.service.direct;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.demo.config.ElasticConfigData;
+import com.microservices.demo.config.ElasticIndexLifecycleConfigData;
+import com.microservices.demo.elastic.index.client.lifecycle.RollingIndexNameResolver;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TwitterBulkNdjsonEncoderTest {
+
+    private static final String INDEX_NAME = "twitter-index";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final MappingElasticsearchConverter converter =
+            new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+
+    @Test
+    public void sourceIsSameAsSpringDataMappingInEveryZone() throws IOException {
+        List<TwitterAvroModel> messages = Arrays.asList(
+                tweet(1L, 10L, "plain text", "2022-01-31T14:00:00Z"),
+                //last second before and first second after the start and the end of summer time in Europe
+                tweet(2L, 11L, "before spring", "2022-03-27T00:59:59Z"),
+                tweet(3L, 12L, "after spring", "2022-03-27T01:00:00Z"),
+                tweet(4L, 13L, "before autumn", "2022-10-30T00:59:59Z"),
+                tweet(5L, 14L, "after autumn", "2022-10-30T01:00:00Z"),
+                //back in time and over a day boundary of every zone
+                tweet(6L, 15L, "older", "2021-12-31T23:59:59Z"),
+                tweet(7L, 16L, "before epoch", "1969-12-31T23:59:59Z"),
+                tweet(Long.MAX_VALUE, Long.MIN_VALUE, "", "2022-01-31T14:00:00.999Z"));
+        for (String zone : Arrays.asList("UTC", "Europe/Berlin", "America/New_York", "Asia/Kolkata",
+                "America/St_Johns", "Australia/Lord_Howe")) {
+            ZoneId zoneId = ZoneId.of(zone);
+            List<String> lines = encode(new TwitterBulkNdjsonEncoder(INDEX_NAME, null, zoneId), messages);
+
+            assertThat(lines).hasSize(2 * messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                TwitterAvroModel message = messages.get(i);
+                assertThat(objectMapper.readTree(lines.get(2 * i)))
+                        .isEqualTo(objectMapper.readTree("{\"index\":{\"_index\":\"" + INDEX_NAME + "\",\"_id\":\"" +
+                                message.getId() + "\"}}"));
+                assertThat(objectMapper.readTree(lines.get(2 * i + 1)))
+                        .as("%s in %s", Instant.ofEpochMilli(message.getCreatedAt()), zone)
+                        .isEqualTo(springDataSource(message, zoneId));
+            }
+        }
+    }
+
+    @Test
+    public void escapesQuotesBackslashesAndControlCharacters() throws IOException {
+        String text = "say \"hi\" \\ back\n\r\t\b\f\u0000\u001f end";
+
+        String line = encode(new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.of("UTC")),
+                Collections.singletonList(tweet(1L, 2L, text, "2022-01-31T14:00:00Z"))).get(1);
+
+        assertThat(line).contains("\"text\":\"say \\\"hi\\\" \\\\ back\\n\\r\\t\\b\\f\\u0000\\u001f end\"");
+        assertThat(objectMapper.readTree(line).path("text").asText()).isEqualTo(text);
+    }
+
+    @Test
+    public void encodesTextAsUtf8WithSurrogatePairs() throws IOException {
+        //2, 3 and 4 (surrogate pair) bytes per code point
+        String text = "gr\u00fc\u00dfe \u20ac \uD83D\uDE00 \uD834\uDD1E";
+        TwitterBulkNdjsonEncoder encoder = new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.of("UTC"));
+
+        BulkNdjsonBuffer buffer = encoder.encode(
+                Collections.singletonList(tweet(1L, 2L, text, "2022-01-31T14:00:00Z")));
+        String body = new String(buffer.getBytes(), 0, buffer.size(), StandardCharsets.UTF_8);
+
+        assertThat(body).contains("\"text\":\"" + text + "\"");
+        assertThat(objectMapper.readTree(body.split("\n")[1]).path("text").asText()).isEqualTo(text);
+    }
+
+    @Test
+    public void replacesBrokenSurrogatesLikeStringGetBytes() {
+        String text = "a\uD83Db\uDE00c\uD83D";
+
+        String line = encode(new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.of("UTC")),
+                Collections.singletonList(tweet(1L, 2L, text, "2022-01-31T14:00:00Z"))).get(1);
+
+        assertThat(line).contains("\"text\":\"" + new String(text.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8) + "\"");
+        assertThat(line).contains("\"text\":\"a?b?c?\"");
+    }
+
+    @Test
+    public void writesNullForMissingTextAndCreatedAt() throws IOException {
+        TwitterAvroModel message = TwitterAvroModel.newBuilder()
+                .setId(1L)
+                .setUserId(2L)
+                .setText(null)
+                .setCreatedAt(null)
+                .build();
+
+        String line = encode(new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.of("UTC")),
+                Collections.singletonList(message)).get(1);
+
+        assertThat(objectMapper.readTree(line)).isEqualTo(objectMapper.readTree(
+                "{\"id\":\"1\",\"userId\":\"2\",\"text\":null,\"createdAt\":null}"));
+    }
+
+    @Test
+    public void actionLineNamesBucketOfCreatedAt() throws IOException {
+        ElasticConfigData elasticConfigData = new ElasticConfigData();
+        elasticConfigData.setIndexName(INDEX_NAME);
+        ElasticIndexLifecycleConfigData lifecycleConfigData = new ElasticIndexLifecycleConfigData();
+        lifecycleConfigData.setBucket("daily");
+        RollingIndexNameResolver resolver = new RollingIndexNameResolver(elasticConfigData, lifecycleConfigData);
+        TwitterBulkNdjsonEncoder encoder = new TwitterBulkNdjsonEncoder(resolver.getWriteAlias(), resolver,
+                ZoneId.of("UTC"));
+        TwitterAvroModel withoutCreatedAt = TwitterAvroModel.newBuilder().setId(3L).setUserId(2L).setText("x")
+                .setCreatedAt(null).build();
+
+        List<String> lines = encode(encoder, Arrays.asList(
+                tweet(1L, 2L, "x", "2022-01-30T23:59:59Z"),
+                tweet(2L, 2L, "x", "2022-01-31T00:00:00Z"),
+                withoutCreatedAt));
+
+        assertThat(objectMapper.readTree(lines.get(0)).path("index").path("_index").asText())
+                .isEqualTo("twitter-index-2022.01.30");
+        assertThat(objectMapper.readTree(lines.get(2)).path("index").path("_index").asText())
+                .isEqualTo("twitter-index-2022.01.31");
+        assertThat(objectMapper.readTree(lines.get(4)).path("index").path("_index").asText())
+                .isEqualTo(resolver.getWriteAlias());
+    }
+
+    @Test
+    public void bufferIsReusedForNextBatch() {
+        TwitterBulkNdjsonEncoder encoder = new TwitterBulkNdjsonEncoder(INDEX_NAME, null, ZoneId.of("UTC"));
+        List<TwitterAvroModel> batch = new ArrayList<>();
+        for (long id = 0; id < 1000; id++) {
+            batch.add(tweet(id, id, "a text long enough to grow the buffer over its initial capacity of 64 kB",
+                    "2022-01-31T14:00:00Z"));
+        }
+
+        BulkNdjsonBuffer first = encoder.encode(batch);
+        byte[] firstBytes = first.getBytes();
+        List<String> lines = encode(encoder, Collections.singletonList(tweet(1L, 2L, "x", "2022-01-31T14:00:00Z")));
+
+        assertThat(lines).hasSize(2);
+        assertThat(encoder.encode(batch).getBytes()).isSameAs(firstBytes);
+    }
+
+    private List<String> encode(TwitterBulkNdjsonEncoder encoder, List<TwitterAvroModel> messages) {
+        BulkNdjsonBuffer buffer = encoder.encode(messages);
+        String body = new String(buffer.getBytes(), 0, buffer.size(), StandardCharsets.UTF_8);
+        assertThat(body).endsWith("\n");
+        return Arrays.asList(body.split("\n"));
+    }
+
+    /**
+     * The source of the document as the index client writes it: TwitterIndexModel of AvroToElasticModelTransformer
+     * mapped by spring data, without the _class field which the encoder leaves out.
+     */
+    private JsonNode springDataSource(TwitterAvroModel message, ZoneId zoneId) throws IOException {
+        TwitterIndexModel twitterIndexModel = TwitterIndexModel.builder()
+                .id(String.valueOf(message.getId()))
+                .userId(String.valueOf(message.getUserId()))
+                .text(message.getText())
+                .createdAt(ZonedDateTime.ofInstant(Instant.ofEpochMilli(message.getCreatedAt()), zoneId))
+                .build();
+        Document document = Document.create();
+        converter.write(twitterIndexModel, document);
+        ObjectNode source = (ObjectNode) objectMapper.readTree(document.toJson());
+        source.remove("_class");
+        return source;
+    }
+
+    private static TwitterAvroModel tweet(long id, long userId, String text, String createdAt) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(userId)
+                .setText(text)
+                .setCreatedAt(Instant.parse(createdAt).toEpochMilli())
+                .build();
+    }
+}
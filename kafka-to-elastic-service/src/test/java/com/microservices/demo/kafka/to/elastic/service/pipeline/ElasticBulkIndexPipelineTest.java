@@ -0,0 +1,197 @@
+package com.microservices.demo.kafka.to.elastic.service.pipeline;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaToElasticServiceConfigData;
+import com.microservices.demo.elastic.index.client.model.BulkOutcome;
+import com.microservices.demo.elastic.index.client.processor.ElasticBulkProcessor;
+import com.microservices.demo.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.demo.elastic.model.index.impl.TwitterIndexModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.ResolvableType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElasticBulkIndexPipelineTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private final GatedIndexClient elasticIndexClient = new GatedIndexClient();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MockConsumer<Long, Object> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    private final List<Integer> acknowledgedBatches = new CopyOnWriteArrayList<>();
+
+    private ElasticBulkIndexPipeline pipeline;
+
+    @AfterEach
+    public void stopPipeline() throws InterruptedException {
+        elasticIndexClient.gates.values().forEach(CountDownLatch::countDown);
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void acknowledgesBatchesInPollOrder() throws InterruptedException {
+        pipeline = pipeline(4, 1024 * 1024);
+        CountDownLatch firstBatchGate = elasticIndexClient.block("0");
+
+        index(1, 0, 2);
+        index(2, 2, 2);
+
+        waitUntil(() -> elasticIndexClient.indexedIds.containsAll(List.of("2", "3")));
+        Thread.sleep(100);
+        assertThat(acknowledgedBatches).isEmpty();
+
+        firstBatchGate.countDown();
+        waitUntil(() -> acknowledgedBatches.size() == 2);
+        assertThat(acknowledgedBatches).containsExactly(1, 2);
+    }
+
+    @Test
+    public void waitsForAFreeSlotWhenMaxBulksAreInFlight() throws InterruptedException {
+        //every document is a bulk of its own
+        pipeline = pipeline(2, 1);
+        CountDownLatch gate = elasticIndexClient.block("0", "1", "2");
+        Thread listener = new Thread(() -> index(1, 0, 3));
+        listener.start();
+
+        waitUntil(() -> meterRegistry.get("elastic.bulk.in.flight").gauge().value() == 2);
+        Thread.sleep(100);
+        assertThat(listener.isAlive()).isTrue();
+        assertThat(elasticIndexClient.indexedIds).isEmpty();
+
+        gate.countDown();
+        listener.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertThat(listener.isAlive()).isFalse();
+        waitUntil(() -> acknowledgedBatches.size() == 1);
+        assertThat(elasticIndexClient.indexedIds).containsExactlyInAnyOrder("0", "1", "2");
+    }
+
+    @Test
+    public void seeksBackToTheFirstBatchWhichIsNotAcknowledged() throws InterruptedException {
+        pipeline = pipeline(4, 1024 * 1024);
+        consumer.assign(Collections.singletonList(PARTITION));
+        elasticIndexClient.failingIds.add("2");
+
+        index(1, 0, 2);
+        index(2, 2, 2);
+        waitUntil(() -> acknowledgedBatches.size() == 1);
+        Thread.sleep(100);
+
+        //the batch polled after the failure is not indexed, the consumer is sent back to the failed batch
+        index(3, 4, 2);
+        assertThat(consumer.position(PARTITION)).isEqualTo(2);
+        assertThat(elasticIndexClient.indexedIds).containsExactly("0", "1");
+        assertThat(acknowledgedBatches).containsExactly(1);
+
+        elasticIndexClient.failingIds.clear();
+        index(2, 2, 2);
+        waitUntil(() -> acknowledgedBatches.size() == 2);
+        assertThat(acknowledgedBatches).containsExactly(1, 2);
+    }
+
+    private ElasticBulkIndexPipeline pipeline(int maxConcurrentBulks, long maxBulkSizeBytes) {
+        KafkaToElasticServiceConfigData kafkaToElasticServiceConfigData = new KafkaToElasticServiceConfigData();
+        kafkaToElasticServiceConfigData.setMaxConcurrentBulks(maxConcurrentBulks);
+        kafkaToElasticServiceConfigData.setMaxBulkSizeBytes(maxBulkSizeBytes);
+        KafkaConfigData kafkaConfigData = new KafkaConfigData();
+        kafkaConfigData.setTopicName(TOPIC);
+        ObjectProvider<ElasticBulkProcessor<TwitterIndexModel>> elasticBulkProcessor =
+                new StaticListableBeanFactory().getBeanProvider(
+                        ResolvableType.forClassWithGenerics(ElasticBulkProcessor.class, TwitterIndexModel.class));
+        ElasticBulkIndexPipeline indexPipeline = new ElasticBulkIndexPipeline(kafkaToElasticServiceConfigData,
+                kafkaConfigData, elasticIndexClient, elasticBulkProcessor, meterRegistry);
+        indexPipeline.start();
+        return indexPipeline;
+    }
+
+    /**
+     * Index a poll batch of partition 0 whose document ids are the offsets.
+     */
+    private void index(int batch, long firstOffset, int count) {
+        List<TwitterIndexModel> documents = new ArrayList<>();
+        List<Integer> partitions = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = firstOffset; offset < firstOffset + count; offset++) {
+            documents.add(TwitterIndexModel.builder().id(String.valueOf(offset)).userId("1").text("text").build());
+            partitions.add(PARTITION.partition());
+            offsets.add(offset);
+        }
+        pipeline.index(documents, partitions, offsets, () -> acknowledgedBatches.add(batch), consumer);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A bulk with a blocked document id waits for its gate, a bulk with a failing document id throws like the index
+     * client does when documents are lost.
+     */
+    private static class GatedIndexClient implements ElasticIndexClient<TwitterIndexModel> {
+
+        private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+
+        private final Set<String> failingIds = ConcurrentHashMap.newKeySet();
+
+        private final List<String> indexedIds = new CopyOnWriteArrayList<>();
+
+        CountDownLatch block(String... ids) {
+            CountDownLatch gate = new CountDownLatch(1);
+            for (String id : ids) {
+                gates.put(id, gate);
+            }
+            return gate;
+        }
+
+        @Override
+        public BulkOutcome<TwitterIndexModel> save(List<TwitterIndexModel> documents) {
+            List<String> ids = new ArrayList<>();
+            for (TwitterIndexModel document : documents) {
+                CountDownLatch gate = gates.get(document.getId());
+                if (gate != null) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (failingIds.contains(document.getId())) {
+                    throw new IllegalStateException("Document " + document.getId() + " could not be indexed");
+                }
+                ids.add(document.getId());
+            }
+            indexedIds.addAll(ids);
+            return new BulkOutcome<>(ids, Collections.emptyList(), 1);
+        }
+    }
+}
@@ -3,45 +3,60 @@ package com.microservices.demo.kafka.admin.client;
 import com.microservices.demo.config.KafkaConfigData;
 import com.microservices.demo.config.RetryConfigData;
 import com.microservices.demo.kafka.admin.exception.KafkaClientException;
+import com.microservices.demo.kafka.admin.model.KafkaReadinessReport;
 import org.apache.kafka.clients.admin.AdminClient;
-import org.apache.kafka.clients.admin.CreateTopicsResult;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.NewPartitions;
 import org.apache.kafka.clients.admin.NewTopic;
-import org.apache.kafka.clients.admin.TopicListing;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.retry.RetryContext;
-import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import java.util.Collection;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * This class is main class of this module work wise, and will perform below operations
- * 1. Check constantly if topic exist or not with retry mechanism ( keep oin mind no retryTemplate used here manual using loop we are checking)
- * 2. Create new topics with retry template
- * 3. Check schema registry server is up and running or not, and use loop for retrying based on HTTPStatus got from the calling schema registry URL through
- * WebClient bean in async mode.
+ * 1. Check if the configured topics exist with the configured partitions, with retry mechanism (a different replication
+ *    factor is only logged)
+ * 2. Create the missing topics
+ * 3. Check schema registry server is up and running or not through WebClient bean in async mode
+ * The checks are done with the async admin client and WebClient, checkReadinessAsync runs all of them at the same time and
+ * returns a CompletableFuture, the blocking methods used by the services at startup just wait for it.
  */
 @Component
 public class KafkaAdminClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaAdminClient.class);
 
+    private static final Duration SCHEMA_REGISTRY_TIMEOUT = Duration.ofSeconds(10);
+
     private final KafkaConfigData kafkaConfigData;
 
     private final RetryConfigData retryConfigData;
 
     private final AdminClient adminClient;
 
-    private final RetryTemplate retryTemplate;
-
     private final WebClient webClient;
 
     /**
@@ -49,172 +64,321 @@ public class KafkaAdminClient {
      * @param config
      * @param retryConfigData
      * @param client
-     * @param template
      * @param webClient
      */
     public KafkaAdminClient(KafkaConfigData config,
                             RetryConfigData retryConfigData,
                             AdminClient client,
-                            RetryTemplate template,
                             WebClient webClient) {
         this.kafkaConfigData = config;
         this.retryConfigData = retryConfigData;
         this.adminClient = client;
-        this.retryTemplate = template;
         this.webClient=webClient;
     }
 
 
     /**
-     * This method will simple create the topics if does not exist with retry logic and for that it will use
-     * the spring retry template.
+     * This method creates the configured topics if they don't exist and waits until all of them are ready with the
+     * configured partitions.
      */
     public void createTopics() {
-        CreateTopicsResult createTopicsResult;
-        try {
-            createTopicsResult = retryTemplate.execute(this::doCreateTopics);
-        } catch (Throwable t) {
-            throw new KafkaClientException("Reached max number of retry for creating kafka topic(s) !",t);
-        }
+        checkReadiness(true, false);
+    }
 
+    /**
+     * This method creates the given topics if they don't exist, for the topics which are only used when a feature is
+     * enabled and so are not in topic-names-to-create.
+     * @param topicNames
+     */
+    public void createTopics(List<String> topicNames) {
+        await(withRetry("creating kafka topic(s) " + topicNames, attempt -> describeTopics(topicNames, true)));
     }
 
     /**
-     * This method will check whether topics are created or not if not then it will wait for few moment
-     * and then will check again and this process will continue in infinite loop and will break in two cases
-     * either topics are created or number of retry is exhausted.
-     * As of now not using in this class or outside this class.
+     * This method waits until the configured topics are created (by another service) with the configured partitions,
+     * or the number of retries is exhausted.
      */
     public void checkTopicsCreated() {
-        Collection<TopicListing> topics=getTopics();
-        int retryCount=1;
-        Integer maxRetry=retryConfigData.getMaxAttempts();
-        Integer multiplier=retryConfigData.getMultiplier().intValue();
-        Long sleepTimeMs=retryConfigData.getSleepTimeMs();
-        for(String topic: kafkaConfigData.getTopicNamesToCreate()){
-            while(!isTopicCreated(topics,topic)){
-                checkMaxRetry(retryCount++, maxRetry);
-                sleep(sleepTimeMs);
-                sleepTimeMs *=multiplier;
-                topics=getTopics();
-            }
-        }
+        checkReadiness(false, false);
     }
 
     /**
      * This method will check whether schema registry server is up and running or not as we
-     * will use avro data format in our program. and for that it will continue to check in infinite loop
-     * which will end when schema registry server will come up or number of retries exhausted.
+     * will use avro data format in our program, retrying until it is up or the number of retries is exhausted.
      */
-    public void checkSchemaRegistry(){
-        int retryCount=1;
-        Integer maxRetry=retryConfigData.getMaxAttempts();
-        Integer multiplier=retryConfigData.getMultiplier().intValue();
-        Long sleepTimeMs=retryConfigData.getSleepTimeMs();
-        while(!getSchemaRegistryStatus().is2xxSuccessful()){
-            checkMaxRetry(retryCount++, maxRetry);
-            sleep(sleepTimeMs);
-            sleepTimeMs *=multiplier;
-        }
+    public void checkSchemaRegistry() {
+        await(checkSchemaRegistryAsync());
     }
 
     /**
-     * This method will actually perform a REST API call to our schema registry server URL
-     * using WebClient in sync mode and based on the response we will decide server is up or not.
-     * @return HttpStatusCode
+     * Blocking version of checkReadinessAsync, for the services which can not start before kafka is ready.
+     * @param createMissingTopics
+     * @param checkSchemaRegistry
+     * @return readiness report with the timing of the checks
      */
-    private HttpStatus getSchemaRegistryStatus() {
-        try {
+    public KafkaReadinessReport checkReadiness(boolean createMissingTopics, boolean checkSchemaRegistry) {
+        KafkaReadinessReport report = await(checkReadinessAsync(createMissingTopics, checkSchemaRegistry));
+        LOG.info("Kafka is ready, {}", report);
+        return report;
+    }
+
+    /**
+     * Check the configured topics and the schema registry at the same time without blocking the calling thread.
+     * Only the configured topics are described (and created if missing and createMissingTopics is true), all of them
+     * in parallel, and each must have at least the configured number of partitions. A different replication factor is only
+     * logged as warning, e.g. a topic created with a single replica on a local broker still works.
+     * Failed checks are retried with exponential backoff on a delayed executor, a too low partition count is not retried.
+     * @param createMissingTopics
+     * @param checkSchemaRegistry
+     * @return future of the readiness report, completed exceptionally with KafkaClientException if kafka is not ready
+     */
+    public CompletableFuture<KafkaReadinessReport> checkReadinessAsync(boolean createMissingTopics, boolean checkSchemaRegistry) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<Long> schemaRegistryMs = checkSchemaRegistry ?
+                checkSchemaRegistryAsync().thenApply(status -> elapsedMs(startNanos)) :
+                CompletableFuture.completedFuture(-1L);
+        CompletableFuture<Map<String, TopicDescription>> topics = checkTopicsAsync(createMissingTopics);
+        CompletableFuture<Long> topicsMs = topics.thenApply(descriptions -> elapsedMs(startNanos));
+        return CompletableFuture.allOf(topicsMs, schemaRegistryMs).thenApply(done ->
+                new KafkaReadinessReport(topics.join(), topicsMs.join(), schemaRegistryMs.join(), elapsedMs(startNanos)));
+    }
+
+    /**
+     * Describe the configured topics in parallel, create the missing ones if createMissingTopics is true and verify the
+     * partition count.
+     * @param createMissingTopics
+     * @return future of the topic descriptions by topic name
+     */
+    public CompletableFuture<Map<String, TopicDescription>> checkTopicsAsync(boolean createMissingTopics) {
+        List<String> topicNames = kafkaConfigData.getTopicNamesToCreate().stream()
+                .map(String::trim)
+                .collect(Collectors.toList());
+        return withRetry("checking kafka topic(s) " + topicNames, attempt -> {
+            LOG.info("Checking {} topic(s), attempt {}", topicNames.size(), attempt);
+            return describeTopics(topicNames, createMissingTopics);
+        });
+    }
+
+    /**
+     * Check the schema registry with the non blocking WebClient, retried until it returns a 2xx status. When the avro
+     * records are serialized with the offline schema id the registry is not needed and not checked.
+     * @return future of the status returned by the schema registry
+     */
+    public CompletableFuture<HttpStatus> checkSchemaRegistryAsync() {
+        if (null != kafkaConfigData.getOfflineAvroSchemaId()) {
+            LOG.info("Offline avro schema id {} is configured, schema registry is not checked",
+                    kafkaConfigData.getOfflineAvroSchemaId());
+            return CompletableFuture.completedFuture(HttpStatus.OK);
+        }
+        return withRetry("checking schema registry", attempt -> {
+            LOG.info("Checking schema registry {}, attempt {}", kafkaConfigData.getSchemaRegistryUrl(), attempt);
             return webClient
                     .method(HttpMethod.GET)
                     .uri(kafkaConfigData.getSchemaRegistryUrl())
-                    .exchange()
-                    .map(ClientResponse::statusCode)
-                    .block();
-        } catch (Exception e) {
-            return HttpStatus.SERVICE_UNAVAILABLE;
-        }
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                    .timeout(SCHEMA_REGISTRY_TIMEOUT)
+                    .toFuture()
+                    .thenApply(status -> {
+                        if (!status.is2xxSuccessful()) {
+                            throw new CompletionException(new IllegalStateException("Schema registry returned " + status));
+                        }
+                        return status;
+                    });
+        });
     }
 
-
     /**
-     * This method simply make the current thread sleep for passed sleep time in ms as parameter.
-     * @param sleepTimeMs
+     * Get the lag of the consumer group on every partition of the topic, the difference of the end offset and the committed
+     * offset of the group. For a partition without committed offset the lag is counted from the beginning of the partition.
+     * @param consumerGroupId
+     * @param topicName
+     * @return future of the lag by partition number
      */
-    public void sleep(Long sleepTimeMs){
-        try {
-            Thread.sleep(sleepTimeMs);
-        } catch (InterruptedException e) {
-            throw new KafkaClientException("Error while sleeping for waiting new created topics !!");
-        }
+    public CompletableFuture<Map<Integer, Long>> getConsumerLagAsync(String consumerGroupId, String topicName) {
+        CompletableFuture<Map<TopicPartition, OffsetAndMetadata>> committedOffsets = toCompletableFuture(
+                adminClient.listConsumerGroupOffsets(consumerGroupId).partitionsToOffsetAndMetadata());
+        return describeTopic(topicName).thenCompose(description -> {
+            Map<TopicPartition, OffsetSpec> latest = new LinkedHashMap<>();
+            Map<TopicPartition, OffsetSpec> earliest = new LinkedHashMap<>();
+            for (TopicPartitionInfo partitionInfo : description.partitions()) {
+                TopicPartition topicPartition = new TopicPartition(topicName, partitionInfo.partition());
+                latest.put(topicPartition, OffsetSpec.latest());
+                earliest.put(topicPartition, OffsetSpec.earliest());
+            }
+            CompletableFuture<Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo>> endOffsets =
+                    toCompletableFuture(adminClient.listOffsets(latest).all());
+            CompletableFuture<Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo>> beginningOffsets =
+                    toCompletableFuture(adminClient.listOffsets(earliest).all());
+            return CompletableFuture.allOf(committedOffsets, endOffsets, beginningOffsets).thenApply(done -> {
+                Map<Integer, Long> lagByPartition = new TreeMap<>();
+                endOffsets.join().forEach((topicPartition, endOffset) -> {
+                    OffsetAndMetadata committed = committedOffsets.join().get(topicPartition);
+                    long consumedOffset = committed == null ?
+                            beginningOffsets.join().get(topicPartition).offset() : committed.offset();
+                    lagByPartition.put(topicPartition.partition(), Math.max(0, endOffset.offset() - consumedOffset));
+                });
+                return lagByPartition;
+            });
+        });
     }
 
     /**
-     * This method takes two input retry and maxRetry and simple check the current retry number is less than total number of retries and if not throw exception.
-     * @param retry
-     * @param maxRetry
+     * Get the current number of partitions of the topic, it can grow at runtime when KafkaLagMonitor adds partitions.
+     * @param topicName
+     * @return future of the partition count
      */
-    public void checkMaxRetry(int retry, Integer maxRetry) {
-        if(retry > maxRetry)
-            throw new KafkaClientException("Reached max number of retry for creating kafka topic(s) !");
+    public CompletableFuture<Integer> getPartitionCountAsync(String topicName) {
+        return describeTopic(topicName).thenApply(description -> description.partitions().size());
     }
 
     /**
-     * This method takes two input list of created topics and current topic name that needs to check whether it is created or not.
-     * Based on the code we will return true or false
-     * @param topics
+     * Increase the number of partitions of the topic, kafka can only add partitions so a lower count is ignored.
      * @param topicName
-     * @return
+     * @param numOfPartitions new total number of partitions
+     * @return future completed when the partitions are created
      */
-    public boolean isTopicCreated(Collection<TopicListing> topics, String topicName) {
-        return null == topics?false:topics.stream().anyMatch(topic -> topic.name().equals(topicName));
+    public CompletableFuture<Void> increasePartitionsAsync(String topicName, int numOfPartitions) {
+        return describeTopic(topicName).thenCompose(description -> {
+            if (description.partitions().size() >= numOfPartitions) {
+                return CompletableFuture.completedFuture(null);
+            }
+            LOG.info("Increasing partitions of topic {} from {} to {}", topicName, description.partitions().size(),
+                    numOfPartitions);
+            return toCompletableFuture(adminClient.createPartitions(
+                    Map.of(topicName, NewPartitions.increaseTo(numOfPartitions))).all());
+        });
+    }
+
+    private CompletableFuture<Map<String, TopicDescription>> describeTopics(List<String> topicNames,
+                                                                             boolean createMissingTopics) {
+        Map<String, KafkaFuture<TopicDescription>> descriptions = adminClient.describeTopics(topicNames).topicNameValues();
+        Map<String, CompletableFuture<TopicDescription>> topicFutures = new LinkedHashMap<>();
+        for (String topicName : topicNames) {
+            CompletableFuture<TopicDescription> topicFuture = toCompletableFuture(descriptions.get(topicName))
+                    .handle((description, error) -> {
+                        if (error == null) {
+                            return CompletableFuture.completedFuture(description);
+                        }
+                        if (createMissingTopics && unwrap(error) instanceof UnknownTopicOrPartitionException) {
+                            return createTopic(topicName).thenCompose(created -> describeTopic(topicName));
+                        }
+                        return CompletableFuture.<TopicDescription>failedFuture(unwrap(error));
+                    })
+                    .thenCompose(Function.identity())
+                    .thenApply(this::verifyTopic);
+            topicFutures.put(topicName, topicFuture);
+        }
+        return CompletableFuture.allOf(topicFutures.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, TopicDescription> topics = new LinkedHashMap<>();
+            topicFutures.forEach((topicName, topicFuture) -> topics.put(topicName, topicFuture.join()));
+            return topics;
+        });
+    }
+
+    private CompletableFuture<TopicDescription> describeTopic(String topicName) {
+        return toCompletableFuture(adminClient.describeTopics(List.of(topicName)).topicNameValues().get(topicName));
     }
 
     /**
-     * This method basically created the topic with proper partition, replication factor and topic name and for this it will use
-     * KafkaAdmin object. If topic is already created then it won't do anything.
-     * @param retryContext
-     * @return
+     * Create one topic, if it is created by another service at the same time that is fine as well.
      */
-    public CreateTopicsResult doCreateTopics(RetryContext retryContext) {
-        List<String> topicNames = kafkaConfigData.getTopicNamesToCreate();
-        LOG.info("Creating {} topic(s), attempt {} ", topicNames.size(), retryContext.getRetryCount());
-        List<NewTopic> kafkaTopics = topicNames.stream().map(topic -> new NewTopic(
-                topic.trim(),
-                kafkaConfigData.getNumOfPartitions(),
-                kafkaConfigData.getReplicationFactor())).collect(Collectors.toList());
-        CreateTopicsResult result=adminClient.createTopics(kafkaTopics);
-        return result;
+    private CompletableFuture<Void> createTopic(String topicName) {
+        LOG.info("Creating topic {} with {} partition(s) and replication factor {}", topicName,
+                kafkaConfigData.getNumOfPartitions(), kafkaConfigData.getReplicationFactor());
+        NewTopic newTopic = new NewTopic(topicName, kafkaConfigData.getNumOfPartitions(),
+                kafkaConfigData.getReplicationFactor());
+        return toCompletableFuture(adminClient.createTopics(List.of(newTopic)).values().get(topicName))
+                .handle((created, error) -> {
+                    if (error != null && !(unwrap(error) instanceof TopicExistsException)) {
+                        throw new CompletionException(unwrap(error));
+                    }
+                    return null;
+                });
     }
 
     /**
-     * This will simply return the Collection of TopicListing object where each TopicListing represent one topic.
-     * @return
+     * More partitions than configured are fine, they can be added at runtime by KafkaLagMonitor. The replication factor
+     * can't be changed by the services, a mismatch is only logged.
      */
-    public Collection<TopicListing> getTopics(){
-        Collection<TopicListing> topics;
-        try {
-            topics = retryTemplate.execute(this::doGetTopics);
-        } catch (Throwable t) {
-            throw new KafkaClientException("Reached max number of retry for creating kafka topic(s) !",t);
+    private TopicDescription verifyTopic(TopicDescription description) {
+        int partitions = description.partitions().size();
+        if (partitions < kafkaConfigData.getNumOfPartitions()) {
+            throw new KafkaClientException("Topic " + description.name() + " has " + partitions +
+                    " partition(s), but at least " + kafkaConfigData.getNumOfPartitions() + " partition(s) are configured!");
+        }
+        int replicationFactor = description.partitions().isEmpty() ? 0 :
+                description.partitions().get(0).replicas().size();
+        if (replicationFactor != kafkaConfigData.getReplicationFactor()) {
+            LOG.warn("Topic {} has replication factor {}, but replication factor {} is configured", description.name(),
+                    replicationFactor, kafkaConfigData.getReplicationFactor());
         }
-        return topics;
+        return description;
     }
 
     /**
-     * Using KafkaAdmin object will get the list of the topics and the using foreach will print name of the topics present in the list.
-     * @param retryContext
-     * @return
-     * @throws ExecutionException
-     * @throws InterruptedException
+     * Run the action and when it fails run it again after the backoff, starting with sleep-time-ms and multiplied with the
+     * multiplier up to max-interval-ms, until retry-config.maxAttempts retries are done. KafkaClientException is not retried.
      */
-    public Collection<TopicListing> doGetTopics(RetryContext retryContext) throws ExecutionException,InterruptedException {
-        LOG.info("Reading kafka topic {}, attempt {}",kafkaConfigData.getTopicNamesToCreate().toArray(),retryContext.getRetryCount());
-        Collection<TopicListing> topics=adminClient.listTopics().listings().get();
-        if(null != topics)
-            topics.forEach(topic -> LOG.info("Topic with name {}",topic.name()));
-        return topics;
+    private <T> CompletableFuture<T> withRetry(String operation, Function<Integer, CompletableFuture<T>> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        runAttempt(operation, action, 1, retryConfigData.getSleepTimeMs(), result);
+        return result;
+    }
+
+    private <T> void runAttempt(String operation, Function<Integer, CompletableFuture<T>> action, int attempt,
+                                long backoffMs, CompletableFuture<T> result) {
+        CompletableFuture<T> attemptFuture;
+        try {
+            attemptFuture = action.apply(attempt);
+        } catch (RuntimeException e) {
+            attemptFuture = CompletableFuture.failedFuture(e);
+        }
+        attemptFuture.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof KafkaClientException) {
+                result.completeExceptionally(cause);
+            } else if (attempt > retryConfigData.getMaxAttempts()) {
+                result.completeExceptionally(new KafkaClientException("Reached max number of retry for " + operation +
+                        " !", cause));
+            } else {
+                LOG.warn("Attempt {} of {} failed: {}, retrying in {} ms", attempt, operation, cause.toString(), backoffMs);
+                long nextBackoffMs = Math.min((long) (backoffMs * retryConfigData.getMultiplier()),
+                        retryConfigData.getMaxIntervalMs());
+                CompletableFuture.delayedExecutor(backoffMs, TimeUnit.MILLISECONDS)
+                        .execute(() -> runAttempt(operation, action, attempt + 1, nextBackoffMs, result));
+            }
+        });
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof KafkaClientException) {
+                throw (KafkaClientException) cause;
+            }
+            throw new KafkaClientException("Error while waiting for kafka readiness!", cause);
+        }
     }
 
+    private static <T> CompletableFuture<T> toCompletableFuture(KafkaFuture<T> kafkaFuture) {
+        return kafkaFuture.toCompletionStage().toCompletableFuture();
+    }
 
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
 }
@@ -0,0 +1,70 @@
+package com.microservices.demo.kafka.admin.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class is published by KafkaLagMonitor after every lag check, it has the lag of the consumer group on every partition
+ * of the topic and tells whether the lag was over the scale up threshold long enough (scaleUp) or under the scale down
+ * threshold (scaleDown), so the listeners like the consumer concurrency scaler don't need to repeat the policy.
+ * numOfPartitions is the partition count after the partition scaling of this check, it can be more than the lag entries.
+ */
+public class KafkaLagEvent {
+
+    private final String consumerGroupId;
+
+    private final String topicName;
+
+    private final Map<Integer, Long> lagByPartition;
+
+    private final int numOfPartitions;
+
+    private final long totalLag;
+
+    private final boolean scaleUp;
+
+    private final boolean scaleDown;
+
+    public KafkaLagEvent(String consumerGroupId, String topicName, Map<Integer, Long> lagByPartition, int numOfPartitions,
+                         boolean scaleUp, boolean scaleDown) {
+        this.consumerGroupId = consumerGroupId;
+        this.topicName = topicName;
+        this.lagByPartition = Collections.unmodifiableMap(lagByPartition);
+        this.numOfPartitions = numOfPartitions;
+        this.totalLag = lagByPartition.values().stream().mapToLong(Long::longValue).sum();
+        this.scaleUp = scaleUp;
+        this.scaleDown = scaleDown;
+    }
+
+    public String getConsumerGroupId() {
+        return consumerGroupId;
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public Map<Integer, Long> getLagByPartition() {
+        return lagByPartition;
+    }
+
+    public int getNumOfPartitions() {
+        return numOfPartitions;
+    }
+
+    public long getTotalLag() {
+        return totalLag;
+    }
+
+    public long getLagPerPartition() {
+        return lagByPartition.isEmpty() ? 0 : totalLag / lagByPartition.size();
+    }
+
+    public boolean isScaleUp() {
+        return scaleUp;
+    }
+
+    public boolean isScaleDown() {
+        return scaleDown;
+    }
+}
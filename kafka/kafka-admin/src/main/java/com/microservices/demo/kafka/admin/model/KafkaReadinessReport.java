@@ -0,0 +1,51 @@
+package com.microservices.demo.kafka.admin.model;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class is the result of the readiness check of KafkaAdminClient, the descriptions of the configured topics and how
+ * long each part of the check took. Topics and schema registry are checked at the same time so the total time is close to
+ * the longer one of them, not the sum. A duration is -1 if that part was not checked.
+ */
+public class KafkaReadinessReport {
+
+    private final Map<String, TopicDescription> topics;
+
+    private final long topicsMs;
+
+    private final long schemaRegistryMs;
+
+    private final long totalMs;
+
+    public KafkaReadinessReport(Map<String, TopicDescription> topics, long topicsMs, long schemaRegistryMs, long totalMs) {
+        this.topics = topics == null ? Collections.emptyMap() : Collections.unmodifiableMap(topics);
+        this.topicsMs = topicsMs;
+        this.schemaRegistryMs = schemaRegistryMs;
+        this.totalMs = totalMs;
+    }
+
+    public Map<String, TopicDescription> getTopics() {
+        return topics;
+    }
+
+    public long getTopicsMs() {
+        return topicsMs;
+    }
+
+    public long getSchemaRegistryMs() {
+        return schemaRegistryMs;
+    }
+
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    @Override
+    public String toString() {
+        return "topics " + topics.keySet() + " ready in " + topicsMs + " ms, schema registry " +
+                (schemaRegistryMs < 0 ? "not checked" : "ready in " + schemaRegistryMs + " ms") + ", total " + totalMs + " ms";
+    }
+}
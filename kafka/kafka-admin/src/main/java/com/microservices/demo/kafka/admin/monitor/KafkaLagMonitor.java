@@ -0,0 +1,186 @@
+package com.microservices.demo.kafka.admin.monitor;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.config.KafkaLagMonitorConfigData;
+import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
+import com.microservices.demo.kafka.admin.model.KafkaLagEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class checks the lag of the consumer group of this service (committed offsets against the end offsets of the topic)
+ * every monitor-interval-ms and exposes it as kafka.consumer.lag gauge per partition. After every check a KafkaLagEvent is
+ * published, scaleUp when the lag per partition was over scale-up-lag-per-partition in scale-up-checks checks in a row and
+ * scaleDown when it is under scale-down-lag-per-partition. With enable-partition-scaling and a scaleUp the topic gets
+ * partition-step more partitions up to max-partitions, so more consumer threads can share the work. A scale up is followed
+ * by the cool down time without any scale decision, to let the group rebalance and the lag react.
+ * Keep in mind the new partitions change the partition of the existing keys, so the order of a key is only kept inside
+ * the old or the new partition count.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka-lag-monitor-config.enable-lag-monitor", havingValue = "true")
+public class KafkaLagMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaLagMonitor.class);
+
+    private static final long DEFAULT_MONITOR_INTERVAL_MS = 10000;
+
+    private static final long DEFAULT_SCALE_UP_LAG_PER_PARTITION = 10000;
+
+    private static final long DEFAULT_SCALE_DOWN_LAG_PER_PARTITION = 100;
+
+    private static final int DEFAULT_SCALE_UP_CHECKS = 3;
+
+    private static final long DEFAULT_SCALE_COOLDOWN_MS = 60000;
+
+    private static final int DEFAULT_PARTITION_STEP = 3;
+
+    private final KafkaAdminClient kafkaAdminClient;
+
+    private final KafkaLagMonitorConfigData kafkaLagMonitorConfigData;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String consumerGroupId;
+
+    private final String topicName;
+
+    private final Map<Integer, AtomicLong> partitionLags = new ConcurrentHashMap<>();
+
+    private final AtomicLong totalLag = new AtomicLong();
+
+    private ScheduledExecutorService monitorExecutor;
+
+    private int checksOverThreshold;
+
+    private long lastScaleMs;
+
+    public KafkaLagMonitor(KafkaAdminClient kafkaAdminClient,
+                           KafkaConfigData kafkaConfigData,
+                           KafkaConsumerConfigData kafkaConsumerConfigData,
+                           KafkaLagMonitorConfigData kafkaLagMonitorConfigData,
+                           ApplicationEventPublisher applicationEventPublisher,
+                           MeterRegistry meterRegistry) {
+        this.kafkaAdminClient = kafkaAdminClient;
+        this.kafkaLagMonitorConfigData = kafkaLagMonitorConfigData;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.consumerGroupId = kafkaConsumerConfigData.getConsumerGroupId();
+        this.topicName = kafkaConfigData.getTopicName();
+        Gauge.builder("kafka.consumer.lag.total", totalLag, AtomicLong::get)
+                .description("Lag of the consumer group on all partitions of the topic")
+                .tag("group", consumerGroupId)
+                .tag("topic", topicName)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long intervalMs = getOrDefault(kafkaLagMonitorConfigData.getMonitorIntervalMs(), DEFAULT_MONITOR_INTERVAL_MS);
+        LOG.info("Monitoring lag of consumer group {} on topic {} every {} ms", consumerGroupId, topicName, intervalMs);
+        monitorExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("kafka-lag-monitor-"));
+        //fixed delay so a slow check or scaling never overlaps the next check
+        monitorExecutor.scheduleWithFixedDelay(this::checkLag, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (monitorExecutor != null) {
+            monitorExecutor.shutdownNow();
+        }
+    }
+
+    private void checkLag() {
+        try {
+            Map<Integer, Long> lagByPartition = kafkaAdminClient.getConsumerLagAsync(consumerGroupId, topicName).join();
+            updateGauges(lagByPartition);
+            LOG.debug("Lag of consumer group {} on topic {}: {}", consumerGroupId, topicName, lagByPartition);
+            long lagPerPartition = lagByPartition.isEmpty() ? 0 :
+                    lagByPartition.values().stream().mapToLong(Long::longValue).sum() / lagByPartition.size();
+            if (lagPerPartition > getOrDefault(kafkaLagMonitorConfigData.getScaleUpLagPerPartition(),
+                    DEFAULT_SCALE_UP_LAG_PER_PARTITION)) {
+                checksOverThreshold++;
+            } else {
+                checksOverThreshold = 0;
+            }
+            boolean coolingDown = System.currentTimeMillis() - lastScaleMs <
+                    getOrDefault(kafkaLagMonitorConfigData.getScaleCooldownMs(), DEFAULT_SCALE_COOLDOWN_MS);
+            int scaleUpChecks = kafkaLagMonitorConfigData.getScaleUpChecks() == null ?
+                    DEFAULT_SCALE_UP_CHECKS : kafkaLagMonitorConfigData.getScaleUpChecks();
+            boolean scaleUp = !coolingDown && checksOverThreshold >= scaleUpChecks;
+            boolean scaleDown = !coolingDown && lagPerPartition < getOrDefault(
+                    kafkaLagMonitorConfigData.getScaleDownLagPerPartition(), DEFAULT_SCALE_DOWN_LAG_PER_PARTITION);
+            int numOfPartitions = lagByPartition.size();
+            if (scaleUp && Boolean.TRUE.equals(kafkaLagMonitorConfigData.getEnablePartitionScaling())) {
+                numOfPartitions = increasePartitions(numOfPartitions);
+            }
+            applicationEventPublisher.publishEvent(new KafkaLagEvent(consumerGroupId, topicName, lagByPartition,
+                    numOfPartitions, scaleUp, scaleDown));
+            if (scaleUp) {
+                lastScaleMs = System.currentTimeMillis();
+                checksOverThreshold = 0;
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not check the lag of consumer group {} on topic {}", consumerGroupId, topicName, e);
+        }
+    }
+
+    /**
+     * @return number of partitions after the increase
+     */
+    private int increasePartitions(int numOfPartitions) {
+        int partitionStep = kafkaLagMonitorConfigData.getPartitionStep() == null ?
+                DEFAULT_PARTITION_STEP : kafkaLagMonitorConfigData.getPartitionStep();
+        int maxPartitions = kafkaLagMonitorConfigData.getMaxPartitions() == null ?
+                numOfPartitions : kafkaLagMonitorConfigData.getMaxPartitions();
+        int newNumOfPartitions = Math.min(numOfPartitions + partitionStep, maxPartitions);
+        if (newNumOfPartitions <= numOfPartitions) {
+            LOG.info("Topic {} has already the max {} partitions", topicName, maxPartitions);
+            return numOfPartitions;
+        }
+        kafkaAdminClient.increasePartitionsAsync(topicName, newNumOfPartitions).join();
+        return newNumOfPartitions;
+    }
+
+    private void updateGauges(Map<Integer, Long> lagByPartition) {
+        long total = 0;
+        for (Map.Entry<Integer, Long> entry : lagByPartition.entrySet()) {
+            partitionLags.computeIfAbsent(entry.getKey(), this::registerPartitionGauge).set(entry.getValue());
+            total += entry.getValue();
+        }
+        totalLag.set(total);
+    }
+
+    private AtomicLong registerPartitionGauge(Integer partition) {
+        AtomicLong lag = new AtomicLong();
+        Gauge.builder("kafka.consumer.lag", lag, AtomicLong::get)
+                .description("Lag of the consumer group on the partition")
+                .tag("group", consumerGroupId)
+                .tag("topic", topicName)
+                .tag("partition", String.valueOf(partition))
+                .register(meterRegistry);
+        return lag;
+    }
+
+    private static long getOrDefault(Long value, long defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+}
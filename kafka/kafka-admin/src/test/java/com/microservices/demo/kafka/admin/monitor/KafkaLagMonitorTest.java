@@ -0,0 +1,202 @@
+package com.microservices.demo.kafka.admin.monitor;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.config.KafkaLagMonitorConfigData;
+import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
+import com.microservices.demo.kafka.admin.model.KafkaLagEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KafkaLagMonitorTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final String CONSUMER_GROUP = "twitter-topic-consumer";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final long HIGH_LAG = 500;
+
+    private static final long LOW_LAG = 5;
+
+    private final ScriptedAdminClient kafkaAdminClient = new ScriptedAdminClient(3);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<KafkaLagEvent> events = new CopyOnWriteArrayList<>();
+
+    private KafkaLagMonitor kafkaLagMonitor;
+
+    @AfterEach
+    public void stopMonitor() {
+        if (kafkaLagMonitor != null) {
+            kafkaLagMonitor.stop();
+        }
+    }
+
+    @Test
+    public void scalesUpAfterConsecutiveChecksOverThreshold() throws InterruptedException {
+        kafkaAdminClient.script(HIGH_LAG, HIGH_LAG, LOW_LAG, HIGH_LAG, HIGH_LAG, HIGH_LAG);
+        kafkaLagMonitor = monitor(3, 60000, 12);
+
+        waitUntil(() -> events.size() >= 6);
+
+        //the low lag check resets the count, so the third check in a row over the threshold is the sixth one
+        assertThat(events.subList(0, 6)).extracting(KafkaLagEvent::isScaleUp)
+                .containsExactly(false, false, false, false, false, true);
+        assertThat(events.get(5).getNumOfPartitions()).isEqualTo(6);
+        assertThat(kafkaAdminClient.increasedPartitions).containsExactly(6);
+    }
+
+    @Test
+    public void makesNoScaleDecisionInCoolDown() throws InterruptedException {
+        kafkaAdminClient.script(HIGH_LAG, LOW_LAG);
+        kafkaLagMonitor = monitor(1, 60000, 12);
+
+        waitUntil(() -> events.size() >= 5);
+
+        assertThat(events.get(0).isScaleUp()).isTrue();
+        assertThat(events.subList(1, 5)).noneMatch(KafkaLagEvent::isScaleUp).noneMatch(KafkaLagEvent::isScaleDown);
+        assertThat(kafkaAdminClient.increasedPartitions).containsExactly(6);
+    }
+
+    @Test
+    public void increasesPartitionsUpToTheMax() throws InterruptedException {
+        kafkaAdminClient.script(HIGH_LAG);
+        kafkaLagMonitor = monitor(1, 0, 7);
+
+        waitUntil(() -> events.size() >= 4);
+
+        assertThat(kafkaAdminClient.increasedPartitions).containsExactly(6, 7);
+        assertThat(events.get(events.size() - 1).getNumOfPartitions()).isEqualTo(7);
+        assertThat(events).allMatch(KafkaLagEvent::isScaleUp);
+    }
+
+    @Test
+    public void publishesScaleDownOnLowLag() throws InterruptedException {
+        kafkaAdminClient.script(LOW_LAG);
+        kafkaLagMonitor = monitor(3, 60000, 12);
+
+        waitUntil(() -> events.size() >= 2);
+
+        assertThat(events).allMatch(KafkaLagEvent::isScaleDown).noneMatch(KafkaLagEvent::isScaleUp);
+        assertThat(kafkaAdminClient.increasedPartitions).isEmpty();
+    }
+
+    @Test
+    public void keepsMonitoringAfterAFailedCheck() throws InterruptedException {
+        kafkaAdminClient.script(null, HIGH_LAG);
+        kafkaLagMonitor = monitor(3, 60000, 12);
+
+        waitUntil(() -> events.size() >= 1);
+
+        assertThat(events.get(0).getTotalLag()).isEqualTo(3 * HIGH_LAG);
+        assertThat(kafkaAdminClient.checks).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    public void exposesLagAsGauges() throws InterruptedException {
+        kafkaAdminClient.script(HIGH_LAG);
+        kafkaLagMonitor = monitor(3, 60000, 12);
+
+        waitUntil(() -> events.size() >= 1);
+
+        assertThat(meterRegistry.get("kafka.consumer.lag.total").gauge().value()).isEqualTo(3 * HIGH_LAG);
+        assertThat(meterRegistry.get("kafka.consumer.lag").tag("partition", "2").gauge().value()).isEqualTo(HIGH_LAG);
+    }
+
+    private KafkaLagMonitor monitor(int scaleUpChecks, long scaleCooldownMs, int maxPartitions) {
+        KafkaConfigData kafkaConfigData = new KafkaConfigData();
+        kafkaConfigData.setTopicName(TOPIC);
+        KafkaConsumerConfigData kafkaConsumerConfigData = new KafkaConsumerConfigData();
+        kafkaConsumerConfigData.setConsumerGroupId(CONSUMER_GROUP);
+        KafkaLagMonitorConfigData kafkaLagMonitorConfigData = new KafkaLagMonitorConfigData();
+        kafkaLagMonitorConfigData.setMonitorIntervalMs(10L);
+        kafkaLagMonitorConfigData.setScaleUpLagPerPartition(100L);
+        kafkaLagMonitorConfigData.setScaleDownLagPerPartition(10L);
+        kafkaLagMonitorConfigData.setScaleUpChecks(scaleUpChecks);
+        kafkaLagMonitorConfigData.setScaleCooldownMs(scaleCooldownMs);
+        kafkaLagMonitorConfigData.setEnablePartitionScaling(true);
+        kafkaLagMonitorConfigData.setPartitionStep(3);
+        kafkaLagMonitorConfigData.setMaxPartitions(maxPartitions);
+        KafkaLagMonitor monitor = new KafkaLagMonitor(kafkaAdminClient, kafkaConfigData, kafkaConsumerConfigData,
+                kafkaLagMonitorConfigData, event -> events.add((KafkaLagEvent) event), meterRegistry);
+        monitor.start();
+        return monitor;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Every check takes the next lag per partition of the script and repeats the last one when the script is done, a
+     * null lag fails the check like an unreachable broker. Every partition of the topic has the same lag and the
+     * partition increases are recorded and applied to the topic.
+     */
+    private static class ScriptedAdminClient extends KafkaAdminClient {
+
+        private final Queue<Long> script = new ConcurrentLinkedQueue<>();
+
+        private final List<Integer> increasedPartitions = new CopyOnWriteArrayList<>();
+
+        private volatile int numOfPartitions;
+
+        private volatile Long lastLag;
+
+        private volatile int checks;
+
+        ScriptedAdminClient(int numOfPartitions) {
+            super(null, null, null, null);
+            this.numOfPartitions = numOfPartitions;
+        }
+
+        void script(Long... lags) {
+            for (Long lag : lags) {
+                script.add(lag == null ? -1L : lag);
+            }
+        }
+
+        @Override
+        public CompletableFuture<Map<Integer, Long>> getConsumerLagAsync(String consumerGroupId, String topicName) {
+            checks++;
+            Long lag = script.poll();
+            if (lag == null) {
+                lag = lastLag;
+            }
+            lastLag = lag;
+            if (lag < 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("kafka is not reachable"));
+            }
+            long partitionLag = lag;
+            return CompletableFuture.completedFuture(IntStream.range(0, numOfPartitions).boxed()
+                    .collect(Collectors.toMap(partition -> partition, partition -> partitionLag)));
+        }
+
+        @Override
+        public CompletableFuture<Void> increasePartitionsAsync(String topicName, int numOfPartitions) {
+            increasedPartitions.add(numOfPartitions);
+            this.numOfPartitions = numOfPartitions;
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
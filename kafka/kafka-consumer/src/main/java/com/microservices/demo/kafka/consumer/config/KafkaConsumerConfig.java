@@ -2,6 +2,7 @@ package com.microservices.demo.kafka.consumer.config;
 
 import com.microservices.demo.config.KafkaConfigData;
 import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.kafka.avro.serde.CachedSchemaAvroSerdeConfig;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.springframework.context.annotation.Bean;
@@ -12,9 +13,11 @@ import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 @EnableKafka
@@ -47,6 +50,15 @@ public class KafkaConsumerConfig<K extends Serializable, V extends SpecificRecor
                 kafkaConsumerConfigData.getMaxPartitionFetchBytesDefault() *
                         kafkaConsumerConfigData.getMaxPartitionFetchBytesBoostFactor());
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, kafkaConsumerConfigData.getMaxPollRecords());
+        //only used by CachedSchemaAvroDeserializer, with the offline schema id it reads the bundled schema file instead of
+        //calling the schema registry
+        if (null != kafkaConfigData.getOfflineAvroSchemaId()) {
+            props.put(CachedSchemaAvroSerdeConfig.OFFLINE_SCHEMA_ID_CONFIG, kafkaConfigData.getOfflineAvroSchemaId());
+            if (null != kafkaConfigData.getOfflineAvroSchemaResource()) {
+                props.put(CachedSchemaAvroSerdeConfig.OFFLINE_SCHEMA_RESOURCE_CONFIG,
+                        kafkaConfigData.getOfflineAvroSchemaResource());
+            }
+        }
         return props;
     }
 
@@ -57,6 +69,28 @@ public class KafkaConsumerConfig<K extends Serializable, V extends SpecificRecor
 
     @Bean
     public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<K, V>> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<K, V> factory = createListenerContainerFactory();
+        //BATCH commits the offsets of a batch after the listener returns
+        if (null != kafkaConsumerConfigData.getAckMode()) {
+            factory.getContainerProperties().setAckMode(
+                    ContainerProperties.AckMode.valueOf(kafkaConsumerConfigData.getAckMode().toUpperCase(Locale.ROOT)));
+        }
+        return factory;
+    }
+
+    /**
+     * Same containers as kafkaListenerContainerFactory but always with MANUAL ack mode, for the listeners which decide
+     * when the offsets of a batch can be committed by calling Acknowledgment.acknowledge(), whatever ack-mode is set.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<K, V>>
+            manualAckKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<K, V> factory = createListenerContainerFactory();
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    private ConcurrentKafkaListenerContainerFactory<K, V> createListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<K, V> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.setBatchListener(kafkaConsumerConfigData.getBatchListener());
@@ -64,7 +98,5 @@ public class KafkaConsumerConfig<K extends Serializable, V extends SpecificRecor
         factory.setAutoStartup(kafkaConsumerConfigData.getAutoStartup());
         factory.getContainerProperties().setPollTimeout(kafkaConsumerConfigData.getPollTimeoutMs());
         return factory;
-
-
     }
 }
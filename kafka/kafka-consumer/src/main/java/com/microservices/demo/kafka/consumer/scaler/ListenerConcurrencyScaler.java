@@ -0,0 +1,88 @@
+package com.microservices.demo.kafka.consumer.scaler;
+
+import com.microservices.demo.config.KafkaConsumerConfigData;
+import com.microservices.demo.config.KafkaLagMonitorConfigData;
+import com.microservices.demo.kafka.admin.model.KafkaLagEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * This class changes the number of consumer threads of the running kafka listeners of the lagging topic by the
+ * KafkaLagEvent of KafkaLagMonitor. On scale up the concurrency is doubled, up to the number of partitions (more threads
+ * than partitions would be idle) and max-concurrency, on scale down it is halved down to min-concurrency (by default the
+ * concurrency-level of the consumer config). ConcurrentMessageListenerContainer reads the concurrency only when it starts,
+ * so the container is stopped, changed and started again, the consumers commit and the group rebalances in between.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka-lag-monitor-config.enable-concurrency-scaling", havingValue = "true")
+public class ListenerConcurrencyScaler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListenerConcurrencyScaler.class);
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    private final int minConcurrency;
+
+    private final Integer maxConcurrency;
+
+    public ListenerConcurrencyScaler(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                     KafkaConsumerConfigData kafkaConsumerConfigData,
+                                     KafkaLagMonitorConfigData kafkaLagMonitorConfigData) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        if (kafkaLagMonitorConfigData.getMinConcurrency() != null) {
+            this.minConcurrency = kafkaLagMonitorConfigData.getMinConcurrency();
+        } else {
+            this.minConcurrency = kafkaConsumerConfigData.getConcurrencyLevel() == null ?
+                    1 : kafkaConsumerConfigData.getConcurrencyLevel();
+        }
+        this.maxConcurrency = kafkaLagMonitorConfigData.getMaxConcurrency();
+    }
+
+    @EventListener
+    public synchronized void onLagEvent(KafkaLagEvent lagEvent) {
+        if (!lagEvent.isScaleUp() && !lagEvent.isScaleDown()) {
+            return;
+        }
+        for (MessageListenerContainer listenerContainer : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            //containers not started yet (waiting for the topics) are started later with the configured concurrency
+            if (listenerContainer instanceof ConcurrentMessageListenerContainer && listenerContainer.isRunning() &&
+                    isListening(listenerContainer, lagEvent.getTopicName())) {
+                scale((ConcurrentMessageListenerContainer<?, ?>) listenerContainer, lagEvent);
+            }
+        }
+    }
+
+    private void scale(ConcurrentMessageListenerContainer<?, ?> container, KafkaLagEvent lagEvent) {
+        int concurrency = container.getConcurrency();
+        int newConcurrency = concurrency;
+        if (lagEvent.isScaleUp()) {
+            int upperLimit = maxConcurrency == null ? lagEvent.getNumOfPartitions() :
+                    Math.min(maxConcurrency, lagEvent.getNumOfPartitions());
+            newConcurrency = Math.max(concurrency, Math.min(concurrency * 2, upperLimit));
+        } else if (lagEvent.isScaleDown()) {
+            newConcurrency = Math.min(concurrency, Math.max(concurrency / 2, minConcurrency));
+        }
+        if (newConcurrency == concurrency) {
+            return;
+        }
+        LOG.info("Changing concurrency of kafka listener {} from {} to {}, lag of topic {} is {} per partition",
+                container.getListenerId(), concurrency, newConcurrency, lagEvent.getTopicName(),
+                lagEvent.getLagPerPartition());
+        container.stop();
+        container.setConcurrency(newConcurrency);
+        container.start();
+    }
+
+    private boolean isListening(MessageListenerContainer listenerContainer, String topicName) {
+        String[] topics = listenerContainer.getContainerProperties().getTopics();
+        return topics != null && Arrays.asList(topics).contains(topicName);
+    }
+}
@@ -0,0 +1,132 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares CachedSchemaAvroSerializer and CachedSchemaAvroDeserializer with the per record way of writing the
+ * same confluent wire format: a new ByteArrayOutputStream, encoder and SpecificDatumWriter for every record, and a new
+ * decoder and SpecificDatumReader (resolving the writer schema to the reader schema) for every record read.
+ * The cached serde uses the offline schema id so the schema registry is not in the measurement, the schema lookup of the
+ * confluent serde is cached too after the first record. The score is per record, run it with -prof gc for the allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachedSchemaAvroSerdeBenchmark {
+
+    private static final int RECORDS = 1000;
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final int SCHEMA_ID = 1;
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "Java", "Kafka", "Microservices",
+            "Elasticsearch", "congue", "massa", "Fusce", "magna", "sed"
+    };
+
+    private final TwitterAvroModel[] tweets = new TwitterAvroModel[RECORDS];
+
+    private final byte[][] serializedTweets = new byte[RECORDS][];
+
+    private CachedSchemaAvroSerializer<TwitterAvroModel> cachedSerializer;
+
+    private CachedSchemaAvroDeserializer<TwitterAvroModel> cachedDeserializer;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> configs = Collections.singletonMap(CachedSchemaAvroSerdeConfig.OFFLINE_SCHEMA_ID_CONFIG,
+                SCHEMA_ID);
+        cachedSerializer = new CachedSchemaAvroSerializer<>();
+        cachedSerializer.configure(configs, false);
+        cachedDeserializer = new CachedSchemaAvroDeserializer<>();
+        cachedDeserializer.configure(configs, false);
+        Random random = new Random(42);
+        for (int i = 0; i < RECORDS; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 140) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            tweets[i] = TwitterAvroModel.newBuilder()
+                    .setId(1_500_000_000_000_000_000L + i)
+                    .setUserId(1_000_000L + random.nextInt(1_000_000))
+                    .setText(text.toString().trim())
+                    .setCreatedAt(1643637600000L + i * 37L)
+                    .build();
+            serializedTweets[i] = cachedSerializer.serialize(TOPIC, tweets[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void cachedSerializer(Blackhole blackhole) {
+        for (TwitterAvroModel tweet : tweets) {
+            blackhole.consume(cachedSerializer.serialize(TOPIC, tweet));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void perRecordDatumWriter(Blackhole blackhole) throws IOException {
+        for (TwitterAvroModel tweet : tweets) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            outputStream.write(0);
+            outputStream.write(ByteBuffer.allocate(Integer.BYTES).putInt(SCHEMA_ID).array());
+            BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(outputStream, null);
+            new SpecificDatumWriter<TwitterAvroModel>(tweet.getSchema()).write(tweet, encoder);
+            encoder.flush();
+            blackhole.consume(outputStream.toByteArray());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void cachedDeserializer(Blackhole blackhole) {
+        for (byte[] data : serializedTweets) {
+            blackhole.consume(cachedDeserializer.deserialize(TOPIC, data));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void perRecordDatumReader(Blackhole blackhole) throws IOException {
+        for (byte[] data : serializedTweets) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.get();
+            buffer.getInt();
+            BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, buffer.position(), buffer.remaining(), null);
+            SpecificDatumReader<TwitterAvroModel> datumReader = new SpecificDatumReader<>(
+                    TwitterAvroModel.getClassSchema(), TwitterAvroModel.getClassSchema());
+            blackhole.consume(datumReader.read(null, decoder));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class deserializes the records written in the confluent wire format (by KafkaAvroSerializer or
+ * CachedSchemaAvroSerializer) into the generated avro specific classes, like KafkaAvroDeserializer with
+ * specific.avro.reader=true. The writer schema of an id is fetched from the schema registry only the first time the id is
+ * seen, the SpecificDatumReader (writer schema resolved to the schema of the generated class) is cached per id and every
+ * thread reuses its own BinaryDecoder. With cached.avro.offline.schema.id only that id is accepted and its schema is read
+ * from the bundled schema file, so the registry is never called.
+ * @param <T> avro specific record type
+ */
+public class CachedSchemaAvroDeserializer<T extends SpecificRecord> implements Deserializer<T> {
+
+    private final Map<Integer, SpecificDatumReader<T>> datumReaders = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<BinaryDecoder> decoders = new ThreadLocal<>();
+
+    private Integer offlineSchemaId;
+
+    private SchemaRegistryRestClient schemaRegistryClient;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.offlineSchemaId = CachedSchemaAvroSerdeConfig.getOfflineSchemaId(configs);
+        if (offlineSchemaId == null) {
+            this.schemaRegistryClient = CachedSchemaAvroSerdeConfig.getSchemaRegistryClient(configs);
+        } else {
+            datumReaders.put(offlineSchemaId, createDatumReader(CachedSchemaAvroSerdeConfig.getOfflineSchema(configs)));
+        }
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length < CachedSchemaAvroSerdeConfig.HEADER_SIZE || data[0] != CachedSchemaAvroSerdeConfig.MAGIC_BYTE) {
+            throw new SerializationException("Unknown magic byte in record of topic " + topic);
+        }
+        int schemaId = ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        SpecificDatumReader<T> datumReader = getDatumReader(schemaId);
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, CachedSchemaAvroSerdeConfig.HEADER_SIZE,
+                data.length - CachedSchemaAvroSerdeConfig.HEADER_SIZE, decoders.get());
+        decoders.set(decoder);
+        try {
+            return datumReader.read(null, decoder);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error deserializing avro record with schema id " + schemaId +
+                    " of topic " + topic, e);
+        }
+    }
+
+    private SpecificDatumReader<T> getDatumReader(int schemaId) {
+        SpecificDatumReader<T> datumReader = datumReaders.get(schemaId);
+        if (datumReader != null) {
+            return datumReader;
+        }
+        if (offlineSchemaId != null) {
+            throw new SerializationException("Schema id " + schemaId + " is not the offline schema id " + offlineSchemaId);
+        }
+        return datumReaders.computeIfAbsent(schemaId, id -> createDatumReader(schemaRegistryClient.getSchema(id)));
+    }
+
+    private SpecificDatumReader<T> createDatumReader(Schema writerSchema) {
+        Class<?> specificClass = SpecificData.get().getClass(writerSchema);
+        if (specificClass == null) {
+            throw new SerializationException("No generated avro class found for schema " + writerSchema.getFullName());
+        }
+        return new SpecificDatumReader<>(writerSchema, SpecificData.get().getSchema(specificClass));
+    }
+}
@@ -0,0 +1,16 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.serialization.Serdes;
+
+/**
+ * Serde of CachedSchemaAvroSerializer and CachedSchemaAvroDeserializer, it can be used by kafka streams in place of
+ * SpecificAvroSerde with the same configs.
+ * @param <T> avro specific record type
+ */
+public class CachedSchemaAvroSerde<T extends SpecificRecord> extends Serdes.WrapperSerde<T> {
+
+    public CachedSchemaAvroSerde() {
+        super(new CachedSchemaAvroSerializer<>(), new CachedSchemaAvroDeserializer<>());
+    }
+}
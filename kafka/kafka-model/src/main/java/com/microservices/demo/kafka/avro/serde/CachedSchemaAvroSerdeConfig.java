@@ -0,0 +1,65 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import org.apache.avro.Schema;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * This class has the property names of CachedSchemaAvroSerializer and CachedSchemaAvroDeserializer and reads them from the
+ * kafka client configs. The schema registry url is the same property as the confluent serde so the existing configs work
+ * without change. When the offline schema id is set the registry is not used at all: the serializer writes that id and the
+ * deserializer reads it with the schema from the bundled schema file (avro/twitter.avsc of kafka-model by default).
+ */
+public final class CachedSchemaAvroSerdeConfig {
+
+    public static final String SCHEMA_REGISTRY_URL_CONFIG = "schema.registry.url";
+
+    public static final String OFFLINE_SCHEMA_ID_CONFIG = "cached.avro.offline.schema.id";
+
+    public static final String OFFLINE_SCHEMA_RESOURCE_CONFIG = "cached.avro.offline.schema.resource";
+
+    public static final String DEFAULT_OFFLINE_SCHEMA_RESOURCE = "avro/twitter.avsc";
+
+    //Confluent wire format, magic byte and 4 bytes schema id before the avro binary data
+    static final byte MAGIC_BYTE = 0x0;
+
+    static final int HEADER_SIZE = 5;
+
+    private CachedSchemaAvroSerdeConfig() {
+    }
+
+    static Integer getOfflineSchemaId(Map<String, ?> configs) {
+        Object schemaId = configs.get(OFFLINE_SCHEMA_ID_CONFIG);
+        if (schemaId == null || schemaId.toString().isBlank()) {
+            return null;
+        }
+        return schemaId instanceof Number ? ((Number) schemaId).intValue() : Integer.parseInt(schemaId.toString().trim());
+    }
+
+    static Schema getOfflineSchema(Map<String, ?> configs) {
+        Object resource = configs.get(OFFLINE_SCHEMA_RESOURCE_CONFIG);
+        String resourceName = resource == null || resource.toString().isBlank() ?
+                DEFAULT_OFFLINE_SCHEMA_RESOURCE : resource.toString().trim();
+        try (InputStream inputStream = CachedSchemaAvroSerdeConfig.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (inputStream == null) {
+                throw new SerializationException("Avro schema file " + resourceName + " is not found in classpath!");
+            }
+            return new Schema.Parser().parse(inputStream);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read avro schema file " + resourceName, e);
+        }
+    }
+
+    static SchemaRegistryRestClient getSchemaRegistryClient(Map<String, ?> configs) {
+        Object url = configs.get(SCHEMA_REGISTRY_URL_CONFIG);
+        if (url == null || url.toString().isBlank()) {
+            throw new SerializationException("Either " + SCHEMA_REGISTRY_URL_CONFIG + " or " + OFFLINE_SCHEMA_ID_CONFIG +
+                    " must be configured!");
+        }
+        //a list of registry urls is allowed as in confluent serde, the first one is used
+        return new SchemaRegistryRestClient(url.toString().split(",")[0].trim());
+    }
+}
@@ -0,0 +1,121 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class serializes the avro specific records in the confluent wire format (magic byte, schema id and avro binary data),
+ * so the records can be read with KafkaAvroDeserializer as well, but without the per record work of KafkaAvroSerializer.
+ * The schema id of a subject (topic name + "-key" or "-value") is resolved once from the schema registry and then cached
+ * here, the SpecificDatumWriter of a schema is created once and shared (it is thread safe), and every thread reuses its own
+ * output buffer and BinaryEncoder. With cached.avro.offline.schema.id the registry is never called and that id is written.
+ * @param <T> avro specific record type
+ */
+public class CachedSchemaAvroSerializer<T extends SpecificRecord> implements Serializer<T> {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    //larger buffers are not kept by the thread after serializing, so one big record doesn't hold the memory forever
+    private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+    private final Map<String, SchemaId> schemaIds = new ConcurrentHashMap<>();
+
+    private final Map<Schema, SpecificDatumWriter<T>> datumWriters = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Encoding> encodings = ThreadLocal.withInitial(Encoding::new);
+
+    private boolean isKey;
+
+    private Integer offlineSchemaId;
+
+    private SchemaRegistryRestClient schemaRegistryClient;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.isKey = isKey;
+        this.offlineSchemaId = CachedSchemaAvroSerdeConfig.getOfflineSchemaId(configs);
+        if (offlineSchemaId == null) {
+            this.schemaRegistryClient = CachedSchemaAvroSerdeConfig.getSchemaRegistryClient(configs);
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+        Schema schema = data.getSchema();
+        int schemaId = getSchemaId(topic, schema);
+        SpecificDatumWriter<T> datumWriter = datumWriters.computeIfAbsent(schema, SpecificDatumWriter::new);
+        Encoding encoding = encodings.get();
+        try {
+            return encoding.encode(schemaId, datumWriter, data);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error serializing avro record of " + schema.getFullName() +
+                    " for topic " + topic, e);
+        } finally {
+            if (encoding.isOversized()) {
+                encodings.remove();
+            }
+        }
+    }
+
+    private int getSchemaId(String topic, Schema schema) {
+        if (offlineSchemaId != null) {
+            return offlineSchemaId;
+        }
+        String subject = topic + (isKey ? "-key" : "-value");
+        SchemaId schemaId = schemaIds.get(subject);
+        //generated classes share one schema instance so the reference check is enough nearly every time
+        if (schemaId == null || (schemaId.schema != schema && !schemaId.schema.equals(schema))) {
+            schemaId = new SchemaId(schema, schemaRegistryClient.register(subject, schema));
+            schemaIds.put(subject, schemaId);
+        }
+        return schemaId.id;
+    }
+
+    private static class SchemaId {
+        private final Schema schema;
+        private final int id;
+
+        SchemaId(Schema schema, int id) {
+            this.schema = schema;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Output buffer and encoder of one thread. directBinaryEncoder writes to the buffer without its own buffering,
+     * so there is nothing to flush before copying the bytes.
+     */
+    private static class Encoding {
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        private BinaryEncoder encoder;
+
+        <T> byte[] encode(int schemaId, SpecificDatumWriter<T> datumWriter, T data) throws IOException {
+            outputStream.reset();
+            outputStream.write(CachedSchemaAvroSerdeConfig.MAGIC_BYTE);
+            outputStream.write(schemaId >>> 24);
+            outputStream.write(schemaId >>> 16);
+            outputStream.write(schemaId >>> 8);
+            outputStream.write(schemaId);
+            encoder = EncoderFactory.get().directBinaryEncoder(outputStream, encoder);
+            datumWriter.write(data, encoder);
+            return outputStream.toByteArray();
+        }
+
+        boolean isOversized() {
+            return outputStream.size() > MAX_REUSED_BUFFER_SIZE;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.Schema;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * Minimal client of the schema registry REST API with only the two calls the cached serde needs, register (or look up) the
+ * schema of a subject and get a schema by id. Both are called once per subject or id and the results are cached by the
+ * serde, so this client is not on the path of every record.
+ */
+class SchemaRegistryRestClient {
+
+    private static final String CONTENT_TYPE = "application/vnd.schemaregistry.v1+json";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+
+    private final HttpClient httpClient;
+
+    SchemaRegistryRestClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    }
+
+    /**
+     * Register the schema under the subject, registry returns the id of the existing schema if it is already registered.
+     * @param subject
+     * @param schema
+     * @return schema id
+     */
+    int register(String subject, Schema schema) {
+        try {
+            String body = OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("schema", schema.toString()));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/subjects/" +
+                            URLEncoder.encode(subject, StandardCharsets.UTF_8) + "/versions"))
+                    .timeout(TIMEOUT)
+                    .header("Content-Type", CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            return send(request).get("id").asInt();
+        } catch (IOException e) {
+            throw new SerializationException("Could not register avro schema for subject " + subject, e);
+        }
+    }
+
+    /**
+     * @param id
+     * @return the schema registered with the id
+     */
+    Schema getSchema(int id) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/schemas/ids/" + id))
+                .timeout(TIMEOUT)
+                .header("Accept", CONTENT_TYPE)
+                .GET()
+                .build();
+        try {
+            return new Schema.Parser().parse(send(request).get("schema").asText());
+        } catch (IOException e) {
+            throw new SerializationException("Could not get avro schema with id " + id, e);
+        }
+    }
+
+    private JsonNode send(HttpRequest request) throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling schema registry " + request.uri(), e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Schema registry call " + request.uri() + " failed with status " +
+                    response.statusCode() + ": " + response.body());
+        }
+        return OBJECT_MAPPER.readTree(response.body());
+    }
+}
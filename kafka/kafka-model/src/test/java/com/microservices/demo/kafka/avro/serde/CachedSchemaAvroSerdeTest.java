@@ -0,0 +1,191 @@
+package com.microservices.demo.kafka.avro.serde;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachedSchemaAvroSerdeTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final int SCHEMA_ID = 0x01020304;
+
+    @Test
+    public void deserializesWhatSerializerWrote() {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+        TwitterAvroModel tweet = tweet(42L, "hello \u00E9 \uD83D\uDE00");
+
+        byte[] data = serde.serializer().serialize(TOPIC, tweet);
+
+        assertThat(serde.deserializer().deserialize(TOPIC, data)).isEqualTo(tweet);
+    }
+
+    @Test
+    public void keepsNullFields() {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+        TwitterAvroModel tweet = TwitterAvroModel.newBuilder().setId(1L).setUserId(2L).setText(null).setCreatedAt(null).build();
+
+        assertThat(serde.deserializer().deserialize(TOPIC, serde.serializer().serialize(TOPIC, tweet))).isEqualTo(tweet);
+    }
+
+    @Test
+    public void writesConfluentWireFormatHeader() throws IOException {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+        TwitterAvroModel tweet = tweet(42L, "hello");
+
+        byte[] data = serde.serializer().serialize(TOPIC, tweet);
+
+        assertThat(Arrays.copyOf(data, CachedSchemaAvroSerdeConfig.HEADER_SIZE)).containsExactly(0, 1, 2, 3, 4);
+        //the rest is the plain avro binary encoding as written by SpecificDatumWriter, like KafkaAvroSerializer writes it
+        assertThat(Arrays.copyOfRange(data, CachedSchemaAvroSerdeConfig.HEADER_SIZE, data.length))
+                .containsExactly(avroBinary(tweet));
+    }
+
+    @Test
+    public void readsRecordWrittenWithPlainDatumWriter() throws IOException {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(7);
+        TwitterAvroModel tweet = tweet(42L, "hello");
+        byte[] body = avroBinary(tweet);
+        byte[] data = new byte[CachedSchemaAvroSerdeConfig.HEADER_SIZE + body.length];
+        data[4] = 7;
+        System.arraycopy(body, 0, data, CachedSchemaAvroSerdeConfig.HEADER_SIZE, body.length);
+
+        assertThat(serde.deserializer().deserialize(TOPIC, data)).isEqualTo(tweet);
+    }
+
+    @Test
+    public void reusedBuffersDoNotLeakBetweenRecords() {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+        char[] longText = new char[10000];
+        Arrays.fill(longText, 'x');
+        TwitterAvroModel longTweet = tweet(1L, new String(longText));
+        TwitterAvroModel shortTweet = tweet(2L, "short");
+
+        byte[] longData = serde.serializer().serialize(TOPIC, longTweet);
+        byte[] shortData = serde.serializer().serialize(TOPIC, shortTweet);
+
+        assertThat(shortData.length).isLessThan(longData.length);
+        assertThat(serde.deserializer().deserialize(TOPIC, longData)).isEqualTo(longTweet);
+        assertThat(serde.deserializer().deserialize(TOPIC, shortData)).isEqualTo(shortTweet);
+        assertThat(serde.deserializer().deserialize(TOPIC, longData)).isEqualTo(longTweet);
+    }
+
+    @Test
+    public void passesNullThrough() {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+
+        assertThat(serde.serializer().serialize(TOPIC, null)).isNull();
+        assertThat(serde.deserializer().deserialize(TOPIC, null)).isNull();
+    }
+
+    @Test
+    public void rejectsUnknownMagicByteAndSchemaId() {
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = offlineSerde(SCHEMA_ID);
+        byte[] data = serde.serializer().serialize(TOPIC, tweet(42L, "hello"));
+
+        byte[] wrongMagic = data.clone();
+        wrongMagic[0] = 1;
+        assertThatThrownBy(() -> serde.deserializer().deserialize(TOPIC, wrongMagic))
+                .isInstanceOf(SerializationException.class);
+        byte[] wrongId = data.clone();
+        wrongId[4] = 5;
+        assertThatThrownBy(() -> serde.deserializer().deserialize(TOPIC, wrongId))
+                .isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> serde.deserializer().deserialize(TOPIC, new byte[]{0, 0}))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    public void callsSchemaRegistryOnlyOnce() throws IOException {
+        AtomicInteger registerCalls = new AtomicInteger();
+        AtomicInteger getSchemaCalls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/subjects/" + TOPIC + "-value/versions", exchange -> {
+            registerCalls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, "{\"id\": 21}");
+        });
+        server.createContext("/schemas/ids/21", exchange -> {
+            getSchemaCalls.incrementAndGet();
+            String body = "{\"schema\": " + new ObjectMapper()
+                    .writeValueAsString(TwitterAvroModel.getClassSchema().toString()) + "}";
+            respond(exchange, body);
+        });
+        server.start();
+        try {
+            Map<String, Object> configs = Collections.singletonMap(CachedSchemaAvroSerdeConfig.SCHEMA_REGISTRY_URL_CONFIG,
+                    "http://localhost:" + server.getAddress().getPort() + "/");
+            CachedSchemaAvroSerde<TwitterAvroModel> serde = new CachedSchemaAvroSerde<>();
+            serde.configure(configs, false);
+
+            for (long id = 1; id <= 3; id++) {
+                byte[] data = serde.serializer().serialize(TOPIC, tweet(id, "tweet " + id));
+                assertThat(data[4]).isEqualTo((byte) 21);
+                assertThat(serde.deserializer().deserialize(TOPIC, data).getId()).isEqualTo(id);
+            }
+
+            assertThat(registerCalls.get()).isEqualTo(1);
+            assertThat(getSchemaCalls.get()).isEqualTo(1);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static CachedSchemaAvroSerde<TwitterAvroModel> offlineSerde(int schemaId) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(CachedSchemaAvroSerdeConfig.OFFLINE_SCHEMA_ID_CONFIG, String.valueOf(schemaId));
+        CachedSchemaAvroSerde<TwitterAvroModel> serde = new CachedSchemaAvroSerde<>();
+        serde.configure(configs, false);
+        return serde;
+    }
+
+    private static TwitterAvroModel tweet(long id, String text) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(100L + id)
+                .setText(text)
+                .setCreatedAt(1643637600000L)
+                .build();
+    }
+
+    private static byte[] avroBinary(TwitterAvroModel tweet) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        new SpecificDatumWriter<>(TwitterAvroModel.class).write(tweet, encoder);
+        encoder.flush();
+        //and it reads back with the plain reader too
+        assertThat(new SpecificDatumReader<>(TwitterAvroModel.class)
+                .read(null, DecoderFactory.get().binaryDecoder(outputStream.toByteArray(), null))).isEqualTo(tweet);
+        return outputStream.toByteArray();
+    }
+}
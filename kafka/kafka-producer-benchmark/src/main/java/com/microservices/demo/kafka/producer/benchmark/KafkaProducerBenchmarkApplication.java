@@ -0,0 +1,37 @@
+package com.microservices.demo.kafka.producer.benchmark;
+
+import com.microservices.demo.kafka.producer.benchmark.runner.ProducerBenchmarkRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ComponentScan;
+
+/**
+ * This is the starting class of kafka-producer-benchmark module. It starts an in process kafka broker, runs the producer
+ * benchmark for every configured combination of producer settings, writes the report and exits.
+ * Only the config classes and this module are scanned, the producer beans of kafka-producer are created per benchmark run.
+ */
+@SpringBootApplication
+@ComponentScan(basePackages = {"com.microservices.demo.config", "com.microservices.demo.kafka.producer.benchmark"})
+public class KafkaProducerBenchmarkApplication implements CommandLineRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaProducerBenchmarkApplication.class);
+
+    private final ProducerBenchmarkRunner producerBenchmarkRunner;
+
+    public KafkaProducerBenchmarkApplication(ProducerBenchmarkRunner producerBenchmarkRunner) {
+        this.producerBenchmarkRunner = producerBenchmarkRunner;
+    }
+
+    public static void main(String[] args) {
+        System.exit(SpringApplication.exit(SpringApplication.run(KafkaProducerBenchmarkApplication.class, args)));
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        LOG.info("Kafka producer benchmark start.......");
+        producerBenchmarkRunner.run();
+    }
+}
@@ -0,0 +1,68 @@
+package com.microservices.demo.kafka.producer.benchmark.broker;
+
+import com.microservices.demo.config.KafkaConfigData;
+import kafka.testkit.KafkaClusterTestKit;
+import kafka.testkit.TestKitNodes;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+
+/**
+ * This class start one kafka broker in KRaft mode (combined broker and controller) inside the benchmark jvm and create the
+ * benchmark topic with kafka-config.num-of-partitions partitions. The broker runs on a random local port which is given by
+ * getBootstrapServers().
+ */
+@Component
+public class EmbeddedKafkaCluster {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKafkaCluster.class);
+
+    private final KafkaConfigData kafkaConfigData;
+
+    private KafkaClusterTestKit kafkaCluster;
+
+    private String bootstrapServers;
+
+    public EmbeddedKafkaCluster(KafkaConfigData kafkaConfigData) {
+        this.kafkaConfigData = kafkaConfigData;
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        kafkaCluster = new KafkaClusterTestKit.Builder(new TestKitNodes.Builder()
+                .setCombined(true)
+                .setNumBrokerNodes(1)
+                .setNumControllerNodes(1)
+                .build())
+                .build();
+        kafkaCluster.format();
+        kafkaCluster.startup();
+        kafkaCluster.waitForReadyBrokers();
+        bootstrapServers = kafkaCluster.clientProperties().getProperty(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG);
+        try (Admin admin = Admin.create(kafkaCluster.clientProperties())) {
+            admin.createTopics(Collections.singletonList(
+                    new NewTopic(kafkaConfigData.getTopicName(), kafkaConfigData.getNumOfPartitions(), (short) 1)))
+                    .all().get();
+        }
+        LOG.info("Embedded kafka broker started on {} with topic {}", bootstrapServers, kafkaConfigData.getTopicName());
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (kafkaCluster != null) {
+            LOG.info("Stopping embedded kafka broker");
+            kafkaCluster.close();
+        }
+    }
+
+    public String getBootstrapServers() {
+        return bootstrapServers;
+    }
+}
@@ -0,0 +1,90 @@
+package com.microservices.demo.kafka.producer.benchmark.model;
+
+/**
+ * Result of one benchmark run with the producer settings used for the run, latencies are acknowledgement latencies
+ * in microseconds from the send() call until the producer listener is called for the record.
+ */
+public class BenchmarkResult {
+
+    private final int batchSize;
+
+    private final int batchSizeBoostFactor;
+
+    private final int lingerMs;
+
+    private final String compressionType;
+
+    private final long records;
+
+    private final long errors;
+
+    private final double recordsPerSecond;
+
+    private final double bytesPerSecond;
+
+    private final long p50LatencyMicros;
+
+    private final long p99LatencyMicros;
+
+    private final long p999LatencyMicros;
+
+    public BenchmarkResult(int batchSize, int batchSizeBoostFactor, int lingerMs, String compressionType, long records,
+                           long errors, double recordsPerSecond, double bytesPerSecond, long p50LatencyMicros,
+                           long p99LatencyMicros, long p999LatencyMicros) {
+        this.batchSize = batchSize;
+        this.batchSizeBoostFactor = batchSizeBoostFactor;
+        this.lingerMs = lingerMs;
+        this.compressionType = compressionType;
+        this.records = records;
+        this.errors = errors;
+        this.recordsPerSecond = recordsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.p50LatencyMicros = p50LatencyMicros;
+        this.p99LatencyMicros = p99LatencyMicros;
+        this.p999LatencyMicros = p999LatencyMicros;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchSizeBoostFactor() {
+        return batchSizeBoostFactor;
+    }
+
+    public int getLingerMs() {
+        return lingerMs;
+    }
+
+    public String getCompressionType() {
+        return compressionType;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getP50LatencyMicros() {
+        return p50LatencyMicros;
+    }
+
+    public long getP99LatencyMicros() {
+        return p99LatencyMicros;
+    }
+
+    public long getP999LatencyMicros() {
+        return p999LatencyMicros;
+    }
+}
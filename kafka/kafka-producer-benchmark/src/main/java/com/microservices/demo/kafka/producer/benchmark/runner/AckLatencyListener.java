@@ -0,0 +1,69 @@
+package com.microservices.demo.kafka.producer.benchmark.runner;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.kafka.support.ProducerListener;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ProducerListener which is set on the KafkaTemplate of a benchmark run. The id of every measured TwitterAvroModel is its
+ * index in the run, so the send time and the acknowledgement latency are kept in plain arrays indexed by the id without any
+ * map or object per record. Warmup records have negative ids and are only counted.
+ * Send time is written before send() and read in the producer network thread after the record is acknowledged, the record
+ * accumulator of the producer is synchronized so the write is visible there.
+ */
+class AckLatencyListener implements ProducerListener<Long, TwitterAvroModel> {
+
+    private final long[] sendNanos;
+
+    private final long[] latencyNanos;
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile CountDownLatch pendingAcks = new CountDownLatch(0);
+
+    AckLatencyListener(int records) {
+        this.sendNanos = new long[records];
+        this.latencyNanos = new long[records];
+    }
+
+    void expectAcks(int count) {
+        pendingAcks = new CountDownLatch(count);
+    }
+
+    boolean awaitAcks(long timeoutMs) throws InterruptedException {
+        return pendingAcks.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    void markSent(int index) {
+        sendNanos[index] = System.nanoTime();
+    }
+
+    long[] getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public void onSuccess(ProducerRecord<Long, TwitterAvroModel> producerRecord, RecordMetadata recordMetadata) {
+        long index = producerRecord.value().getId();
+        if (index >= 0) {
+            latencyNanos[(int) index] = System.nanoTime() - sendNanos[(int) index];
+        }
+        pendingAcks.countDown();
+    }
+
+    @Override
+    public void onError(ProducerRecord<Long, TwitterAvroModel> producerRecord, RecordMetadata recordMetadata,
+                        Exception exception) {
+        errors.incrementAndGet();
+        pendingAcks.countDown();
+    }
+}
@@ -0,0 +1,219 @@
+package com.microservices.demo.kafka.producer.benchmark.runner;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaProducerBenchmarkConfigData;
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.benchmark.broker.EmbeddedKafkaCluster;
+import com.microservices.demo.kafka.producer.benchmark.model.BenchmarkResult;
+import com.microservices.demo.kafka.producer.config.KafkaProducerConfig;
+import com.microservices.demo.kafka.producer.service.impl.TwitterKafkaProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class run one benchmark with the given producer settings. It creates the producer factory and KafkaTemplate with
+ * KafkaProducerConfig of kafka-producer module exactly like the services do, drives TwitterKafkaProducer with synthetic
+ * TwitterAvroModel records (after a warmup) at the target rate and measures the throughput and acknowledgement latency.
+ * Bytes per second are taken from the outgoing-byte-total producer metric, so it is the bytes on the wire after compression.
+ */
+@Component
+public class ProducerBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerBenchmark.class);
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "Java", "Kafka", "Microservices",
+            "Elasticsearch", "congue", "massa", "Fusce", "magna", "sed"
+    };
+
+    private static final int TEXT_POOL_SIZE = 1024;
+
+    private static final int DEFAULT_TWEET_TEXT_LENGTH = 140;
+
+    private static final long DEFAULT_ACK_TIMEOUT_MS = 120000;
+
+    private static final long WARMUP_TWEET_ID = -1;
+
+    private final KafkaConfigData kafkaConfigData;
+
+    private final KafkaProducerConfigData kafkaProducerConfigData;
+
+    private final KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData;
+
+    private final EmbeddedKafkaCluster embeddedKafkaCluster;
+
+    private final String[] textPool;
+
+    public ProducerBenchmark(KafkaConfigData kafkaConfigData,
+                             KafkaProducerConfigData kafkaProducerConfigData,
+                             KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData,
+                             EmbeddedKafkaCluster embeddedKafkaCluster) {
+        this.kafkaConfigData = kafkaConfigData;
+        this.kafkaProducerConfigData = kafkaProducerConfigData;
+        this.kafkaProducerBenchmarkConfigData = kafkaProducerBenchmarkConfigData;
+        this.embeddedKafkaCluster = embeddedKafkaCluster;
+        this.textPool = createTextPool(kafkaProducerBenchmarkConfigData.getTweetTextLength() == null ?
+                DEFAULT_TWEET_TEXT_LENGTH : kafkaProducerBenchmarkConfigData.getTweetTextLength());
+    }
+
+    public BenchmarkResult run(int batchSize, int batchSizeBoostFactor, int lingerMs, String compressionType)
+            throws Exception {
+        KafkaProducerConfigData runProducerConfigData = getRunProducerConfigData(batchSize, batchSizeBoostFactor, lingerMs,
+                compressionType);
+        //Meters of the producer are not part of the report, every run get its own registry
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KafkaProducerConfig<Long, TwitterAvroModel> kafkaProducerConfig = new KafkaProducerConfig<>(getRunKafkaConfigData(),
+                runProducerConfigData, meterRegistry);
+        ProducerFactory<Long, TwitterAvroModel> producerFactory = kafkaProducerConfig.producerFactory();
+        KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        int records = kafkaProducerBenchmarkConfigData.getRecordsPerRun();
+        AckLatencyListener ackLatencyListener = new AckLatencyListener(records);
+        kafkaTemplate.setProducerListener(ackLatencyListener);
+        TwitterKafkaProducer twitterKafkaProducer = new TwitterKafkaProducer(kafkaTemplate, meterRegistry, Optional.empty());
+        long ackTimeoutMs = kafkaProducerBenchmarkConfigData.getAckTimeoutMs() == null ?
+                DEFAULT_ACK_TIMEOUT_MS : kafkaProducerBenchmarkConfigData.getAckTimeoutMs();
+        try {
+            warmup(twitterKafkaProducer, ackLatencyListener, ackTimeoutMs);
+
+            long bytesBefore = getOutgoingBytes(kafkaTemplate);
+            ackLatencyListener.expectAcks(records);
+            long startNanos = System.nanoTime();
+            sendRecords(twitterKafkaProducer, ackLatencyListener, records, startNanos);
+            if (!ackLatencyListener.awaitAcks(ackTimeoutMs)) {
+                LOG.warn("Not all records are acknowledged in {} ms, missing records are not in the latencies", ackTimeoutMs);
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            long bytes = getOutgoingBytes(kafkaTemplate) - bytesBefore;
+
+            long[] latencies = getSortedLatencies(ackLatencyListener.getLatencyNanos());
+            double elapsedSeconds = elapsedNanos / 1_000_000_000d;
+            return new BenchmarkResult(batchSize, batchSizeBoostFactor, lingerMs, compressionType, records,
+                    ackLatencyListener.getErrors(), records / elapsedSeconds, bytes / elapsedSeconds,
+                    getPercentileMicros(latencies, 0.5), getPercentileMicros(latencies, 0.99),
+                    getPercentileMicros(latencies, 0.999));
+        } finally {
+            twitterKafkaProducer.close();
+            ((DisposableBean) producerFactory).destroy();
+        }
+    }
+
+    private void warmup(TwitterKafkaProducer twitterKafkaProducer, AckLatencyListener ackLatencyListener, long ackTimeoutMs)
+            throws InterruptedException {
+        int warmupRecords = kafkaProducerBenchmarkConfigData.getWarmupRecords() == null ?
+                0 : kafkaProducerBenchmarkConfigData.getWarmupRecords();
+        ackLatencyListener.expectAcks(warmupRecords);
+        for (int i = 0; i < warmupRecords; i++) {
+            long userId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            twitterKafkaProducer.send(kafkaConfigData.getTopicName(), userId,
+                    new TwitterAvroModel(userId, WARMUP_TWEET_ID, textPool[i % TEXT_POOL_SIZE], System.currentTimeMillis()));
+        }
+        ackLatencyListener.awaitAcks(ackTimeoutMs);
+    }
+
+    /**
+     * Send the measured records, with target rate every record has its planned send time and the loop parks until then,
+     * so a slow send does not lower the rate of the following records (no coordinated omission in the send side).
+     */
+    private void sendRecords(TwitterKafkaProducer twitterKafkaProducer, AckLatencyListener ackLatencyListener, int records,
+                             long startNanos) {
+        Integer targetRecordsPerSecond = kafkaProducerBenchmarkConfigData.getTargetRecordsPerSecond();
+        long intervalNanos = targetRecordsPerSecond == null || targetRecordsPerSecond <= 0 ?
+                0 : TimeUnit.SECONDS.toNanos(1) / targetRecordsPerSecond;
+        for (int i = 0; i < records; i++) {
+            if (intervalNanos > 0) {
+                long waitNanos;
+                while ((waitNanos = startNanos + i * intervalNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+            long userId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            TwitterAvroModel twitterAvroModel = new TwitterAvroModel(userId, (long) i, textPool[i % TEXT_POOL_SIZE],
+                    System.currentTimeMillis());
+            ackLatencyListener.markSent(i);
+            twitterKafkaProducer.send(kafkaConfigData.getTopicName(), userId, twitterAvroModel);
+        }
+    }
+
+    private long getOutgoingBytes(KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : kafkaTemplate.metrics().entrySet()) {
+            MetricName metricName = entry.getKey();
+            if ("outgoing-byte-total".equals(metricName.name()) && "producer-metrics".equals(metricName.group())) {
+                return ((Number) entry.getValue().metricValue()).longValue();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Records which are not acknowledged have zero latency, they are left out.
+     */
+    private long[] getSortedLatencies(long[] latencyNanos) {
+        long[] latencies = Arrays.stream(latencyNanos).filter(latency -> latency > 0).toArray();
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private long getPercentileMicros(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sortedLatencies[Math.max(0, index)]);
+    }
+
+    private KafkaConfigData getRunKafkaConfigData() {
+        KafkaConfigData runKafkaConfigData = new KafkaConfigData();
+        runKafkaConfigData.setBootstrapServers(embeddedKafkaCluster.getBootstrapServers());
+        runKafkaConfigData.setSchemaRegistryUrlKey(kafkaConfigData.getSchemaRegistryUrlKey());
+        runKafkaConfigData.setSchemaRegistryUrl(kafkaConfigData.getSchemaRegistryUrl());
+        runKafkaConfigData.setTopicName(kafkaConfigData.getTopicName());
+        runKafkaConfigData.setNumOfPartitions(kafkaConfigData.getNumOfPartitions());
+        return runKafkaConfigData;
+    }
+
+    private KafkaProducerConfigData getRunProducerConfigData(int batchSize, int batchSizeBoostFactor, int lingerMs,
+                                                             String compressionType) {
+        KafkaProducerConfigData runProducerConfigData = new KafkaProducerConfigData();
+        runProducerConfigData.setKeySerializerClass(kafkaProducerConfigData.getKeySerializerClass());
+        runProducerConfigData.setValueSerializerClass(kafkaProducerConfigData.getValueSerializerClass());
+        runProducerConfigData.setAcks(kafkaProducerConfigData.getAcks());
+        runProducerConfigData.setRequestTimeoutMs(kafkaProducerConfigData.getRequestTimeoutMs());
+        runProducerConfigData.setRetryCount(kafkaProducerConfigData.getRetryCount());
+        runProducerConfigData.setEnableIdempotence(kafkaProducerConfigData.getEnableIdempotence());
+        runProducerConfigData.setMaxInFlightRequestsPerConnection(kafkaProducerConfigData.getMaxInFlightRequestsPerConnection());
+        runProducerConfigData.setBatchSize(batchSize);
+        runProducerConfigData.setBatchSizeBoostFactor(batchSizeBoostFactor);
+        runProducerConfigData.setLingerMs(lingerMs);
+        runProducerConfigData.setCompressionType(compressionType);
+        return runProducerConfigData;
+    }
+
+    private String[] createTextPool(int textLength) {
+        String[] texts = new String[TEXT_POOL_SIZE];
+        StringBuilder text = new StringBuilder(textLength + 16);
+        for (int i = 0; i < TEXT_POOL_SIZE; i++) {
+            text.setLength(0);
+            while (text.length() < textLength) {
+                text.append(WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)]).append(' ');
+            }
+            texts[i] = text.substring(0, textLength);
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,84 @@
+package com.microservices.demo.kafka.producer.benchmark.runner;
+
+import com.microservices.demo.config.KafkaProducerBenchmarkConfigData;
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.producer.benchmark.model.BenchmarkResult;
+import org.apache.kafka.common.utils.AppInfoParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class write the benchmark results as a markdown table to kafka-producer-benchmark-config.report-file and to the log.
+ * There is no timestamp in the report, so two reports of the same settings can be diffed between releases.
+ */
+@Component
+public class ProducerBenchmarkReport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerBenchmarkReport.class);
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData;
+
+    private final KafkaProducerConfigData kafkaProducerConfigData;
+
+    public ProducerBenchmarkReport(KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData,
+                                   KafkaProducerConfigData kafkaProducerConfigData) {
+        this.kafkaProducerBenchmarkConfigData = kafkaProducerBenchmarkConfigData;
+        this.kafkaProducerConfigData = kafkaProducerConfigData;
+    }
+
+    public void write(List<BenchmarkResult> results) throws IOException {
+        String report = format(results);
+        LOG.info("Kafka producer benchmark results:\n{}", report);
+        Path reportFile = Paths.get(kafkaProducerBenchmarkConfigData.getReportFile());
+        if (reportFile.getParent() != null) {
+            Files.createDirectories(reportFile.getParent());
+        }
+        Files.write(reportFile, report.getBytes(StandardCharsets.UTF_8));
+        LOG.info("Kafka producer benchmark report is written to {}", reportFile.toAbsolutePath());
+    }
+
+    private String format(List<BenchmarkResult> results) {
+        StringBuilder report = new StringBuilder();
+        report.append("# Kafka producer benchmark\n\n")
+                .append("kafka-clients ").append(AppInfoParser.getVersion())
+                .append(", acks ").append(kafkaProducerConfigData.getAcks())
+                .append(", idempotence ").append(kafkaProducerConfigData.getEnableIdempotence())
+                .append(", ").append(kafkaProducerBenchmarkConfigData.getRecordsPerRun()).append(" records per run")
+                .append(", target ").append(getTargetRate()).append(" records/s")
+                .append(", tweet text ").append(kafkaProducerBenchmarkConfigData.getTweetTextLength()).append(" chars\n\n")
+                .append("| batch-size | boost factor | batch bytes | linger-ms | compression | records/s | MB/s | " +
+                        "p50 ms | p99 ms | p999 ms | errors |\n")
+                .append("|---:|---:|---:|---:|---|---:|---:|---:|---:|---:|---:|\n");
+        for (BenchmarkResult result : results) {
+            report.append(String.format(Locale.ROOT, "| %d | %d | %d | %d | %s | %.0f | %.2f | %.3f | %.3f | %.3f | %d |%n",
+                    result.getBatchSize(),
+                    result.getBatchSizeBoostFactor(),
+                    (long) result.getBatchSize() * result.getBatchSizeBoostFactor(),
+                    result.getLingerMs(),
+                    result.getCompressionType(),
+                    result.getRecordsPerSecond(),
+                    result.getBytesPerSecond() / MEGABYTE,
+                    result.getP50LatencyMicros() / 1000d,
+                    result.getP99LatencyMicros() / 1000d,
+                    result.getP999LatencyMicros() / 1000d,
+                    result.getErrors()));
+        }
+        return report.toString();
+    }
+
+    private String getTargetRate() {
+        Integer targetRecordsPerSecond = kafkaProducerBenchmarkConfigData.getTargetRecordsPerSecond();
+        return targetRecordsPerSecond == null || targetRecordsPerSecond <= 0 ? "unlimited" : targetRecordsPerSecond.toString();
+    }
+}
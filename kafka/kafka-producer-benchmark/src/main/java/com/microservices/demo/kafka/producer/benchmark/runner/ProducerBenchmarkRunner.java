@@ -0,0 +1,54 @@
+package com.microservices.demo.kafka.producer.benchmark.runner;
+
+import com.microservices.demo.config.KafkaProducerBenchmarkConfigData;
+import com.microservices.demo.kafka.producer.benchmark.model.BenchmarkResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class sweep all combinations of the configured batch sizes, batch size boost factors, linger ms values and compression
+ * types, run ProducerBenchmark for each of them and write the results with ProducerBenchmarkReport.
+ */
+@Component
+public class ProducerBenchmarkRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerBenchmarkRunner.class);
+
+    private final KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData;
+
+    private final ProducerBenchmark producerBenchmark;
+
+    private final ProducerBenchmarkReport producerBenchmarkReport;
+
+    public ProducerBenchmarkRunner(KafkaProducerBenchmarkConfigData kafkaProducerBenchmarkConfigData,
+                                   ProducerBenchmark producerBenchmark,
+                                   ProducerBenchmarkReport producerBenchmarkReport) {
+        this.kafkaProducerBenchmarkConfigData = kafkaProducerBenchmarkConfigData;
+        this.producerBenchmark = producerBenchmark;
+        this.producerBenchmarkReport = producerBenchmarkReport;
+    }
+
+    public void run() throws Exception {
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (Integer batchSize : kafkaProducerBenchmarkConfigData.getBatchSizes()) {
+            for (Integer batchSizeBoostFactor : kafkaProducerBenchmarkConfigData.getBatchSizeBoostFactors()) {
+                for (Integer lingerMs : kafkaProducerBenchmarkConfigData.getLingerMsValues()) {
+                    for (String compressionType : kafkaProducerBenchmarkConfigData.getCompressionTypes()) {
+                        LOG.info("Running producer benchmark with batch-size {}, batch-size-boost-factor {}, linger-ms {}, " +
+                                "compression-type {}", batchSize, batchSizeBoostFactor, lingerMs, compressionType);
+                        BenchmarkResult result = producerBenchmark.run(batchSize, batchSizeBoostFactor, lingerMs,
+                                compressionType);
+                        LOG.info("{} records/s, p99 {} us", Math.round(result.getRecordsPerSecond()),
+                                result.getP99LatencyMicros());
+                        results.add(result);
+                    }
+                }
+            }
+        }
+        producerBenchmarkReport.write(results);
+    }
+}
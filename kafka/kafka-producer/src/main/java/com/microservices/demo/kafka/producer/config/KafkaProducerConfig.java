@@ -2,12 +2,16 @@ package com.microservices.demo.kafka.producer.config;
 
 import com.microservices.demo.config.KafkaConfigData;
 import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.serde.CachedSchemaAvroSerdeConfig;
+import com.microservices.demo.kafka.producer.partitioner.TwitterPartitioner;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
 
 import java.io.Serializable;
@@ -22,15 +26,19 @@ import java.util.Map;
 public class KafkaProducerConfig <K extends Serializable,V extends SpecificRecordBase>{
     private final KafkaConfigData kafkaConfigData;
     private final KafkaProducerConfigData kafkaProducerConfigData;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Constructor to initialize KafkaConfigData and KafkaProducerConfigData.
+     * Constructor to initialize KafkaConfigData, KafkaProducerConfigData and MeterRegistry.
      * @param kafkaConfigData
      * @param kafkaProducerConfigData
+     * @param meterRegistry
      */
-    public KafkaProducerConfig(KafkaConfigData kafkaConfigData, KafkaProducerConfigData kafkaProducerConfigData) {
+    public KafkaProducerConfig(KafkaConfigData kafkaConfigData, KafkaProducerConfigData kafkaProducerConfigData,
+                               MeterRegistry meterRegistry) {
         this.kafkaConfigData = kafkaConfigData;
         this.kafkaProducerConfigData = kafkaProducerConfigData;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -51,16 +59,68 @@ public class KafkaProducerConfig <K extends Serializable,V extends SpecificRecor
         props.put(ProducerConfig.ACKS_CONFIG,kafkaProducerConfigData.getAcks());
         props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG,kafkaProducerConfigData.getRequestTimeoutMs());
         props.put(ProducerConfig.RETRIES_CONFIG,kafkaProducerConfigData.getRetryCount());
+        //Only set when configured, otherwise the default of the kafka client is kept. Transactions always need the
+        //idempotent producer
+        if (Boolean.TRUE.equals(kafkaProducerConfigData.getEnableTransactions())) {
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG,true);
+        } else if (null != kafkaProducerConfigData.getEnableIdempotence()) {
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG,kafkaProducerConfigData.getEnableIdempotence());
+        }
+        if (null != kafkaProducerConfigData.getMaxInFlightRequestsPerConnection()) {
+            props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+                    kafkaProducerConfigData.getMaxInFlightRequestsPerConnection());
+        }
+        if (null != kafkaProducerConfigData.getPartitioningStrategy()) {
+            addPartitionerConfig(props);
+        }
+        //only used by CachedSchemaAvroSerializer, with the offline schema id it doesn't call the schema registry
+        if (null != kafkaConfigData.getOfflineAvroSchemaId()) {
+            props.put(CachedSchemaAvroSerdeConfig.OFFLINE_SCHEMA_ID_CONFIG, kafkaConfigData.getOfflineAvroSchemaId());
+        }
         return props;
     }
 
+    /**
+     * TwitterPartitioner is created by the kafka producer, so its settings are passed with the producer properties and
+     * it reads them in its configure() method.
+     * @param props
+     */
+    private void addPartitionerConfig(Map<String,Object> props) {
+        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, TwitterPartitioner.class);
+        props.put(TwitterPartitioner.STRATEGY_CONFIG, kafkaProducerConfigData.getPartitioningStrategy());
+        if (null != kafkaProducerConfigData.getPartitioningKeywords()) {
+            props.put(TwitterPartitioner.KEYWORDS_CONFIG, kafkaProducerConfigData.getPartitioningKeywords());
+        }
+        if (null != kafkaProducerConfigData.getStickyPartitionRecords()) {
+            props.put(TwitterPartitioner.STICKY_RECORDS_CONFIG, kafkaProducerConfigData.getStickyPartitionRecords());
+        }
+        if (null != kafkaProducerConfigData.getHotKeyShareThreshold()) {
+            props.put(TwitterPartitioner.HOT_KEY_SHARE_THRESHOLD_CONFIG, kafkaProducerConfigData.getHotKeyShareThreshold());
+        }
+        if (null != kafkaProducerConfigData.getHotKeyWindowMs()) {
+            props.put(TwitterPartitioner.HOT_KEY_WINDOW_MS_CONFIG, kafkaProducerConfigData.getHotKeyWindowMs());
+        }
+        if (null != kafkaProducerConfigData.getHotKeyMinRecords()) {
+            props.put(TwitterPartitioner.HOT_KEY_MIN_RECORDS_CONFIG, kafkaProducerConfigData.getHotKeyMinRecords());
+        }
+    }
+
     /**
      * This method simply return the ProducerFactory object by loading the properties of kafka producers.
+     * When transactions are enabled the factory get the transactional id prefix and create one transactional producer for
+     * each concurrent transaction.
+     * MicrometerProducerListener binds the kafka client metrics (record-send-rate, batch-size-avg, request-latency-avg,
+     * record-queue-time-avg etc.) of every producer created by the factory to the MeterRegistry.
      * @return
      */
     @Bean
     public ProducerFactory<K,V> producerFactory(){
-        return new DefaultKafkaProducerFactory<>(producerConfig());
+        DefaultKafkaProducerFactory<K,V> producerFactory=new DefaultKafkaProducerFactory<>(producerConfig());
+        producerFactory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        if (Boolean.TRUE.equals(kafkaProducerConfigData.getEnableTransactions())) {
+            producerFactory.setTransactionIdPrefix(kafkaProducerConfigData.getTransactionalIdPrefix());
+        }
+        return producerFactory;
     }
 
     /**
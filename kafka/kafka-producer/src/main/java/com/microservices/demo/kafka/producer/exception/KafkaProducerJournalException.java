@@ -0,0 +1,16 @@
+package com.microservices.demo.kafka.producer.exception;
+
+/**
+ * This class has only one sole purpose to provide the custom exception message by extending the RuntimeException so that we
+ * will be easily identify that the failure journal of kafka producer module is causing the exception.
+ */
+public class KafkaProducerJournalException extends RuntimeException {
+    public KafkaProducerJournalException() {
+    }
+    public KafkaProducerJournalException(String message) {
+        super(message);
+    }
+    public KafkaProducerJournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,55 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+
+/**
+ * One record read from the failure journal with the position after it, which is passed back to KafkaRecordJournal
+ * acknowledge() when the record is sent again.
+ */
+public class JournalRecord {
+
+    private final String topic;
+
+    private final Long key;
+
+    private final TwitterAvroModel value;
+
+    private final long appendTimeMs;
+
+    private final long segmentId;
+
+    private final int nextPosition;
+
+    JournalRecord(String topic, Long key, TwitterAvroModel value, long appendTimeMs, long segmentId, int nextPosition) {
+        this.topic = topic;
+        this.key = key;
+        this.value = value;
+        this.appendTimeMs = appendTimeMs;
+        this.segmentId = segmentId;
+        this.nextPosition = nextPosition;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public Long getKey() {
+        return key;
+    }
+
+    public TwitterAvroModel getValue() {
+        return value;
+    }
+
+    public long getAppendTimeMs() {
+        return appendTimeMs;
+    }
+
+    long getSegmentId() {
+        return segmentId;
+    }
+
+    int getNextPosition() {
+        return nextPosition;
+    }
+}
@@ -0,0 +1,187 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.AuthenticationException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sends the records of KafkaRecordJournal to kafka again. Every journal-replay-interval-ms it reads the next
+ * records from the journal (as many as journal-replay-records-per-second allows for one interval), sends them in order
+ * and waits for the acks, so replay never goes over the configured rate and does not compete with the live stream for the
+ * producer buffer. Records are acknowledged in the journal up to the first failure, after a failure replay waits with
+ * exponential backoff (up to journal-replay-max-backoff-ms) as kafka is probably still not reachable.
+ * Records sent after the failed one are replayed again, so a record can be written twice but it is never lost.
+ * Only retriable failures (RetriableException of kafka, or authentication and authorization errors which do not depend on the
+ * record) stop the replay. A record which failed with any other error (e.g. too large or not serializable) would fail on
+ * every attempt and block the journal for good, so it is skipped, logged with its key and counted as
+ * kafka.producer.journal.replay.poison.
+ */
+@Component
+@ConditionalOnExpression("${kafka-producer-config.enable-failure-journal:false} && !${kafka-producer-config.enable-transactions:false}")
+public class JournalReplayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalReplayer.class);
+
+    private static final int DEFAULT_RECORDS_PER_SECOND = 5000;
+
+    private static final long DEFAULT_INTERVAL_MS = 100;
+
+    private static final long DEFAULT_MAX_BACKOFF_MS = 30000;
+
+    private final KafkaRecordJournal kafkaRecordJournal;
+
+    private final KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate;
+
+    private final int recordsPerInterval;
+
+    private final long intervalMs;
+
+    private final long maxBackoffMs;
+
+    private final Counter replayedCounter;
+
+    private final Counter replayFailureCounter;
+
+    private final Counter poisonCounter;
+
+    private final ScheduledExecutorService replayScheduler;
+
+    private long backoffMs;
+
+    private long nextAttemptMs;
+
+    /**
+     * inject KafkaRecordJournal, KafkaTemplate, KafkaProducerConfigData and MeterRegistry beans and start the replay timer.
+     * @param kafkaRecordJournal
+     * @param kafkaTemplate
+     * @param kafkaProducerConfigData
+     * @param meterRegistry
+     */
+    public JournalReplayer(KafkaRecordJournal kafkaRecordJournal, KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate,
+                           KafkaProducerConfigData kafkaProducerConfigData, MeterRegistry meterRegistry) {
+        this.kafkaRecordJournal = kafkaRecordJournal;
+        this.kafkaTemplate = kafkaTemplate;
+        this.intervalMs = kafkaProducerConfigData.getJournalReplayIntervalMs() == null ?
+                DEFAULT_INTERVAL_MS : kafkaProducerConfigData.getJournalReplayIntervalMs();
+        int recordsPerSecond = kafkaProducerConfigData.getJournalReplayRecordsPerSecond() == null ?
+                DEFAULT_RECORDS_PER_SECOND : kafkaProducerConfigData.getJournalReplayRecordsPerSecond();
+        this.recordsPerInterval = (int) Math.max(1, recordsPerSecond * intervalMs / 1000);
+        this.maxBackoffMs = kafkaProducerConfigData.getJournalReplayMaxBackoffMs() == null ?
+                DEFAULT_MAX_BACKOFF_MS : kafkaProducerConfigData.getJournalReplayMaxBackoffMs();
+        this.replayedCounter = Counter.builder("kafka.producer.journal.replayed")
+                .description("Records of the journal sent to kafka again")
+                .register(meterRegistry);
+        this.replayFailureCounter = Counter.builder("kafka.producer.journal.replay.failures")
+                .description("Replay attempts which failed because kafka was still not reachable")
+                .register(meterRegistry);
+        this.poisonCounter = Counter.builder("kafka.producer.journal.replay.poison")
+                .description("Records of the journal skipped because kafka rejected them with a non retriable error")
+                .register(meterRegistry);
+        this.replayScheduler = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("kafka-producer-journal-replay-"));
+        replayScheduler.scheduleWithFixedDelay(this::replay, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the replay before the journal is closed, records which are not acknowledged yet are replayed after the restart.
+     */
+    @PreDestroy
+    public void close() {
+        replayScheduler.shutdownNow();
+    }
+
+    private void replay() {
+        if (kafkaRecordJournal.isEmpty() || System.currentTimeMillis() < nextAttemptMs) {
+            return;
+        }
+        List<JournalRecord> records = kafkaRecordJournal.peek(recordsPerInterval);
+        if (records.isEmpty()) {
+            return;
+        }
+        int acknowledged = 0;
+        Throwable failure = null;
+        try {
+            List<Future<RecordMetadata>> futures = kafkaTemplate.execute(producer -> {
+                List<Future<RecordMetadata>> sendFutures = new ArrayList<>(records.size());
+                for (JournalRecord record : records) {
+                    try {
+                        sendFutures.add(producer.send(
+                                new ProducerRecord<>(record.getTopic(), record.getKey(), record.getValue())));
+                    } catch (RuntimeException e) {
+                        //e.g. serialization errors are thrown by send(), the records after it are sent on the next attempt
+                        sendFutures.add(CompletableFuture.failedFuture(e));
+                        break;
+                    }
+                }
+                return sendFutures;
+            });
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (isRetriable(e.getCause())) {
+                        failure = e.getCause();
+                        break;
+                    }
+                    poisonCounter.increment();
+                    LOG.error("Skipping journal record with key {} for topic {} which kafka rejected with a non retriable error",
+                            records.get(i).getKey(), records.get(i).getTopic(), e.getCause());
+                }
+                kafkaRecordJournal.acknowledge(records.get(i));
+                acknowledged++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            if (acknowledged > 0) {
+                kafkaRecordJournal.checkpoint();
+                replayedCounter.increment(acknowledged);
+            }
+        }
+        if (failure == null) {
+            backoffMs = 0;
+            LOG.debug("Replayed {} records from journal, {} records pending", acknowledged, kafkaRecordJournal.getPendingRecords());
+            return;
+        }
+        replayFailureCounter.increment();
+        backoffMs = backoffMs == 0 ? intervalMs : Math.min(maxBackoffMs, backoffMs * 2);
+        nextAttemptMs = System.currentTimeMillis() + backoffMs;
+        LOG.warn("Replay of journal failed after {} of {} records, next attempt in {} ms: {}", acknowledged, records.size(),
+                backoffMs, failure.getMessage());
+    }
+
+    private boolean isRetriable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetriableException || cause instanceof AuthenticationException ||
+                    cause instanceof AuthorizationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,145 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One fixed size segment file of the failure journal, the whole file is memory mapped so an append is only a copy into the
+ * page cache and the data survives the crash of the process (not of the machine, the segment is forced to disk only when it
+ * is full or closed). Each entry is its payload length and crc32 followed by the payload, the rest of the file is zero so
+ * the first zero length marks the end of the written entries. An entry with wrong crc (torn write) also ends the segment.
+ * The segment is not thread safe, KafkaRecordJournal accesses it under its own lock.
+ */
+class JournalSegment implements Closeable {
+
+    static final String FILE_SUFFIX = ".journal";
+
+    static final int ENTRY_HEADER_BYTES = Integer.BYTES * 2;
+
+    private final long id;
+
+    private final Path path;
+
+    private final FileChannel fileChannel;
+
+    private final MappedByteBuffer buffer;
+
+    private final CRC32 crc32 = new CRC32();
+
+    private int writePosition;
+
+    private JournalSegment(long id, Path path, FileChannel fileChannel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.fileChannel = fileChannel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create the new segment file with the given size, mapping the file also extends it to the size.
+     */
+    static JournalSegment create(Path directory, long id, int segmentBytes) throws IOException {
+        Path path = directory.resolve(getFileName(id));
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new JournalSegment(id, path, fileChannel, fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+    }
+
+    /**
+     * Open the existing segment file and find the end of its valid entries.
+     */
+    static JournalSegment open(Path path) throws IOException {
+        String fileName = path.getFileName().toString();
+        long id = Long.parseLong(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        JournalSegment segment = new JournalSegment(id, path, fileChannel,
+                fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size()));
+        ByteBuffer payload;
+        while ((payload = segment.read(segment.writePosition)) != null) {
+            segment.writePosition += ENTRY_HEADER_BYTES + payload.remaining();
+        }
+        return segment;
+    }
+
+    static String getFileName(long id) {
+        return String.format("%020d%s", id, FILE_SUFFIX);
+    }
+
+    /**
+     * Append the payload if it fits into the rest of the segment.
+     * @param payload
+     * @return false if the segment is full
+     */
+    boolean append(byte[] payload) {
+        if (writePosition + ENTRY_HEADER_BYTES + payload.length > buffer.capacity()) {
+            return false;
+        }
+        crc32.reset();
+        crc32.update(payload);
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(writePosition + ENTRY_HEADER_BYTES);
+        entry.put(payload);
+        buffer.putInt(writePosition + Integer.BYTES, (int) crc32.getValue());
+        //Length is written last, so a partly written entry is never seen as valid
+        buffer.putInt(writePosition, payload.length);
+        writePosition += ENTRY_HEADER_BYTES + payload.length;
+        return true;
+    }
+
+    /**
+     * Read the payload of the entry at the given position.
+     * @param position
+     * @return view of the payload or null if there is no valid entry at the position
+     */
+    ByteBuffer read(int position) {
+        if (position + ENTRY_HEADER_BYTES > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + ENTRY_HEADER_BYTES + length > buffer.capacity()) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(position + ENTRY_HEADER_BYTES).limit(position + ENTRY_HEADER_BYTES + length);
+        payload = payload.slice();
+        crc32.reset();
+        crc32.update(payload.duplicate());
+        return (int) crc32.getValue() == buffer.getInt(position + Integer.BYTES) ? payload : null;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Close and delete the file, the mapping itself is released when the buffer is garbage collected.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,384 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.exception.KafkaProducerJournalException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class is the durable overflow journal of the kafka producer. Records which could not be sent because kafka was not
+ * reachable are appended to memory mapped JournalSegment files and JournalReplayer reads them back in the same order and
+ * acknowledges them when kafka accepted them again. The read position is kept in the checkpoint file, so after a restart
+ * only the records which were not acknowledged are replayed (records sent but not yet acknowledged can be sent twice).
+ * The journal can't grow over journal-max-bytes (but uses at least 2 segments), when all segments are in use new records are
+ * dropped and counted.
+ * Metrics: kafka.producer.journal.size.bytes (disk usage), kafka.producer.journal.pending.records, kafka.producer.journal.replay.lag
+ * (age of the oldest record not replayed yet in ms), kafka.producer.journal.appended and kafka.producer.journal.dropped.
+ * Journal is not used with kafka transactions, records of aborted transactions are reported to the callers instead.
+ */
+@Component
+@ConditionalOnExpression("${kafka-producer-config.enable-failure-journal:false} && !${kafka-producer-config.enable-transactions:false}")
+public class KafkaRecordJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaRecordJournal.class);
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+    //the read segment is deleted only when the next one exists, so one segment could never be rolled when it is full
+    private static final int MIN_SEGMENTS = 2;
+
+    //append time, key flag, key and topic length
+    private static final int PAYLOAD_HEADER_BYTES = Long.BYTES + 1 + Long.BYTES + Short.BYTES;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int maxSegments;
+
+    private final List<JournalSegment> segments = new ArrayList<>();
+
+    private final Counter appendedCounter;
+
+    private final Counter droppedCounter;
+
+    private long readSegmentId;
+
+    private int readPosition;
+
+    private long pendingRecords;
+
+    private long nextSegmentId;
+
+    /**
+     * Open the segments left from the previous run, restore the read position from the checkpoint and register the meters.
+     * @param kafkaProducerConfigData
+     * @param meterRegistry
+     */
+    public KafkaRecordJournal(KafkaProducerConfigData kafkaProducerConfigData, MeterRegistry meterRegistry) {
+        this.directory = Paths.get(kafkaProducerConfigData.getJournalDirectory());
+        this.segmentBytes = kafkaProducerConfigData.getJournalSegmentBytes() == null ?
+                DEFAULT_SEGMENT_BYTES : kafkaProducerConfigData.getJournalSegmentBytes();
+        long maxBytes = kafkaProducerConfigData.getJournalMaxBytes() == null ?
+                DEFAULT_MAX_BYTES : kafkaProducerConfigData.getJournalMaxBytes();
+        if (maxBytes / segmentBytes < MIN_SEGMENTS) {
+            LOG.warn("journal-max-bytes {} is less than {} segments of {} bytes, journal uses {} segments", maxBytes,
+                    MIN_SEGMENTS, segmentBytes, MIN_SEGMENTS);
+        }
+        this.maxSegments = (int) Math.max(MIN_SEGMENTS, maxBytes / segmentBytes);
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new KafkaProducerJournalException("Could not open kafka producer journal in " + directory, e);
+        }
+        this.appendedCounter = Counter.builder("kafka.producer.journal.appended")
+                .description("Records appended to the journal because kafka was not reachable")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("kafka.producer.journal.dropped")
+                .description("Records dropped because the journal was full")
+                .register(meterRegistry);
+        Gauge.builder("kafka.producer.journal.size.bytes", this, KafkaRecordJournal::getDiskBytes)
+                .description("Disk space used by the journal segments")
+                .register(meterRegistry);
+        Gauge.builder("kafka.producer.journal.pending.records", this, KafkaRecordJournal::getPendingRecords)
+                .description("Records in the journal which are not replayed yet")
+                .register(meterRegistry);
+        Gauge.builder("kafka.producer.journal.replay.lag", this, KafkaRecordJournal::getReplayLagMs)
+                .description("Age of the oldest record in the journal which is not replayed yet in milliseconds")
+                .register(meterRegistry);
+        LOG.info("Kafka producer journal opened in {} with {} pending records", directory, pendingRecords);
+    }
+
+    /**
+     * Append the record to the end of the journal.
+     * @param topic
+     * @param key
+     * @param value
+     * @return false if the record is dropped because the journal is full or the record is bigger than a segment
+     */
+    public boolean append(String topic, Long key, TwitterAvroModel value) {
+        byte[] payload;
+        try {
+            payload = encode(topic, key, value);
+        } catch (IOException e) {
+            LOG.error("Could not encode record with key {} for the journal", key, e);
+            droppedCounter.increment();
+            return false;
+        }
+        synchronized (this) {
+            JournalSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || !segment.append(payload)) {
+                segment = rollSegment();
+                if (segment == null || !segment.append(payload)) {
+                    droppedCounter.increment();
+                    return false;
+                }
+            }
+            pendingRecords++;
+        }
+        appendedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Read the next records from the read position without moving it.
+     * @param maxRecords
+     * @return records in journal order, empty if there is nothing to replay
+     */
+    public synchronized List<JournalRecord> peek(int maxRecords) {
+        List<JournalRecord> records = new ArrayList<>(Math.min(maxRecords, (int) Math.min(pendingRecords, 1024)));
+        int segmentIndex = getReadSegmentIndex();
+        int position = readPosition;
+        while (segmentIndex >= 0 && segmentIndex < segments.size() && records.size() < maxRecords) {
+            JournalSegment segment = segments.get(segmentIndex);
+            ByteBuffer payload = position < segment.getWritePosition() ? segment.read(position) : null;
+            if (payload == null) {
+                segmentIndex++;
+                position = 0;
+                continue;
+            }
+            int nextPosition = position + JournalSegment.ENTRY_HEADER_BYTES + payload.remaining();
+            try {
+                records.add(decode(payload, segment.getId(), nextPosition));
+            } catch (IOException e) {
+                LOG.error("Skipping journal record which could not be decoded in segment {} at position {}",
+                        segment.getId(), position, e);
+                if (!records.isEmpty()) {
+                    //acknowledge the records before it first, then this record is skipped on the next peek
+                    break;
+                }
+                moveReadPosition(segment.getId(), nextPosition);
+                droppedCounter.increment();
+            }
+            position = nextPosition;
+        }
+        return records;
+    }
+
+    /**
+     * Mark the record and all records before it as replayed, the records must be acknowledged in the order of peek().
+     * @param record
+     */
+    public synchronized void acknowledge(JournalRecord record) {
+        moveReadPosition(record.getSegmentId(), record.getNextPosition());
+    }
+
+    /**
+     * Delete the segments which are replayed completely and write the read position to the checkpoint file.
+     */
+    public synchronized void checkpoint() {
+        try {
+            deleteReplayedSegments();
+            Path tempFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.write(tempFile, (readSegmentId + " " + readPosition).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new KafkaProducerJournalException("Could not write kafka producer journal checkpoint", e);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingRecords == 0;
+    }
+
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized long getDiskBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    public synchronized long getReplayLagMs() {
+        int segmentIndex = getReadSegmentIndex();
+        int position = readPosition;
+        while (pendingRecords > 0 && segmentIndex >= 0 && segmentIndex < segments.size()) {
+            ByteBuffer payload = segments.get(segmentIndex).read(position);
+            if (payload != null) {
+                return Math.max(0, System.currentTimeMillis() - payload.getLong(0));
+            }
+            segmentIndex++;
+            position = 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Force the segments to disk and close them before destroying the bean.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        LOG.info("Closing kafka producer journal with {} pending records", pendingRecords);
+        checkpoint();
+        for (JournalSegment segment : segments) {
+            try {
+                segment.force();
+                segment.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close journal segment {}", segment.getId(), e);
+            }
+        }
+        segments.clear();
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentFiles = files.filter(path -> path.getFileName().toString().endsWith(JournalSegment.FILE_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path segmentFile : segmentFiles) {
+            segments.add(JournalSegment.open(segmentFile));
+        }
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        readSegmentId = segments.isEmpty() ? 0 : segments.get(0).getId();
+        readPosition = 0;
+        if (Files.exists(checkpointFile)) {
+            String[] checkpoint = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim().split(" ");
+            long checkpointSegmentId = Long.parseLong(checkpoint[0]);
+            if (checkpointSegmentId >= readSegmentId) {
+                readSegmentId = checkpointSegmentId;
+                readPosition = Integer.parseInt(checkpoint[1]);
+            }
+        }
+        nextSegmentId = segments.isEmpty() ? readSegmentId + 1 : segments.get(segments.size() - 1).getId() + 1;
+        deleteReplayedSegments();
+        pendingRecords = countPendingRecords();
+    }
+
+    private long countPendingRecords() {
+        long count = 0;
+        int segmentIndex = getReadSegmentIndex();
+        int position = readPosition;
+        while (segmentIndex >= 0 && segmentIndex < segments.size()) {
+            JournalSegment segment = segments.get(segmentIndex);
+            ByteBuffer payload;
+            while (position < segment.getWritePosition() && (payload = segment.read(position)) != null) {
+                position += JournalSegment.ENTRY_HEADER_BYTES + payload.remaining();
+                count++;
+            }
+            segmentIndex++;
+            position = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Start a new segment when the last one is full, or return null when the journal reached its disk budget.
+     */
+    private JournalSegment rollSegment() {
+        deleteReplayedSegmentsQuietly();
+        if (segments.size() >= maxSegments) {
+            return null;
+        }
+        try {
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).force();
+            }
+            JournalSegment segment = JournalSegment.create(directory, nextSegmentId++, segmentBytes);
+            segments.add(segment);
+            if (segments.size() == 1) {
+                readSegmentId = segment.getId();
+                readPosition = 0;
+            }
+            return segment;
+        } catch (IOException e) {
+            LOG.error("Could not create new journal segment in {}", directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Segments before the read segment are replayed completely, the read segment too when it is full and read to the end.
+     */
+    private void deleteReplayedSegments() throws IOException {
+        while (!segments.isEmpty()) {
+            JournalSegment segment = segments.get(0);
+            boolean replayed = segment.getId() < readSegmentId || (segment.getId() == readSegmentId &&
+                    segments.size() > 1 && readPosition >= segment.getWritePosition());
+            if (!replayed) {
+                return;
+            }
+            segment.delete();
+            segments.remove(0);
+            if (segment.getId() == readSegmentId) {
+                readSegmentId = segments.get(0).getId();
+                readPosition = 0;
+            }
+        }
+    }
+
+    private void deleteReplayedSegmentsQuietly() {
+        try {
+            deleteReplayedSegments();
+        } catch (IOException e) {
+            LOG.warn("Could not delete replayed journal segment", e);
+        }
+    }
+
+    private void moveReadPosition(long segmentId, int position) {
+        readSegmentId = segmentId;
+        readPosition = position;
+        pendingRecords = Math.max(0, pendingRecords - 1);
+    }
+
+    private int getReadSegmentIndex() {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).getId() == readSegmentId) {
+                return i;
+            }
+        }
+        return segments.isEmpty() ? -1 : 0;
+    }
+
+    private byte[] encode(String topic, Long key, TwitterAvroModel value) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer valueBuffer = value.toByteBuffer();
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_HEADER_BYTES + topicBytes.length + valueBuffer.remaining());
+        payload.putLong(System.currentTimeMillis())
+                .put((byte) (key == null ? 0 : 1))
+                .putLong(key == null ? 0 : key)
+                .putShort((short) topicBytes.length)
+                .put(topicBytes)
+                .put(valueBuffer);
+        return payload.array();
+    }
+
+    private JournalRecord decode(ByteBuffer payload, long segmentId, int nextPosition) throws IOException {
+        ByteBuffer buffer = payload.duplicate();
+        long appendTimeMs = buffer.getLong();
+        boolean hasKey = buffer.get() == 1;
+        long key = buffer.getLong();
+        byte[] topicBytes = new byte[buffer.getShort()];
+        buffer.get(topicBytes);
+        TwitterAvroModel value = TwitterAvroModel.fromByteBuffer(buffer.slice());
+        return new JournalRecord(new String(topicBytes, StandardCharsets.UTF_8), hasKey ? key : null, value,
+                appendTimeMs, segmentId, nextPosition);
+    }
+}
@@ -0,0 +1,59 @@
+package com.microservices.demo.kafka.producer.model;
+
+/**
+ * Aggregated result of one batch send, it tells how many records are acknowledged by kafka and how many failed.
+ * Only the first failure is kept as the records of one batch mostly fail for the same reason.
+ */
+public class BatchResult {
+
+    private final int recordCount;
+
+    private final int successCount;
+
+    private final int failureCount;
+
+    private final Throwable firstException;
+
+    private final long elapsedNanos;
+
+    public BatchResult(int recordCount, int successCount, int failureCount, Throwable firstException, long elapsedNanos) {
+        this.recordCount = recordCount;
+        this.successCount = successCount;
+        this.failureCount = failureCount;
+        this.firstException = firstException;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public Throwable getFirstException() {
+        return firstException;
+    }
+
+    /**
+     * @return time from the start of the batch send until the last record is acknowledged or failed
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isSuccessful() {
+        return failureCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{recordCount=" + recordCount + ", successCount=" + successCount + ", failureCount=" + failureCount +
+                ", elapsedNanos=" + elapsedNanos + "}";
+    }
+}
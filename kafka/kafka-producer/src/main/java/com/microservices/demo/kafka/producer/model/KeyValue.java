@@ -0,0 +1,51 @@
+package com.microservices.demo.kafka.producer.model;
+
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Key and message pair of one record which is sent with the batch send methods of KafkaProducer, optionally with the
+ * headers of the record. The headers are not kept when the record is added to the failure journal.
+ * @param <K>
+ * @param <V>
+ */
+public class KeyValue<K, V> {
+
+    private final K key;
+
+    private final V value;
+
+    private final Headers headers;
+
+    public KeyValue(K key, V value) {
+        this(key, value, null);
+    }
+
+    public KeyValue(K key, V value, Headers headers) {
+        this.key = key;
+        this.value = value;
+        this.headers = headers;
+    }
+
+    public static <K, V> KeyValue<K, V> of(K key, V value) {
+        return new KeyValue<>(key, value);
+    }
+
+    public static <K, V> KeyValue<K, V> of(K key, V value, Headers headers) {
+        return new KeyValue<>(key, value, headers);
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * @return headers of the record, null if the record has no headers
+     */
+    public Headers getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,92 @@
+package com.microservices.demo.kafka.producer.partitioner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class find the heavy hitter keys (users) of the producer with a count-min sketch, so memory doesn't grow with the
+ * number of users. Every key is counted in DEPTH rows of WIDTH counters and the estimate of a key is the minimum of its
+ * counters, which can only over count. The sketch is replaced every window so a user that stopped tweeting is not hot forever.
+ * All methods are thread safe, counters are atomic and a new window is started by only one thread.
+ */
+class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+
+    private static final int WIDTH = 1024;
+
+    private static final long[] SEEDS = new long[]{
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final double shareThreshold;
+
+    private final long windowMs;
+
+    private final long minRecords;
+
+    private volatile Window window;
+
+    HotKeyDetector(double shareThreshold, long windowMs, long minRecords) {
+        this.shareThreshold = shareThreshold;
+        this.windowMs = windowMs;
+        this.minRecords = minRecords;
+        this.window = new Window(System.currentTimeMillis());
+    }
+
+    /**
+     * Count the key in the current window and tell if its share of the records in the window is above the threshold.
+     * @param key
+     * @return true if the key is hot
+     */
+    boolean recordAndCheck(long key) {
+        Window current = getWindow();
+        long total = current.total.incrementAndGet();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * WIDTH + (int) ((mix(key ^ SEEDS[row]) >>> 1) % WIDTH);
+            estimate = Math.min(estimate, current.counters.incrementAndGet(index));
+        }
+        return total >= minRecords && estimate >= shareThreshold * total;
+    }
+
+    private Window getWindow() {
+        Window current = window;
+        long now = System.currentTimeMillis();
+        if (now - current.startMs >= windowMs) {
+            synchronized (this) {
+                if (window == current) {
+                    window = new Window(now);
+                }
+                current = window;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Finalization step of murmur3 64 bit hash, it spreads the bits of sequential ids over the whole long.
+     */
+    static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Window {
+
+        private final long startMs;
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+
+        Window(long startMs) {
+            this.startMs = startMs;
+        }
+    }
+}
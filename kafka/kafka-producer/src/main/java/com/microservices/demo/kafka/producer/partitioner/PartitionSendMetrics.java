@@ -0,0 +1,62 @@
+package com.microservices.demo.kafka.producer.partitioner;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class counts the acknowledged records of every partition in kafka.producer.partition.records counter with topic and
+ * partition tags, rate() of it in prometheus is the send rate per partition which shows the skew of the partitioning strategy.
+ * Counters of a topic are kept in an array indexed by partition so there is no tag lookup for every record.
+ */
+public class PartitionSendMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter[]> countersByTopic = new ConcurrentHashMap<>();
+
+    public PartitionSendMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Count the record of the given metadata, metadata without partition (failed before partitioning) is ignored.
+     * @param metadata
+     */
+    public void recordSend(RecordMetadata metadata) {
+        int partition = metadata.partition();
+        if (partition < 0) {
+            return;
+        }
+        Counter[] counters = countersByTopic.get(metadata.topic());
+        Counter counter = counters != null && partition < counters.length ? counters[partition] : null;
+        if (counter == null) {
+            counter = registerCounter(metadata.topic(), partition);
+        }
+        counter.increment();
+    }
+
+    private synchronized Counter registerCounter(String topic, int partition) {
+        Counter[] counters = countersByTopic.get(topic);
+        if (counters == null) {
+            counters = new Counter[partition + 1];
+        } else if (partition >= counters.length) {
+            counters = Arrays.copyOf(counters, partition + 1);
+        } else if (counters[partition] != null) {
+            return counters[partition];
+        } else {
+            counters = counters.clone();
+        }
+        counters[partition] = Counter.builder("kafka.producer.partition.records")
+                .description("Records acknowledged by kafka per partition")
+                .tag("topic", topic)
+                .tag("partition", String.valueOf(partition))
+                .register(meterRegistry);
+        countersByTopic.put(topic, counters);
+        return counters[partition];
+    }
+}
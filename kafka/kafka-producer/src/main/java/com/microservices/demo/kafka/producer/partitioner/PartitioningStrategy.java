@@ -0,0 +1,66 @@
+package com.microservices.demo.kafka.producer.partitioner;
+
+/**
+ * Strategies of TwitterPartitioner to choose the partition of a tweet, the value is the one used in
+ * kafka-producer-config.partitioning-strategy property.
+ */
+public enum PartitioningStrategy {
+
+    /**
+     * Hash of the record key (user id) exactly like kafka default partitioner, all tweets of a user are in order in one partition.
+     */
+    USER_ID("user-id"),
+    /**
+     * Hash of the tweet id, the load is even between the partitions but tweets of a user are not in order anymore.
+     */
+    TWEET_ID("tweet-id"),
+    /**
+     * Partition of the first configured keyword found in the tweet text, so the tweets of a keyword are in one partition.
+     */
+    KEYWORD("keyword"),
+    /**
+     * Fixed number of records to one partition and then the next one, so the batches are full without any hashing.
+     */
+    ROUND_ROBIN_STICKY("round-robin-sticky"),
+    /**
+     * Same as USER_ID until a user sends more than the threshold share of the records, tweets of such users are spread
+     * over all partitions by the tweet id.
+     */
+    HOT_KEY_AWARE("hot-key-aware");
+
+    private final String value;
+
+    PartitioningStrategy(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * True when the partition of a tweet is the hash of its record key, so the producer can choose the partition with the
+     * key. HOT_KEY_AWARE is only partitioned by the key while the user is not hot.
+     * @return
+     */
+    public boolean isPartitionedByKey() {
+        return this == USER_ID || this == HOT_KEY_AWARE;
+    }
+
+    /**
+     * Find the strategy of the given property value, null or empty value means USER_ID which is the kafka default.
+     * @param value
+     * @return
+     */
+    public static PartitioningStrategy fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return USER_ID;
+        }
+        for (PartitioningStrategy strategy : values()) {
+            if (strategy.value.equalsIgnoreCase(value.trim()) || strategy.name().equalsIgnoreCase(value.trim())) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown partitioning strategy: " + value);
+    }
+}
@@ -0,0 +1,179 @@
+package com.microservices.demo.kafka.producer.partitioner;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is the kafka Partitioner of the twitter producer, it is created by the kafka producer itself (not by spring)
+ * when KafkaProducerConfig set it as partitioner.class, so its settings come from the producer properties with the
+ * "twitter.partitioner." prefix. The strategy is one of PartitioningStrategy, see there for the details of each one.
+ * Records whose value is not a TwitterAvroModel are partitioned by the key hash, or round robin sticky without key.
+ */
+public class TwitterPartitioner implements Partitioner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterPartitioner.class);
+
+    public static final String STRATEGY_CONFIG = "twitter.partitioner.strategy";
+
+    public static final String KEYWORDS_CONFIG = "twitter.partitioner.keywords";
+
+    public static final String STICKY_RECORDS_CONFIG = "twitter.partitioner.sticky.records";
+
+    public static final String HOT_KEY_SHARE_THRESHOLD_CONFIG = "twitter.partitioner.hot.key.share.threshold";
+
+    public static final String HOT_KEY_WINDOW_MS_CONFIG = "twitter.partitioner.hot.key.window.ms";
+
+    public static final String HOT_KEY_MIN_RECORDS_CONFIG = "twitter.partitioner.hot.key.min.records";
+
+    private static final int DEFAULT_STICKY_RECORDS = 1000;
+
+    private static final double DEFAULT_HOT_KEY_SHARE_THRESHOLD = 0.05;
+
+    private static final long DEFAULT_HOT_KEY_WINDOW_MS = 10000;
+
+    private static final long DEFAULT_HOT_KEY_MIN_RECORDS = 1000;
+
+    private final AtomicLong stickyCounter = new AtomicLong();
+
+    private PartitioningStrategy strategy = PartitioningStrategy.USER_ID;
+
+    private String[] keywords = new String[0];
+
+    private int stickyRecords = DEFAULT_STICKY_RECORDS;
+
+    private HotKeyDetector hotKeyDetector;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        strategy = PartitioningStrategy.fromValue(getString(configs, STRATEGY_CONFIG));
+        keywords = getKeywords(configs.get(KEYWORDS_CONFIG));
+        stickyRecords = (int) Math.max(1, getLong(configs, STICKY_RECORDS_CONFIG, DEFAULT_STICKY_RECORDS));
+        if (strategy == PartitioningStrategy.HOT_KEY_AWARE) {
+            Object threshold = configs.get(HOT_KEY_SHARE_THRESHOLD_CONFIG);
+            hotKeyDetector = new HotKeyDetector(
+                    threshold == null ? DEFAULT_HOT_KEY_SHARE_THRESHOLD : Double.parseDouble(threshold.toString()),
+                    getLong(configs, HOT_KEY_WINDOW_MS_CONFIG, DEFAULT_HOT_KEY_WINDOW_MS),
+                    getLong(configs, HOT_KEY_MIN_RECORDS_CONFIG, DEFAULT_HOT_KEY_MIN_RECORDS));
+        }
+        if (strategy == PartitioningStrategy.KEYWORD && keywords.length == 0) {
+            LOG.warn("Keyword partitioning strategy without keywords, all tweets will be partitioned by tweet id");
+        }
+        LOG.info("Twitter partitioner configured with {} strategy", strategy.getValue());
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numOfPartitions = cluster.partitionCountForTopic(topic);
+        if (!(value instanceof TwitterAvroModel)) {
+            return keyBytes == null ? sticky(numOfPartitions) : byKeyBytes(keyBytes, numOfPartitions);
+        }
+        TwitterAvroModel twitterAvroModel = (TwitterAvroModel) value;
+        switch (strategy) {
+            case TWEET_ID:
+                return byId(twitterAvroModel.getId(), numOfPartitions);
+            case KEYWORD:
+                return byKeyword(twitterAvroModel, numOfPartitions);
+            case ROUND_ROBIN_STICKY:
+                return sticky(numOfPartitions);
+            case HOT_KEY_AWARE:
+                if (hotKeyDetector.recordAndCheck(twitterAvroModel.getUserId())) {
+                    return byId(twitterAvroModel.getId(), numOfPartitions);
+                }
+                return keyBytes == null ? byId(twitterAvroModel.getUserId(), numOfPartitions) :
+                        byKeyBytes(keyBytes, numOfPartitions);
+            case USER_ID:
+            default:
+                return keyBytes == null ? byId(twitterAvroModel.getUserId(), numOfPartitions) :
+                        byKeyBytes(keyBytes, numOfPartitions);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Partition of a serialized record key with the strategies which are partitioned by the key, same hash as kafka default
+     * partitioner, so switching between user-id strategy and the default keeps the partitions.
+     * @param keyBytes
+     * @param numOfPartitions
+     * @return
+     */
+    public static int partitionOfKey(byte[] keyBytes, int numOfPartitions) {
+        return Utils.toPositive(Utils.murmur2(keyBytes)) % numOfPartitions;
+    }
+
+    private int byKeyBytes(byte[] keyBytes, int numOfPartitions) {
+        return partitionOfKey(keyBytes, numOfPartitions);
+    }
+
+    private int byId(long id, int numOfPartitions) {
+        return (int) ((HotKeyDetector.mix(id) >>> 1) % numOfPartitions);
+    }
+
+    private int sticky(int numOfPartitions) {
+        return (int) ((stickyCounter.getAndIncrement() / stickyRecords) % numOfPartitions);
+    }
+
+    private int byKeyword(TwitterAvroModel twitterAvroModel, int numOfPartitions) {
+        String text = twitterAvroModel.getText();
+        if (text != null) {
+            for (int i = 0; i < keywords.length; i++) {
+                if (containsIgnoreCase(text, keywords[i])) {
+                    return i % numOfPartitions;
+                }
+            }
+        }
+        return byId(twitterAvroModel.getId(), numOfPartitions);
+    }
+
+    /**
+     * Case insensitive contains without creating the lower case copy of the text.
+     */
+    private static boolean containsIgnoreCase(String text, String keyword) {
+        int last = text.length() - keyword.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] getKeywords(Object value) {
+        if (value == null) {
+            return new String[0];
+        }
+        Collection<?> values = value instanceof Collection ? (Collection<?>) value :
+                Arrays.asList(value.toString().split(","));
+        List<String> keywords = new ArrayList<>();
+        for (Object keyword : values) {
+            String trimmed = keyword.toString().trim();
+            if (!trimmed.isEmpty()) {
+                keywords.add(trimmed);
+            }
+        }
+        return keywords.toArray(new String[0]);
+    }
+
+    private static String getString(Map<String, ?> configs, String name) {
+        Object value = configs.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static long getLong(Map<String, ?> configs, String name, long defaultValue) {
+        Object value = configs.get(name);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+}
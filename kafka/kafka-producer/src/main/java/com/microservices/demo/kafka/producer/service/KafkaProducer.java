@@ -1,10 +1,42 @@
 package com.microservices.demo.kafka.producer.service;
 
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.header.Headers;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface KafkaProducer <K extends Serializable, V extends SpecificRecordBase> {
 
     void send(String topicName,K key, V message);
+
+    /**
+     * Same as send, the record is written with the headers, e.g. the failure status and reason of a dead letter record.
+     * @param topicName
+     * @param key
+     * @param message
+     * @param headers
+     */
+    void send(String topicName, K key, V message, Headers headers);
+
+    /**
+     * Send all records to the topic with one callback for the whole batch instead of one callback per record. Records with
+     * headers (KeyValue.of(key, value, headers)) are written with their headers.
+     * The records list is not used after this method returns, so the caller can reuse it.
+     * @param topicName
+     * @param records
+     * @return future which is completed when all records are acknowledged or failed
+     */
+    CompletableFuture<BatchResult> sendBatch(String topicName, List<KeyValue<K, V>> records);
+
+    /**
+     * Fire and forget version of sendBatch, failures of the batch are only logged once per batch.
+     * The records list is not used after this method returns, so the caller can reuse it.
+     * @param topicName
+     * @param records
+     */
+    void sendAll(String topicName, List<KeyValue<K, V>> records);
 }
@@ -0,0 +1,344 @@
+package com.microservices.demo.kafka.producer.service.impl;
+
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import com.microservices.demo.kafka.producer.partitioner.PartitionSendMetrics;
+import com.microservices.demo.kafka.producer.service.KafkaProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the exactly once version of TwitterKafkaProducer and it is used when kafka-producer-config.enable-transactions
+ * is true. Sent records are collected and written to kafka in one transaction every transaction-batch-size records or
+ * transaction-batch-ms milliseconds, so the cost of the transaction commit is shared by many records and the producer can
+ * still pipeline the batches. If the transaction is aborted none of its records is visible for read_committed consumers,
+ * the error is logged and the futures of sendBatch() calls are completed with failures.
+ * The transactional producer can only have one open transaction, so all transactions are committed one after the other by
+ * a single committer thread, in the order they are filled. Full transactions and the transactions closed by the
+ * transaction-batch-ms timer are put on the same queue under the lock which closes them, so a later transaction is never
+ * committed before an earlier one. The threads which send records only hand the full transaction over to the committer
+ * thread and do not wait for the commit, but at most MAX_QUEUED_TRANSACTIONS transactions can wait for it, when the queue
+ * is full the sending threads block until the committer thread takes the next transaction.
+ * Commit latency is exposed as the kafka.producer.transaction.commit timer and aborts as kafka.producer.transaction.aborts counter.
+ */
+@Service
+@ConditionalOnProperty(name = "kafka-producer-config.enable-transactions", havingValue = "true")
+public class TransactionalTwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroModel> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionalTwitterKafkaProducer.class);
+
+    private static final int DEFAULT_TRANSACTION_BATCH_SIZE = 1000;
+
+    private static final long DEFAULT_TRANSACTION_BATCH_MS = 100;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private static final int MAX_QUEUED_TRANSACTIONS = 4;
+
+    //put on the queue by close() after the last transaction, the committer thread stops when it takes it
+    private static final Transaction END_OF_TRANSACTIONS = new Transaction(new ArrayList<>(), new ArrayList<>());
+
+    private final KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate;
+
+    private final int transactionBatchSize;
+
+    private final long transactionBatchMs;
+
+    private final Timer commitTimer;
+
+    private final Counter abortCounter;
+
+    private final PartitionSendMetrics partitionSendMetrics;
+
+    private final BlockingQueue<Transaction> queuedTransactions = new ArrayBlockingQueue<>(MAX_QUEUED_TRANSACTIONS);
+
+    private final ExecutorService transactionCommitter;
+
+    private final ScheduledExecutorService transactionTimer;
+
+    private final Object lock = new Object();
+
+    private List<ProducerRecord<Long, TwitterAvroModel>> pendingRecords = new ArrayList<>();
+
+    private List<PendingBatch> pendingBatches = new ArrayList<>();
+
+    private long transactionStartMs;
+
+    private boolean closed;
+
+    /**
+     * inject KafkaTemplate (transactional as the producer factory has the transactional id prefix), KafkaProducerConfigData
+     * and MeterRegistry beans using constructor injection, and start the timer which commits the open transaction when
+     * it is older than transaction-batch-ms and the committer thread which commits all transactions in queue order.
+     * @param kafkaTemplate
+     * @param kafkaProducerConfigData
+     * @param meterRegistry
+     */
+    public TransactionalTwitterKafkaProducer(KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate,
+                                             KafkaProducerConfigData kafkaProducerConfigData,
+                                             MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionBatchSize = kafkaProducerConfigData.getTransactionBatchSize() == null ?
+                DEFAULT_TRANSACTION_BATCH_SIZE : kafkaProducerConfigData.getTransactionBatchSize();
+        this.transactionBatchMs = kafkaProducerConfigData.getTransactionBatchMs() == null ?
+                DEFAULT_TRANSACTION_BATCH_MS : kafkaProducerConfigData.getTransactionBatchMs();
+        this.commitTimer = Timer.builder("kafka.producer.transaction.commit")
+                .description("Time to send and commit one kafka transaction")
+                .register(meterRegistry);
+        this.abortCounter = Counter.builder("kafka.producer.transaction.aborts")
+                .description("Number of aborted kafka transactions")
+                .register(meterRegistry);
+        this.partitionSendMetrics = new PartitionSendMetrics(meterRegistry);
+        this.transactionCommitter = Executors.newSingleThreadExecutor(
+                new CustomizableThreadFactory("kafka-producer-transaction-committer-"));
+        transactionCommitter.execute(this::commitQueuedTransactions);
+        this.transactionTimer = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("kafka-producer-transaction-timer-"));
+        long checkIntervalMs = Math.max(1, transactionBatchMs / 2);
+        transactionTimer.scheduleWithFixedDelay(this::closeExpiredTransaction, checkIntervalMs, checkIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void send(String topicName, Long key, TwitterAvroModel message) {
+        send(topicName, key, message, null);
+    }
+
+    @Override
+    public void send(String topicName, Long key, TwitterAvroModel message, Headers headers) {
+        LOG.debug("Adding message='{}' for topic = '{}' to transaction", message, topicName);
+        append(Collections.singletonList(new ProducerRecord<>(topicName, null, null, key, message, headers)), null);
+    }
+
+    /**
+     * The future is completed when the transaction which contains the records is committed or aborted.
+     * @param topicName
+     * @param records
+     * @return
+     */
+    @Override
+    public CompletableFuture<BatchResult> sendBatch(String topicName, List<KeyValue<Long, TwitterAvroModel>> records) {
+        CompletableFuture<BatchResult> resultFuture = new CompletableFuture<>();
+        append(toProducerRecords(topicName, records), new PendingBatch(records.size(), resultFuture));
+        return resultFuture;
+    }
+
+    @Override
+    public void sendAll(String topicName, List<KeyValue<Long, TwitterAvroModel>> records) {
+        append(toProducerRecords(topicName, records), null);
+    }
+
+    /**
+     * Stop the timer, hand the records which are still pending over to the committer thread and wait until it has
+     * committed all queued transactions, then close the kafka template before destroying this bean.
+     */
+    @PreDestroy
+    public void close() {
+        transactionTimer.shutdownNow();
+        try {
+            synchronized (lock) {
+                closed = true;
+                enqueue(takePending());
+                queuedTransactions.put(END_OF_TRANSACTIONS);
+            }
+            transactionCommitter.shutdown();
+            if (!transactionCommitter.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Kafka transactions are not committed in {} seconds, pending messages are not sent!",
+                        CLOSE_TIMEOUT_SECONDS);
+                transactionCommitter.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            transactionCommitter.shutdownNow();
+        }
+        for (Transaction transaction : queuedTransactions) {
+            fail(transaction, new IllegalStateException("Kafka producer is closed"));
+        }
+        queuedTransactions.clear();
+        if (null != kafkaTemplate) {
+            LOG.info("Closing transactional Kafka Producer !!");
+            kafkaTemplate.destroy();
+        }
+    }
+
+    /**
+     * Add the records to the open transaction, the thread which fills the transaction hands it over to the committer thread
+     * so it can already collect the next transaction.
+     */
+    private void append(List<ProducerRecord<Long, TwitterAvroModel>> records, PendingBatch pendingBatch) {
+        synchronized (lock) {
+            if (closed) {
+                LOG.error("Kafka producer is closed, {} messages are not sent!", records.size());
+                if (pendingBatch != null) {
+                    pendingBatch.complete(new IllegalStateException("Kafka producer is closed"));
+                }
+                return;
+            }
+            if (pendingRecords.isEmpty()) {
+                transactionStartMs = System.currentTimeMillis();
+            }
+            pendingRecords.addAll(records);
+            if (pendingBatch != null) {
+                pendingBatches.add(pendingBatch);
+            }
+            if (pendingRecords.size() >= transactionBatchSize) {
+                enqueue(takePending());
+            }
+        }
+    }
+
+    /**
+     * Runs on the timer thread, closes the open transaction when it is older than transaction-batch-ms.
+     */
+    private void closeExpiredTransaction() {
+        synchronized (lock) {
+            if (!closed && !pendingRecords.isEmpty() &&
+                    System.currentTimeMillis() - transactionStartMs >= transactionBatchMs) {
+                enqueue(takePending());
+            }
+        }
+    }
+
+    /**
+     * Called with the lock held, so the transactions are queued in the order they are closed. Blocks while
+     * MAX_QUEUED_TRANSACTIONS transactions wait for the committer thread, the committer never takes the lock.
+     */
+    private void enqueue(Transaction transaction) {
+        if (transaction.records.isEmpty()) {
+            return;
+        }
+        try {
+            queuedTransactions.put(transaction);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for the committer, transaction with {} messages is not sent!",
+                    transaction.records.size());
+            fail(transaction, e);
+        }
+    }
+
+    private Transaction takePending() {
+        Transaction transaction = new Transaction(pendingRecords, pendingBatches);
+        pendingRecords = new ArrayList<>(transactionBatchSize);
+        pendingBatches = new ArrayList<>();
+        return transaction;
+    }
+
+    /**
+     * Runs on the committer thread until close() puts END_OF_TRANSACTIONS after the last transaction.
+     */
+    private void commitQueuedTransactions() {
+        try {
+            Transaction transaction = queuedTransactions.take();
+            while (transaction != END_OF_TRANSACTIONS) {
+                commit(transaction);
+                transaction = queuedTransactions.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Send all records of the transaction with the transactional producer and commit. The callback of the records only
+     * counts them per partition, commitTransaction() waits for all of them and fails when any of them failed, in that
+     * case spring aborts the transaction. Only called by the committer thread.
+     */
+    private void commit(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        try {
+            kafkaTemplate.executeInTransaction(operations -> operations.execute(producer -> {
+                for (ProducerRecord<Long, TwitterAvroModel> record : transaction.records) {
+                    producer.send(record, (metadata, exception) -> {
+                        if (exception == null) {
+                            partitionSendMetrics.recordSend(metadata);
+                        }
+                    });
+                }
+                return null;
+            }));
+            long elapsedNanos = System.nanoTime() - startNanos;
+            commitTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            LOG.debug("Committed transaction with {} messages in {} ns", transaction.records.size(), elapsedNanos);
+            for (PendingBatch pendingBatch : transaction.batches) {
+                pendingBatch.complete(null);
+            }
+        } catch (RuntimeException e) {
+            abortCounter.increment();
+            LOG.error("Kafka transaction with {} messages aborted!", transaction.records.size(), e);
+            fail(transaction, e);
+        }
+    }
+
+    private void fail(Transaction transaction, Exception e) {
+        for (PendingBatch pendingBatch : transaction.batches) {
+            pendingBatch.complete(e);
+        }
+    }
+
+    private List<ProducerRecord<Long, TwitterAvroModel>> toProducerRecords(String topicName,
+                                                                           List<KeyValue<Long, TwitterAvroModel>> records) {
+        List<ProducerRecord<Long, TwitterAvroModel>> producerRecords = new ArrayList<>(records.size());
+        for (KeyValue<Long, TwitterAvroModel> record : records) {
+            producerRecords.add(new ProducerRecord<>(topicName, null, null, record.getKey(), record.getValue(),
+                    record.getHeaders()));
+        }
+        return producerRecords;
+    }
+
+    private static class Transaction {
+
+        private final List<ProducerRecord<Long, TwitterAvroModel>> records;
+
+        private final List<PendingBatch> batches;
+
+        Transaction(List<ProducerRecord<Long, TwitterAvroModel>> records, List<PendingBatch> batches) {
+            this.records = records;
+            this.batches = batches;
+        }
+    }
+
+    private static class PendingBatch {
+
+        private final int recordCount;
+
+        private final CompletableFuture<BatchResult> resultFuture;
+
+        private final long startNanos = System.nanoTime();
+
+        PendingBatch(int recordCount, CompletableFuture<BatchResult> resultFuture) {
+            this.recordCount = recordCount;
+            this.resultFuture = resultFuture;
+        }
+
+        void complete(Exception e) {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            resultFuture.complete(e == null ?
+                    new BatchResult(recordCount, recordCount, 0, null, elapsedNanos) :
+                    new BatchResult(recordCount, 0, recordCount, e, elapsedNanos));
+        }
+    }
+}
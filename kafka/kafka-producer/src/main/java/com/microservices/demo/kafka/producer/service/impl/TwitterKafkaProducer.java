@@ -1,11 +1,23 @@
 package com.microservices.demo.kafka.producer.service.impl;
 
 
+import com.microservices.demo.kafka.producer.journal.KafkaRecordJournal;
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import com.microservices.demo.kafka.producer.partitioner.PartitionSendMetrics;
 import com.microservices.demo.kafka.producer.service.KafkaProducer;
 import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.header.Headers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
@@ -13,25 +25,61 @@ import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
 import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class is a serviec class whose work is simply send the messages to kafka topic and for that it will use Long as message key and
  * TwitterAvroModel as the message value and for this we will use kafkatemplate bean and send() method  of it in async mode.
  * Then using callback method we will be able to know whether message successfully delivered or not.
+ * For high volume the batch methods send many records through the native producer with one aggregated callback, so there is
+ * no ListenableFuture, callback object or log line per record.
+ * Time from send() call to the broker ack of every record is recorded in kafka.producer.send.ack timer with percentile
+ * histogram, so the p99 can be calculated in prometheus, and failed records are counted in kafka.producer.send.errors.
+ * Acknowledged records are also counted per partition by PartitionSendMetrics.
+ * When the failure journal is enabled the records which failed with a retriable error (kafka not reachable, delivery timeout,
+ * full producer buffer) are appended to KafkaRecordJournal instead of being lost, and JournalReplayer sends them again later.
+ * When kafka transactions are enabled TransactionalTwitterKafkaProducer is used instead of this class.
  */
 @Service
+@ConditionalOnProperty(name = "kafka-producer-config.enable-transactions", havingValue = "false", matchIfMissing = true)
 public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroModel> {
 
     private static final Logger LOG= LoggerFactory.getLogger(TwitterKafkaProducer.class);
 
     private KafkaTemplate<Long,TwitterAvroModel> kafkaTemplate;
 
+    private final Timer sendAckTimer;
+
+    private final Counter sendErrorCounter;
+
+    private final PartitionSendMetrics partitionSendMetrics;
+
+    private final KafkaRecordJournal failureJournal;
+
     /**
-     * inject KafkaTemplate bean using constructor injection
+     * inject KafkaTemplate, MeterRegistry and KafkaRecordJournal beans using constructor injection, the journal bean exists
+     * only if kafka-producer-config.enable-failure-journal is true.
      * @param kafkaTemplate
+     * @param meterRegistry
+     * @param failureJournal
      */
-    public TwitterKafkaProducer(KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate) {
+    public TwitterKafkaProducer(KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate, MeterRegistry meterRegistry,
+                                Optional<KafkaRecordJournal> failureJournal) {
         this.kafkaTemplate = kafkaTemplate;
+        this.failureJournal = failureJournal.orElse(null);
+        this.sendAckTimer = Timer.builder("kafka.producer.send.ack")
+                .description("Time from send to the broker ack of a record")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sendErrorCounter = Counter.builder("kafka.producer.send.errors")
+                .description("Records which could not be sent to kafka")
+                .register(meterRegistry);
+        this.partitionSendMetrics = new PartitionSendMetrics(meterRegistry);
     }
 
     /**
@@ -44,11 +92,60 @@ public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroMode
      */
     @Override
     public void send(String topicName, Long key, TwitterAvroModel message) {
-        LOG.info("Sending message='{}' to  topic = '{}'",message,topicName);
+        send(topicName, key, message, null);
+    }
+
+    /**
+     * Same as send without headers, the headers are not kept when the record is added to the failure journal.
+     * @param topicName
+     * @param key
+     * @param message
+     * @param headers
+     */
+    @Override
+    public void send(String topicName, Long key, TwitterAvroModel message, Headers headers) {
+        LOG.debug("Sending message='{}' to  topic = '{}'",message,topicName);
         //Register Callable methods for handling events when the response return.
-        ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture = kafkaTemplate.send(topicName, key, message);
-        addCallback(topicName, message, kafkaResultFuture);
+        long sendStartNanos = System.nanoTime();
+        ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture;
+        try {
+            kafkaResultFuture = kafkaTemplate.send(new ProducerRecord<>(topicName, null, null, key, message, headers));
+        } catch (RuntimeException e) {
+            //Full producer buffer or missing metadata is thrown by send() after max.block.ms
+            if (!appendToJournal(topicName, key, message, e)) {
+                throw e;
+            }
+            sendErrorCounter.increment();
+            return;
+        }
+        addCallback(topicName, key, message, kafkaResultFuture, sendStartNanos);
+
+    }
+
+    /**
+     * Send all records using the native producer of kafkaTemplate with one BatchCallback shared by the records of the batch.
+     * The returned future is completed from the producer network thread, so the dependent stages should be quick or async.
+     * @param topicName
+     * @param records
+     * @return
+     */
+    @Override
+    public CompletableFuture<BatchResult> sendBatch(String topicName, List<KeyValue<Long, TwitterAvroModel>> records) {
+        CompletableFuture<BatchResult> resultFuture = new CompletableFuture<>();
+        sendRecords(topicName, records, new BatchCallback(topicName, records.size(), resultFuture, sendAckTimer, sendErrorCounter,
+                partitionSendMetrics));
+        return resultFuture;
+    }
 
+    /**
+     * Same as sendBatch without the future, errors are logged by BatchCallback once for the batch.
+     * @param topicName
+     * @param records
+     */
+    @Override
+    public void sendAll(String topicName, List<KeyValue<Long, TwitterAvroModel>> records) {
+        sendRecords(topicName, records, new BatchCallback(topicName, records.size(), null, sendAckTimer, sendErrorCounter,
+                partitionSendMetrics));
     }
 
     /**
@@ -65,19 +162,30 @@ public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroMode
     /**
      * This is callback method configured for the ListenableFuture interface and override failure and success method which will trigger based on the result we got from send() method
      * @param topicName
+     * @param key
      * @param message
      * @param kafkaResultFuture
+     * @param sendStartNanos
      */
-    private void addCallback(String topicName, TwitterAvroModel message, ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture) {
+    private void addCallback(String topicName, Long key, TwitterAvroModel message, ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture,
+                             long sendStartNanos) {
         kafkaResultFuture.addCallback(new ListenableFutureCallback<SendResult<Long, TwitterAvroModel>>() {
             @Override
             public void onFailure(Throwable ex) {
+                sendErrorCounter.increment();
+                if (appendToJournal(topicName, key, message, ex)) {
+                    LOG.warn("Message with key {} could not be sent to topic {} and is added to the journal: {}", key,
+                            topicName, ex.getMessage());
+                    return;
+                }
                 LOG.error("Error while sending message {} to topic {}", message.toString(), topicName,ex);
             }
 
             @Override
             public void onSuccess(SendResult<Long, TwitterAvroModel> result) {
+                sendAckTimer.record(System.nanoTime() - sendStartNanos, TimeUnit.NANOSECONDS);
                 RecordMetadata metadata=result.getRecordMetadata();
+                partitionSendMetrics.recordSend(metadata);
                 LOG.debug("Received new metadata Topic: {}; Partition : {}; Offset : {}; Timestamp: {}; at Time {}",
                         metadata.topic(),
                         metadata.partition(),
@@ -87,4 +195,140 @@ public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroMode
             }
         });
     }
+
+    private void sendRecords(String topicName, List<KeyValue<Long, TwitterAvroModel>> records, BatchCallback batchCallback) {
+        LOG.debug("Sending batch of {} messages to topic = '{}'", records.size(), topicName);
+        if (records.isEmpty()) {
+            batchCallback.complete();
+            return;
+        }
+        kafkaTemplate.execute(producer -> {
+            for (KeyValue<Long, TwitterAvroModel> record : records) {
+                //Without journal all records share the batch callback, otherwise the failed record has to be known
+                Callback callback = failureJournal == null ? batchCallback :
+                        new JournalingCallback(topicName, record, batchCallback);
+                try {
+                    producer.send(new ProducerRecord<>(topicName, null, null, record.getKey(), record.getValue(),
+                            record.getHeaders()), callback);
+                } catch (RuntimeException e) {
+                    //Serialization errors are thrown by send() instead of passed to the callback
+                    callback.onCompletion(null, e);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Only retriable errors are added to the journal, other errors (like serialization or too large record) would fail again.
+     * @return true if the record is added to the journal
+     */
+    private boolean appendToJournal(String topicName, Long key, TwitterAvroModel message, Throwable exception) {
+        return failureJournal != null && isRetriable(exception) && failureJournal.append(topicName, key, message);
+    }
+
+    private static boolean isRetriable(Throwable exception) {
+        //spring wraps the producer errors in KafkaProducerException
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Callback of one record of a batch when the journal is enabled, it adds the failed record to the journal and then
+     * completes the record in the BatchCallback.
+     */
+    private class JournalingCallback implements Callback {
+
+        private final String topicName;
+
+        private final KeyValue<Long, TwitterAvroModel> record;
+
+        private final BatchCallback batchCallback;
+
+        JournalingCallback(String topicName, KeyValue<Long, TwitterAvroModel> record, BatchCallback batchCallback) {
+            this.topicName = topicName;
+            this.record = record;
+            this.batchCallback = batchCallback;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception != null) {
+                appendToJournal(topicName, record.getKey(), record.getValue(), exception);
+            }
+            batchCallback.onCompletion(metadata, exception);
+        }
+    }
+
+    /**
+     * One callback object for all the records of a batch, it only counts the results and when the last record is completed
+     * it completes the future (if any) and logs the failures of the batch once. Ack latency of each record is measured from
+     * the start of the batch, records are handed to the producer back to back so the difference is negligible.
+     */
+    private static class BatchCallback implements Callback {
+
+        private final String topicName;
+
+        private final int recordCount;
+
+        private final CompletableFuture<BatchResult> resultFuture;
+
+        private final long startNanos = System.nanoTime();
+
+        private final AtomicInteger completedCount = new AtomicInteger();
+
+        private final AtomicInteger failureCount = new AtomicInteger();
+
+        private final AtomicReference<Exception> firstException = new AtomicReference<>();
+
+        private final Timer sendAckTimer;
+
+        private final Counter sendErrorCounter;
+
+        private final PartitionSendMetrics partitionSendMetrics;
+
+        BatchCallback(String topicName, int recordCount, CompletableFuture<BatchResult> resultFuture, Timer sendAckTimer,
+                      Counter sendErrorCounter, PartitionSendMetrics partitionSendMetrics) {
+            this.topicName = topicName;
+            this.recordCount = recordCount;
+            this.resultFuture = resultFuture;
+            this.sendAckTimer = sendAckTimer;
+            this.sendErrorCounter = sendErrorCounter;
+            this.partitionSendMetrics = partitionSendMetrics;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception != null) {
+                failureCount.incrementAndGet();
+                firstException.compareAndSet(null, exception);
+                sendErrorCounter.increment();
+            } else {
+                sendAckTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                partitionSendMetrics.recordSend(metadata);
+            }
+            if (completedCount.incrementAndGet() == recordCount) {
+                complete();
+            }
+        }
+
+        void complete() {
+            int failures = failureCount.get();
+            BatchResult batchResult = new BatchResult(recordCount, recordCount - failures, failures, firstException.get(),
+                    System.nanoTime() - startNanos);
+            if (failures > 0) {
+                LOG.error("Error while sending {} of {} messages to topic {}", failures, recordCount, topicName,
+                        firstException.get());
+            } else {
+                LOG.debug("Batch of {} messages sent to topic {} in {} ns", recordCount, topicName, batchResult.getElapsedNanos());
+            }
+            if (resultFuture != null) {
+                resultFuture.complete(batchResult);
+            }
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalReplayerTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    private final RecordingProducerFactory producerFactory = new RecordingProducerFactory();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private KafkaRecordJournal kafkaRecordJournal;
+
+    private JournalReplayer journalReplayer;
+
+    @AfterEach
+    public void closeReplayer() {
+        if (journalReplayer != null) {
+            journalReplayer.close();
+        }
+        if (kafkaRecordJournal != null) {
+            kafkaRecordJournal.close();
+        }
+    }
+
+    @Test
+    public void replaysRecordsInJournalOrder() throws InterruptedException {
+        startReplayer(keys(0, 50));
+
+        waitUntil(() -> kafkaRecordJournal.isEmpty());
+
+        assertThat(producerFactory.sentKeys).containsExactlyElementsOf(keys(0, 50));
+        assertThat(meterRegistry.get("kafka.producer.journal.replayed").counter().count()).isEqualTo(50);
+    }
+
+    @Test
+    public void retriesFromTheFirstRetriableFailure() throws InterruptedException {
+        producerFactory.failures.put(2L, new AtomicInteger(2));
+        startReplayer(keys(0, 5));
+
+        waitUntil(() -> kafkaRecordJournal.isEmpty());
+
+        //the records after the failed one were sent already, they are sent again but none is lost
+        List<Long> sentKeys = producerFactory.sentKeys;
+        assertThat(sentKeys).containsSubsequence(0L, 1L, 3L, 4L, 3L, 4L, 2L, 3L, 4L);
+        assertThat(sentKeys.subList(sentKeys.size() - 3, sentKeys.size())).containsExactly(2L, 3L, 4L);
+        assertThat(sentKeys).containsOnlyOnce(0L, 1L);
+        assertThat(meterRegistry.get("kafka.producer.journal.replay.failures").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("kafka.producer.journal.replay.poison").counter().count()).isZero();
+    }
+
+    @Test
+    public void skipsRecordRejectedWithNonRetriableError() throws InterruptedException {
+        producerFactory.poisonKey = 2L;
+        startReplayer(keys(0, 5));
+
+        waitUntil(() -> kafkaRecordJournal.isEmpty());
+
+        assertThat(producerFactory.sentKeys).containsExactly(0L, 1L, 3L, 4L);
+        assertThat(meterRegistry.get("kafka.producer.journal.replay.poison").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("kafka.producer.journal.replay.failures").counter().count()).isZero();
+    }
+
+    @Test
+    public void keepsRecordsInJournalWhileKafkaIsDown() throws InterruptedException {
+        producerFactory.failures.put(0L, new AtomicInteger(Integer.MAX_VALUE));
+        startReplayer(keys(0, 3));
+
+        waitUntil(() -> meterRegistry.get("kafka.producer.journal.replay.failures").counter().count() >= 3);
+
+        //the records after the first one are sent on every attempt, but none is acknowledged before the first one
+        assertThat(kafkaRecordJournal.getPendingRecords()).isEqualTo(3);
+        assertThat(producerFactory.sentKeys).doesNotContain(0L);
+        assertThat(meterRegistry.get("kafka.producer.journal.replayed").counter().count()).isZero();
+    }
+
+    private void startReplayer(List<Long> keys) {
+        KafkaProducerConfigData kafkaProducerConfigData = new KafkaProducerConfigData();
+        kafkaProducerConfigData.setJournalDirectory(directory.toString());
+        kafkaProducerConfigData.setJournalSegmentBytes(64 * 1024);
+        kafkaProducerConfigData.setJournalReplayIntervalMs(10L);
+        kafkaProducerConfigData.setJournalReplayRecordsPerSecond(10000);
+        kafkaProducerConfigData.setJournalReplayMaxBackoffMs(40L);
+        kafkaRecordJournal = new KafkaRecordJournal(kafkaProducerConfigData, meterRegistry);
+        for (long key : keys) {
+            assertThat(kafkaRecordJournal.append(TOPIC, key, tweet(key))).isTrue();
+        }
+        journalReplayer = new JournalReplayer(kafkaRecordJournal, new KafkaTemplate<>(producerFactory),
+                kafkaProducerConfigData, meterRegistry);
+    }
+
+    private static List<Long> keys(long firstKey, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = firstKey; key < firstKey + count; key++) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static TwitterAvroModel tweet(long id) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id)
+                .setText("text")
+                .setCreatedAt(System.currentTimeMillis())
+                .build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * KafkaTemplate closes the producer after each execute(), so every replay attempt gets its own MockProducer. The
+     * keys of the records which kafka accepted are collected over all of them, the failures fail the send of a key the
+     * given number of times with a retriable error and the poison key always fails with a non retriable one.
+     */
+    private static class RecordingProducerFactory implements ProducerFactory<Long, TwitterAvroModel> {
+
+        private static final Node NODE = new Node(0, "localhost", 9092);
+
+        private static final Cluster CLUSTER = new Cluster("cluster", Collections.singletonList(NODE),
+                Collections.singletonList(new PartitionInfo(TOPIC, 0, NODE, new Node[]{NODE}, new Node[]{NODE})),
+                Collections.emptySet(), Collections.emptySet());
+
+        private final List<Long> sentKeys = new CopyOnWriteArrayList<>();
+
+        private final Map<Long, AtomicInteger> failures = new ConcurrentHashMap<>();
+
+        private volatile Long poisonKey;
+
+        @Override
+        public Producer<Long, TwitterAvroModel> createProducer() {
+            return new MockProducer<Long, TwitterAvroModel>(CLUSTER, true, new LongSerializer(),
+                    (topic, data) -> new byte[0]) {
+                @Override
+                public synchronized Future<RecordMetadata> send(ProducerRecord<Long, TwitterAvroModel> record,
+                                                                Callback callback) {
+                    AtomicInteger remainingFailures = failures.get(record.key());
+                    if (remainingFailures != null && remainingFailures.getAndDecrement() > 0) {
+                        return CompletableFuture.failedFuture(new TimeoutException("kafka is not reachable"));
+                    }
+                    if (record.key().equals(poisonKey)) {
+                        return CompletableFuture.failedFuture(new RecordTooLargeException("record is too large"));
+                    }
+                    sentKeys.add(record.key());
+                    return super.send(record, callback);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.microservices.demo.kafka.producer.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalSegmentTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void readsAppendedEntriesAfterReopen() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 7, SEGMENT_BYTES);
+        assertThat(segment.append(bytes("first"))).isTrue();
+        assertThat(segment.append(bytes("second"))).isTrue();
+        int writePosition = segment.getWritePosition();
+        segment.force();
+        segment.close();
+
+        JournalSegment reopened = JournalSegment.open(directory.resolve(JournalSegment.getFileName(7)));
+
+        assertThat(reopened.getId()).isEqualTo(7);
+        assertThat(reopened.getWritePosition()).isEqualTo(writePosition);
+        ByteBuffer first = reopened.read(0);
+        assertThat(string(first)).isEqualTo("first");
+        assertThat(string(reopened.read(JournalSegment.ENTRY_HEADER_BYTES + first.remaining()))).isEqualTo("second");
+        assertThat(reopened.read(writePosition)).isNull();
+        reopened.close();
+    }
+
+    @Test
+    public void rejectsEntryWhichDoesNotFit() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1, 64);
+
+        assertThat(segment.append(new byte[64 - JournalSegment.ENTRY_HEADER_BYTES])).isTrue();
+        assertThat(segment.append(new byte[1])).isFalse();
+        assertThat(segment.getWritePosition()).isEqualTo(segment.getCapacity());
+        segment.close();
+    }
+
+    @Test
+    public void entryWithWrongCrcEndsTheSegment() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1, SEGMENT_BYTES);
+        segment.append(bytes("first"));
+        int secondPosition = segment.getWritePosition();
+        segment.append(bytes("second"));
+        segment.append(bytes("third"));
+        segment.force();
+        segment.close();
+        Path path = directory.resolve(JournalSegment.getFileName(1));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")), secondPosition + JournalSegment.ENTRY_HEADER_BYTES);
+        }
+
+        JournalSegment reopened = JournalSegment.open(path);
+
+        assertThat(reopened.read(secondPosition)).isNull();
+        assertThat(reopened.getWritePosition()).isEqualTo(secondPosition);
+        //the next append overwrites the broken entry
+        assertThat(reopened.append(bytes("fourth"))).isTrue();
+        assertThat(string(reopened.read(secondPosition))).isEqualTo("fourth");
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsNotReadAsEntry() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1, SEGMENT_BYTES);
+        segment.append(bytes("first"));
+        int tailPosition = segment.getWritePosition();
+        segment.force();
+        segment.close();
+        Path path = directory.resolve(JournalSegment.getFileName(1));
+        //crash after the length of the next entry is written but before its crc and payload
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 100), tailPosition);
+        }
+
+        JournalSegment reopened = JournalSegment.open(path);
+
+        assertThat(reopened.getWritePosition()).isEqualTo(tailPosition);
+        assertThat(string(reopened.read(0))).isEqualTo("first");
+        assertThat(reopened.read(tailPosition)).isNull();
+        reopened.close();
+    }
+
+    @Test
+    public void lengthBeyondTheSegmentIsNotRead() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 1, SEGMENT_BYTES);
+        segment.force();
+        segment.close();
+        Path path = directory.resolve(JournalSegment.getFileName(1));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, SEGMENT_BYTES), 0);
+        }
+
+        JournalSegment reopened = JournalSegment.open(path);
+
+        assertThat(reopened.getWritePosition()).isZero();
+        assertThat(reopened.read(SEGMENT_BYTES - 4)).isNull();
+        reopened.delete();
+        assertThat(Files.exists(path)).isFalse();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
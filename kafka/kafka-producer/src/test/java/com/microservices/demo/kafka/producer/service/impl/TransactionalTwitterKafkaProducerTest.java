@@ -0,0 +1,245 @@
+package com.microservices.demo.kafka.producer.service.impl;
+
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionalTwitterKafkaProducerTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final TransactionalProducerFactory producerFactory = new TransactionalProducerFactory();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TransactionalTwitterKafkaProducer kafkaProducer;
+
+    @AfterEach
+    public void closeProducer() {
+        producerFactory.gate.countDown();
+        if (kafkaProducer != null) {
+            kafkaProducer.close();
+        }
+    }
+
+    @Test
+    public void commitsFullTransactionsInOrder() throws Exception {
+        kafkaProducer = producer(10, 60000);
+        List<CompletableFuture<BatchResult>> results = new ArrayList<>();
+        for (long batch = 0; batch < 7; batch++) {
+            results.add(kafkaProducer.sendBatch(TOPIC, records(batch * 5, 5)));
+        }
+
+        //the first six batches fill three transactions, the last one waits for more records
+        for (CompletableFuture<BatchResult> result : results.subList(0, 6)) {
+            assertThat(result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccessful()).isTrue();
+        }
+        assertThat(results.get(6)).isNotDone();
+        assertThat(producerFactory.committedTransactions()).hasSize(3).allSatisfy(keys -> assertThat(keys).hasSize(10));
+
+        kafkaProducer.close();
+        assertThat(results.get(6).get(TIMEOUT_SECONDS, TimeUnit.SECONDS).isSuccessful()).isTrue();
+        assertThat(producerFactory.committedKeys()).containsExactlyElementsOf(keys(0, 35));
+        assertThat(meterRegistry.get("kafka.producer.transaction.commit").timer().count()).isEqualTo(4);
+    }
+
+    @Test
+    public void commitsExpiredTransaction() throws Exception {
+        kafkaProducer = producer(1000, 50);
+
+        BatchResult result = kafkaProducer.sendBatch(TOPIC, records(0, 3)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getSuccessCount()).isEqualTo(3);
+        assertThat(producerFactory.committedKeys()).containsExactly(0L, 1L, 2L);
+    }
+
+    @Test
+    public void failsBatchesOfAbortedTransaction() throws Exception {
+        kafkaProducer = producer(4, 60000);
+        producerFactory.commitFailures.set(1);
+
+        BatchResult aborted = kafkaProducer.sendBatch(TOPIC, records(0, 4)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        BatchResult committed = kafkaProducer.sendBatch(TOPIC, records(4, 4)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(aborted.isSuccessful()).isFalse();
+        assertThat(aborted.getFailureCount()).isEqualTo(4);
+        assertThat(aborted.getFirstException()).hasMessageContaining("commit failed");
+        assertThat(committed.isSuccessful()).isTrue();
+        assertThat(producerFactory.committedKeys()).containsExactlyElementsOf(keys(4, 4));
+        assertThat(meterRegistry.get("kafka.producer.transaction.aborts").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void blocksSendersWhenQueuedTransactionsAreFull() throws Exception {
+        kafkaProducer = producer(1, 60000);
+        producerFactory.gate = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        Thread sender = new Thread(() -> {
+            for (long key = 0; key < 8; key++) {
+                kafkaProducer.send(TOPIC, key, tweet(key));
+                sent.incrementAndGet();
+            }
+        });
+        sender.start();
+
+        //one transaction is taken by the blocked committer and four wait in the queue, the sixth send blocks
+        waitUntil(() -> sent.get() == 5);
+        Thread.sleep(200);
+        assertThat(sent.get()).isEqualTo(5);
+        assertThat(sender.isAlive()).isTrue();
+
+        producerFactory.gate.countDown();
+        sender.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertThat(sent.get()).isEqualTo(8);
+        kafkaProducer.close();
+        assertThat(producerFactory.committedKeys()).containsExactlyElementsOf(keys(0, 8));
+    }
+
+    @Test
+    public void failsBatchesSentAfterClose() throws Exception {
+        kafkaProducer = producer(10, 60000);
+        kafkaProducer.close();
+
+        BatchResult result = kafkaProducer.sendBatch(TOPIC, records(0, 2)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(result.getFailureCount()).isEqualTo(2);
+        assertThat(result.getFirstException()).isInstanceOf(IllegalStateException.class);
+        assertThat(producerFactory.committedKeys()).isEmpty();
+    }
+
+    private TransactionalTwitterKafkaProducer producer(int transactionBatchSize, long transactionBatchMs) {
+        KafkaProducerConfigData kafkaProducerConfigData = new KafkaProducerConfigData();
+        kafkaProducerConfigData.setTransactionBatchSize(transactionBatchSize);
+        kafkaProducerConfigData.setTransactionBatchMs(transactionBatchMs);
+        return new TransactionalTwitterKafkaProducer(new KafkaTemplate<>(producerFactory), kafkaProducerConfigData,
+                meterRegistry);
+    }
+
+    private static List<KeyValue<Long, TwitterAvroModel>> records(long firstKey, int count) {
+        List<KeyValue<Long, TwitterAvroModel>> records = new ArrayList<>();
+        for (long key : keys(firstKey, count)) {
+            records.add(KeyValue.of(key, tweet(key)));
+        }
+        return records;
+    }
+
+    private static List<Long> keys(long firstKey, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = firstKey; key < firstKey + count; key++) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static TwitterAvroModel tweet(long id) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id)
+                .setText("text")
+                .setCreatedAt(System.currentTimeMillis())
+                .build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * KafkaTemplate closes the producer after each transaction, so every transaction gets its own MockProducer. The
+     * gate blocks the committer thread when it asks for the producer of the next transaction.
+     */
+    private static class TransactionalProducerFactory implements ProducerFactory<Long, TwitterAvroModel> {
+
+        private static final Node NODE = new Node(0, "localhost", 9092);
+
+        private static final Cluster CLUSTER = new Cluster("cluster", Collections.singletonList(NODE),
+                Collections.singletonList(new PartitionInfo(TOPIC, 0, NODE, new Node[]{NODE}, new Node[]{NODE})),
+                Collections.emptySet(), Collections.emptySet());
+
+        private final List<MockProducer<Long, TwitterAvroModel>> producers = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger commitFailures = new AtomicInteger();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public Producer<Long, TwitterAvroModel> createProducer() {
+            return createProducer(null);
+        }
+
+        @Override
+        public Producer<Long, TwitterAvroModel> createProducer(String txIdPrefix) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            MockProducer<Long, TwitterAvroModel> producer = new MockProducer<>(CLUSTER, true, new LongSerializer(),
+                    (topic, data) -> new byte[0]);
+            producer.initTransactions();
+            if (commitFailures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+                producer.commitTransactionException = new KafkaException("commit failed");
+            }
+            producers.add(producer);
+            return producer;
+        }
+
+        @Override
+        public boolean transactionCapable() {
+            return true;
+        }
+
+        List<List<Long>> committedTransactions() {
+            List<List<Long>> transactions = new ArrayList<>();
+            for (MockProducer<Long, TwitterAvroModel> producer : producers) {
+                if (producer.transactionCommitted()) {
+                    List<Long> keys = new ArrayList<>();
+                    for (ProducerRecord<Long, TwitterAvroModel> record : producer.history()) {
+                        keys.add(record.key());
+                    }
+                    transactions.add(keys);
+                }
+            }
+            return transactions;
+        }
+
+        List<Long> committedKeys() {
+            List<Long> keys = new ArrayList<>();
+            committedTransactions().forEach(keys::addAll);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import com.microservices.demo.twitter.to.kafka.service.transformer.TwitterStatusToAvroTransformer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the decoding of the twitter API v2 filtered stream by TwitterV2StreamParser with the previous path of
+ * TwitterV2StreamHelper: every line parsed into an org.json JSONObject, re-templated into a v1 json string, parsed again by
+ * TwitterObjectFactory.createStatus and transformed by TwitterStatusToAvroTransformer. The previous path is copied here as
+ * it was, it is not in the service anymore.
+ * Both decode the same recorded stream of STREAM_TWEETS tweets with keep-alive lines, the score is per tweet. Run it with
+ * -prof gc for the allocation per tweet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwitterV2StreamParserBenchmark {
+
+    private static final int STREAM_TWEETS = 1000;
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "Java", "Kafka", "Microservices",
+            "Elasticsearch", "congue", "massa", "Fusce", "magna", "sed", "\\\"quoted\\\""
+    };
+
+    private static final String TWEET_AS_RAW_JSON = "{" +
+            "\"created_at\":\"{0}\"," +
+            "\"id\":\"{1}\"," +
+            "\"text\":\"{2}\"," +
+            "\"user\":{\"id\":\"{3}\"}" +
+            "}";
+
+    private static final String TWITTER_STATUS_DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
+    private byte[] stream;
+
+    private TwitterV2StreamParser twitterV2StreamParser;
+
+    private TwitterStatusToAvroTransformer twitterStatusToAvroTransformer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder payload = new StringBuilder();
+        Instant createdAt = Instant.parse("2022-01-31T14:00:00.000Z");
+        for (int i = 0; i < STREAM_TWEETS; i++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 140) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            payload.append("{\"data\":{\"author_id\":\"").append(1_000_000L + random.nextInt(1_000_000))
+                    .append("\",\"created_at\":\"").append(createdAt.plusMillis(i * 37L))
+                    .append("\",\"edit_history_tweet_ids\":[\"").append(1_500_000_000_000_000_000L + i)
+                    .append("\"],\"id\":\"").append(1_500_000_000_000_000_000L + i)
+                    .append("\",\"text\":\"").append(text.toString().trim())
+                    .append("\"},\"matching_rules\":[{\"id\":\"1487843452541050880\",\"tag\":\"\"}]}\r\n");
+            if (i % 100 == 0) {
+                payload.append("\r\n");
+            }
+        }
+        stream = payload.toString().getBytes(StandardCharsets.UTF_8);
+        twitterV2StreamParser = new TwitterV2StreamParser(new TwitterIngestMetrics(new SimpleMeterRegistry()));
+        twitterStatusToAvroTransformer = new TwitterStatusToAvroTransformer();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAM_TWEETS)
+    public long streamingParser(Blackhole blackhole) throws IOException {
+        return twitterV2StreamParser.parse(new ByteArrayInputStream(stream), blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAM_TWEETS)
+    public long reparseIntoStatus(Blackhole blackhole) throws IOException, TwitterException {
+        long tweetCount = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream),
+                StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                Status status = TwitterObjectFactory.createStatus(getFormattedTweet(line));
+                TwitterAvroModel twitterAvroModel = twitterStatusToAvroTransformer.getTwitterAvroModelFromStatus(status);
+                blackhole.consume(twitterAvroModel);
+                tweetCount++;
+            }
+        }
+        return tweetCount;
+    }
+
+    private String getFormattedTweet(String data) {
+        JSONObject jsonData = (JSONObject) new JSONObject(data).get("data");
+
+        String[] params = new String[]{
+                ZonedDateTime.parse(jsonData.get("created_at").toString()).withZoneSameInstant(ZoneId.of("UTC"))
+                        .format(DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH)),
+                jsonData.get("id").toString(),
+                jsonData.get("text").toString().replaceAll("\"", "\\\\\""),
+                jsonData.get("author_id").toString(),
+        };
+        return formatTweetAsJsonWithParams(params);
+    }
+
+    private String formatTweetAsJsonWithParams(String[] params) {
+        String tweet = TWEET_AS_RAW_JSON;
+
+        for (int i = 0; i < params.length; i++) {
+            tweet = tweet.replace("{" + i + "}", params[i]);
+        }
+        return tweet;
+    }
+}
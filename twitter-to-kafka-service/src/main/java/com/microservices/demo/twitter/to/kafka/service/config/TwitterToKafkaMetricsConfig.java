@@ -0,0 +1,28 @@
+package com.microservices.demo.twitter.to.kafka.service.config;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.twitter.to.kafka.service.metrics.RunnerType;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Add the runner tag (mock, v1 or v2) to every meter of the service including the kafka producer meters, so the metrics of
+ * the different runners can be compared in the same prometheus.
+ */
+@Configuration
+public class TwitterToKafkaMetricsConfig {
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    public TwitterToKafkaMetricsConfig(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+    }
+
+    @Bean
+    public MeterRegistryCustomizer<MeterRegistry> runnerTagMeterRegistryCustomizer() {
+        String runner = RunnerType.of(twitterToKafkaServiceConfigData).getTagValue();
+        return meterRegistry -> meterRegistry.config().commonTags("runner", runner);
+    }
+}
@@ -0,0 +1,158 @@
+package com.microservices.demo.twitter.to.kafka.service.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class finds any of the keywords in a text with one pass over the text using the Aho-Corasick automaton, so the cost
+ * doesn't grow with the number of keywords. Matching is case insensitive and the keywords can be anywhere in the text.
+ * The automaton is built once into a flat transition table (state * alphabet size) over the distinct characters of the
+ * keywords, every other character goes back to the root state, so matching is only one table lookup per character.
+ * The object is immutable and thread safe.
+ */
+public class KeywordMatcher {
+
+    private static final int ASCII_SIZE = 128;
+
+    //Alphabet index of the characters which are not in any keyword
+    private static final int OTHER = 0;
+
+    private final int[] asciiIndex = new int[ASCII_SIZE];
+
+    private final char[] nonAsciiChars;
+
+    private final int alphabetSize;
+
+    private final int[] transitions;
+
+    private final boolean[] accepting;
+
+    public KeywordMatcher(List<String> keywords) {
+        TreeSet<Character> nonAscii = new TreeSet<>();
+        List<String> lowerCaseKeywords = new ArrayList<>();
+        int nextIndex = 1;
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            String lowerCaseKeyword = toLowerCase(keyword);
+            lowerCaseKeywords.add(lowerCaseKeyword);
+            for (int i = 0; i < lowerCaseKeyword.length(); i++) {
+                char c = lowerCaseKeyword.charAt(i);
+                if (c < ASCII_SIZE) {
+                    if (asciiIndex[c] == OTHER) {
+                        asciiIndex[c] = nextIndex++;
+                    }
+                } else {
+                    nonAscii.add(c);
+                }
+            }
+        }
+        this.nonAsciiChars = new char[nonAscii.size()];
+        int i = 0;
+        for (Character c : nonAscii) {
+            nonAsciiChars[i++] = c;
+        }
+        this.alphabetSize = nextIndex + nonAsciiChars.length;
+
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> output = new ArrayList<>();
+        trie.add(newState());
+        output.add(false);
+        for (String keyword : lowerCaseKeywords) {
+            int state = 0;
+            for (int j = 0; j < keyword.length(); j++) {
+                int symbol = getSymbol(keyword.charAt(j));
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState());
+                    output.add(false);
+                }
+                state = trie.get(state)[symbol];
+            }
+            output.set(state, true);
+        }
+
+        int numOfStates = trie.size();
+        this.transitions = new int[numOfStates * alphabetSize];
+        this.accepting = new boolean[numOfStates];
+        int[] failure = new int[numOfStates];
+        Deque<Integer> queue = new ArrayDeque<>();
+        //root transitions, missing ones stay at the root
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next > 0) {
+                transitions[symbol] = next;
+                queue.add(next);
+            }
+        }
+        accepting[0] = output.get(0);
+        //breadth first, so the failure state of every state is complete before it is used
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] = output.get(state) || accepting[failure[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = trie.get(state)[symbol];
+                int fallback = transitions[failure[state] * alphabetSize + symbol];
+                if (next > 0 && symbol != OTHER) {
+                    failure[next] = fallback;
+                    transitions[state * alphabetSize + symbol] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + symbol] = symbol == OTHER ? 0 : fallback;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param text
+     * @return true if any of the keywords is in the text
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + getSymbol(Character.toLowerCase(text.charAt(i)))];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if there is no keyword, in that case nothing matches
+     */
+    public boolean isEmpty() {
+        return transitions.length == alphabetSize;
+    }
+
+    private int getSymbol(char c) {
+        if (c < ASCII_SIZE) {
+            return asciiIndex[c];
+        }
+        int index = Arrays.binarySearch(nonAsciiChars, c);
+        return index < 0 ? OTHER : alphabetSize - nonAsciiChars.length + index;
+    }
+
+    private int[] newState() {
+        int[] state = new int[alphabetSize];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static String toLowerCase(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
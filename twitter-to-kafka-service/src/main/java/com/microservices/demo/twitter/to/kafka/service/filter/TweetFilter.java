@@ -0,0 +1,113 @@
+package com.microservices.demo.twitter.to.kafka.service.filter;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is the pre-publish stage of TwitterKafkaStatusListener, it drops the tweets which should not reach kafka before
+ * they are transformed and sent: retweets, tweets without any of the twitter-keywords in the text (the stream can deliver
+ * them for matches on urls or user names) and the tweet ids which are already published in the dedup window.
+ * Each check can be switched off in the config, dropped tweets are counted in twitter.tweets.filtered with the reason tag.
+ * When the keywords are changed at runtime a new KeywordMatcher is built and swapped in one volatile write, so the stream
+ * threads use either the old or the new keywords but never a half built matcher.
+ */
+@Component
+public class TweetFilter {
+
+    //v2 and mock tweets have no retweet flag, retweets are recognized by the text which twitter prefixes with "RT @user:"
+    private static final String RETWEET_PREFIX = "RT @";
+
+    private static final long DEFAULT_DEDUP_WINDOW_MS = 600000;
+
+    private static final int DEFAULT_DEDUP_MAX_IDS = 1000000;
+
+    private final boolean keywordFilterEnabled;
+
+    private final boolean dropRetweets;
+
+    private volatile KeywordMatcher keywordMatcher;
+
+    private final TweetIdDeduplicator tweetIdDeduplicator;
+
+    private final Counter keywordFilteredCounter;
+
+    private final Counter retweetFilteredCounter;
+
+    private final Counter duplicateFilteredCounter;
+
+    public TweetFilter(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData, MeterRegistry meterRegistry) {
+        this.keywordMatcher = new KeywordMatcher(twitterToKafkaServiceConfigData.getTwitterKeywords() == null ?
+                Collections.emptyList() : twitterToKafkaServiceConfigData.getTwitterKeywords());
+        this.keywordFilterEnabled = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableKeywordFilter());
+        this.dropRetweets = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getDropRetweets());
+        this.tweetIdDeduplicator = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableDedup()) ?
+                new TweetIdDeduplicator(
+                        twitterToKafkaServiceConfigData.getDedupWindowMs() == null ?
+                                DEFAULT_DEDUP_WINDOW_MS : twitterToKafkaServiceConfigData.getDedupWindowMs(),
+                        twitterToKafkaServiceConfigData.getDedupMaxIds() == null ?
+                                DEFAULT_DEDUP_MAX_IDS : twitterToKafkaServiceConfigData.getDedupMaxIds()) : null;
+        this.keywordFilteredCounter = filteredCounter(meterRegistry, "keyword");
+        this.retweetFilteredCounter = filteredCounter(meterRegistry, "retweet");
+        this.duplicateFilteredCounter = filteredCounter(meterRegistry, "duplicate");
+    }
+
+    /**
+     * Swap the keyword matcher with the one built from the new keywords.
+     * @param keywords
+     */
+    public void updateKeywords(List<String> keywords) {
+        keywordMatcher = new KeywordMatcher(keywords);
+    }
+
+    /**
+     * @param status
+     * @return true if the status should be published
+     */
+    public boolean accept(Status status) {
+        return accept(status.getId(), status.getText(), status.isRetweet());
+    }
+
+    /**
+     * @param twitterAvroModel
+     * @return true if the tweet should be published
+     */
+    public boolean accept(TwitterAvroModel twitterAvroModel) {
+        String text = twitterAvroModel.getText();
+        return accept(twitterAvroModel.getId(), text, text != null && text.startsWith(RETWEET_PREFIX));
+    }
+
+    /**
+     * The cheap checks are done first, dedup is the last one so only the published tweets take place in the id set.
+     */
+    private boolean accept(long id, String text, boolean retweet) {
+        if (dropRetweets && retweet) {
+            retweetFilteredCounter.increment();
+            return false;
+        }
+        KeywordMatcher matcher = keywordMatcher;
+        //without keywords every tweet would be dropped
+        if (keywordFilterEnabled && !matcher.isEmpty() && !matcher.matches(text)) {
+            keywordFilteredCounter.increment();
+            return false;
+        }
+        if (tweetIdDeduplicator != null && !tweetIdDeduplicator.firstSeen(id)) {
+            duplicateFilteredCounter.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private static Counter filteredCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("twitter.tweets.filtered")
+                .description("Tweets dropped before publishing to kafka")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,162 @@
+package com.microservices.demo.twitter.to.kafka.service.filter;
+
+import java.util.Arrays;
+
+/**
+ * This class remembers the tweet ids seen in the last time window to drop the duplicates, for example the tweets which are
+ * sent again by twitter after a reconnect of the stream. Ids are kept in two generations of primitive long open addressing
+ * sets (no boxing and no entry objects), new ids go to the current one and when the window is over or the current set is
+ * full the previous generation is dropped and the current one becomes the previous. So an id is remembered at least one
+ * window and at most two windows, and the memory is bounded to two sets of maxIds.
+ * The ids are split by hash into STRIPES independent stripes with their own lock and generations, so threads checking
+ * different ids don't wait for each other and the clear of a generation only blocks one stripe for 1/STRIPES of the time.
+ */
+public class TweetIdDeduplicator {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public TweetIdDeduplicator(long windowMs, int maxIds) {
+        int maxIdsPerStripe = Math.max(1, (maxIds + STRIPES - 1) / STRIPES);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(windowMs, maxIdsPerStripe, now);
+        }
+    }
+
+    /**
+     * Remember the id and tell if it was seen before.
+     * @param id
+     * @return true if the id is not seen in the last window
+     */
+    public boolean firstSeen(long id) {
+        return stripes[stripeOf(id)].firstSeen(id);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private static int stripeOf(long id) {
+        //upper bits of the hash, the sets of the stripe use the lower ones
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 60) & (STRIPES - 1);
+    }
+
+    private static class Stripe {
+
+        private final long windowMs;
+
+        private final int maxIds;
+
+        private LongHashSet current;
+
+        private LongHashSet previous;
+
+        private long windowStartMs;
+
+        Stripe(long windowMs, int maxIds, long windowStartMs) {
+            this.windowMs = windowMs;
+            this.maxIds = maxIds;
+            this.current = new LongHashSet(maxIds);
+            this.previous = new LongHashSet(maxIds);
+            this.windowStartMs = windowStartMs;
+        }
+
+        synchronized boolean firstSeen(long id) {
+            if (current.contains(id) || previous.contains(id)) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now - windowStartMs >= windowMs || current.size() >= maxIds) {
+                LongHashSet oldest = previous;
+                previous = current;
+                current = oldest;
+                current.clear();
+                windowStartMs = now;
+            }
+            current.add(id);
+            return true;
+        }
+
+        synchronized int size() {
+            return current.size() + previous.size();
+        }
+    }
+
+    /**
+     * Open addressing set of long values with linear probing, the capacity is at least twice the max size so the probe
+     * sequences stay short. Zero is the marker of the empty slot so the value zero is kept in a separate flag.
+     */
+    static class LongHashSet {
+
+        private static final long EMPTY = 0L;
+
+        private final long[] slots;
+
+        private final int mask;
+
+        private boolean containsZero;
+
+        private int size;
+
+        LongHashSet(int maxSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+            this.slots = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        boolean contains(long value) {
+            if (value == EMPTY) {
+                return containsZero;
+            }
+            int index = indexOf(value);
+            while (slots[index] != EMPTY) {
+                if (slots[index] == value) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        void add(long value) {
+            if (value == EMPTY) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+                return;
+            }
+            int index = indexOf(value);
+            while (slots[index] != EMPTY) {
+                if (slots[index] == value) {
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            slots[index] = value;
+            size++;
+        }
+
+        void clear() {
+            Arrays.fill(slots, EMPTY);
+            containsZero = false;
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int indexOf(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
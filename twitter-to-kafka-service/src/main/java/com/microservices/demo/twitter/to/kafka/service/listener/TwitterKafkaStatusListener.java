@@ -2,10 +2,14 @@ package com.microservices.demo.twitter.to.kafka.service.listener;
 
 import com.microservices.demo.config.KafkaConfigData;
 import com.microservices.demo.kafka.producer.service.KafkaProducer;
+import com.microservices.demo.twitter.to.kafka.service.filter.TweetFilter;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import com.microservices.demo.twitter.to.kafka.service.pipeline.TwitterKafkaPublishPipeline;
 import com.microservices.demo.twitter.to.kafka.service.transformer.TwitterStatusToAvroTransformer;
 import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 import twitter4j.Status;
 import twitter4j.StatusAdapter;
@@ -14,6 +18,8 @@ import twitter4j.StatusAdapter;
  * This class has only one purpose to receive the Status of the tweet and print the tweet out of it.
  * And this class extends StatusAdapter instead of implementing the StatusListener because in case of implementing the interface we would have
  * override all the methods along with onStauts() which we needed in this case.
+ * When pipelined publish is enabled the tweets are only handed off to TwitterKafkaPublishPipeline and sent by its workers.
+ * Before that every tweet goes through TweetFilter which drops the retweets, tweets without keywords and duplicates.
  */
 @Component
 public class TwitterKafkaStatusListener extends StatusAdapter {
@@ -22,17 +28,31 @@ public class TwitterKafkaStatusListener extends StatusAdapter {
     private final KafkaConfigData kafkaConfigData;
     private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
     private final TwitterStatusToAvroTransformer twitterStatusToAvroTransformer;
+    private final TwitterKafkaPublishPipeline twitterKafkaPublishPipeline;
+    private final TwitterIngestMetrics twitterIngestMetrics;
+    private final TweetFilter tweetFilter;
 
     /**
-     * inject the KafkaConfigData, KafkaProducer and TwitterStatusToAvroTransformer beans in this constructor.
+     * inject the KafkaConfigData, KafkaProducer, TwitterStatusToAvroTransformer, TwitterIngestMetrics and TweetFilter beans in this constructor.
+     * TwitterKafkaPublishPipeline bean exists only if pipelined publish is enabled, otherwise it is null.
      * @param kafkaConfigData
      * @param kafkaProducer
      * @param twitterStatusToAvroTransformer
+     * @param twitterKafkaPublishPipeline
+     * @param twitterIngestMetrics
+     * @param tweetFilter
      */
-    public TwitterKafkaStatusListener(KafkaConfigData kafkaConfigData, KafkaProducer<Long, TwitterAvroModel> kafkaProducer, TwitterStatusToAvroTransformer twitterStatusToAvroTransformer) {
+    public TwitterKafkaStatusListener(KafkaConfigData kafkaConfigData, KafkaProducer<Long, TwitterAvroModel> kafkaProducer,
+                                      TwitterStatusToAvroTransformer twitterStatusToAvroTransformer,
+                                      ObjectProvider<TwitterKafkaPublishPipeline> twitterKafkaPublishPipeline,
+                                      TwitterIngestMetrics twitterIngestMetrics,
+                                      TweetFilter tweetFilter) {
         this.kafkaConfigData = kafkaConfigData;
         this.kafkaProducer = kafkaProducer;
         this.twitterStatusToAvroTransformer = twitterStatusToAvroTransformer;
+        this.twitterKafkaPublishPipeline = twitterKafkaPublishPipeline.getIfAvailable();
+        this.twitterIngestMetrics = twitterIngestMetrics;
+        this.tweetFilter = tweetFilter;
     }
 
     /**
@@ -43,9 +63,52 @@ public class TwitterKafkaStatusListener extends StatusAdapter {
      */
     @Override
     public void onStatus(Status status) {
+        twitterIngestMetrics.tweetReceived();
+        if (!tweetFilter.accept(status)) {
+            LOG.debug("Filtered status with id {}", status.getId());
+            return;
+        }
         LOG.info("Received status text {} sending to kafka topic {}", status.getText(),kafkaConfigData.getTopicName());
+        if (twitterKafkaPublishPipeline != null) {
+            twitterKafkaPublishPipeline.submit(status);
+            return;
+        }
+        long transformStartNanos = System.nanoTime();
         TwitterAvroModel twitterAvroModel=twitterStatusToAvroTransformer.getTwitterAvroModelFromStatus(status);
-        kafkaProducer.send(kafkaConfigData.getTopicName(),twitterAvroModel.getUserId(),twitterAvroModel);
+        twitterIngestMetrics.recordTransform(transformStartNanos);
+        send(twitterAvroModel);
+    }
+
+    /**
+     * twitter4j calls this method when the stream payload could not be read or parsed, it is counted as parse failure.
+     * @param exception
+     */
+    @Override
+    public void onException(Exception exception) {
+        twitterIngestMetrics.parseFailure();
+        LOG.error("Error in twitter stream! ", exception);
+    }
+
+    /**
+     * Produce the already transformed TwitterAvroModel object to kafka topic. The sources which can build the TwitterAvroModel
+     * object directly (like high rate mock tweets) call this method and skip the Status object completely.
+     * Logging is on debug level here as this method can be called hundred thousand times per second.
+     * @param twitterAvroModel
+     */
+    public void publish(TwitterAvroModel twitterAvroModel) {
+        twitterIngestMetrics.tweetReceived();
+        if (!tweetFilter.accept(twitterAvroModel)) {
+            return;
+        }
+        LOG.debug("Sending tweet with id {} to kafka topic {}", twitterAvroModel.getId(), kafkaConfigData.getTopicName());
+        if (twitterKafkaPublishPipeline != null) {
+            twitterKafkaPublishPipeline.submit(twitterAvroModel);
+            return;
+        }
+        send(twitterAvroModel);
+    }
 
+    private void send(TwitterAvroModel twitterAvroModel) {
+        kafkaProducer.send(kafkaConfigData.getTopicName(),twitterAvroModel.getUserId(),twitterAvroModel);
     }
 }
@@ -0,0 +1,70 @@
+package com.microservices.demo.twitter.to.kafka.service.listener;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.twitter.to.kafka.service.filter.TweetFilter;
+import com.microservices.demo.twitter.to.kafka.service.runner.StreamRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class applies the twitter-keywords changed at runtime, for example after changing them in the config server
+ * repository and calling POST /actuator/refresh. Spring cloud publishes EnvironmentChangeEvent with the changed keys, the
+ * keywords are bound again from the environment (the order of rebinding TwitterToKafkaServiceConfigData is not guaranteed)
+ * and when they are really different the TweetFilter and the active StreamRunner get them, so the stream keeps running.
+ */
+@Component
+public class TwitterKeywordsRefreshListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterKeywordsRefreshListener.class);
+
+    private static final String TWITTER_KEYWORDS_PROPERTY = "twitter-to-kafka-service.twitter-keywords";
+
+    private final Environment environment;
+
+    private final StreamRunner streamRunner;
+
+    private final TweetFilter tweetFilter;
+
+    private List<String> keywords;
+
+    public TwitterKeywordsRefreshListener(Environment environment, StreamRunner streamRunner, TweetFilter tweetFilter,
+                                          TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData) {
+        this.environment = environment;
+        this.streamRunner = streamRunner;
+        this.tweetFilter = tweetFilter;
+        this.keywords = twitterToKafkaServiceConfigData.getTwitterKeywords() == null ? Collections.emptyList() :
+                new ArrayList<>(twitterToKafkaServiceConfigData.getTwitterKeywords());
+    }
+
+    @EventListener
+    public synchronized void onEnvironmentChange(EnvironmentChangeEvent event) {
+        boolean keywordsChanged = event.getKeys().stream().anyMatch(key -> key.startsWith(TWITTER_KEYWORDS_PROPERTY));
+        if (!keywordsChanged) {
+            return;
+        }
+        List<String> newKeywords = Binder.get(environment)
+                .bind(TWITTER_KEYWORDS_PROPERTY, Bindable.listOf(String.class))
+                .orElse(Collections.emptyList());
+        if (newKeywords.isEmpty()) {
+            LOG.warn("Ignoring the change of twitter keywords to an empty list, the current keywords {} are kept", keywords);
+            return;
+        }
+        if (newKeywords.equals(keywords)) {
+            return;
+        }
+        LOG.info("Twitter keywords changed from {} to {}", keywords, newKeywords);
+        tweetFilter.updateKeywords(newKeywords);
+        streamRunner.onKeywordsChanged(newKeywords);
+        keywords = new ArrayList<>(newKeywords);
+    }
+}
@@ -0,0 +1,29 @@
+package com.microservices.demo.twitter.to.kafka.service.metrics;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+
+import java.util.Locale;
+
+/**
+ * Type of the active StreamRunner, used as the runner tag of all metrics of the service. It is decided with the same
+ * properties which decide the StreamRunner bean.
+ */
+public enum RunnerType {
+    MOCK, V1, V2, REPLAY;
+
+    public static RunnerType of(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData) {
+        boolean mock = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableMockTweets());
+        boolean v2 = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableV2Tweets());
+        if (Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableReplayTweets())) {
+            return REPLAY;
+        }
+        if (v2 && !mock) {
+            return V2;
+        }
+        return mock ? MOCK : V1;
+    }
+
+    public String getTagValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
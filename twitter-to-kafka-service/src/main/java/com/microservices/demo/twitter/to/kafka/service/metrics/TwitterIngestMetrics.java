@@ -0,0 +1,48 @@
+package com.microservices.demo.twitter.to.kafka.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the meters of the ingest stages before the kafka producer: tweets received from the stream runner,
+ * payloads which could not be parsed into a tweet and the time of the Status to TwitterAvroModel transformation.
+ * The producer stage is measured in kafka-producer module (send to ack latency, producer client metrics) and all of them
+ * get the runner tag from TwitterToKafkaMetricsConfig.
+ */
+@Component
+public class TwitterIngestMetrics {
+
+    private final Counter tweetsReceived;
+
+    private final Counter parseFailures;
+
+    private final Timer transformTimer;
+
+    public TwitterIngestMetrics(MeterRegistry meterRegistry) {
+        this.tweetsReceived = Counter.builder("twitter.tweets.received")
+                .description("Tweets received from the stream runner")
+                .register(meterRegistry);
+        this.parseFailures = Counter.builder("twitter.tweets.parse.failures")
+                .description("Stream payloads which could not be parsed into a tweet")
+                .register(meterRegistry);
+        this.transformTimer = Timer.builder("twitter.tweets.transform")
+                .description("Time to transform twitter4j Status into TwitterAvroModel")
+                .register(meterRegistry);
+    }
+
+    public void tweetReceived() {
+        tweetsReceived.increment();
+    }
+
+    public void parseFailure() {
+        parseFailures.increment();
+    }
+
+    public void recordTransform(long startNanos) {
+        transformTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,102 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer which can be used by multiple producer and multiple consumer threads (Dmitry Vyukov's bounded
+ * queue). Every slot has a sequence number which tells whether the slot is free for the producer of the given position or
+ * filled for the consumer of the given position, so producers and consumers only compete with CAS on their own position counter
+ * and never take a lock. Capacity is rounded up to the next power of two.
+ * @param <E>
+ */
+public class BoundedRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    public BoundedRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Put the element in the buffer.
+     * @param element
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        long position = enqueuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+        buffer.lazySet(index, element);
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest element from the buffer.
+     * @return null if the buffer is empty
+     */
+    public E poll() {
+        long position = dequeuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        return element;
+    }
+
+    /**
+     * Approximate number of elements in the buffer, exact only when no other thread is changing the buffer.
+     * @return
+     */
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
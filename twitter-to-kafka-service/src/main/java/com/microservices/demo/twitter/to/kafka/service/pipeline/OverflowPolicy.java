@@ -0,0 +1,9 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+/**
+ * What to do with a new tweet when the pipeline ring buffer is full, configured with
+ * twitter-to-kafka-service.pipeline-overflow-policy property.
+ */
+public enum OverflowPolicy {
+    BLOCK, DROP_OLDEST, SPILL
+}
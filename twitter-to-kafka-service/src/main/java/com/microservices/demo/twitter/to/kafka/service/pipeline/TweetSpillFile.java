@@ -0,0 +1,264 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Append only file used by the pipeline when the ring buffer is full and the overflow policy is spill. Each tweet is written
+ * as a record of its length, the CRC32C of the body and the avro single object encoding of TwitterAvroModel as body. Tweets
+ * are read back in the same order and when all of them are read the file is truncated, so the file only grows while the
+ * pipeline is overloaded. The tweets which are not read yet do not take more than maxBytes, tweets which do not fit any more
+ * are not appended. When an append would make the file bigger than maxBytes and the already read head of the file is at
+ * least as big as the unread tail, the unread tail is copied into a new file which replaces the old one, so the copy never
+ * costs more than the space it frees and the file takes at most twice maxBytes on disk.
+ * If the service stops with tweets in the file they are read again on the next start, so tweets can be sent twice but not lost.
+ * A record torn by a crash in the middle of an append is cut off when the file is opened. A record with a wrong checksum or a
+ * body which can't be decoded any more (e.g. after an incompatible change of TwitterAvroModel) is skipped, and when the length
+ * of a record is broken the rest of the file can't be read and is dropped. All of them are counted as corrupt records.
+ */
+public class TweetSpillFile implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TweetSpillFile.class);
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    //a tweet is a few hundred bytes, a longer record is a broken length
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    private final Path path;
+
+    private FileChannel fileChannel;
+
+    private final long maxBytes;
+
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_BYTES);
+
+    private final CRC32C crc = new CRC32C();
+
+    private long readPosition;
+
+    private long writePosition;
+
+    private long corruptRecords;
+
+    public TweetSpillFile(Path path, long maxBytes) throws IOException {
+        Files.createDirectories(path.getParent());
+        //left behind by a crash in the middle of a compaction, the spill file itself is still complete then
+        Files.deleteIfExists(compactPath(path));
+        this.path = path;
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.maxBytes = maxBytes;
+        this.writePosition = fileChannel.size();
+        cutTornTail();
+    }
+
+    /**
+     * @param twitterAvroModel
+     * @return false if the unread tweets would take more than max bytes, the tweet is not appended then
+     * @throws IOException
+     */
+    public synchronized boolean append(TwitterAvroModel twitterAvroModel) throws IOException {
+        ByteBuffer body = twitterAvroModel.toByteBuffer();
+        int length = body.remaining();
+        if (writePosition - readPosition + HEADER_BYTES + length > maxBytes) {
+            return false;
+        }
+        if (writePosition + HEADER_BYTES + length > maxBytes && readPosition >= writePosition - readPosition) {
+            compact();
+        }
+        headerBuffer.clear();
+        headerBuffer.putInt(length).putInt(checksum(body)).flip();
+        try {
+            write(headerBuffer, writePosition);
+            write(body, writePosition + HEADER_BYTES);
+        } catch (IOException e) {
+            //cut off the partly written record so the next one is appended at a record boundary
+            fileChannel.truncate(writePosition);
+            throw e;
+        }
+        writePosition += HEADER_BYTES + length;
+        return true;
+    }
+
+    /**
+     * Read the tweets in order and pass them to the sink until the sink does not accept a tweet or there is no more tweet.
+     * The tweet which is not accepted stays in the file and will be read first next time. Corrupt records are skipped.
+     * @param sink
+     * @return number of tweets accepted by the sink
+     * @throws IOException if the file can't be read
+     */
+    public synchronized int drainTo(Predicate<TwitterAvroModel> sink) throws IOException {
+        int drained = 0;
+        while (readPosition < writePosition) {
+            int length = readHeader(readPosition);
+            if (length < 0) {
+                LOG.warn("Broken spill record length at position {}, dropping the last {} bytes of the spill file",
+                        readPosition, writePosition - readPosition);
+                corruptRecords++;
+                writePosition = readPosition;
+                fileChannel.truncate(writePosition);
+                break;
+            }
+            int checksum = headerBuffer.getInt(Integer.BYTES);
+            ByteBuffer body = ByteBuffer.allocate(length);
+            read(body, readPosition + HEADER_BYTES);
+            body.flip();
+            TwitterAvroModel twitterAvroModel = checksum(body) == checksum ? decode(body) : null;
+            if (twitterAvroModel == null) {
+                LOG.warn("Skipping corrupt spill record of {} bytes at position {}", length, readPosition);
+                corruptRecords++;
+            } else if (!sink.test(twitterAvroModel)) {
+                return drained;
+            } else {
+                drained++;
+            }
+            readPosition += HEADER_BYTES + length;
+        }
+        if (readPosition > 0) {
+            fileChannel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return drained;
+    }
+
+    /**
+     * Drop all tweets which are not read yet, for a file which can't be read any more.
+     * @return number of dropped bytes
+     */
+    public synchronized long discardPending() throws IOException {
+        long pendingBytes = writePosition - readPosition;
+        corruptRecords++;
+        readPosition = 0;
+        writePosition = 0;
+        fileChannel.truncate(0);
+        return pendingBytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return readPosition >= writePosition;
+    }
+
+    public synchronized long getPendingBytes() {
+        return writePosition - readPosition;
+    }
+
+    public synchronized long getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Copy the unread records into a new file and move it over the spill file, a crash before the move leaves the old file
+     * with all its records, so the tweets of the read head may be sent again but no tweet is lost.
+     */
+    private void compact() throws IOException {
+        long pendingBytes = writePosition - readPosition;
+        Path compactPath = compactPath(path);
+        try (FileChannel compactChannel = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < pendingBytes) {
+                copied += fileChannel.transferTo(readPosition + copied, pendingBytes - copied, compactChannel);
+            }
+            compactChannel.force(false);
+        }
+        Files.move(compactPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        fileChannel.close();
+        fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LOG.debug("Compacted spill file, dropped {} read bytes and kept {} bytes", readPosition, pendingBytes);
+        readPosition = 0;
+        writePosition = pendingBytes;
+    }
+
+    private static Path compactPath(Path path) {
+        return path.resolveSibling(path.getFileName() + COMPACT_SUFFIX);
+    }
+
+    /**
+     * Walk the records of the file from the previous run and cut the file at the first record which does not fit in the
+     * file, which is what an append interrupted by a crash leaves behind.
+     */
+    private void cutTornTail() throws IOException {
+        long position = 0;
+        while (position < writePosition) {
+            int length = readHeader(position);
+            if (length < 0) {
+                LOG.warn("Cutting torn tail of {} bytes at position {} of the spill file", writePosition - position, position);
+                corruptRecords++;
+                writePosition = position;
+                fileChannel.truncate(writePosition);
+                return;
+            }
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    /**
+     * Read the header at the position into header buffer.
+     * @return length of the body, -1 if the header or the body does not fit in the file or the length is not valid
+     */
+    private int readHeader(long position) throws IOException {
+        if (position + HEADER_BYTES > writePosition) {
+            return -1;
+        }
+        headerBuffer.clear();
+        read(headerBuffer, position);
+        int length = headerBuffer.getInt(0);
+        if (length <= 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > writePosition) {
+            return -1;
+        }
+        return length;
+    }
+
+    private TwitterAvroModel decode(ByteBuffer body) {
+        try {
+            return TwitterAvroModel.fromByteBuffer(body);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not decode spilled tweet: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private int checksum(ByteBuffer body) {
+        crc.reset();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += fileChannel.write(buffer, position + written);
+        }
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int count = fileChannel.read(buffer, position + read);
+            if (count < 0) {
+                throw new IOException("Unexpected end of spill file at position " + (position + read));
+            }
+            read += count;
+        }
+    }
+}
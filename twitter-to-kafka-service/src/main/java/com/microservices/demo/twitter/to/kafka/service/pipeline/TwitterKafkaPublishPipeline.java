@@ -0,0 +1,336 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import com.microservices.demo.kafka.producer.service.KafkaProducer;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import com.microservices.demo.twitter.to.kafka.service.transformer.TwitterStatusToAvroTransformer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class decouple the twitter stream reading thread from the kafka producer. The reading thread only put the tweet in the
+ * bounded ring buffer and returns, worker threads take the tweets from the buffer, transform them to TwitterAvroModel when needed
+ * and send them to kafka. So when the producer is slow (buffer.memory is full, metadata fetch etc.) only the workers wait and
+ * the http stream is still read. What happens when the buffer is full is decided by the configured OverflowPolicy.
+ * Queue depth, dropped and spilled tweets are exposed as micrometer metrics.
+ */
+@Component
+@ConditionalOnProperty(name = "twitter-to-kafka-service.enable-pipelined-publish", havingValue = "true")
+public class TwitterKafkaPublishPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterKafkaPublishPipeline.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private static final int DEFAULT_WORKER_THREADS = 2;
+
+    private static final int MAX_SEND_BATCH_SIZE = 512;
+
+    private static final int IDLE_SPINS = 100;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final long SPILL_REPLAY_INTERVAL_MS = 10;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private static final String SPILL_FILE_NAME = "twitter-pipeline.spill";
+
+    private static final long DEFAULT_SPILL_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    private final KafkaConfigData kafkaConfigData;
+
+    private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
+
+    private final TwitterStatusToAvroTransformer twitterStatusToAvroTransformer;
+
+    private final MeterRegistry meterRegistry;
+
+    private final TwitterIngestMetrics twitterIngestMetrics;
+
+    private final AtomicLong droppedTweets = new AtomicLong();
+
+    private final AtomicLong spilledTweets = new AtomicLong();
+
+    private BoundedRingBuffer<Object> ringBuffer;
+
+    private OverflowPolicy overflowPolicy;
+
+    private TweetSpillFile spillFile;
+
+    private ExecutorService workerExecutor;
+
+    private ScheduledExecutorService spillReplayExecutor;
+
+    private volatile boolean running;
+
+    private volatile boolean spillFull;
+
+    public TwitterKafkaPublishPipeline(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData,
+                                       KafkaConfigData kafkaConfigData,
+                                       KafkaProducer<Long, TwitterAvroModel> kafkaProducer,
+                                       TwitterStatusToAvroTransformer twitterStatusToAvroTransformer,
+                                       MeterRegistry meterRegistry,
+                                       TwitterIngestMetrics twitterIngestMetrics) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+        this.kafkaConfigData = kafkaConfigData;
+        this.kafkaProducer = kafkaProducer;
+        this.twitterStatusToAvroTransformer = twitterStatusToAvroTransformer;
+        this.meterRegistry = meterRegistry;
+        this.twitterIngestMetrics = twitterIngestMetrics;
+    }
+
+    /**
+     * Create the ring buffer, open the spill file if the policy is spill (tweets left from the previous run are sent first)
+     * and start the worker threads.
+     * @throws IOException
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        Integer queueCapacity = twitterToKafkaServiceConfigData.getPipelineQueueCapacity();
+        Integer workerThreads = twitterToKafkaServiceConfigData.getPipelineWorkerThreads();
+        int numOfWorkers = workerThreads == null || workerThreads <= 0 ? DEFAULT_WORKER_THREADS : workerThreads;
+        ringBuffer = new BoundedRingBuffer<>(queueCapacity == null ? DEFAULT_QUEUE_CAPACITY : queueCapacity);
+        overflowPolicy = getOverflowPolicy();
+        running = true;
+
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            Long spillMaxBytes = twitterToKafkaServiceConfigData.getPipelineSpillMaxBytes();
+            spillFile = new TweetSpillFile(Paths.get(twitterToKafkaServiceConfigData.getPipelineSpillDirectory(), SPILL_FILE_NAME),
+                    spillMaxBytes == null ? DEFAULT_SPILL_MAX_BYTES : spillMaxBytes);
+            if (!spillFile.isEmpty()) {
+                LOG.info("Found {} bytes of spilled tweets from previous run, they will be sent first", spillFile.getPendingBytes());
+            }
+            spillReplayExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new CustomizableThreadFactory("twitter-pipeline-spill-replay-"));
+            spillReplayExecutor.scheduleWithFixedDelay(this::replaySpilledTweets, SPILL_REPLAY_INTERVAL_MS,
+                    SPILL_REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            Gauge.builder("twitter.pipeline.spill.pending.bytes", spillFile, TweetSpillFile::getPendingBytes)
+                    .description("Bytes of spilled tweets waiting to be put back to the pipeline")
+                    .register(meterRegistry);
+            FunctionCounter.builder("twitter.pipeline.spill.corrupt", spillFile, TweetSpillFile::getCorruptRecords)
+                    .description("Spill records which could not be read back and were skipped or cut off")
+                    .register(meterRegistry);
+        }
+        registerMetrics();
+
+        LOG.info("Starting twitter publish pipeline with capacity {}, {} worker(s) and {} overflow policy",
+                ringBuffer.capacity(), numOfWorkers, overflowPolicy);
+        workerExecutor = Executors.newFixedThreadPool(numOfWorkers, new CustomizableThreadFactory("twitter-pipeline-worker-"));
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            workerExecutor.submit(this::runWorker);
+        }
+    }
+
+    /**
+     * Stop accepting new tweets and let the workers send what is left in the ring buffer before the kafka producer is closed.
+     * Tweets still in the spill file stay there for the next start.
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (spillReplayExecutor != null) {
+            spillReplayExecutor.shutdownNow();
+        }
+        if (workerExecutor != null) {
+            LOG.info("Stopping twitter publish pipeline, {} tweet(s) left in the buffer", ringBuffer.size());
+            workerExecutor.shutdown();
+            if (!workerExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Twitter publish pipeline workers did not finish in {} ms, {} tweet(s) not sent",
+                        SHUTDOWN_TIMEOUT_MS, ringBuffer.size());
+                workerExecutor.shutdownNow();
+            }
+        }
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                LOG.error("Error while closing the spill file! ", e);
+            }
+        }
+    }
+
+    /**
+     * Hand off the twitter4j Status object, transformation to TwitterAvroModel is done by the worker thread.
+     * @param status
+     */
+    public void submit(Status status) {
+        enqueue(status);
+    }
+
+    /**
+     * Hand off the already transformed TwitterAvroModel object.
+     * @param twitterAvroModel
+     */
+    public void submit(TwitterAvroModel twitterAvroModel) {
+        enqueue(twitterAvroModel);
+    }
+
+    private void enqueue(Object tweet) {
+        //While there are spilled tweets the new ones go to the spill file too, so the order of the tweets is kept
+        if (spillFile != null && !spillFile.isEmpty()) {
+            spill(tweet);
+            return;
+        }
+        if (ringBuffer.offer(tweet)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!ringBuffer.offer(tweet)) {
+                    if (ringBuffer.poll() != null) {
+                        droppedTweets.incrementAndGet();
+                    }
+                }
+                break;
+            case SPILL:
+                spill(tweet);
+                break;
+            default:
+                int spins = 0;
+                while (!ringBuffer.offer(tweet)) {
+                    if (!running) {
+                        droppedTweets.incrementAndGet();
+                        return;
+                    }
+                    spins = idle(spins);
+                }
+        }
+    }
+
+    private void spill(Object tweet) {
+        try {
+            if (spillFile.append(toTwitterAvroModel(tweet))) {
+                spilledTweets.incrementAndGet();
+                spillFull = false;
+                return;
+            }
+            if (!spillFull) {
+                spillFull = true;
+                LOG.warn("Spill file is full with {} bytes, new tweets are dropped until it is read back",
+                        spillFile.getPendingBytes());
+            }
+            droppedTweets.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error while spilling tweet to disk, tweet is dropped! ", e);
+            droppedTweets.incrementAndGet();
+        }
+    }
+
+    private void replaySpilledTweets() {
+        if (spillFile.isEmpty() || ringBuffer.size() > ringBuffer.capacity() / 2) {
+            return;
+        }
+        try {
+            int replayed = spillFile.drainTo(ringBuffer::offer);
+            LOG.debug("Put back {} spilled tweet(s) to the pipeline", replayed);
+        } catch (IOException | RuntimeException e) {
+            //A file which can't be read would send every new tweet to the spill file for good
+            LOG.error("Error while reading spilled tweets, dropping the rest of the spill file! ", e);
+            try {
+                LOG.warn("Dropped {} bytes of spilled tweets", spillFile.discardPending());
+            } catch (IOException discardException) {
+                LOG.error("Error while dropping the spill file! ", discardException);
+            }
+        }
+    }
+
+    /**
+     * Worker loop, keep sending until the pipeline is stopped and the buffer is empty. The worker takes up to MAX_SEND_BATCH_SIZE
+     * tweets from the buffer and sends them with one sendAll() call, the same list is reused for every batch.
+     * When there is nothing to send the worker spins a little and then parks for a short time, so an idle pipeline does not
+     * burn the cpu.
+     */
+    private void runWorker() {
+        List<KeyValue<Long, TwitterAvroModel>> batch = new ArrayList<>(MAX_SEND_BATCH_SIZE);
+        int spins = 0;
+        while (running || ringBuffer.size() > 0) {
+            Object tweet;
+            while (batch.size() < MAX_SEND_BATCH_SIZE && (tweet = ringBuffer.poll()) != null) {
+                try {
+                    TwitterAvroModel twitterAvroModel = toTwitterAvroModel(tweet);
+                    batch.add(KeyValue.of(twitterAvroModel.getUserId(), twitterAvroModel));
+                } catch (RuntimeException e) {
+                    LOG.error("Error while transforming tweet in pipeline! ", e);
+                }
+            }
+            if (batch.isEmpty()) {
+                spins = idle(spins);
+                continue;
+            }
+            spins = 0;
+            try {
+                kafkaProducer.sendAll(kafkaConfigData.getTopicName(), batch);
+            } catch (RuntimeException e) {
+                LOG.error("Error while sending {} tweets to kafka from pipeline! ", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private int idle(int spins) {
+        if (spins < IDLE_SPINS) {
+            Thread.onSpinWait();
+            return spins + 1;
+        }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        return spins;
+    }
+
+    private TwitterAvroModel toTwitterAvroModel(Object tweet) {
+        if (tweet instanceof Status) {
+            long transformStartNanos = System.nanoTime();
+            TwitterAvroModel twitterAvroModel = twitterStatusToAvroTransformer.getTwitterAvroModelFromStatus((Status) tweet);
+            twitterIngestMetrics.recordTransform(transformStartNanos);
+            return twitterAvroModel;
+        }
+        return (TwitterAvroModel) tweet;
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("twitter.pipeline.queue.depth", ringBuffer, BoundedRingBuffer::size)
+                .description("Number of tweets waiting in the pipeline ring buffer")
+                .register(meterRegistry);
+        Gauge.builder("twitter.pipeline.queue.capacity", ringBuffer, BoundedRingBuffer::capacity)
+                .register(meterRegistry);
+        FunctionCounter.builder("twitter.pipeline.dropped", droppedTweets, AtomicLong::get)
+                .description("Number of tweets dropped because the pipeline was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("twitter.pipeline.spilled", spilledTweets, AtomicLong::get)
+                .description("Number of tweets written to the spill file")
+                .register(meterRegistry);
+    }
+
+    private OverflowPolicy getOverflowPolicy() {
+        String policy = twitterToKafkaServiceConfigData.getPipelineOverflowPolicy();
+        return policy == null ? OverflowPolicy.BLOCK :
+                OverflowPolicy.valueOf(policy.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+}
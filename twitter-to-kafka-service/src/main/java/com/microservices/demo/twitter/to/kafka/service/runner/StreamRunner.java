@@ -2,10 +2,20 @@ package com.microservices.demo.twitter.to.kafka.service.runner;
 
 import twitter4j.TwitterException;
 
+import java.util.List;
+
 /**
  * This interface is created so that we would implement it multiple ways and one of them will be active at a time
  * and we will use this interface in the main class so that we don't autowired each implementation separately
  */
 public interface StreamRunner {
     void start() throws TwitterException;
+
+    /**
+     * Called by TwitterKeywordsRefreshListener when twitter-keywords are changed at runtime, the runner should apply the new
+     * keywords to its source without stopping the stream.
+     * @param keywords
+     */
+    default void onKeywordsChanged(List<String> keywords) {
+    }
 }
@@ -3,6 +3,7 @@ package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock;
 import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
 import com.microservices.demo.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
 import com.microservices.demo.twitter.to.kafka.service.runner.StreamRunner;
+import com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load.MockLoadGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
@@ -14,29 +15,30 @@ import twitter4j.TwitterObjectFactory;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
-import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class is used to stream the tweet from mock source. Basically this class generate the tweet using the words of array
  * and add filter keywords in between generated tweets. And tweet will be in specific format with fields created_at, user, id and text.
  * And bean of this class object depends upon the condition which say allow mock enablement instead of actual twitter stream.
+ * In high rate mode the tweets are generated directly as TwitterAvroModel objects by MockLoadGenerator with multiple threads
+ * and configured rate profile, which is used to load test the whole pipeline.
+ * Keywords changed at runtime are used for the next generated tweets.
  */
 @Component
-@ConditionalOnExpression("${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-v2-tweets}")
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
 public class MockKafkaStreamRunner implements StreamRunner {
 
     private static final Logger LOG= LoggerFactory.getLogger(MockKafkaStreamRunner.class);
     private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
     private final TwitterKafkaStatusListener twitterKafkaStatusListener;
+    private final MockLoadGenerator mockLoadGenerator;
+    private final AtomicReference<MockTweetGenerator> mockTweetGenerator = new AtomicReference<>();
 
-    private static final Random RANDOM=new Random();
-
-    private static final String WORDS[]= new String[]{
-            "Lorem","ipsum","dolor","sit","amet","consectetuer","adipiscing","elit","congue","massa","Fusce","magna","sed"
-    };
     private static final String tweetAsRawJson = "{" +
             "\"created_at\":\"{0}\"," +
             "\"id\":\"{1}\"," +
@@ -45,14 +47,22 @@ public class MockKafkaStreamRunner implements StreamRunner {
             "}";
     private static final String TWITTER_STATUS_DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
 
+    //DateTimeFormatter is immutable and thread safe so create it once instead of once per tweet
+    private static final DateTimeFormatter TWITTER_STATUS_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH);
+
     /**
-     * inject the TwitterToKafkaServiceConfigData and TwitterKafkaStatusListener bean in this constructor.
+     * inject the TwitterToKafkaServiceConfigData, TwitterKafkaStatusListener and MockLoadGenerator bean in this constructor.
      * @param twitterToKafkaServiceConfigData
      * @param twitterKafkaStatusListener
+     * @param mockLoadGenerator
      */
-    public MockKafkaStreamRunner(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData, TwitterKafkaStatusListener twitterKafkaStatusListener) {
+    public MockKafkaStreamRunner(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData,
+                                 TwitterKafkaStatusListener twitterKafkaStatusListener,
+                                 MockLoadGenerator mockLoadGenerator) {
         this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
         this.twitterKafkaStatusListener = twitterKafkaStatusListener;
+        this.mockLoadGenerator = mockLoadGenerator;
     }
 
     /**
@@ -64,32 +74,50 @@ public class MockKafkaStreamRunner implements StreamRunner {
         String keywords[]=twitterToKafkaServiceConfigData.getTwitterKeywords().toArray(new String[0]);
         int minTweetLength= twitterToKafkaServiceConfigData.getMockMinTweetLength();
         int maxTweetLength= twitterToKafkaServiceConfigData.getMockMaxTweetLength();
-        long sleepTimeMs= twitterToKafkaServiceConfigData.getMockSleepMs();
-        LOG.info("Starting mock filtering twitter streams for keywords {}", Arrays.toString(keywords));
-        simulateTwitterStream(keywords, minTweetLength, maxTweetLength, sleepTimeMs);
+        if (Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getEnableHighRateMockTweets())) {
+            mockLoadGenerator.start(keywords, minTweetLength, maxTweetLength);
+        } else {
+            long sleepTimeMs = twitterToKafkaServiceConfigData.getMockSleepMs();
+            LOG.info("Starting mock filtering twitter streams for keywords {}", Arrays.toString(keywords));
+            mockTweetGenerator.set(new MockTweetGenerator(keywords, minTweetLength, maxTweetLength));
+            simulateTwitterStream(mockTweetGenerator.get(), sleepTimeMs);
+        }
+    }
+
+    /**
+     * Change the keywords of the running mock stream, in high rate mode MockLoadGenerator change them for every worker.
+     * @param keywords
+     */
+    @Override
+    public void onKeywordsChanged(List<String> keywords) {
+        String[] newKeywords = keywords.toArray(new String[0]);
+        LOG.info("Changing mock tweet keywords to {}", Arrays.toString(newKeywords));
+        MockTweetGenerator generator = mockTweetGenerator.get();
+        if (generator != null) {
+            generator.updateKeywords(newKeywords);
+        }
+        mockLoadGenerator.updateKeywords(newKeywords);
     }
 
     /**
      * This method actually generate the mock tweet create the Status class object from this generated
      * tweet and call the onStatus() method of our class TwitterKafkaStatusListener which will simply
      * convert the Status object into TwitterAvroModel object and publish them on the kafka topic.
-     * @param keywords
-     * @param minTweetLength
-     * @param maxTweetLength
+     * @param mockTweetGenerator
      * @param sleepTimeMs
      */
-    private void simulateTwitterStream(String[] keywords, int minTweetLength, int maxTweetLength, long sleepTimeMs){
+    private void simulateTwitterStream(MockTweetGenerator mockTweetGenerator, long sleepTimeMs){
         Executors.newSingleThreadExecutor().submit(() -> {
             //Streaming data infinitely
             try {
                 while (true) {
-                    String formattedTweetAsRawJson = getFormattedTweet(keywords, minTweetLength, maxTweetLength);
+                    String formattedTweetAsRawJson = getFormattedTweet(mockTweetGenerator);
                     Status status = TwitterObjectFactory.createStatus(formattedTweetAsRawJson);
                     twitterKafkaStatusListener.onStatus(status);
                     sleep(sleepTimeMs);
                 }
             }catch(TwitterException e){
-                LOG.error("Error creating twitter status! ",e);
+                twitterKafkaStatusListener.onException(e);
             }
         });
     }
@@ -110,16 +138,14 @@ public class MockKafkaStreamRunner implements StreamRunner {
      * Provide the parameters whose value we will use while replacing the placeholder shown in the
      * variable tweetAsRawJson and after replacing the placeholder with these parameters we have our actual twwet
      * with proper format (user,createdAt,text,id).
-     * @param keywords
-     * @param minTweetLength
-     * @param maxTweetLength
+     * @param mockTweetGenerator
      * @return
      */
-    private String getFormattedTweet(String[] keywords, int minTweetLength, int maxTweetLength) {
+    private String getFormattedTweet(MockTweetGenerator mockTweetGenerator) {
         String[] params= new String[]{
-                ZonedDateTime.now().format(DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH)),
+                ZonedDateTime.now().format(TWITTER_STATUS_DATE_FORMATTER),
                 String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE)),
-                getRandomTweetContent(keywords,minTweetLength,maxTweetLength),
+                mockTweetGenerator.nextText(),
                 String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE))
 
         };
@@ -139,34 +165,4 @@ public class MockKafkaStreamRunner implements StreamRunner {
         }
         return tweet;
     }
-
-    /**
-     * Generate random tweet and in between tweet inserting our Elasticsearch criteria keywords Java, Microservice,
-     * Kafka and Elasticsearch and tweet text limit will also define using min and max length.
-     * @param keywords
-     * @param minTweetLength
-     * @param maxTweetLength
-     * @return
-     */
-    private String getRandomTweetContent(String[] keywords, int minTweetLength, int maxTweetLength) {
-        StringBuilder tweet =new StringBuilder();
-        int tweetLength=RANDOM.nextInt(maxTweetLength-minTweetLength+1) + minTweetLength;
-        return constructRandomTweet(keywords, tweet, tweetLength);
-    }
-
-    /**
-     * This method will help the getRandomTweetContent() method to generate the random tweet for our mock tweet streaming.
-     * @param keywords
-     * @param tweet
-     * @param tweetLength
-     * @return
-     */
-    private String constructRandomTweet(String[] keywords, StringBuilder tweet, int tweetLength) {
-        for(int i = 0; i< tweetLength; i++){
-            tweet.append(WORDS[RANDOM.nextInt(WORDS.length)]).append(" ");
-            if(i == tweetLength /2)
-                tweet.append((keywords[RANDOM.nextInt(keywords.length)])).append(" ");
-        }
-        return tweet.toString().trim();
-    }
 }
@@ -0,0 +1,104 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class generate the mock tweets directly as TwitterAvroModel objects so we don't have to build a json string and parse
+ * it again into twitter4j Status object for every tweet. Words and keywords are kept in pre-tokenized table (word followed by
+ * the space) and the text is built in a StringBuilder which is reused for every tweet.
+ * The object of this class is not thread safe because of the reused StringBuilder, so each thread should use its own generator.
+ * Only the keywords can be changed from another thread, the new keyword table is swapped in with one volatile write.
+ */
+public class MockTweetGenerator {
+
+    private static final String[] WORDS = new String[]{
+            "Lorem", "ipsum", "dolor", "sit", "amet", "consectetuer", "adipiscing", "elit", "congue", "massa", "Fusce", "magna", "sed"
+    };
+
+    private static final String[] WORD_TABLE = toWordTable(WORDS);
+
+    private volatile String[] keywordTable;
+
+    private final int minTweetLength;
+
+    private final int tweetLengthRange;
+
+    private final StringBuilder tweet;
+
+    /**
+     * Pre-tokenize the keywords and calculate the length range of the tweet once so nothing of it repeats for each tweet.
+     * @param keywords
+     * @param minTweetLength
+     * @param maxTweetLength
+     */
+    public MockTweetGenerator(String[] keywords, int minTweetLength, int maxTweetLength) {
+        this.keywordTable = toWordTable(keywords);
+        this.minTweetLength = minTweetLength;
+        this.tweetLengthRange = maxTweetLength - minTweetLength + 1;
+        this.tweet = new StringBuilder(32 * maxTweetLength);
+    }
+
+    /**
+     * Replace the keywords which are inserted into the generated tweets.
+     * @param keywords
+     */
+    public void updateKeywords(String[] keywords) {
+        this.keywordTable = toWordTable(keywords);
+    }
+
+    /**
+     * Create the new TwitterAvroModel object with random id, user id and text where created at is current time.
+     * All args constructor is used instead of the builder so no default value resolution happen for each tweet.
+     * @return
+     */
+    public TwitterAvroModel nextTweet() {
+        return nextTweet(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+    }
+
+    /**
+     * Same as nextTweet() but with the given user id, which is used when the caller decide the kafka partition of the tweet.
+     * @param userId
+     * @return
+     */
+    public TwitterAvroModel nextTweet(long userId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TwitterAvroModel(
+                userId,
+                random.nextLong(Long.MAX_VALUE),
+                nextText(random),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Generate the random tweet text and insert one of the keywords in the middle of the text, tweet text limit is defined
+     * using min and max length.
+     * @return
+     */
+    public String nextText() {
+        return nextText(ThreadLocalRandom.current());
+    }
+
+    private String nextText(ThreadLocalRandom random) {
+        tweet.setLength(0);
+        String[] keywords = keywordTable;
+        int tweetLength = random.nextInt(tweetLengthRange) + minTweetLength;
+        for (int i = 0; i < tweetLength; i++) {
+            tweet.append(WORD_TABLE[random.nextInt(WORD_TABLE.length)]);
+            if (i == tweetLength / 2) {
+                tweet.append(keywords[random.nextInt(keywords.length)]);
+            }
+        }
+        //Drop the last space instead of trim() to avoid one more copy of the text
+        return tweet.length() == 0 ? "" : tweet.substring(0, tweet.length() - 1);
+    }
+
+    private static String[] toWordTable(String[] words) {
+        String[] table = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            table[i] = words[i] + " ";
+        }
+        return table;
+    }
+}
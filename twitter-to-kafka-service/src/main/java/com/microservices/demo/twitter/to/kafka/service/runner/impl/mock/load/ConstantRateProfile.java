@@ -0,0 +1,18 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * Same tweets per second for the whole run.
+ */
+public class ConstantRateProfile implements RateProfile {
+
+    private final double tweetsPerSecond;
+
+    public ConstantRateProfile(double tweetsPerSecond) {
+        this.tweetsPerSecond = tweetsPerSecond;
+    }
+
+    @Override
+    public double getTweetsPerSecond(long elapsedMs) {
+        return tweetsPerSecond;
+    }
+}
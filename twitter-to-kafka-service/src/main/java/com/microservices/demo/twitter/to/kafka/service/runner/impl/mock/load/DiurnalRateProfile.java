@@ -0,0 +1,29 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * Follow a day like curve, it starts from the base rate (night), reach the peak rate in the middle of the period (day) and
+ * come back to the base rate at the end of the period. Period can be shortened to replay a full day in minutes.
+ */
+public class DiurnalRateProfile implements RateProfile {
+
+    private final double baseTweetsPerSecond;
+
+    private final double peakTweetsPerSecond;
+
+    private final long periodMs;
+
+    public DiurnalRateProfile(double baseTweetsPerSecond, double peakTweetsPerSecond, long periodMs) {
+        this.baseTweetsPerSecond = baseTweetsPerSecond;
+        this.peakTweetsPerSecond = peakTweetsPerSecond;
+        this.periodMs = periodMs;
+    }
+
+    @Override
+    public double getTweetsPerSecond(long elapsedMs) {
+        if (periodMs <= 0) {
+            return baseTweetsPerSecond;
+        }
+        double phase = 2 * Math.PI * (elapsedMs % periodMs) / periodMs;
+        return baseTweetsPerSecond + (peakTweetsPerSecond - baseTweetsPerSecond) * (1 - Math.cos(phase)) / 2;
+    }
+}
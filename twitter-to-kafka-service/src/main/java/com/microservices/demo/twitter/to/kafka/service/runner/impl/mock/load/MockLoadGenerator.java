@@ -0,0 +1,265 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.KafkaProducerConfigData;
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.kafka.admin.client.KafkaAdminClient;
+import com.microservices.demo.kafka.producer.partitioner.PartitioningStrategy;
+import com.microservices.demo.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
+import com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.MockTweetGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class generate the high rate mock tweets with multiple worker threads. All workers take their tokens from one shared
+ * token bucket whose rate is updated periodically from the configured RateProfile, so the sum of all workers follow the profile.
+ * Each worker produce the tweets only for its own set of partitions using PartitionKeyGenerator, so with the default number
+ * of workers (number of partitions) every partition get one worker and the load is even between partitions.
+ * The partition count is read from the topic metadata and again every 30 seconds, so partitions added by KafkaLagMonitor
+ * get their share of the load once the producer has refreshed its own metadata (metadata.max.age.ms). Choosing the
+ * partition by the user id only works with the partitioning strategies which are partitioned by the key, with the other
+ * strategies the workers send random user ids and the partitioner spreads them.
+ */
+@Component
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
+public class MockLoadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MockLoadGenerator.class);
+
+    private static final long RATE_UPDATE_INTERVAL_MS = 100;
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static final int DEFAULT_USERS_PER_PARTITION = 1000;
+
+    private static final long PARTITION_REFRESH_INTERVAL_MS = 30000;
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    private final KafkaConfigData kafkaConfigData;
+
+    private final KafkaProducerConfigData kafkaProducerConfigData;
+
+    private final KafkaAdminClient kafkaAdminClient;
+
+    private final TwitterKafkaStatusListener twitterKafkaStatusListener;
+
+    private final RateProfileFactory rateProfileFactory;
+
+    private final List<MockTweetGenerator> mockTweetGenerators = new CopyOnWriteArrayList<>();
+
+    private ExecutorService workerExecutor;
+
+    private ScheduledExecutorService controllerExecutor;
+
+    private volatile PartitionKeyGenerator partitionKeyGenerator;
+
+    private volatile boolean running;
+
+    private volatile int batchSize = 1;
+
+    public MockLoadGenerator(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData,
+                             KafkaConfigData kafkaConfigData,
+                             KafkaProducerConfigData kafkaProducerConfigData,
+                             KafkaAdminClient kafkaAdminClient,
+                             TwitterKafkaStatusListener twitterKafkaStatusListener,
+                             RateProfileFactory rateProfileFactory) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+        this.kafkaConfigData = kafkaConfigData;
+        this.kafkaProducerConfigData = kafkaProducerConfigData;
+        this.kafkaAdminClient = kafkaAdminClient;
+        this.twitterKafkaStatusListener = twitterKafkaStatusListener;
+        this.rateProfileFactory = rateProfileFactory;
+    }
+
+    /**
+     * Start the worker threads and the rate controller which will update the rate of token bucket every 100 ms.
+     * If the profile is constant with zero tweets per second there is no rate limit and no rate update.
+     * @param keywords
+     * @param minTweetLength
+     * @param maxTweetLength
+     */
+    public synchronized void start(String[] keywords, int minTweetLength, int maxTweetLength) {
+        if (running) {
+            return;
+        }
+        running = true;
+        int numOfWorkers = getNumOfWorkers();
+        int usersPerPartition = twitterToKafkaServiceConfigData.getMockUsersPerPartition() == null ?
+                DEFAULT_USERS_PER_PARTITION : twitterToKafkaServiceConfigData.getMockUsersPerPartition();
+        boolean partitionedByKey = PartitioningStrategy.fromValue(kafkaProducerConfigData.getPartitioningStrategy())
+                .isPartitionedByKey();
+        if (partitionedByKey) {
+            partitionKeyGenerator = new PartitionKeyGenerator(getNumOfPartitions(kafkaConfigData.getNumOfPartitions()),
+                    usersPerPartition);
+        } else {
+            LOG.info("Partitioning strategy {} does not partition by the user id, mock load workers do not choose " +
+                    "partitions", kafkaProducerConfigData.getPartitioningStrategy());
+            partitionKeyGenerator = new PartitionKeyGenerator(1,
+                    usersPerPartition * kafkaConfigData.getNumOfPartitions());
+        }
+        RateProfileType rateProfileType = rateProfileFactory.getRateProfileType();
+        RateProfile rateProfile = rateProfileFactory.getRateProfile();
+        boolean unlimited = rateProfileType == RateProfileType.CONSTANT && rateProfile.getTweetsPerSecond(0) <= 0;
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(unlimited ? 0 : getRate(rateProfile, 0));
+        updateBatchSize(rateLimiter.getRate(), numOfWorkers);
+
+        LOG.info("Starting {} mock load worker(s) with {} rate profile for keywords {}", numOfWorkers, rateProfileType,
+                Arrays.toString(keywords));
+        workerExecutor = Executors.newFixedThreadPool(numOfWorkers, new CustomizableThreadFactory("mock-load-worker-"));
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            int workerIndex = worker;
+            MockTweetGenerator mockTweetGenerator = new MockTweetGenerator(keywords, minTweetLength, maxTweetLength);
+            mockTweetGenerators.add(mockTweetGenerator);
+            workerExecutor.submit(() -> runWorker(mockTweetGenerator, workerIndex, numOfWorkers, rateLimiter));
+        }
+        controllerExecutor = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("mock-load-controller-"));
+        if (!unlimited) {
+            long startMs = System.currentTimeMillis();
+            controllerExecutor.scheduleAtFixedRate(() -> {
+                double rate = getRate(rateProfile, System.currentTimeMillis() - startMs);
+                rateLimiter.setRate(rate);
+                updateBatchSize(rate, numOfWorkers);
+                LOG.debug("Mock load rate updated to {} tweets per second", rate);
+            }, RATE_UPDATE_INTERVAL_MS, RATE_UPDATE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        if (partitionedByKey) {
+            controllerExecutor.scheduleWithFixedDelay(() -> refreshPartitions(usersPerPartition),
+                    PARTITION_REFRESH_INTERVAL_MS, PARTITION_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Change the keywords of the tweets generated by all workers.
+     * @param keywords
+     */
+    public void updateKeywords(String[] keywords) {
+        for (MockTweetGenerator mockTweetGenerator : mockTweetGenerators) {
+            mockTweetGenerator.updateKeywords(keywords);
+        }
+    }
+
+    /**
+     * Stop the rate controller and the workers before destroying the bean.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (controllerExecutor != null) {
+            controllerExecutor.shutdownNow();
+        }
+        if (workerExecutor != null) {
+            LOG.info("Stopping mock load workers");
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Worker loop, reserve tokens for a batch of tweets, wait if the bucket is in debt and then publish the batch using
+     * round robin over the partitions of this worker. The partitions of the worker are assigned again when the
+     * partition count of the topic changes.
+     */
+    private void runWorker(MockTweetGenerator mockTweetGenerator, int worker, int numOfWorkers,
+                           TokenBucketRateLimiter rateLimiter) {
+        PartitionKeyGenerator partitionKeyGenerator = null;
+        int[] partitions = null;
+        int partitionIndex = 0;
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                if (partitionKeyGenerator != this.partitionKeyGenerator) {
+                    partitionKeyGenerator = this.partitionKeyGenerator;
+                    partitions = getWorkerPartitions(worker, numOfWorkers, partitionKeyGenerator.getNumOfPartitions());
+                    partitionIndex = 0;
+                }
+                int batch = batchSize;
+                long waitNanos = rateLimiter.reserve(batch);
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                for (int i = 0; i < batch; i++) {
+                    int partition = partitions[partitionIndex];
+                    partitionIndex = partitionIndex + 1 == partitions.length ? 0 : partitionIndex + 1;
+                    twitterKafkaStatusListener.publish(mockTweetGenerator.nextTweet(partitionKeyGenerator.nextUserId(partition)));
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error while publishing mock load tweets! ", e);
+        }
+    }
+
+    /**
+     * Read the partition count of the topic again, when partitions were added the user ids are computed again.
+     */
+    private void refreshPartitions(int usersPerPartition) {
+        int numOfPartitions = getNumOfPartitions(partitionKeyGenerator.getNumOfPartitions());
+        if (numOfPartitions != partitionKeyGenerator.getNumOfPartitions()) {
+            LOG.info("Topic {} has now {} partition(s), mock load is spread over all of them",
+                    kafkaConfigData.getTopicName(), numOfPartitions);
+            partitionKeyGenerator = new PartitionKeyGenerator(numOfPartitions, usersPerPartition);
+        }
+    }
+
+    /**
+     * Partition count of the topic from the kafka metadata, the given count is kept if kafka can't be reached.
+     */
+    private int getNumOfPartitions(int currentNumOfPartitions) {
+        try {
+            return kafkaAdminClient.getPartitionCountAsync(kafkaConfigData.getTopicName()).join();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not read partition count of topic {}, keeping {} partition(s)",
+                    kafkaConfigData.getTopicName(), currentNumOfPartitions, e);
+            return currentNumOfPartitions;
+        }
+    }
+
+    /**
+     * Partitions are assigned to the workers by modulo, when there are more workers than partitions some partitions are
+     * shared by multiple workers.
+     */
+    private int[] getWorkerPartitions(int worker, int numOfWorkers, int numOfPartitions) {
+        if (numOfWorkers >= numOfPartitions) {
+            return new int[]{worker % numOfPartitions};
+        }
+        List<Integer> partitions = new ArrayList<>();
+        for (int partition = worker; partition < numOfPartitions; partition += numOfWorkers) {
+            partitions.add(partition);
+        }
+        return partitions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Batch size is around one millisecond of tweets for one worker, so with low rates the tweets are not sent in bursts
+     * and with high rates the token bucket lock is not taken for every tweet.
+     */
+    private void updateBatchSize(double rate, int numOfWorkers) {
+        int perWorkerPerMs = rate <= 0 ? MAX_BATCH_SIZE : (int) (rate / numOfWorkers / 1000);
+        batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, perWorkerPerMs));
+    }
+
+    /**
+     * Profiles other than constant can go down to zero, keep at least one tweet per second so the limiter does not become unlimited.
+     */
+    private double getRate(RateProfile rateProfile, long elapsedMs) {
+        return Math.max(1, rateProfile.getTweetsPerSecond(elapsedMs));
+    }
+
+    private int getNumOfWorkers() {
+        Integer workerThreads = twitterToKafkaServiceConfigData.getMockWorkerThreads();
+        return workerThreads == null || workerThreads <= 0 ? kafkaConfigData.getNumOfPartitions() : workerThreads;
+    }
+}
@@ -0,0 +1,48 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import com.microservices.demo.kafka.producer.partitioner.TwitterPartitioner;
+import org.apache.kafka.common.serialization.LongSerializer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class pre-compute a pool of user ids for each partition of the topic using the same murmur2 hash that the default
+ * kafka partitioner and TwitterPartitioner apply on the serialized Long key. Then each mock worker can produce tweets for a
+ * known set of partitions and the load is spread evenly over the partitions instead of depending on the random keys.
+ * The pools are only right for the partitioning strategies which are partitioned by the key and for the number of partitions
+ * it is created with, MockLoadGenerator checks the strategy and creates a new one when partitions are added to the topic.
+ */
+public class PartitionKeyGenerator {
+
+    private final long[][] userIdsByPartition;
+
+    public PartitionKeyGenerator(int numOfPartitions, int usersPerPartition) {
+        this.userIdsByPartition = new long[numOfPartitions][usersPerPartition];
+        int[] filled = new int[numOfPartitions];
+        int remaining = numOfPartitions * usersPerPartition;
+        LongSerializer longSerializer = new LongSerializer();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (remaining > 0) {
+            long userId = random.nextLong(Long.MAX_VALUE);
+            int partition = TwitterPartitioner.partitionOfKey(longSerializer.serialize(null, userId), numOfPartitions);
+            if (filled[partition] < usersPerPartition) {
+                userIdsByPartition[partition][filled[partition]++] = userId;
+                remaining--;
+            }
+        }
+    }
+
+    public int getNumOfPartitions() {
+        return userIdsByPartition.length;
+    }
+
+    /**
+     * Random user id whose record will go to the given partition.
+     * @param partition
+     * @return
+     */
+    public long nextUserId(int partition) {
+        long[] userIds = userIdsByPartition[partition];
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+}
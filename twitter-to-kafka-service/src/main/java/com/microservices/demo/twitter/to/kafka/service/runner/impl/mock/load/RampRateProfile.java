@@ -0,0 +1,27 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * Increase the tweets per second linearly from base rate to peak rate during the ramp duration and then stay on the peak rate.
+ */
+public class RampRateProfile implements RateProfile {
+
+    private final double baseTweetsPerSecond;
+
+    private final double peakTweetsPerSecond;
+
+    private final long rampDurationMs;
+
+    public RampRateProfile(double baseTweetsPerSecond, double peakTweetsPerSecond, long rampDurationMs) {
+        this.baseTweetsPerSecond = baseTweetsPerSecond;
+        this.peakTweetsPerSecond = peakTweetsPerSecond;
+        this.rampDurationMs = rampDurationMs;
+    }
+
+    @Override
+    public double getTweetsPerSecond(long elapsedMs) {
+        if (rampDurationMs <= 0 || elapsedMs >= rampDurationMs) {
+            return peakTweetsPerSecond;
+        }
+        return baseTweetsPerSecond + (peakTweetsPerSecond - baseTweetsPerSecond) * elapsedMs / rampDurationMs;
+    }
+}
@@ -0,0 +1,9 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * This interface describe the shape of the mock traffic, it gives the target tweets per second for the time elapsed since
+ * the start of the load generation. Implementations should be cheap as they are called on every rate update.
+ */
+public interface RateProfile {
+    double getTweetsPerSecond(long elapsedMs);
+}
@@ -0,0 +1,47 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * This class create the RateProfile object based on the mock-rate-profile property and its related rate properties
+ * defined in TwitterToKafkaServiceConfigData. If profile is not set constant profile is used.
+ */
+@Component
+public class RateProfileFactory {
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    public RateProfileFactory(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+    }
+
+    public RateProfile getRateProfile() {
+        double base = valueOf(twitterToKafkaServiceConfigData.getMockTweetsPerSecond());
+        double peak = valueOf(twitterToKafkaServiceConfigData.getMockPeakTweetsPerSecond());
+        switch (getRateProfileType()) {
+            case RAMP:
+                return new RampRateProfile(base, peak, valueOf(twitterToKafkaServiceConfigData.getMockRampDurationMs()));
+            case SPIKE:
+                return new SpikeRateProfile(base, peak,
+                        valueOf(twitterToKafkaServiceConfigData.getMockSpikeIntervalMs()),
+                        valueOf(twitterToKafkaServiceConfigData.getMockSpikeDurationMs()));
+            case DIURNAL:
+                return new DiurnalRateProfile(base, peak, valueOf(twitterToKafkaServiceConfigData.getMockDiurnalPeriodMs()));
+            default:
+                return new ConstantRateProfile(base);
+        }
+    }
+
+    public RateProfileType getRateProfileType() {
+        String rateProfile = twitterToKafkaServiceConfigData.getMockRateProfile();
+        return rateProfile == null ? RateProfileType.CONSTANT :
+                RateProfileType.valueOf(rateProfile.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    private long valueOf(Long value) {
+        return value == null ? 0 : value;
+    }
+}
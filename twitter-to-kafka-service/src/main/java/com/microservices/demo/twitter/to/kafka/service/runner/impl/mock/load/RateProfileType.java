@@ -0,0 +1,8 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * Supported rate profiles which can be configured with twitter-to-kafka-service.mock-rate-profile property.
+ */
+public enum RateProfileType {
+    CONSTANT, RAMP, SPIKE, DIURNAL
+}
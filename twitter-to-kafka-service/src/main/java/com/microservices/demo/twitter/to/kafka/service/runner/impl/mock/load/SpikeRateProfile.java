@@ -0,0 +1,30 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+/**
+ * Stay on the base rate and jump to the peak rate for the spike duration at the start of every spike interval.
+ */
+public class SpikeRateProfile implements RateProfile {
+
+    private final double baseTweetsPerSecond;
+
+    private final double peakTweetsPerSecond;
+
+    private final long spikeIntervalMs;
+
+    private final long spikeDurationMs;
+
+    public SpikeRateProfile(double baseTweetsPerSecond, double peakTweetsPerSecond, long spikeIntervalMs, long spikeDurationMs) {
+        this.baseTweetsPerSecond = baseTweetsPerSecond;
+        this.peakTweetsPerSecond = peakTweetsPerSecond;
+        this.spikeIntervalMs = spikeIntervalMs;
+        this.spikeDurationMs = spikeDurationMs;
+    }
+
+    @Override
+    public double getTweetsPerSecond(long elapsedMs) {
+        if (spikeIntervalMs <= 0) {
+            return baseTweetsPerSecond;
+        }
+        return elapsedMs % spikeIntervalMs < spikeDurationMs ? peakTweetsPerSecond : baseTweetsPerSecond;
+    }
+}
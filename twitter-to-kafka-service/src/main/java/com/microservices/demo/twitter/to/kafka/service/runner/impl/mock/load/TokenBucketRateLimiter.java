@@ -0,0 +1,70 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket shared by all mock worker threads. Tokens are refilled with the current rate and the bucket can hold at most
+ * one burst interval of tokens, so after an idle phase workers can not send more than that at once.
+ * Workers reserve a batch of tokens and get back the time they have to wait before sending the batch, the waiting itself
+ * happens outside of the lock. Rate can be changed at any time by the rate profile controller.
+ * A rate of zero or less means unlimited.
+ */
+public class TokenBucketRateLimiter {
+
+    private static final long BURST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LongSupplier nanoClock;
+
+    private double tokensPerNano;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double tokensPerSecond) {
+        this(tokensPerSecond, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double tokensPerSecond, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.lastRefillNanos = nanoClock.getAsLong();
+        setRate(tokensPerSecond);
+    }
+
+    /**
+     * Change the refill rate, the tokens collected with the old rate are kept up to the burst of the new rate.
+     * @param tokensPerSecond
+     */
+    public synchronized void setRate(double tokensPerSecond) {
+        refill(nanoClock.getAsLong());
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public synchronized double getRate() {
+        return tokensPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Take the tokens from the bucket, the bucket can go in debt and the caller should wait for the returned nanos which is
+     * the time needed to pay the debt back with the current rate.
+     * @param permits
+     * @return nanos to wait before using the permits
+     */
+    public synchronized long reserve(int permits) {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        refill(nanoClock.getAsLong());
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        if (tokensPerNano > 0) {
+            double maxTokens = Math.max(1, tokensPerNano * BURST_INTERVAL_NANOS);
+            tokens = Math.min(maxTokens, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+        }
+        lastRefillNanos = nowNanos;
+    }
+}
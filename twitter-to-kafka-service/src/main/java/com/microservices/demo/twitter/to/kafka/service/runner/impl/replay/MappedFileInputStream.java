@@ -0,0 +1,79 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * InputStream over a memory mapped file, so the replayed file is read from the page cache without a read() system call
+ * and copy for every buffer. One mapping can be at most 2 GB, so bigger files are mapped region by region while they are read.
+ */
+class MappedFileInputStream extends InputStream {
+
+    private static final long REGION_BYTES = 1L << 30;
+
+    private final FileChannel fileChannel;
+
+    private final long size;
+
+    private long regionStart;
+
+    private MappedByteBuffer region;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = fileChannel.size();
+        mapRegion(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureRemaining()) {
+            return -1;
+        }
+        return region.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, region.remaining());
+        region.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - regionStart - region.position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    private boolean ensureRemaining() throws IOException {
+        if (region.hasRemaining()) {
+            return true;
+        }
+        long nextRegionStart = regionStart + region.capacity();
+        if (nextRegionStart >= size) {
+            return false;
+        }
+        mapRegion(nextRegionStart);
+        return true;
+    }
+
+    private void mapRegion(long start) throws IOException {
+        regionStart = start;
+        region = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_BYTES, size - start));
+    }
+}
@@ -0,0 +1,213 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.replay;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
+import com.microservices.demo.twitter.to.kafka.service.runner.StreamRunner;
+import com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2.TwitterV2StreamParser;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class replays a recorded file of real tweets instead of streaming from twitter, so the performance tests of the
+ * pipeline (kafka streams word count, elasticsearch indexing) run again and again with the same realistic texts which the
+ * random mock tweets can't give. The file is twitter v2 filtered stream NDJSON, decoded with TwitterV2StreamParser as the
+ * live v2 stream, or an avro container file of TwitterAvroModel (.avro extension). It is read through a memory mapped
+ * InputStream and the tweets are published with TwitterKafkaStatusListener.publish on a single replay thread.
+ * The pace is taken from created_at of the recorded tweets: with speed multiplier 1.0 the gaps between tweets are the
+ * recorded ones, 10.0 is ten times faster and 0 (or less) is as fast as possible. created_at of the published tweets is
+ * moved to the replay time, and with looping the ids of the later passes are changed so dedup doesn't drop them.
+ */
+@Component
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-replay-tweets:false}")
+public class ReplayKafkaStreamRunner implements StreamRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayKafkaStreamRunner.class);
+
+    private static final String AVRO_FILE_EXTENSION = ".avro";
+
+    private static final double DEFAULT_SPEED_MULTIPLIER = 1.0;
+
+    //Odd constant of the golden ratio, multiplied by the pass number it gives a different id for every pass
+    private static final long LOOP_ID_MIX = 0x9E3779B97F4A7C15L;
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    private final TwitterKafkaStatusListener twitterKafkaStatusListener;
+
+    private final TwitterV2StreamParser twitterV2StreamParser;
+
+    private ExecutorService replayExecutor;
+
+    private volatile boolean running;
+
+    /**
+     * inject the TwitterToKafkaServiceConfigData, TwitterKafkaStatusListener and TwitterV2StreamParser bean in this constructor.
+     * @param twitterToKafkaServiceConfigData
+     * @param twitterKafkaStatusListener
+     * @param twitterV2StreamParser
+     */
+    public ReplayKafkaStreamRunner(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData,
+                                   TwitterKafkaStatusListener twitterKafkaStatusListener,
+                                   TwitterV2StreamParser twitterV2StreamParser) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+        this.twitterKafkaStatusListener = twitterKafkaStatusListener;
+        this.twitterV2StreamParser = twitterV2StreamParser;
+    }
+
+    /**
+     * Check the replay file and start replaying it on the replay thread.
+     */
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (twitterToKafkaServiceConfigData.getReplayFile() == null) {
+            throw new RuntimeException("Replay of tweets is enabled but twitter-to-kafka-service.replay-file is not set!");
+        }
+        Path replayFile = Paths.get(twitterToKafkaServiceConfigData.getReplayFile());
+        if (!Files.isReadable(replayFile)) {
+            throw new RuntimeException("Replay file " + replayFile.toAbsolutePath() + " can not be read!");
+        }
+        double speedMultiplier = twitterToKafkaServiceConfigData.getReplaySpeedMultiplier() == null ?
+                DEFAULT_SPEED_MULTIPLIER : twitterToKafkaServiceConfigData.getReplaySpeedMultiplier();
+        boolean loop = Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getReplayLoop());
+        LOG.info("Starting replay of tweets from {} with speed multiplier {}{}", replayFile.toAbsolutePath(),
+                speedMultiplier, loop ? " in loop" : "");
+        running = true;
+        replayExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("tweet-replay-"));
+        replayExecutor.submit(() -> replay(replayFile, speedMultiplier, loop));
+    }
+
+    /**
+     * Stop the replay thread before destroying the bean.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (replayExecutor != null) {
+            LOG.info("Stopping replay of tweets");
+            replayExecutor.shutdownNow();
+        }
+    }
+
+    private void replay(Path replayFile, double speedMultiplier, boolean loop) {
+        long pass = 0;
+        try {
+            do {
+                ReplayPass replayPass = new ReplayPass(pass, speedMultiplier);
+                try (InputStream inputStream = new MappedFileInputStream(replayFile)) {
+                    if (replayFile.toString().endsWith(AVRO_FILE_EXTENSION)) {
+                        replayAvro(inputStream, replayPass);
+                    } else {
+                        twitterV2StreamParser.parse(inputStream, replayPass::publish);
+                    }
+                }
+                long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - replayPass.startNanos));
+                LOG.info("Replay pass {} published {} tweets in {} ms, {} tweets per second", pass, replayPass.tweetCount,
+                        elapsedMs, replayPass.tweetCount * 1000 / elapsedMs);
+                if (replayPass.tweetCount == 0) {
+                    LOG.warn("No tweet found in replay file {}, replay is stopped", replayFile.toAbsolutePath());
+                    return;
+                }
+                pass++;
+            } while (loop && running && !Thread.currentThread().isInterrupted());
+        } catch (ReplayStoppedException e) {
+            LOG.info("Replay of tweets stopped in pass {}", pass);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error while replaying tweets from {}", replayFile.toAbsolutePath(), e);
+        }
+    }
+
+    private void replayAvro(InputStream inputStream, ReplayPass replayPass) throws IOException {
+        try (DataFileStream<TwitterAvroModel> dataFileStream =
+                     new DataFileStream<>(inputStream, new SpecificDatumReader<>(TwitterAvroModel.class))) {
+            //record is not reused as the published object is kept by the producer until it is sent
+            while (dataFileStream.hasNext()) {
+                replayPass.publish(dataFileStream.next());
+            }
+        }
+    }
+
+    /**
+     * State of one pass over the file, the first tweet with created_at is the time origin of the recorded tweets.
+     */
+    private class ReplayPass {
+
+        private final long pass;
+
+        private final double speedMultiplier;
+
+        private final long startNanos = System.nanoTime();
+
+        private final long startMs = System.currentTimeMillis();
+
+        private long firstCreatedAt = -1;
+
+        private long tweetCount;
+
+        ReplayPass(long pass, double speedMultiplier) {
+            this.pass = pass;
+            this.speedMultiplier = speedMultiplier;
+        }
+
+        void publish(TwitterAvroModel twitterAvroModel) {
+            if (!running || Thread.currentThread().isInterrupted()) {
+                throw new ReplayStoppedException();
+            }
+            Long createdAt = twitterAvroModel.getCreatedAt();
+            long offsetMs = 0;
+            if (createdAt != null) {
+                if (firstCreatedAt < 0) {
+                    firstCreatedAt = createdAt;
+                }
+                offsetMs = Math.max(0, createdAt - firstCreatedAt);
+            }
+            if (speedMultiplier > 0) {
+                long replayOffsetMs = (long) (offsetMs / speedMultiplier);
+                waitUntil(startNanos + TimeUnit.MILLISECONDS.toNanos(replayOffsetMs));
+                twitterAvroModel.setCreatedAt(startMs + replayOffsetMs);
+            } else {
+                twitterAvroModel.setCreatedAt(System.currentTimeMillis());
+            }
+            if (pass > 0) {
+                twitterAvroModel.setId((twitterAvroModel.getId() ^ (pass * LOOP_ID_MIX)) & Long.MAX_VALUE);
+            }
+            twitterKafkaStatusListener.publish(twitterAvroModel);
+            tweetCount++;
+        }
+
+        private void waitUntil(long targetNanos) {
+            long waitNanos;
+            while ((waitNanos = targetNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ReplayStoppedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown from the publish callback to leave the parser when the replay is stopped.
+     */
+    private static class ReplayStoppedException extends RuntimeException {
+    }
+}
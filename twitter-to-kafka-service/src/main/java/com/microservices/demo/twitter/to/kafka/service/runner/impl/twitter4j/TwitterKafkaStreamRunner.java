@@ -15,13 +15,14 @@ import twitter4j.TwitterStreamFactory;
 
 import javax.annotation.PreDestroy;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * This class is used to stream the twitter with twitter API version 1 which is not in the use currently
  * so this class is just for study purpose how were we streaming tweets earlier before twitter API V2
  */
 @Component
-@ConditionalOnExpression("not ${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-v2-tweets}")
+@ConditionalOnExpression("not ${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
 public class TwitterKafkaStreamRunner implements StreamRunner {
 
     private static final Logger LOG= LoggerFactory.getLogger(TwitterKafkaStreamRunner.class);
@@ -44,7 +45,7 @@ public class TwitterKafkaStreamRunner implements StreamRunner {
      * @throws TwitterException
      */
     @Override
-    public void start() throws TwitterException {
+    public synchronized void start() throws TwitterException {
         twitterStream = new TwitterStreamFactory().getInstance();
         twitterStream.addListener(twitterKafkaStatusListener);
         addFilter();
@@ -55,7 +56,23 @@ public class TwitterKafkaStreamRunner implements StreamRunner {
      * the tweet stream list we have added these filter of Java,Kafka,Microservice and Elasticsearch.
      */
     private void addFilter() {
-        String []keywords=twitterToKafkaServiceConfigData.getTwitterKeywords().toArray(new String[0]);
+        addFilter(twitterToKafkaServiceConfigData.getTwitterKeywords());
+    }
+
+    /**
+     * twitter4j can't change the filter of a connected stream, filter() replaces the stream connection with a new one
+     * using the new keywords. The listener stays registered so the tweets continue after a short reconnect.
+     * @param keywords
+     */
+    @Override
+    public synchronized void onKeywordsChanged(List<String> keywords) {
+        if (null != twitterStream) {
+            addFilter(keywords);
+        }
+    }
+
+    private void addFilter(List<String> keywordList) {
+        String []keywords=keywordList.toArray(new String[0]);
         FilterQuery filterQuery=new FilterQuery(keywords);
         twitterStream.filter(filterQuery);
         LOG.info("Started filtering twitter stream for keywords {}", Arrays.toString(keywords));
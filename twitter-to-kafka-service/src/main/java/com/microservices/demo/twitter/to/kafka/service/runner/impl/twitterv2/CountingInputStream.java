@@ -0,0 +1,42 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputStream wrapper which add the number of bytes read to the given counter, used to expose the bytes read from the
+ * twitter stream as metric. The parser reads in chunks so the counter is updated once per chunk and not per byte.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final AtomicLong bytesRead;
+
+    CountingInputStream(InputStream inputStream, AtomicLong bytesRead) {
+        super(inputStream);
+        this.bytesRead = bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = super.read(bytes, offset, length);
+        if (count > 0) {
+            count(count);
+        }
+        return count;
+    }
+
+    private void count(int count) {
+        bytesRead.addAndGet(count);
+    }
+}
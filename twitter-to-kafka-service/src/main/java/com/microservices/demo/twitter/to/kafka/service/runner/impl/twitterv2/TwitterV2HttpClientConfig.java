@@ -0,0 +1,59 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class create one pooled http client which is shared by the filtered stream and the rule API calls of TwitterV2StreamHelper,
+ * so the connections (and TLS sessions) are reused instead of building a new client for every call.
+ * Socket timeout is the stall timeout, if no byte (not even the keep-alive new line) is read for that long the read fails
+ * and the stream is reconnected. The client is closed by spring when the context is closed.
+ */
+@Configuration
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
+public class TwitterV2HttpClientConfig {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+
+    private static final int DEFAULT_STALL_TIMEOUT_MS = 30000;
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    public TwitterV2HttpClientConfig(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData) {
+        this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+    }
+
+    @Bean
+    public CloseableHttpClient twitterV2HttpClient() {
+        int maxConnections = getOrDefault(twitterToKafkaServiceConfigData.getTwitterV2MaxConnections(), DEFAULT_MAX_CONNECTIONS);
+        int connectTimeoutMs = getOrDefault(twitterToKafkaServiceConfigData.getTwitterV2ConnectTimeoutMs(),
+                DEFAULT_CONNECT_TIMEOUT_MS);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setCookieSpec(CookieSpecs.STANDARD)
+                        .setConnectTimeout(connectTimeoutMs)
+                        .setConnectionRequestTimeout(connectTimeoutMs)
+                        .setSocketTimeout(getOrDefault(twitterToKafkaServiceConfigData.getTwitterV2StallTimeoutMs(),
+                                DEFAULT_STALL_TIMEOUT_MS))
+                        .build())
+                .evictExpiredConnections()
+                .build();
+    }
+
+    private int getOrDefault(Integer value, int defaultValue) {
+        return value == null || value <= 0 ? defaultValue : value;
+    }
+}
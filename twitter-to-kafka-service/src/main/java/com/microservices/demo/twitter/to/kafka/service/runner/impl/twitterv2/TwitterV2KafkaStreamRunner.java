@@ -16,9 +16,10 @@ import java.util.Map;
 /**
  * This class will implement the StreamRunner interface which will setup new filtered rules and after that connect stream to read
  * the stream of tweets and for these operation it will take help of class TwitterV2StreamHelper.
+ * When the keywords are changed at runtime only the rules are changed, the connected stream is not touched.
  */
 @Component
-@ConditionalOnExpression("${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-mock-tweets}")
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
 public class TwitterV2KafkaStreamRunner implements StreamRunner {
 
     private static final Logger LOG = LoggerFactory.getLogger(TwitterV2KafkaStreamRunner.class);
@@ -41,6 +42,7 @@ public class TwitterV2KafkaStreamRunner implements StreamRunner {
     /**
      * Using twitter APIv2 we will set some rules based on our keywords Java, Kafka, Microservice and Elasticsearch
      * and then use the same rules as filter and connect to twitter for streaming of tweet.
+     * The stream runs on its own thread and is reconnected by TwitterV2StreamHelper whenever it ends or stalls.
      */
     @Override
     public void start() {
@@ -48,7 +50,7 @@ public class TwitterV2KafkaStreamRunner implements StreamRunner {
         if (null != bearerToken) {
             try {
                 twitterV2StreamHelper.setupRules(bearerToken, getRules());
-                twitterV2StreamHelper.connectStream(bearerToken);
+                twitterV2StreamHelper.startStream(bearerToken);
             } catch (IOException | URISyntaxException e) {
                 LOG.error("Error streaming tweets!", e);
                 throw new RuntimeException("Error streaming tweets!", e);
@@ -62,12 +64,29 @@ public class TwitterV2KafkaStreamRunner implements StreamRunner {
 
     }
 
+    /**
+     * Change the rules of the filtered stream to the new keywords, twitter applies the rule changes to the connected stream.
+     * @param keywords
+     */
+    @Override
+    public void onKeywordsChanged(List<String> keywords) {
+        String bearerToken = twitterToKafkaServiceConfigData.getTwitterV2BearerToken();
+        try {
+            twitterV2StreamHelper.setupRules(bearerToken, getRules(keywords));
+        } catch (IOException | URISyntaxException e) {
+            LOG.error("Could not change the rules of twitter stream to keywords {}", keywords, e);
+        }
+    }
+
     /**
      * Provide the existing set of rules as Map object.
      * @return
      */
     private Map<String, String> getRules() {
-        List<String> keywords = twitterToKafkaServiceConfigData.getTwitterKeywords();
+        return getRules(twitterToKafkaServiceConfigData.getTwitterKeywords());
+    }
+
+    private Map<String, String> getRules(List<String> keywords) {
         Map<String, String> rules = new HashMap<>();
         for (String keyword: keywords) {
             rules.put(keyword, "Keyword: " + keyword);
@@ -1,17 +1,19 @@
 package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
 
+import com.microservices.demo.config.RetryConfigData;
 import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
 import com.microservices.demo.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -19,106 +21,232 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
-import twitter4j.Status;
-import twitter4j.TwitterException;
-import twitter4j.TwitterObjectFactory;
 
-import java.io.BufferedReader;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is a helper class which have certain methods to help in the streaming of tweet based on the filter keywords.
  * It has certain methods define for same and they are as follows:
  * a) getRules -> To get the existing rules on the provided developer account using GET method.
  * b) deleteRules -> Delete the existing rules using POST method.
- * c) setupRules And createRules -> Use POST method to create the new rules on the same developer account for tweets.
- * d) connectStream -> use GET method to fetch the tweets where filter ruled is already set for it using createRules method.
+ * c) setupRules And createRules -> Use POST method to create the new rules on the same developer account for tweets, only the
+ * rules which are not there yet are created and only the rules which are not wanted anymore are deleted, so setupRules is also
+ * used to change the keywords while the stream is connected.
+ * d) startStream -> keep the filtered stream connected on its own thread, every time the stream ends, stalls or fails it is
+ * connected again after exponential backoff with jitter based on retry-config.
+ * e) connectStream -> use GET method to fetch the tweets where filter ruled is already set for it using createRules method.
+ * All calls use the shared pooled http client created in TwitterV2HttpClientConfig.
  */
 
 @Component
-@ConditionalOnExpression("${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-mock-tweets}")
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-v2-tweets} && not ${twitter-to-kafka-service.enable-mock-tweets} && not ${twitter-to-kafka-service.enable-replay-tweets:false}")
 public class TwitterV2StreamHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(TwitterV2StreamHelper.class);
 
     private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
 
+    private final RetryConfigData retryConfigData;
+
     private final TwitterKafkaStatusListener twitterKafkaStatusListener;
 
-    private static final String tweetAsRawJson = "{" +
-            "\"created_at\":\"{0}\"," +
-            "\"id\":\"{1}\"," +
-            "\"text\":\"{2}\"," +
-            "\"user\":{\"id\":\"{3}\"}" +
-            "}";
+    private final TwitterV2StreamParser twitterV2StreamParser;
+
+    private final CloseableHttpClient twitterV2HttpClient;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final Counter tweetCounter;
+
+    private final Counter reconnectCounter;
+
+    private final Counter stallCounter;
+
+    private ExecutorService streamExecutor;
+
+    private volatile HttpGet currentStreamRequest;
 
-    private static final String TWITTER_STATUS_DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+    private volatile boolean running;
+
+    private final Object rulesLock = new Object();
 
     /**
-     * Insert the TwitterToKafkaServiceConfigData and TwitterKafkaStatusListener class bean in this constructor
+     * Insert the TwitterToKafkaServiceConfigData, RetryConfigData, TwitterKafkaStatusListener, TwitterV2StreamParser,
+     * pooled http client and MeterRegistry bean in this constructor
      * @param twitterToKafkaServiceConfigData
+     * @param retryConfigData
      * @param twitterKafkaStatusListener
+     * @param twitterV2StreamParser
+     * @param twitterV2HttpClient
+     * @param meterRegistry
      */
     public TwitterV2StreamHelper(TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData,
-                                 TwitterKafkaStatusListener twitterKafkaStatusListener) {
+                                 RetryConfigData retryConfigData,
+                                 TwitterKafkaStatusListener twitterKafkaStatusListener,
+                                 TwitterV2StreamParser twitterV2StreamParser,
+                                 CloseableHttpClient twitterV2HttpClient,
+                                 MeterRegistry meterRegistry) {
         this.twitterToKafkaServiceConfigData = twitterToKafkaServiceConfigData;
+        this.retryConfigData = retryConfigData;
         this.twitterKafkaStatusListener = twitterKafkaStatusListener;
+        this.twitterV2StreamParser = twitterV2StreamParser;
+        this.twitterV2HttpClient = twitterV2HttpClient;
+        this.tweetCounter = Counter.builder("twitter.v2.stream.tweets")
+                .description("Tweets decoded from the filtered stream")
+                .register(meterRegistry);
+        this.reconnectCounter = Counter.builder("twitter.v2.stream.reconnects")
+                .description("Reconnects of the filtered stream")
+                .register(meterRegistry);
+        this.stallCounter = Counter.builder("twitter.v2.stream.stalls")
+                .description("Filtered stream connections without any byte for the stall timeout")
+                .register(meterRegistry);
+        FunctionCounter.builder("twitter.v2.stream.bytes.read", bytesRead, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     /**
-     * This method calls the twitter API v2 filtered stream endpoint and streams Tweets from it based
-     * on the rule we have setup for it and after reading the tweet we call onStatus() method of ur
-     * Listener class TwitterKafkaStatusListener.
+     * Start the supervised stream loop on its own thread and return. The loop never gives up while the application is running
+     * because a stopped stream silently stops the ingestion, retry-config max attempts is therefore not used here.
+     * @param bearerToken
+     */
+    public synchronized void startStream(String bearerToken) {
+        if (running) {
+            return;
+        }
+        running = true;
+        streamExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("twitter-v2-stream-"));
+        streamExecutor.submit(() -> superviseStream(bearerToken));
+    }
+
+    /**
+     * Stop the stream loop and abort the open stream request so the reading thread is released immediately.
      */
-    void connectStream(String bearerToken) throws IOException, URISyntaxException, JSONException {
+    @PreDestroy
+    public synchronized void stopStream() {
+        running = false;
+        HttpGet httpGet = currentStreamRequest;
+        if (httpGet != null) {
+            httpGet.abort();
+        }
+        if (streamExecutor != null) {
+            LOG.info("Stopping twitter v2 stream");
+            streamExecutor.shutdownNow();
+        }
+    }
 
-        HttpClient httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
+    /**
+     * Connect the stream again and again until stopped. Backoff attempt is reset after a connection which delivered tweets,
+     * so a stream which was running for hours reconnects after the initial interval.
+     */
+    private void superviseStream(String bearerToken) {
+        int attempt = 0;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            boolean rateLimited = false;
+            try {
+                long tweetCount = connectStream(bearerToken);
+                if (tweetCount > 0) {
+                    attempt = 0;
+                }
+            } catch (TwitterV2StreamRejectedException e) {
+                LOG.error("Twitter stream connection rejected with status {}: {}", e.getStatusCode(), e.getMessage());
+                rateLimited = e.getStatusCode() == HttpStatus.SC_TOO_MANY_REQUESTS;
+            } catch (SocketTimeoutException e) {
+                stallCounter.increment();
+                LOG.warn("Twitter stream stalled, no data received within the stall timeout");
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                LOG.error("Error streaming tweets!", e);
+            }
+            if (!running) {
+                return;
+            }
+            long backoffMs = rateLimited ? retryConfigData.getMaxIntervalMs() : getBackoffMs(attempt);
+            attempt++;
+            LOG.info("Reconnecting twitter stream in {} ms (attempt {})", backoffMs, attempt);
+            reconnectCounter.increment();
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff from retry-config with equal jitter, the wait is a random value between the half and the whole
+     * backoff so many instances do not reconnect at the same moment.
+     */
+    private long getBackoffMs(int attempt) {
+        double backoff = retryConfigData.getInitialIntervalMs() * Math.pow(retryConfigData.getMultiplier(), attempt);
+        long cappedBackoffMs = (long) Math.min(retryConfigData.getMaxIntervalMs(), backoff);
+        long halfBackoffMs = cappedBackoffMs / 2;
+        return halfBackoffMs + ThreadLocalRandom.current().nextLong(cappedBackoffMs - halfBackoffMs + 1);
+    }
 
+    /**
+     * This method calls the twitter API v2 filtered stream endpoint and streams Tweets from it based
+     * on the rule we have setup for it. Tweets are decoded by TwitterV2StreamParser directly into TwitterAvroModel
+     * and passed to publish() method of our Listener class TwitterKafkaStatusListener.
+     * The method returns when the stream ends, a read which take longer than the stall timeout throws SocketTimeoutException.
+     * @return number of tweets read from this connection
+     */
+    long connectStream(String bearerToken) throws IOException, URISyntaxException, JSONException {
         URIBuilder uriBuilder = new URIBuilder(twitterToKafkaServiceConfigData.getTwitterV2BaseUrl());
 
         HttpGet httpGet = new HttpGet(uriBuilder.build());
         httpGet.setHeader("Authorization", String.format("Bearer %s", bearerToken));
-
-        HttpResponse response = httpClient.execute(httpGet);
-        HttpEntity entity = response.getEntity();
-        if (null != entity) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader((entity.getContent())));
-            String line = reader.readLine();
-            while (line != null) {
-                line = reader.readLine();
-                if (null!=line && !line.isEmpty()) {
-                    String tweet = getFormattedTweet(line);
-                    Status status = null;
-                    try {
-                        status = TwitterObjectFactory.createStatus(tweet);
-                    } catch (TwitterException e) {
-                        LOG.error("Could not create status for text: {}", tweet, e);
-                    }
-                    if (status != null) {
-                        twitterKafkaStatusListener.onStatus(status);
-                    }
-                }
+        currentStreamRequest = httpGet;
+
+        long connectStartMs = System.currentTimeMillis();
+        try (CloseableHttpResponse response = twitterV2HttpClient.execute(httpGet)) {
+            HttpEntity entity = response.getEntity();
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK) {
+                String body = null != entity ? EntityUtils.toString(entity, "UTF-8") : "";
+                throw new TwitterV2StreamRejectedException(statusCode, body);
+            }
+            if (null == entity) {
+                return 0;
             }
+            LOG.info("Connected to twitter stream in {} ms", System.currentTimeMillis() - connectStartMs);
+            CountingInputStream inputStream = new CountingInputStream(entity.getContent(), bytesRead);
+            long tweetCount = twitterV2StreamParser.parse(inputStream, twitterAvroModel -> {
+                tweetCounter.increment();
+                twitterKafkaStatusListener.publish(twitterAvroModel);
+            });
+            long durationMs = System.currentTimeMillis() - connectStartMs;
+            LOG.info("Twitter stream ended after {} tweets in {} ms ({} tweets/s)", tweetCount, durationMs,
+                    durationMs == 0 ? 0 : tweetCount * 1000 / durationMs);
+            return tweetCount;
+        } finally {
+            //Abort instead of consuming the rest of an endless stream, the connection is not put back to the pool
+            httpGet.abort();
+            currentStreamRequest = null;
         }
     }
 
     /**
      * This method will help get set up the new rules for our provided keywords for filtering the tweet.
-     * First it will check if any rule exist or not if exist it will delete them and then create the new rule
-     * Else it will directly create the new set of rules. And to perform these rule operations we will use
+     * First it will get the existing rules and compare them with the wanted rules by their value, existing rules which are
+     * not wanted are deleted and wanted rules which don't exist are created, so the rules which stay the same are not
+     * touched and the connected stream keeps delivering their tweets. And to perform these rule operations we will use
      * twitter APIv2 rule API which we configured in the application.yml and for authentication we will use bearerToken
      * configured in application.yml
      * @param bearerToken
@@ -127,13 +255,29 @@ public class TwitterV2StreamHelper {
      * @throws URISyntaxException
      */
     void setupRules(String bearerToken, Map<String, String> rules) throws IOException, URISyntaxException {
-        List<String> existingRules = getRules(bearerToken);
-        if (existingRules.size() > 0) {
-            deleteRules(bearerToken, existingRules);
+        synchronized (rulesLock) {
+            Map<String, String> existingRules = getRules(bearerToken);
+            List<String> ruleIdsToDelete = new ArrayList<>();
+            for (Map.Entry<String, String> existingRule : existingRules.entrySet()) {
+                if (!rules.containsKey(existingRule.getKey())) {
+                    ruleIdsToDelete.add(existingRule.getValue());
+                }
+            }
+            Map<String, String> rulesToCreate = new HashMap<>();
+            for (Map.Entry<String, String> rule : rules.entrySet()) {
+                if (!existingRules.containsKey(rule.getKey())) {
+                    rulesToCreate.put(rule.getKey(), rule.getValue());
+                }
+            }
+            if (!ruleIdsToDelete.isEmpty()) {
+                deleteRules(bearerToken, ruleIdsToDelete);
+            }
+            if (!rulesToCreate.isEmpty()) {
+                createRules(bearerToken, rulesToCreate);
+            }
+            LOG.info("Rules of twitter stream are {}, deleted {} and created {} rules", rules.keySet(),
+                    ruleIdsToDelete.size(), rulesToCreate.size());
         }
-        createRules(bearerToken, rules);
-        LOG.info("Created rules for twitter stream {} ", rules.keySet());
-
     }
 
 
@@ -145,11 +289,6 @@ public class TwitterV2StreamHelper {
      * @throws IOException
      */
     private void createRules(String bearerToken, Map<String, String> rules) throws URISyntaxException, IOException {
-        HttpClient httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-
         URIBuilder uriBuilder = new URIBuilder(twitterToKafkaServiceConfigData.getTwitterV2RulesBaseUrl());
 
         HttpPost httpPost = new HttpPost(uriBuilder.build());
@@ -157,41 +296,38 @@ public class TwitterV2StreamHelper {
         httpPost.setHeader("content-type", "application/json");
         StringEntity body = new StringEntity(getFormattedString("{\"add\": [%s]}", rules));
         httpPost.setEntity(body);
-        HttpResponse response = httpClient.execute(httpPost);
-        HttpEntity entity = response.getEntity();
-        if (null != entity) {
-            System.out.println(EntityUtils.toString(entity, "UTF-8"));
+        try (CloseableHttpResponse response = twitterV2HttpClient.execute(httpPost)) {
+            HttpEntity entity = response.getEntity();
+            if (null != entity) {
+                System.out.println(EntityUtils.toString(entity, "UTF-8"));
+            }
         }
     }
 
     /**
-     * This method will return the list of existing rules for APIv2 rule API
+     * This method will return the existing rules for APIv2 rule API
      * @param bearerToken
-     * @return
+     * @return map of rule value to rule id
      * @throws URISyntaxException
      * @throws IOException
      */
-    private List<String> getRules(String bearerToken) throws URISyntaxException, IOException {
-        List<String> rules = new ArrayList<>();
-        HttpClient httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-
+    private Map<String, String> getRules(String bearerToken) throws URISyntaxException, IOException {
+        Map<String, String> rules = new HashMap<>();
         URIBuilder uriBuilder = new URIBuilder(twitterToKafkaServiceConfigData.getTwitterV2RulesBaseUrl());
 
         HttpGet httpGet = new HttpGet(uriBuilder.build());
         httpGet.setHeader("Authorization", String.format("Bearer %s", bearerToken));
         httpGet.setHeader("content-type", "application/json");
-        HttpResponse response = httpClient.execute(httpGet);
-        HttpEntity entity = response.getEntity();
-        if (null != entity) {
-            JSONObject json = new JSONObject(EntityUtils.toString(entity, "UTF-8"));
-            if (json.length() > 1 && json.has("data")) {
-                JSONArray array = (JSONArray) json.get("data");
-                for (int i = 0; i < array.length(); i++) {
-                    JSONObject jsonObject = (JSONObject) array.get(i);
-                    rules.add(jsonObject.getString("id"));
+        try (CloseableHttpResponse response = twitterV2HttpClient.execute(httpGet)) {
+            HttpEntity entity = response.getEntity();
+            if (null != entity) {
+                JSONObject json = new JSONObject(EntityUtils.toString(entity, "UTF-8"));
+                if (json.length() > 1 && json.has("data")) {
+                    JSONArray array = (JSONArray) json.get("data");
+                    for (int i = 0; i < array.length(); i++) {
+                        JSONObject jsonObject = (JSONObject) array.get(i);
+                        rules.put(jsonObject.getString("value"), jsonObject.getString("id"));
+                    }
                 }
             }
         }
@@ -206,11 +342,6 @@ public class TwitterV2StreamHelper {
      * @throws IOException
      */
     private void deleteRules(String bearerToken, List<String> existingRules) throws URISyntaxException, IOException {
-        HttpClient httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
-
         URIBuilder uriBuilder = new URIBuilder(twitterToKafkaServiceConfigData.getTwitterV2RulesBaseUrl());
 
         HttpPost httpPost = new HttpPost(uriBuilder.build());
@@ -219,10 +350,11 @@ public class TwitterV2StreamHelper {
         StringEntity body = new StringEntity(getFormattedString("{ \"delete\": { \"ids\": [%s]}}",
                 existingRules));
         httpPost.setEntity(body);
-        HttpResponse response = httpClient.execute(httpPost);
-        HttpEntity entity = response.getEntity();
-        if (null != entity) {
-            System.out.println(EntityUtils.toString(entity, "UTF-8"));
+        try (CloseableHttpResponse response = twitterV2HttpClient.execute(httpPost)) {
+            HttpEntity entity = response.getEntity();
+            if (null != entity) {
+                System.out.println(EntityUtils.toString(entity, "UTF-8"));
+            }
         }
     }
 
@@ -261,26 +393,4 @@ public class TwitterV2StreamHelper {
         }
     }
 
-    private String getFormattedTweet(String data) {
-        JSONObject jsonData = (JSONObject)new JSONObject(data).get("data");
-
-        String[] params = new String[]{
-                ZonedDateTime.parse(jsonData.get("created_at").toString()).withZoneSameInstant(ZoneId.of("UTC"))
-                        .format(DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH)),
-                jsonData.get("id").toString(),
-                jsonData.get("text").toString().replaceAll("\"","\\\\\""),
-                jsonData.get("author_id").toString(),
-        };
-        return formatTweetAsJsonWithParams(params);
-    }
-
-    private String formatTweetAsJsonWithParams(String[] params) {
-        String tweet = tweetAsRawJson;
-
-        for (int i = 0; i < params.length; i++) {
-            tweet = tweet.replace("{" + i + "}", params[i]);
-        }
-        return tweet;
-    }
-
 }
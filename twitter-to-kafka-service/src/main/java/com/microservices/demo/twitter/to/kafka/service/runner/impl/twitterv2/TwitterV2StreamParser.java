@@ -0,0 +1,216 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This class decode the tweets of twitter API v2 filtered stream straight into TwitterAvroModel objects using the Jackson
+ * streaming parser. The stream is a sequence of json objects separated with new lines (and empty keep-alive lines), the
+ * lines are cut from the response InputStream into a reusable byte buffer and parsed from there without decoding them
+ * into a String first.
+ * Only the fields we need from "data" object (id, text, created_at and author_id) are read, everything else is skipped
+ * without building any object for it.
+ */
+@Component
+public class TwitterV2StreamParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwitterV2StreamParser.class);
+
+    //JsonFactory is thread safe and expensive to create so it is created only once
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    //a tweet with all expansions is a few KB, a longer line is not a tweet
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private static final byte NEW_LINE = '\n';
+
+    private static final String DATA = "data";
+    private static final String ID = "id";
+    private static final String TEXT = "text";
+    private static final String CREATED_AT = "created_at";
+    private static final String AUTHOR_ID = "author_id";
+
+    private final TwitterIngestMetrics twitterIngestMetrics;
+
+    public TwitterV2StreamParser(TwitterIngestMetrics twitterIngestMetrics) {
+        this.twitterIngestMetrics = twitterIngestMetrics;
+    }
+
+    /**
+     * Read the tweets from the input stream until the end of the stream and pass every successfully decoded tweet to the consumer.
+     * Payloads without data object (like the error messages) or with missing ids are skipped, tweets with invalid ids and
+     * malformed json are counted as parse failures. A malformed payload is skipped up to the next new line, so one torn or
+     * invalid payload does not end the connection.
+     * @param inputStream
+     * @param consumer
+     * @return number of tweets passed to consumer
+     * @throws IOException if the stream can not be read, the stream can't be continued after that
+     */
+    public long parse(InputStream inputStream, Consumer<TwitterAvroModel> consumer) throws IOException {
+        long tweetCount = 0;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        //the current line is buffer[lineStart, end), there is no new line in buffer[lineStart, scanned)
+        int lineStart = 0;
+        int scanned = 0;
+        int end = 0;
+        //the line is longer than MAX_LINE_BYTES and is dropped until the next new line
+        boolean skipLine = false;
+        while (true) {
+            int newLine = indexOfNewLine(buffer, scanned, end);
+            if (newLine >= 0) {
+                if (!skipLine) {
+                    tweetCount += parseLine(buffer, lineStart, newLine - lineStart, consumer);
+                }
+                skipLine = false;
+                lineStart = newLine + 1;
+                scanned = lineStart;
+                continue;
+            }
+            if (lineStart > 0) {
+                System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+                end -= lineStart;
+                lineStart = 0;
+            }
+            scanned = end;
+            if (end == buffer.length) {
+                if (buffer.length < MAX_LINE_BYTES) {
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_BYTES));
+                } else {
+                    if (!skipLine) {
+                        LOG.warn("Skipping payload longer than {} bytes", MAX_LINE_BYTES);
+                        twitterIngestMetrics.parseFailure();
+                        skipLine = true;
+                    }
+                    end = 0;
+                    scanned = 0;
+                }
+            }
+            int read = inputStream.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                if (!skipLine && end > lineStart) {
+                    tweetCount += parseLine(buffer, lineStart, end - lineStart, consumer);
+                }
+                return tweetCount;
+            }
+            end += read;
+        }
+    }
+
+    private static int indexOfNewLine(byte[] buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == NEW_LINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode one payload, empty keep-alive lines are skipped.
+     * @return 1 if a tweet was passed to the consumer, 0 otherwise
+     */
+    private int parseLine(byte[] buffer, int offset, int length, Consumer<TwitterAvroModel> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(buffer, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            TwitterAvroModel twitterAvroModel = parsePayload(parser);
+            if (twitterAvroModel == null) {
+                return 0;
+            }
+            consumer.accept(twitterAvroModel);
+            return 1;
+        } catch (JsonProcessingException e) {
+            LOG.warn("Skipping malformed payload of {} bytes: {}", length, e.getOriginalMessage());
+            twitterIngestMetrics.parseFailure();
+            return 0;
+        }
+    }
+
+    /**
+     * Parser is on the start of the root object, read until the end of it and return the tweet from the data object.
+     */
+    private TwitterAvroModel parsePayload(JsonParser parser) throws IOException {
+        TwitterAvroModel twitterAvroModel = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (DATA.equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+                twitterAvroModel = parseData(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return twitterAvroModel;
+    }
+
+    /**
+     * Parser is on the start of the data object, read the tweet fields until the end of it.
+     */
+    private TwitterAvroModel parseData(JsonParser parser) throws IOException {
+        String id = null;
+        String text = null;
+        String createdAt = null;
+        String authorId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (valueToken.isScalarValue()) {
+                switch (fieldName) {
+                    case ID:
+                        id = parser.getValueAsString();
+                        break;
+                    case TEXT:
+                        text = parser.getValueAsString();
+                        break;
+                    case CREATED_AT:
+                        createdAt = parser.getValueAsString();
+                        break;
+                    case AUTHOR_ID:
+                        authorId = parser.getValueAsString();
+                        break;
+                    default:
+                        break;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return toTwitterAvroModel(id, text, createdAt, authorId);
+    }
+
+    private TwitterAvroModel toTwitterAvroModel(String id, String text, String createdAt, String authorId) {
+        if (id == null || authorId == null) {
+            LOG.warn("Skipping tweet without id or author_id, id: {}, author_id: {}", id, authorId);
+            twitterIngestMetrics.parseFailure();
+            return null;
+        }
+        try {
+            return new TwitterAvroModel(
+                    Long.parseLong(authorId),
+                    Long.parseLong(id),
+                    text,
+                    createdAt == null ? null : Instant.parse(createdAt).toEpochMilli());
+        } catch (NumberFormatException | DateTimeParseException e) {
+            LOG.warn("Could not create tweet with id {}, author_id {} and created_at {}", id, authorId, createdAt, e);
+            twitterIngestMetrics.parseFailure();
+            return null;
+        }
+    }
+}
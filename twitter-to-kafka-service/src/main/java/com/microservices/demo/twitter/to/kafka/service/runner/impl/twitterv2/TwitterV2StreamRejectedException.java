@@ -0,0 +1,20 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the twitter API v2 filtered stream answers with other status than 200, the message is the response body.
+ */
+class TwitterV2StreamRejectedException extends IOException {
+
+    private final int statusCode;
+
+    TwitterV2StreamRejectedException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+}
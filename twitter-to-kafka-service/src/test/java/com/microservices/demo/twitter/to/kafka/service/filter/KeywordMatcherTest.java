@@ -0,0 +1,80 @@
+package com.microservices.demo.twitter.to.kafka.service.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void matchesKeywordAnywhereInText() {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("java", "kafka"));
+
+        assertThat(keywordMatcher.matches("java")).isTrue();
+        assertThat(keywordMatcher.matches("I like java and spring")).isTrue();
+        assertThat(keywordMatcher.matches("apache-kafka")).isTrue();
+        assertThat(keywordMatcher.matches("jav a kafk")).isFalse();
+        assertThat(keywordMatcher.matches("")).isFalse();
+        assertThat(keywordMatcher.matches(null)).isFalse();
+    }
+
+    @Test
+    public void matchesKeywordInsideOverlappingPrefix() {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("he", "she", "his", "hers"));
+
+        assertThat(keywordMatcher.matches("ushers")).isTrue();
+        assertThat(keywordMatcher.matches("xhix")).isFalse();
+        assertThat(keywordMatcher.matches("ahis")).isTrue();
+    }
+
+    @Test
+    public void followsFailureLinksAfterPartialMatch() {
+        //"abcx" fails after "abc" and must continue in "bc" to find "bcd"
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("abcx", "bcd"));
+
+        assertThat(keywordMatcher.matches("abcd")).isTrue();
+        assertThat(keywordMatcher.matches("abcbd")).isFalse();
+        //repeated first character of the keyword
+        assertThat(new KeywordMatcher(Collections.singletonList("aab")).matches("aaab")).isTrue();
+    }
+
+    @Test
+    public void matchesShorterKeywordEndingInsideLongerOne() {
+        //"bc" ends inside "abcd", the state for "abc" must be accepting through its failure link
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("abcd", "bc"));
+
+        assertThat(keywordMatcher.matches("xabce")).isTrue();
+        assertThat(keywordMatcher.matches("xabxcd")).isFalse();
+    }
+
+    @Test
+    public void ignoresCaseOfKeywordsAndText() {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("Kafka", "\u00C9LASTIC"));
+
+        assertThat(keywordMatcher.matches("KAFKA streams")).isTrue();
+        assertThat(keywordMatcher.matches("kAfKa")).isTrue();
+        assertThat(keywordMatcher.matches("\u00E9lastic search")).isTrue();
+        assertThat(keywordMatcher.matches("\u00C9lastic")).isTrue();
+        assertThat(keywordMatcher.matches("elastic")).isFalse();
+    }
+
+    @Test
+    public void treatsCharactersOutsideTheKeywordsAsBreak() {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Collections.singletonList("ab"));
+
+        assertThat(keywordMatcher.matches("a\u00E9b")).isFalse();
+        assertThat(keywordMatcher.matches("a\uD83D\uDE00b ab")).isTrue();
+    }
+
+    @Test
+    public void emptyKeywordsMatchNothing() {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(Arrays.asList("", null));
+
+        assertThat(keywordMatcher.isEmpty()).isTrue();
+        assertThat(keywordMatcher.matches("anything")).isFalse();
+        assertThat(new KeywordMatcher(Collections.singletonList("a")).isEmpty()).isFalse();
+    }
+}
@@ -0,0 +1,49 @@
+package com.microservices.demo.twitter.to.kafka.service.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TweetIdDeduplicatorTest {
+
+    @Test
+    public void dropsIdSeenInTheWindow() {
+        TweetIdDeduplicator tweetIdDeduplicator = new TweetIdDeduplicator(600000, 1000);
+
+        assertThat(tweetIdDeduplicator.firstSeen(1L)).isTrue();
+        assertThat(tweetIdDeduplicator.firstSeen(0L)).isTrue();
+        assertThat(tweetIdDeduplicator.firstSeen(-5L)).isTrue();
+        assertThat(tweetIdDeduplicator.firstSeen(1L)).isFalse();
+        assertThat(tweetIdDeduplicator.firstSeen(0L)).isFalse();
+        assertThat(tweetIdDeduplicator.firstSeen(-5L)).isFalse();
+        assertThat(tweetIdDeduplicator.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void remembersAtLeastMaxIds() {
+        int maxIds = 10000;
+        TweetIdDeduplicator tweetIdDeduplicator = new TweetIdDeduplicator(600000, maxIds);
+        for (long id = 1; id <= maxIds; id++) {
+            assertThat(tweetIdDeduplicator.firstSeen(id)).isTrue();
+        }
+
+        for (long id = 1; id <= maxIds; id++) {
+            assertThat(tweetIdDeduplicator.firstSeen(id)).as("id %d", id).isFalse();
+        }
+    }
+
+    @Test
+    public void forgetsIdsAfterTwoWindows() throws InterruptedException {
+        TweetIdDeduplicator tweetIdDeduplicator = new TweetIdDeduplicator(1, 1000);
+        tweetIdDeduplicator.firstSeen(42L);
+        //every new id after a window moves the generations of its stripe, so fill all stripes twice
+        for (int round = 0; round < 2; round++) {
+            Thread.sleep(5);
+            for (long id = 1000; id < 1500; id++) {
+                tweetIdDeduplicator.firstSeen(id * 7919 + round);
+            }
+        }
+
+        assertThat(tweetIdDeduplicator.firstSeen(42L)).isTrue();
+    }
+}
@@ -0,0 +1,121 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwoOfAtLeastFour() {
+        assertThat(new BoundedRingBuffer<Integer>(1).capacity()).isEqualTo(4);
+        assertThat(new BoundedRingBuffer<Integer>(8).capacity()).isEqualTo(8);
+        assertThat(new BoundedRingBuffer<Integer>(9).capacity()).isEqualTo(16);
+    }
+
+    @Test
+    public void rejectsOfferWhenFullAndReturnsNullWhenEmpty() {
+        BoundedRingBuffer<Integer> ringBuffer = new BoundedRingBuffer<>(4);
+
+        assertThat(ringBuffer.poll()).isNull();
+        for (int i = 0; i < 4; i++) {
+            assertThat(ringBuffer.offer(i)).isTrue();
+        }
+        assertThat(ringBuffer.offer(4)).isFalse();
+        assertThat(ringBuffer.size()).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(ringBuffer.poll()).isEqualTo(i);
+        }
+        assertThat(ringBuffer.poll()).isNull();
+        assertThat(ringBuffer.size()).isZero();
+    }
+
+    @Test
+    public void keepsOrderWhenPositionsWrapAround() {
+        BoundedRingBuffer<Integer> ringBuffer = new BoundedRingBuffer<>(4);
+
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            assertThat(ringBuffer.offer(round * 3)).isTrue();
+            assertThat(ringBuffer.offer(round * 3 + 1)).isTrue();
+            assertThat(ringBuffer.offer(round * 3 + 2)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                assertThat(ringBuffer.poll()).isEqualTo(next++);
+            }
+        }
+        assertThat(ringBuffer.poll()).isNull();
+    }
+
+    @Test
+    public void deliversEveryElementOnceWithManyProducersAndConsumers() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int elementsPerProducer = 100_000;
+        int total = producers * elementsPerProducer;
+        BoundedRingBuffer<Integer> ringBuffer = new BoundedRingBuffer<>(64);
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int first = p * elementsPerProducer;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = first; i < first + elementsPerProducer; i++) {
+                        while (!ringBuffer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    //elements of one producer must come out in the order they were put in
+                    int[] lastOfProducer = new int[producers];
+                    Arrays.fill(lastOfProducer, -1);
+                    while (consumed.get() < total) {
+                        Integer element = ringBuffer.poll();
+                        if (element == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        int producer = element / elementsPerProducer;
+                        assertThat(element).isGreaterThan(lastOfProducer[producer]);
+                        lastOfProducer[producer] = element;
+                        seen.incrementAndGet(element);
+                        consumed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(consumed.get()).isEqualTo(total);
+        for (int i = 0; i < total; i++) {
+            assertThat(seen.get(i)).as("element %d", i).isEqualTo(1);
+        }
+        assertThat(ringBuffer.poll()).isNull();
+    }
+}
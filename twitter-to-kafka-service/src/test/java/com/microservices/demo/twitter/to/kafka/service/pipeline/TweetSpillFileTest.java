@@ -0,0 +1,238 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TweetSpillFileTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void drainsTweetsInOrderAndTruncatesTheFile() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            for (long id = 1; id <= 3; id++) {
+                assertThat(spillFile.append(tweet(id))).isTrue();
+            }
+            List<TwitterAvroModel> drained = new ArrayList<>();
+
+            assertThat(spillFile.drainTo(tweet -> drained.size() < 2 && drained.add(tweet))).isEqualTo(2);
+            assertThat(spillFile.isEmpty()).isFalse();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(1);
+
+            assertThat(drained).extracting(TwitterAvroModel::getId).containsExactly(1L, 2L, 3L);
+            assertThat(spillFile.isEmpty()).isTrue();
+            assertThat(Files.size(path)).isZero();
+        }
+    }
+
+    @Test
+    public void readsTweetsOfThePreviousRun() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+            spillFile.append(tweet(2));
+        }
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(2);
+            assertThat(spillFile.getCorruptRecords()).isZero();
+        }
+    }
+
+    @Test
+    public void cutsTornTailOnOpen() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+            spillFile.append(tweet(2));
+        }
+        long intactSize = Files.size(path);
+        //crash in the middle of the third append
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 60, 1, 2, 3, 4, 5, 6}));
+        }
+
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            assertThat(Files.size(path)).isEqualTo(intactSize);
+            assertThat(spillFile.getCorruptRecords()).isEqualTo(1);
+            spillFile.append(tweet(3));
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(3);
+            assertThat(drained).extracting(TwitterAvroModel::getId).containsExactly(1L, 2L, 3L);
+        }
+    }
+
+    @Test
+    public void skipsRecordsWithWrongChecksumOrUndecodableBody() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        long secondRecordPosition;
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+            secondRecordPosition = spillFile.getPendingBytes();
+            spillFile.append(tweet(2));
+            spillFile.append(tweet(3));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            //flip a byte in the body of the second record
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), secondRecordPosition + 20);
+        }
+        appendRecordWithValidChecksum(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(2);
+            assertThat(drained).extracting(TwitterAvroModel::getId).containsExactly(1L, 3L);
+            assertThat(spillFile.getCorruptRecords()).isEqualTo(2);
+            assertThat(spillFile.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    public void dropsTheRestOfTheFileAfterBrokenLength() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        long secondRecordPosition;
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+            secondRecordPosition = spillFile.getPendingBytes();
+            spillFile.append(tweet(2));
+            spillFile.append(tweet(3));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{(byte) 0x7f}), secondRecordPosition);
+            }
+            List<TwitterAvroModel> drained = new ArrayList<>();
+
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(1);
+            assertThat(spillFile.getCorruptRecords()).isEqualTo(1);
+            assertThat(spillFile.isEmpty()).isTrue();
+            //the file is usable again
+            spillFile.append(tweet(4));
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(1);
+            assertThat(drained).extracting(TwitterAvroModel::getId).containsExactly(1L, 4L);
+        }
+    }
+
+    @Test
+    public void doesNotGrowOverMaxBytes() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, 200)) {
+            int appended = 0;
+            while (spillFile.append(tweet(appended + 1))) {
+                appended++;
+            }
+            assertThat(appended).isPositive();
+            assertThat(Files.size(path)).isLessThanOrEqualTo(200);
+
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(appended);
+            assertThat(spillFile.append(tweet(100))).isTrue();
+        }
+    }
+
+    @Test
+    public void budgetCountsOnlyTheUnreadTweets() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, 200)) {
+            int appended = 0;
+            while (spillFile.append(tweet(appended + 1))) {
+                appended++;
+            }
+            long fullBytes = spillFile.getPendingBytes();
+            //read all but the last tweet, the file is never drained completely
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            int keep = appended - 1;
+            assertThat(spillFile.drainTo(tweet -> drained.size() < keep && drained.add(tweet))).isEqualTo(keep);
+
+            assertThat(spillFile.append(tweet(100))).isTrue();
+            assertThat(spillFile.getPendingBytes()).isLessThan(fullBytes);
+            assertThat(Files.size(path)).isEqualTo(spillFile.getPendingBytes());
+            assertThat(Files.exists(path.resolveSibling("tweets.spill.compact"))).isFalse();
+
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(2);
+            assertThat(drained.subList(keep, keep + 2)).extracting(TwitterAvroModel::getId)
+                    .containsExactly((long) appended, 100L);
+        }
+    }
+
+    @Test
+    public void keepsTheReadHeadWhenItIsSmallerThanTheUnreadTail() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, 200)) {
+            int appended = 0;
+            while (spillFile.append(tweet(appended + 1))) {
+                appended++;
+            }
+            long fileBytes = Files.size(path);
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(tweet -> drained.isEmpty() && drained.add(tweet))).isEqualTo(1);
+
+            assertThat(spillFile.append(tweet(100))).isTrue();
+            assertThat(Files.size(path)).isGreaterThan(fileBytes).isLessThanOrEqualTo(2 * 200);
+
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(appended);
+            assertThat(drained).extracting(TwitterAvroModel::getId).endsWith((long) appended, 100L);
+        }
+    }
+
+    @Test
+    public void removesCompactFileOfACrashedCompaction() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+        }
+        Files.write(path.resolveSibling("tweets.spill.compact"), new byte[]{1, 2, 3});
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            List<TwitterAvroModel> drained = new ArrayList<>();
+            assertThat(spillFile.drainTo(drained::add)).isEqualTo(1);
+            assertThat(Files.exists(path.resolveSibling("tweets.spill.compact"))).isFalse();
+        }
+    }
+
+    @Test
+    public void discardPendingEmptiesTheFile() throws IOException {
+        Path path = directory.resolve("tweets.spill");
+        try (TweetSpillFile spillFile = new TweetSpillFile(path, MAX_BYTES)) {
+            spillFile.append(tweet(1));
+            long pendingBytes = spillFile.getPendingBytes();
+
+            assertThat(spillFile.discardPending()).isEqualTo(pendingBytes);
+            assertThat(spillFile.isEmpty()).isTrue();
+            assertThat(Files.size(path)).isZero();
+        }
+    }
+
+    private static TwitterAvroModel tweet(long id) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(42L)
+                .setText("tweet " + id)
+                .setCreatedAt(1643637600000L)
+                .build();
+    }
+
+    private static void appendRecordWithValidChecksum(Path path, byte[] body) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(record);
+        }
+    }
+}
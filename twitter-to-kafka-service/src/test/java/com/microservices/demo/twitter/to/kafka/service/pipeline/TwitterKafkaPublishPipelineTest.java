@@ -0,0 +1,234 @@
+package com.microservices.demo.twitter.to.kafka.service.pipeline;
+
+import com.microservices.demo.config.KafkaConfigData;
+import com.microservices.demo.config.TwitterToKafkaServiceConfigData;
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.model.BatchResult;
+import com.microservices.demo.kafka.producer.model.KeyValue;
+import com.microservices.demo.kafka.producer.service.KafkaProducer;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TwitterKafkaPublishPipelineTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final int CAPACITY = 4;
+
+    @TempDir
+    Path directory;
+
+    private final RecordingKafkaProducer kafkaProducer = new RecordingKafkaProducer();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TwitterKafkaPublishPipeline pipeline;
+
+    @AfterEach
+    public void stopPipeline() throws InterruptedException {
+        kafkaProducer.gate.countDown();
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void sendsTweetsInSubmitOrder() throws IOException, InterruptedException {
+        pipeline = pipeline("block", 1024);
+
+        for (long id = 0; id < 5000; id++) {
+            pipeline.submit(tweet(id));
+        }
+        pipeline.stop();
+
+        assertThat(kafkaProducer.sentIds).containsExactlyElementsOf(ids(0, 5000));
+        assertThat(counter("twitter.pipeline.dropped")).isZero();
+    }
+
+    @Test
+    public void blockPolicyWaitsForTheWorkers() throws IOException, InterruptedException {
+        pipeline = blockedPipeline("block");
+        Thread submitter = new Thread(() -> {
+            for (long id = 1; id <= 10; id++) {
+                pipeline.submit(tweet(id));
+            }
+        });
+        submitter.start();
+
+        Thread.sleep(200);
+        assertThat(submitter.isAlive()).isTrue();
+        assertThat(gauge("twitter.pipeline.queue.depth")).isEqualTo(CAPACITY);
+
+        kafkaProducer.gate.countDown();
+        submitter.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        pipeline.stop();
+        assertThat(kafkaProducer.sentIds).containsExactlyElementsOf(ids(0, 11));
+        assertThat(counter("twitter.pipeline.dropped")).isZero();
+    }
+
+    @Test
+    public void dropOldestPolicyKeepsTheNewestTweets() throws IOException, InterruptedException {
+        pipeline = blockedPipeline("drop-oldest");
+
+        for (long id = 1; id <= 10; id++) {
+            pipeline.submit(tweet(id));
+        }
+        kafkaProducer.gate.countDown();
+        pipeline.stop();
+
+        assertThat(kafkaProducer.sentIds).containsExactly(0L, 7L, 8L, 9L, 10L);
+        assertThat(counter("twitter.pipeline.dropped")).isEqualTo(6);
+    }
+
+    @Test
+    public void spillPolicyKeepsTheOrderOfSpilledTweets() throws IOException, InterruptedException {
+        pipeline = blockedPipeline("spill");
+
+        for (long id = 1; id <= 10; id++) {
+            pipeline.submit(tweet(id));
+        }
+        assertThat(counter("twitter.pipeline.spilled")).isEqualTo(6);
+        kafkaProducer.gate.countDown();
+
+        waitUntil(() -> kafkaProducer.sentIds.size() == 11);
+        assertThat(kafkaProducer.sentIds).containsExactlyElementsOf(ids(0, 11));
+        assertThat(counter("twitter.pipeline.dropped")).isZero();
+        assertThat(gauge("twitter.pipeline.spill.pending.bytes")).isZero();
+    }
+
+    @Test
+    public void sendsTweetsSpilledInThePreviousRunFirst() throws IOException, InterruptedException {
+        try (TweetSpillFile spillFile = new TweetSpillFile(directory.resolve("twitter-pipeline.spill"), 1024 * 1024)) {
+            for (long id = 0; id < 3; id++) {
+                spillFile.append(tweet(id));
+            }
+        }
+        pipeline = pipeline("spill", 1024);
+
+        pipeline.submit(tweet(3));
+
+        waitUntil(() -> kafkaProducer.sentIds.size() == 4);
+        assertThat(kafkaProducer.sentIds).containsExactly(0L, 1L, 2L, 3L);
+    }
+
+    /**
+     * Pipeline with one worker which is blocked in the producer with the tweet 0, so nothing is taken from the buffer
+     * until the gate is opened.
+     */
+    private TwitterKafkaPublishPipeline blockedPipeline(String overflowPolicy) throws IOException,
+            InterruptedException {
+        kafkaProducer.gate = new CountDownLatch(1);
+        TwitterKafkaPublishPipeline blockedPipeline = pipeline(overflowPolicy, CAPACITY);
+        blockedPipeline.submit(tweet(0));
+        assertThat(kafkaProducer.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        return blockedPipeline;
+    }
+
+    private TwitterKafkaPublishPipeline pipeline(String overflowPolicy, int queueCapacity) throws IOException {
+        TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData = new TwitterToKafkaServiceConfigData();
+        twitterToKafkaServiceConfigData.setPipelineQueueCapacity(queueCapacity);
+        twitterToKafkaServiceConfigData.setPipelineWorkerThreads(1);
+        twitterToKafkaServiceConfigData.setPipelineOverflowPolicy(overflowPolicy);
+        twitterToKafkaServiceConfigData.setPipelineSpillDirectory(directory.toString());
+        KafkaConfigData kafkaConfigData = new KafkaConfigData();
+        kafkaConfigData.setTopicName(TOPIC);
+        TwitterKafkaPublishPipeline publishPipeline = new TwitterKafkaPublishPipeline(twitterToKafkaServiceConfigData,
+                kafkaConfigData, kafkaProducer, null, meterRegistry, new TwitterIngestMetrics(meterRegistry));
+        publishPipeline.start();
+        return publishPipeline;
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).functionCounter().count();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private static List<Long> ids(long firstId, int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = firstId; id < firstId + count; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static TwitterAvroModel tweet(long id) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id % 7)
+                .setText("text")
+                .setCreatedAt(System.currentTimeMillis())
+                .build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Collects the ids of the sent tweets, the gate blocks sendAll() like a producer whose buffer memory is full.
+     */
+    private static class RecordingKafkaProducer implements KafkaProducer<Long, TwitterAvroModel> {
+
+        private final List<Long> sentIds = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public void send(String topicName, Long key, TwitterAvroModel message) {
+            send(topicName, key, message, null);
+        }
+
+        @Override
+        public void send(String topicName, Long key, TwitterAvroModel message, Headers headers) {
+            sentIds.add(message.getId());
+        }
+
+        @Override
+        public CompletableFuture<BatchResult> sendBatch(String topicName,
+                                                        List<KeyValue<Long, TwitterAvroModel>> records) {
+            sendAll(topicName, records);
+            return CompletableFuture.completedFuture(new BatchResult(records.size(), records.size(), 0, null, 0));
+        }
+
+        @Override
+        public void sendAll(String topicName, List<KeyValue<Long, TwitterAvroModel>> records) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (KeyValue<Long, TwitterAvroModel> record : records) {
+                assertThat(record.getKey()).isEqualTo(record.getValue().getUserId());
+                sentIds.add(record.getValue().getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.kafka.producer.partitioner.PartitioningStrategy;
+import com.microservices.demo.kafka.producer.partitioner.TwitterPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitionKeyGeneratorTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    private final LongSerializer longSerializer = new LongSerializer();
+
+    @Test
+    public void userIdsGoToTheirPartitionWithKeyStrategies() {
+        for (PartitioningStrategy strategy : PartitioningStrategy.values()) {
+            if (!strategy.isPartitionedByKey()) {
+                continue;
+            }
+            TwitterPartitioner partitioner = new TwitterPartitioner();
+            partitioner.configure(Map.of(TwitterPartitioner.STRATEGY_CONFIG, strategy.getValue()));
+            //partitions added at runtime, the user ids are computed for each count
+            for (int numOfPartitions : new int[]{3, 5, 8}) {
+                PartitionKeyGenerator partitionKeyGenerator = new PartitionKeyGenerator(numOfPartitions, 100);
+                Cluster cluster = cluster(numOfPartitions);
+                for (int partition = 0; partition < numOfPartitions; partition++) {
+                    for (int i = 0; i < 20; i++) {
+                        long userId = partitionKeyGenerator.nextUserId(partition);
+                        assertThat(partitioner.partition(TOPIC, userId, longSerializer.serialize(TOPIC, userId),
+                                tweet(i, userId), null, cluster)).as("%s with %d partitions", strategy, numOfPartitions)
+                                .isEqualTo(partition);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onlyUserIdAndHotKeyAwareArePartitionedByKey() {
+        List<PartitioningStrategy> partitionedByKey = new ArrayList<>();
+        for (PartitioningStrategy strategy : PartitioningStrategy.values()) {
+            if (strategy.isPartitionedByKey()) {
+                partitionedByKey.add(strategy);
+            }
+        }
+
+        assertThat(partitionedByKey).containsExactly(PartitioningStrategy.USER_ID, PartitioningStrategy.HOT_KEY_AWARE);
+    }
+
+    @Test
+    public void fillsEveryPartition() {
+        PartitionKeyGenerator partitionKeyGenerator = new PartitionKeyGenerator(4, 50);
+
+        assertThat(partitionKeyGenerator.getNumOfPartitions()).isEqualTo(4);
+        for (int partition = 0; partition < 4; partition++) {
+            long userId = partitionKeyGenerator.nextUserId(partition);
+            assertThat(TwitterPartitioner.partitionOfKey(longSerializer.serialize(TOPIC, userId), 4))
+                    .isEqualTo(partition);
+        }
+    }
+
+    private static Cluster cluster(int numOfPartitions) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int partition = 0; partition < numOfPartitions; partition++) {
+            partitions.add(new PartitionInfo(TOPIC, partition, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("cluster", Collections.singletonList(node), partitions, Collections.emptySet(),
+                Collections.emptySet());
+    }
+
+    private static TwitterAvroModel tweet(long id, long userId) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(userId)
+                .setText("text")
+                .setCreatedAt(System.currentTimeMillis())
+                .build();
+    }
+}
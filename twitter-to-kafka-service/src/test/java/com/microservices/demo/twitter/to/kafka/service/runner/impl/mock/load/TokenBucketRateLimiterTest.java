@@ -0,0 +1,83 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.mock.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TokenBucketRateLimiterTest {
+
+    //rates are kept as tokens per nano, so the waits can be off by rounding
+    private static final long TOLERANCE_NANOS = 10;
+
+    private final AtomicLong nanoTime = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void refillsWithTheRate() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1000, nanoTime::get);
+
+        //bucket starts empty, 10 tokens take 10 ms at 1000/s
+        assertThat(rateLimiter.reserve(10)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(10), within(TOLERANCE_NANOS));
+
+        //the debt is paid back after 10 ms, 5 ms later there are 5 tokens
+        advanceMillis(15);
+        assertThat(rateLimiter.reserve(5)).isZero();
+        assertThat(rateLimiter.reserve(1)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(1), within(TOLERANCE_NANOS));
+    }
+
+    @Test
+    public void burstIsLimitedToOneHundredMillisOfTokens() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1000, nanoTime::get);
+
+        advanceMillis(10_000);
+        assertThat(rateLimiter.reserve(100)).isZero();
+        assertThat(rateLimiter.reserve(50)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(50), within(TOLERANCE_NANOS));
+    }
+
+    @Test
+    public void burstHoldsAtLeastOneToken() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1, nanoTime::get);
+
+        advanceMillis(10_000);
+        assertThat(rateLimiter.reserve(1)).isZero();
+        assertThat(rateLimiter.reserve(1)).isCloseTo(TimeUnit.SECONDS.toNanos(1), within(TOLERANCE_NANOS));
+    }
+
+    @Test
+    public void rateChangeKeepsCollectedTokens() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1000, nanoTime::get);
+
+        advanceMillis(5);
+        rateLimiter.setRate(100);
+        assertThat(rateLimiter.getRate()).isCloseTo(100, within(0.001));
+        //5 tokens collected with the old rate, the next 10 take 100 ms with the new rate
+        assertThat(rateLimiter.reserve(5)).isZero();
+        assertThat(rateLimiter.reserve(10)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(100), within(TOLERANCE_NANOS));
+    }
+
+    @Test
+    public void rateDecreaseCapsCollectedTokensToTheNewBurst() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(1000, nanoTime::get);
+
+        advanceMillis(50);
+        rateLimiter.setRate(100);
+        //50 tokens collected with the old rate, the bucket of the new rate holds 10
+        assertThat(rateLimiter.reserve(10)).isZero();
+        assertThat(rateLimiter.reserve(1)).isCloseTo(TimeUnit.MILLISECONDS.toNanos(10), within(TOLERANCE_NANOS));
+    }
+
+    @Test
+    public void zeroRateIsUnlimited() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(0, nanoTime::get);
+
+        assertThat(rateLimiter.reserve(1_000_000)).isZero();
+        assertThat(rateLimiter.reserve(1_000_000)).isZero();
+    }
+
+    private void advanceMillis(long millis) {
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,118 @@
+package com.microservices.demo.twitter.to.kafka.service.runner.impl.twitterv2;
+
+import com.microservices.demo.kafka.avro.model.TwitterAvroModel;
+import com.microservices.demo.twitter.to.kafka.service.metrics.TwitterIngestMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TwitterV2StreamParserTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final TwitterV2StreamParser twitterV2StreamParser =
+            new TwitterV2StreamParser(new TwitterIngestMetrics(meterRegistry));
+
+    private final List<TwitterAvroModel> tweets = new ArrayList<>();
+
+    @Test
+    public void decodesTweetsAndSkipsKeepAliveLines() throws IOException {
+        long count = parse(tweet(1, "first") + "\r\n\r\n" + tweet(2, "second \\\"quoted\\\" \\ud83d\\ude00") + "\r\n");
+
+        assertThat(count).isEqualTo(2);
+        assertThat(tweets).extracting(TwitterAvroModel::getId).containsExactly(1L, 2L);
+        assertThat(tweets.get(0).getUserId()).isEqualTo(42L);
+        assertThat(tweets.get(0).getCreatedAt()).isEqualTo(Instant.parse("2022-01-31T14:00:00.000Z").toEpochMilli());
+        assertThat(tweets.get(1).getText()).isEqualTo("second \"quoted\" \uD83D\uDE00");
+        assertThat(parseFailures()).isZero();
+    }
+
+    @Test
+    public void skipsMalformedAndTornPayloadsUpToTheNextNewLine() throws IOException {
+        String torn = tweet(2, "torn");
+        long count = parse(tweet(1, "first") + "\n" +
+                "{\"data\":{\"id\":\"x\"" + "\n" +
+                torn.substring(0, torn.length() / 2) + "\r\n" +
+                "not json at all\n" +
+                tweet(3, "after") + "\n");
+
+        assertThat(count).isEqualTo(2);
+        assertThat(tweets).extracting(TwitterAvroModel::getId).containsExactly(1L, 3L);
+        assertThat(parseFailures()).isEqualTo(3);
+    }
+
+    @Test
+    public void skipsInvalidIdsAndPayloadsWithoutData() throws IOException {
+        long count = parse("{\"errors\":[{\"title\":\"operational-disconnect\"}]}\n" +
+                "{\"data\":{\"id\":\"abc\",\"author_id\":\"42\",\"text\":\"invalid id\"}}\n" +
+                tweet(1, "valid") + "\n");
+
+        assertThat(count).isEqualTo(1);
+        assertThat(parseFailures()).isEqualTo(1);
+    }
+
+    @Test
+    public void joinsLinesSplitAcrossReadsAndReadsLastLineWithoutNewLine() throws IOException {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            payload.append(tweet(i, "tweet number " + i)).append("\r\n");
+        }
+        payload.append(tweet(101, "last"));
+
+        long count = twitterV2StreamParser.parse(new OneByteInputStream(payload.toString()), tweets::add);
+
+        assertThat(count).isEqualTo(101);
+        assertThat(tweets.get(100).getText()).isEqualTo("last");
+    }
+
+    @Test
+    public void skipsPayloadLongerThanTheLineLimit() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        while (longText.length() < 2 * 1024 * 1024) {
+            longText.append("0123456789");
+        }
+        long count = parse(tweet(1, longText.toString()) + "\n" + tweet(2, "after") + "\n");
+
+        assertThat(count).isEqualTo(1);
+        assertThat(tweets.get(0).getId()).isEqualTo(2L);
+        assertThat(parseFailures()).isEqualTo(1);
+    }
+
+    private long parse(String payload) throws IOException {
+        return twitterV2StreamParser.parse(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), tweets::add);
+    }
+
+    private double parseFailures() {
+        return meterRegistry.get("twitter.tweets.parse.failures").counter().count();
+    }
+
+    private static String tweet(long id, String text) {
+        return "{\"data\":{\"author_id\":\"42\",\"created_at\":\"2022-01-31T14:00:00.000Z\",\"id\":\"" + id +
+                "\",\"edit_history_tweet_ids\":[\"" + id + "\"],\"text\":\"" + text + "\"}," +
+                "\"matching_rules\":[{\"id\":\"1\",\"tag\":\"\"}]}";
+    }
+
+    /**
+     * Returns one byte per read like a slow connection.
+     */
+    private static class OneByteInputStream extends FilterInputStream {
+        OneByteInputStream(String payload) {
+            super(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(1, len));
+        }
+    }
+}